@@ -77,11 +77,45 @@ esac
 # now fails the build if these two drift apart again.
 MAX_UPLOAD_BYTES=$(( EFFECTIVE_MEM_MB * 16 / 100 * 1024 * 1024 ))
 
+# Streaming ingest (PACKET_INGEST_MODE=streaming) writes packets to a temp file as they are parsed
+# instead of keeping them in heap, so the rule above — a capture must fit in a third of the heap —
+# no longer describes anything. What the heap holds is one entry per conversation, which grows with
+# how many flows a capture has rather than with its size. The cap is then an explicit number,
+# STREAMING_MAX_UPLOAD_MB: what bounds it now is temp disk and analysis time, and this script can
+# measure neither.
+PACKET_INGEST_MODE=${PACKET_INGEST_MODE:-memory}
+if [ "${PACKET_INGEST_MODE}" = "streaming" ]; then
+  STREAMING_MAX_UPLOAD_MB=${STREAMING_MAX_UPLOAD_MB:-10240}
+  case "${STREAMING_MAX_UPLOAD_MB}" in
+    ''|*[!0-9]*)
+      echo "FATAL: STREAMING_MAX_UPLOAD_MB must be an integer, got '${STREAMING_MAX_UPLOAD_MB}'" >&2
+      exit 1 ;;
+  esac
+  MAX_UPLOAD_BYTES=$(( STREAMING_MAX_UPLOAD_MB * 1024 * 1024 ))
+fi
+
 # Analysis/proxy timeout: 45% of the effective budget, clamped to [300, 900] seconds
 TIMEOUT=$(( EFFECTIVE_MEM_MB * 45 / 100 ))
 if [ "$TIMEOUT" -lt 300 ]; then TIMEOUT=300; fi
 if [ "$TIMEOUT" -gt 900 ]; then TIMEOUT=900; fi
 
+# Streaming mode lifts the cap off memory, and the clamp above with it: a capture at the cap takes
+# as long as its size, not the heap, says. Budget a second per 4 MB of the cap (10 GB: ~43 min).
+# The stuck-file timeout has to outlast that too, or reconciliation fails a capture the backend
+# accepted while it is still being analysed; a larger configured value stands.
+STUCK_FILE_TIMEOUT_MINUTES=${STUCK_FILE_TIMEOUT_MINUTES:-30}
+if [ "${PACKET_INGEST_MODE}" = "streaming" ]; then
+  STREAMING_TIMEOUT=$(( STREAMING_MAX_UPLOAD_MB / 4 ))
+  if [ "$TIMEOUT" -lt "$STREAMING_TIMEOUT" ]; then TIMEOUT=$STREAMING_TIMEOUT; fi
+  STREAMING_STUCK_MINUTES=$(( TIMEOUT / 60 + 15 ))
+  case "${STUCK_FILE_TIMEOUT_MINUTES}" in
+    ''|*[!0-9]*) STUCK_FILE_TIMEOUT_MINUTES=${STREAMING_STUCK_MINUTES} ;;
+  esac
+  if [ "$STUCK_FILE_TIMEOUT_MINUTES" -lt "$STREAMING_STUCK_MINUTES" ]; then
+    STUCK_FILE_TIMEOUT_MINUTES=${STREAMING_STUCK_MINUTES}
+  fi
+fi
+
 # Max length (chars) of a single JSON string value across the API — currently only reachable via
 # the PDF report's base64-encoded topology diagram, which a dense capture can inflate past
 # Jackson's own fixed 20MB default. That default doesn't know how much heap it's borrowing
@@ -136,8 +170,14 @@ if [ "${EFFECTIVE_MEM_MB}" -ne "${MEM}" ]; then
 fi
 echo "  JVM heap             = ${JVM_HEAP_MB} MB (${JVM_HEAP_PERCENT}% of budget)"
 echo "  Native headroom      = $(( 100 - JVM_HEAP_PERCENT ))% for JVM non-heap + tshark/ndpi/Suricata"
-echo "  Max upload size      = $(( MAX_UPLOAD_BYTES / 1024 / 1024 )) MB"
+echo "  Packet ingest        = ${PACKET_INGEST_MODE}"
+if [ "${PACKET_INGEST_MODE}" = "streaming" ]; then
+  echo "  Max upload size      = $(( MAX_UPLOAD_BYTES / 1024 / 1024 )) MB (STREAMING_MAX_UPLOAD_MB; not heap-bound)"
+else
+  echo "  Max upload size      = $(( MAX_UPLOAD_BYTES / 1024 / 1024 )) MB"
+fi
 echo "  Analysis timeout     = ${TIMEOUT} s"
+echo "  Stuck-file timeout   = ${STUCK_FILE_TIMEOUT_MINUTES} min"
 echo "  Max JSON string      = ${JACKSON_MAX_STRING_MB} MB (report topology diagram)"
 
 # Die on heap exhaustion instead of limping (#779).
@@ -161,5 +201,6 @@ exec gosu spring java \
   ${JVM_MEM_OPTS} \
   -DMAX_UPLOAD_SIZE_BYTES=${MAX_UPLOAD_BYTES} \
   -DANALYSIS_TIMEOUT_SECONDS=${TIMEOUT} \
+  -DSTUCK_FILE_TIMEOUT_MINUTES=${STUCK_FILE_TIMEOUT_MINUTES} \
   -DJACKSON_MAX_STRING_LENGTH=${JACKSON_MAX_STRING_BYTES} \
   -jar app.jar
@@ -0,0 +1,140 @@
+package com.tracepcap.analysis.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Conversation lookup per packet: the {@code String.format} key and HashMap the parser used to
+ * build, against the {@link FlowTable} it uses now.
+ *
+ * <p>Both sides get the same packets, as the parser hands them over: address and protocol strings
+ * (pooled, as {@code ParseState.pooled} leaves them) and ports. Each invocation groups one whole
+ * capture's worth of packets from an empty table, so table growth is part of what is measured.
+ *
+ * <pre>
+ * mvn -Pjmh test-compile exec:exec -Djmh.args=FlowKeyBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@OperationsPerInvocation(FlowKeyBenchmark.PACKETS)
+public class FlowKeyBenchmark {
+
+  static final int PACKETS = 1 << 20;
+
+  /** Distinct conversations in the synthetic capture. */
+  @Param({"1000", "100000"})
+  int flows;
+
+  private String[] srcIp;
+  private String[] dstIp;
+  private int[] srcPort;
+  private int[] dstPort;
+  private String[] protocol;
+
+  @Setup
+  public void capture() {
+    Random random = new Random(779);
+    String[] protocols = {"TCP", "UDP", "TLSV1.2", "DNS", "HTTP"};
+    List<String[]> endpoints = new ArrayList<>();
+    for (int i = 0; i < flows; i++) {
+      String client =
+          "10." + random.nextInt(4) + "." + random.nextInt(256) + "." + random.nextInt(256);
+      String server = "192.0.2." + random.nextInt(200);
+      endpoints.add(new String[] {client, server});
+    }
+    Map<String, String> pool = new HashMap<>();
+    srcIp = new String[PACKETS];
+    dstIp = new String[PACKETS];
+    srcPort = new int[PACKETS];
+    dstPort = new int[PACKETS];
+    protocol = new String[PACKETS];
+    for (int i = 0; i < PACKETS; i++) {
+      int f = random.nextInt(flows);
+      String[] e = endpoints.get(f);
+      boolean reply = random.nextBoolean();
+      int client = 32768 + f % 28000;
+      int server = 443 - (f % 5) * 100;
+      srcIp[i] = pool.computeIfAbsent(reply ? e[1] : e[0], k -> k);
+      dstIp[i] = pool.computeIfAbsent(reply ? e[0] : e[1], k -> k);
+      srcPort[i] = reply ? server : client;
+      dstPort[i] = reply ? client : server;
+      protocol[i] = protocols[f % protocols.length];
+    }
+  }
+
+  @Benchmark
+  public void stringKey(Blackhole bh) {
+    Map<String, Object> conversations = new HashMap<>();
+    for (int i = 0; i < PACKETS; i++) {
+      Integer sport = srcPort[i];
+      Integer dport = dstPort[i];
+      String key = stringKey(srcIp[i], sport, dstIp[i], dport, protocol[i]);
+      bh.consume(conversations.computeIfAbsent(key, k -> new Object()));
+    }
+  }
+
+  @Benchmark
+  public void binaryKey(Blackhole bh) {
+    StringDictionary ids = new StringDictionary();
+    FlowTable table = new FlowTable();
+    List<Object> conversations = new ArrayList<>();
+    for (int i = 0; i < PACKETS; i++) {
+      int found =
+          table.findOrAdd(
+              FlowTable.endpoint(ids.idOf(srcIp[i]), srcPort[i]),
+              FlowTable.endpoint(ids.idOf(dstIp[i]), dstPort[i]),
+              ids.idOf(protocol[i]));
+      Object conv;
+      if (found >= 0) {
+        conv = conversations.get(found);
+      } else {
+        conv = new Object();
+        conversations.add(conv);
+      }
+      bh.consume(conv);
+    }
+  }
+
+  /** {@code PcapParserService.createConversationKey} as it was before FlowTable. */
+  private static String stringKey(
+      String srcIp, Integer srcPort, String dstIp, Integer dstPort, String protocol) {
+    String ip1, ip2;
+    Integer port1, port2;
+
+    int cmp = srcIp.compareTo(dstIp);
+    if (cmp < 0 || (cmp == 0 && srcPort != null && dstPort != null && srcPort < dstPort)) {
+      ip1 = srcIp;
+      port1 = srcPort;
+      ip2 = dstIp;
+      port2 = dstPort;
+    } else {
+      ip1 = dstIp;
+      port1 = dstPort;
+      ip2 = srcIp;
+      port2 = srcPort;
+    }
+    return String.format("%s:%s-%s:%s-%s", ip1, port1, ip2, port2, protocol);
+  }
+}
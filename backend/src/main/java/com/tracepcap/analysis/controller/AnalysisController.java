@@ -87,8 +87,9 @@ public class AnalysisController {
 
   /**
    * Live analysis progress for a file still being analysed. Returns 200 with the current stage while
-   * a run is in flight, or 204 No Content when nothing is being tracked (not started, already
-   * finished, or dropped on a restart) — in which case the client falls back to its size estimate.
+   * a run is in flight on any node, or 204 No Content when nothing is being tracked (not started,
+   * already finished, or lost with its node) — in which case the client falls back to its size
+   * estimate.
    */
   @GetMapping("/{fileId}/progress")
   @Operation(summary = "Live analysis progress (204 when no run is being tracked)")
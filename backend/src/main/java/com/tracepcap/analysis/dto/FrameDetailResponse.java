@@ -0,0 +1,47 @@
+package com.tracepcap.analysis.dto;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** One frame as Wireshark dissects it: the protocol tree of its details pane, and its bytes. */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FrameDetailResponse {
+
+  /** tshark's {@code frame.number}, 1-based. */
+  private Long frameNumber;
+
+  /** The protocols of the frame, outermost first, each with its fields beneath it. */
+  private List<Node> tree;
+
+  /**
+   * The frame's bytes, which {@link Node#offset} and {@link Node#length} point into; base64 in
+   * JSON. Null when the frame was dissected by tshark rather than sharkd, which gives no bytes.
+   */
+  private byte[] bytes;
+
+  @Data
+  @Builder
+  @NoArgsConstructor
+  @AllArgsConstructor
+  public static class Node {
+    /** The line as Wireshark shows it, e.g. "Time to Live: 64". */
+    private String label;
+
+    /** The display-filter field it shows, e.g. "ip.ttl"; null for text-only lines. */
+    private String field;
+
+    /** Where in the frame's bytes the item lies; null when it covers none. */
+    private Integer offset;
+
+    private Integer length;
+
+    /** Null for a leaf. */
+    private List<Node> children;
+  }
+}
@@ -22,6 +22,8 @@ public class PacketResponse {
   private String protocol;
   private Integer packetSize;
   private String info;
+
+  /** The stored payload bytes as lowercase hex; stored as bytes, rendered here for the API. */
   private String payload;
   private String detectedFileType;
 }
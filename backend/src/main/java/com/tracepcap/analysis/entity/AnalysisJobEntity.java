@@ -0,0 +1,86 @@
+package com.tracepcap.analysis.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * One queued or past analysis of one file — a row of the persistent job queue ({@code
+ * AnalysisJobQueue}). Inserted and claimed with native SQL; mapped here for the updates that follow
+ * a claim and for reads.
+ */
+@Entity
+@Table(name = "analysis_jobs")
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AnalysisJobEntity {
+
+  @Id private UUID id;
+
+  @Column(name = "file_id", nullable = false)
+  private UUID fileId;
+
+  @Enumerated(EnumType.STRING)
+  @Column(nullable = false, length = 8)
+  private Lane lane;
+
+  @Column(nullable = false)
+  private int priority;
+
+  @Column(name = "submitted_by", nullable = false)
+  private String submittedBy;
+
+  @Enumerated(EnumType.STRING)
+  @Column(nullable = false, length = 16)
+  private Status status;
+
+  @Column(nullable = false)
+  private int attempts;
+
+  @Column(name = "enqueued_at", nullable = false)
+  private LocalDateTime enqueuedAt;
+
+  @Column(name = "available_at", nullable = false)
+  private LocalDateTime availableAt;
+
+  @Column(name = "started_at")
+  private LocalDateTime startedAt;
+
+  @Column(name = "heartbeat_at")
+  private LocalDateTime heartbeatAt;
+
+  @Column(name = "finished_at")
+  private LocalDateTime finishedAt;
+
+  @Column(length = 128)
+  private String worker;
+
+  @Column(name = "last_error", columnDefinition = "TEXT")
+  private String lastError;
+
+  /** Which workers may take the job: FAST ones are open to the reserved fast-lane workers too. */
+  public enum Lane {
+    FAST,
+    BULK
+  }
+
+  public enum Status {
+    QUEUED,
+    RUNNING,
+    DONE,
+    FAILED
+  }
+}
@@ -64,6 +64,21 @@ public class AnalysisResultEntity {
   @Column(name = "error_message", columnDefinition = "TEXT")
   private String errorMessage;
 
+  /** The last stage whose output is committed; null until the first one is. See V43. */
+  @Enumerated(EnumType.STRING)
+  @Column(length = 32)
+  private AnalysisCheckpoint checkpoint;
+
+  /** Parse output no table holds, for a run resumed past the parse. Null once completed. */
+  @ToString.Exclude
+  @JdbcTypeCode(SqlTypes.JSON)
+  @Column(name = "parse_facts", columnDefinition = "jsonb")
+  private Map<String, Object> parseFacts;
+
+  @Builder.Default
+  @Column(name = "resume_count", nullable = false)
+  private Integer resumeCount = 0;
+
   @CreationTimestamp
   @Column(name = "created_at", nullable = false, updatable = false)
   private LocalDateTime createdAt;
@@ -78,4 +93,21 @@ public class AnalysisResultEntity {
     COMPLETED,
     FAILED
   }
+
+  /**
+   * How far an analysis has got, in order. Each is written in the transaction that commits the
+   * stage's output, so a run resumed from one finds everything it implies already in the database.
+   */
+  public enum AnalysisCheckpoint {
+    /** Conversations and packets are written; the parse's totals are on this record. */
+    PARSED,
+    /** The extractors' facts (nDPI, Suricata, tshark) are on the conversations. */
+    EXTRACTED,
+    /** Signatures are on the conversations; hosts are classified. */
+    CLASSIFIED;
+
+    public boolean isBefore(AnalysisCheckpoint other) {
+      return compareTo(other) < 0;
+    }
+  }
 }
@@ -111,6 +111,17 @@ public class ConversationEntity {
   @Column(name = "tls_not_after")
   private LocalDateTime tlsNotAfter;
 
+  /**
+   * tshark's {@code tcp.stream} / {@code udp.stream} for this conversation, as recorded at ingest —
+   * what {@code -z follow} takes. At most one is set; both null for streamless protocols and for
+   * conversations analysed before ingest recorded them.
+   */
+  @Column(name = "tcp_stream")
+  private Integer tcpStream;
+
+  @Column(name = "udp_stream")
+  private Integer udpStream;
+
   @Column(name = "packet_count", nullable = false)
   @Builder.Default
   private Long packetCount = 0L;
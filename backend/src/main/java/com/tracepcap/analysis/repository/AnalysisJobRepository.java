@@ -0,0 +1,185 @@
+package com.tracepcap.analysis.repository;
+
+import com.tracepcap.analysis.entity.AnalysisJobEntity;
+import com.tracepcap.analysis.entity.AnalysisJobEntity.Lane;
+import com.tracepcap.analysis.entity.AnalysisJobEntity.Status;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+/**
+ * The analysis job queue's table. Every write that involves time is native and uses the database's
+ * {@code now()}, so the leases, backoffs and waits of workers on different hosts are measured
+ * against one clock.
+ */
+@Repository
+public interface AnalysisJobRepository extends JpaRepository<AnalysisJobEntity, UUID> {
+
+  /**
+   * Queues a job for {@code fileId} unless it already has a live one.
+   *
+   * @return 1 if queued, 0 if a job for the file was already queued or running
+   */
+  @Modifying
+  @Query(
+      value =
+          "INSERT INTO analysis_jobs (file_id, lane, priority, submitted_by, status)"
+              + " VALUES (:fileId, :lane, :priority, :submittedBy, 'QUEUED')"
+              + " ON CONFLICT (file_id) WHERE status IN ('QUEUED', 'RUNNING') DO NOTHING",
+      nativeQuery = true)
+  int enqueue(
+      @Param("fileId") UUID fileId,
+      @Param("lane") String lane,
+      @Param("priority") int priority,
+      @Param("submittedBy") String submittedBy);
+
+  /**
+   * Locks the next job a worker taking {@code lanes} should run, skipping any another worker has
+   * locked: highest priority first, then the submitter with the fewest jobs running, then the
+   * oldest. Must run in the transaction that then marks it running.
+   */
+  @Query(
+      value =
+          "SELECT j.id FROM analysis_jobs j"
+              + " LEFT JOIN (SELECT submitted_by, COUNT(*) AS running FROM analysis_jobs"
+              + "   WHERE status = 'RUNNING' GROUP BY submitted_by) r"
+              + "   ON r.submitted_by = j.submitted_by"
+              + " WHERE j.status = 'QUEUED' AND j.available_at <= now() AND j.lane IN (:lanes)"
+              + " ORDER BY j.priority DESC, COALESCE(r.running, 0), j.enqueued_at"
+              + " LIMIT 1"
+              + " FOR UPDATE OF j SKIP LOCKED",
+      nativeQuery = true)
+  Optional<UUID> lockNextQueued(@Param("lanes") Collection<String> lanes);
+
+  @Modifying
+  @Query(
+      value =
+          "UPDATE analysis_jobs SET status = 'RUNNING', attempts = attempts + 1,"
+              + " started_at = now(), heartbeat_at = now(), worker = :worker"
+              + " WHERE id = :id",
+      nativeQuery = true)
+  int markRunning(@Param("id") UUID id, @Param("worker") String worker);
+
+  /** Renews the lease on jobs this worker still holds. */
+  @Modifying
+  @Query(
+      value =
+          "UPDATE analysis_jobs SET heartbeat_at = now()"
+              + " WHERE status = 'RUNNING' AND id IN (:ids)",
+      nativeQuery = true)
+  int heartbeat(@Param("ids") Collection<UUID> ids);
+
+  @Modifying
+  @Query(
+      value =
+          "UPDATE analysis_jobs SET status = 'DONE', finished_at = now(), last_error = NULL"
+              + " WHERE id = :id AND status = 'RUNNING'",
+      nativeQuery = true)
+  int markDone(@Param("id") UUID id);
+
+  /** Puts a failed attempt back in the queue, not to be claimed for {@code delaySeconds}. */
+  @Modifying
+  @Query(
+      value =
+          "UPDATE analysis_jobs SET status = 'QUEUED', worker = NULL, heartbeat_at = NULL,"
+              + " available_at = now() + :delaySeconds * INTERVAL '1 second', last_error = :error"
+              + " WHERE id = :id AND status = 'RUNNING'",
+      nativeQuery = true)
+  int markRetry(
+      @Param("id") UUID id, @Param("delaySeconds") long delaySeconds, @Param("error") String error);
+
+  /**
+   * Hands a running job back to the queue, not to be claimed for {@code delaySeconds}, as if this
+   * attempt had never been claimed: the attempt it was counted as is given back.
+   */
+  @Modifying
+  @Query(
+      value =
+          "UPDATE analysis_jobs SET status = 'QUEUED', worker = NULL, heartbeat_at = NULL,"
+              + " attempts = GREATEST(attempts - 1, 0),"
+              + " available_at = now() + :delaySeconds * INTERVAL '1 second'"
+              + " WHERE id = :id AND status = 'RUNNING'",
+      nativeQuery = true)
+  int markReleased(@Param("id") UUID id, @Param("delaySeconds") long delaySeconds);
+
+  @Modifying
+  @Query(
+      value =
+          "UPDATE analysis_jobs SET status = 'FAILED', finished_at = now(), last_error = :error"
+              + " WHERE id = :id AND status = 'RUNNING'",
+      nativeQuery = true)
+  int markFailed(@Param("id") UUID id, @Param("error") String error);
+
+  /**
+   * Running jobs whose worker stopped renewing the lease — lost to a crash or restart — with
+   * attempts left go back to the queue. Run before {@link #failExpired}.
+   */
+  @Modifying
+  @Query(
+      value =
+          "UPDATE analysis_jobs SET status = 'QUEUED', worker = NULL, heartbeat_at = NULL,"
+              + " available_at = now(), last_error = 'Worker lost; lease expired'"
+              + " WHERE status = 'RUNNING' AND attempts < :maxAttempts"
+              + " AND heartbeat_at < now() - :leaseSeconds * INTERVAL '1 second'",
+      nativeQuery = true)
+  int requeueExpired(
+      @Param("leaseSeconds") long leaseSeconds, @Param("maxAttempts") int maxAttempts);
+
+  /**
+   * As {@link #requeueExpired}, for the expired jobs it left behind — those with no attempts left,
+   * typically a capture that takes its worker down every time.
+   */
+  @Modifying
+  @Query(
+      value =
+          "UPDATE analysis_jobs SET status = 'FAILED', finished_at = now(),"
+              + " last_error = 'Worker lost on every attempt; lease expired'"
+              + " WHERE status = 'RUNNING'"
+              + " AND heartbeat_at < now() - :leaseSeconds * INTERVAL '1 second'",
+      nativeQuery = true)
+  int failExpired(@Param("leaseSeconds") long leaseSeconds);
+
+  /**
+   * Whether {@code fileId}'s job is running and its worker renewed the lease within {@code
+   * leaseSeconds} — the other side of {@link #requeueExpired}'s condition.
+   */
+  @Query(
+      value =
+          "SELECT EXISTS (SELECT 1 FROM analysis_jobs WHERE file_id = :fileId"
+              + " AND status = 'RUNNING'"
+              + " AND heartbeat_at >= now() - :leaseSeconds * INTERVAL '1 second')",
+      nativeQuery = true)
+  boolean hasLiveLease(@Param("fileId") UUID fileId, @Param("leaseSeconds") long leaseSeconds);
+
+  @Modifying
+  @Query(
+      value =
+          "DELETE FROM analysis_jobs WHERE status IN ('DONE', 'FAILED')"
+              + " AND finished_at < now() - :days * INTERVAL '1 day'",
+      nativeQuery = true)
+  int deleteFinishedOlderThan(@Param("days") int days);
+
+  Optional<AnalysisJobEntity> findFirstByFileIdAndStatusIn(
+      UUID fileId, Collection<Status> statuses);
+
+  long countByStatus(Status status);
+
+  long countByStatusAndLane(Status status, Lane lane);
+
+  /**
+   * Per lane, how long the longest-waiting claimable job has been ready: {@code [lane, seconds]}.
+   * Jobs backing off before a retry are not waiting on a worker and are left out.
+   */
+  @Query(
+      value =
+          "SELECT lane, EXTRACT(EPOCH FROM now() - MIN(available_at)) FROM analysis_jobs"
+              + " WHERE status = 'QUEUED' AND available_at <= now() GROUP BY lane",
+      nativeQuery = true)
+  List<Object[]> oldestReadyByLane();
+}
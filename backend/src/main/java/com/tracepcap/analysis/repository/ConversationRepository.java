@@ -7,7 +7,9 @@ import com.tracepcap.analysis.entity.IpGeoInfoEntity;
 import com.tracepcap.analysis.entity.PacketEntity;
 import jakarta.persistence.criteria.Predicate;
 import jakarta.persistence.criteria.Subquery;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.UUID;
 import org.springframework.data.domain.Pageable;
@@ -624,10 +626,11 @@ public interface ConversationRepository
         predicates.add(cb.or(root.get("srcIp").in(countrySub), root.get("dstIp").in(countrySub)));
       }
 
-      // Payload contains — EXISTS subquery: match hex-encoded payload of any packet
+      // Payload contains — EXISTS subquery: a byte substring of any packet's payload.
+      // bytea_contains (V42) is position(needle IN payload) > 0, which criteria cannot spell.
       if (params.getPayloadContains() != null && !params.getPayloadContains().isBlank()) {
-        String hexNeedle = toHexNeedle(params.getPayloadContains());
-        if (hexNeedle != null && !hexNeedle.isEmpty()) {
+        byte[] needle = toPayloadNeedle(params.getPayloadContains());
+        if (needle != null && needle.length > 0) {
           Subquery<UUID> sub = query.subquery(UUID.class);
           var packet = sub.from(PacketEntity.class);
           sub.select(packet.get("conversation").get("id"))
@@ -635,7 +638,12 @@ public interface ConversationRepository
                   cb.and(
                       cb.equal(packet.get("conversation").get("id"), root.get("id")),
                       cb.isNotNull(packet.get("payload")),
-                      cb.like(packet.get("payload"), "%" + hexNeedle + "%")));
+                      cb.isTrue(
+                          cb.function(
+                              "bytea_contains",
+                              Boolean.class,
+                              packet.get("payload"),
+                              cb.literal(needle)))));
           predicates.add(cb.exists(sub));
         }
       }
@@ -664,35 +672,39 @@ public interface ConversationRepository
   }
 
   /**
-   * Converts a user-supplied payload pattern to a lowercase hex substring for LIKE matching.
+   * Converts a user-supplied payload pattern to the bytes to search stored payloads for.
    *
    * <ul>
    *   <li>Inputs starting with {@code 0x}, or containing only hex chars plus spaces/colons, are
-   *       treated as hex (separators stripped).
-   *   <li>All other inputs are treated as ASCII and each character is converted to its two-digit
-   *       hex equivalent.
+   *       treated as hex (separators stripped). Hex that does not decode — odd length, stray
+   *       characters — yields null: there is nothing to search for.
+   *   <li>All other inputs are treated as text and searched for as their UTF-8 bytes, which for
+   *       ASCII is one byte per character.
    * </ul>
    */
-  static String toHexNeedle(String input) {
+  static byte[] toPayloadNeedle(String input) {
     if (input == null) return null;
     String trimmed = input.trim();
     if (trimmed.isEmpty()) return null;
 
     // Explicit hex prefix
     if (trimmed.toLowerCase().startsWith("0x")) {
-      return trimmed.substring(2).replaceAll("[\\s:\\-]", "").toLowerCase();
+      return parseHexOrNull(trimmed.substring(2).replaceAll("[\\s:\\-]", ""));
     }
 
     // Looks like space-, colon-, or hyphen-separated hex bytes (e.g. "47 45 54" or "47:45:54")
     if (trimmed.matches("[0-9a-fA-F]{2}([\\s:-][0-9a-fA-F]{2})*")) {
-      return trimmed.replaceAll("[\\s:-]", "").toLowerCase();
+      return parseHexOrNull(trimmed.replaceAll("[\\s:-]", ""));
     }
 
-    // ASCII: convert each character to two-digit hex
-    StringBuilder sb = new StringBuilder(trimmed.length() * 2);
-    for (char c : trimmed.toCharArray()) {
-      sb.append(String.format("%02x", (int) c));
+    return trimmed.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static byte[] parseHexOrNull(String hex) {
+    try {
+      return HexFormat.of().parseHex(hex);
+    } catch (IllegalArgumentException e) {
+      return null;
     }
-    return sb.toString();
   }
 }
@@ -0,0 +1,333 @@
+package com.tracepcap.analysis.service;
+
+import com.tracepcap.file.entity.FileEntity;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Lets an analysis start only while the ones already running leave room for it.
+ *
+ * <p>The worker count is a fixed number of analyses at once, whatever they are. Three large
+ * captures starting together in memory ingest mode can exhaust the heap between them — and an
+ * {@code OutOfMemoryError} takes every other analysis on the node down too — while twenty small
+ * ones would fit comfortably. Each job's peak heap and CPU are predicted from its packet count
+ * and capture size ({@link #predict}), and a worker holding a claimed job waits here until the
+ * predicted total of everything admitted, plus its own, fits the budget.
+ *
+ * <p><b>Fair.</b> Jobs are admitted in the order they arrived, except that a later job may go ahead
+ * of an earlier one when it fits in what is left <em>after</em> the earlier one's share — so a
+ * stream of small captures can use spare room but never postpone a large one. A job predicted to
+ * exceed the whole budget still runs, alone, once nothing else is in flight.
+ *
+ * <p><b>Recalibrated from logs.</b> The model has the same shape as the upload ETA's (a fixed cost
+ * plus one per thousand packets, or per MB when the packet count is unknown), and its coefficients
+ * are just as much a fit to past runs. Every admission and every finished job logs its predicted
+ * and observed figures; {@code scripts/calibrate_admission.py} reads them back and prints measured
+ * coefficients. The observed heap is the heap's live size after collection, sampled while the job
+ * runs. It is JVM-wide, so only runs that had the JVM to themselves measure one job cleanly.
+ */
+@Slf4j
+@Component
+public class AnalysisAdmission implements MeterBinder {
+
+  // Heap, MB. Re-fit with scripts/calibrate_admission.py rather than by hand.
+  static final double HEAP_FIXED_MB = 48;
+  // Memory ingest: packet columns and payload/Info bytes (PacketStore) plus per-conversation state.
+  static final double MEMORY_HEAP_MB_PER_KPKT = 0.12;
+  static final double MEMORY_HEAP_MB_PER_CAPTURE_MB = 1.0;
+  // Streaming ingest: packets are spilled to disk; per-conversation state only.
+  static final double STREAMING_HEAP_MB_PER_KPKT = 0.03;
+  // No packet count (capinfos unavailable at upload): the upload cap's own rule for memory ingest,
+  // that a capture must fit in a third of the heap, and a small fraction of it for streaming.
+  static final double MEMORY_HEAP_MB_PER_CAPTURE_MB_ONLY = 3.0;
+  static final double STREAMING_HEAP_MB_PER_CAPTURE_MB_ONLY = 0.1;
+
+  /**
+   * CPU, cores. A job's stages run up to {@code width} threads and subprocesses at once, but a
+   * small capture is through them in a second or two and spends its time on fixed waits (the warm
+   * engine, the database); it takes this many thousand packets to keep the full width busy.
+   */
+  static final double CPU_FULL_WIDTH_KPKT = 20;
+
+  static final double CPU_MIN = 0.25;
+
+  private static final long SAMPLE_MILLIS = 1000;
+
+  @Value("${tracepcap.analysis.admission.enabled:true}")
+  private boolean enabled = true;
+
+  /** Share of the maximum heap analyses may be predicted to use between them. */
+  @Value("${tracepcap.analysis.admission.heap-budget-percent:70}")
+  private int heapBudgetPercent = 70;
+
+  /** Cores analyses may be predicted to use between them; 0 = the CPUs the JVM is given. */
+  @Value("${tracepcap.analysis.admission.cpu-budget:0}")
+  private double cpuBudget;
+
+  @Value("${tracepcap.analysis.ingest.mode:memory}")
+  private String ingestMode = PcapParserService.INGEST_MEMORY;
+
+  @Value("${tracepcap.analysis.parser.workers:1}")
+  private int parseWorkers = 1;
+
+  @Value("${tracepcap.analysis.extract.workers:2}")
+  private int extractWorkers = 2;
+
+  /** Admitted and waiting jobs, in arrival order. */
+  private final List<Ticket> admitted = new ArrayList<>();
+
+  private final List<Ticket> waiting = new ArrayList<>();
+
+  private ScheduledExecutorService sampler;
+  private MeterRegistry registry;
+
+  /** The demand one job is predicted to place on the budget. */
+  record Demand(double heapMb, double cpu) {}
+
+  /**
+   * Predicts {@code file}'s peak heap and CPU.
+   *
+   * @param streaming whether packets are spilled to disk rather than kept in heap
+   * @param width the most threads and subprocesses one analysis runs at once
+   */
+  static Demand predict(FileEntity file, boolean streaming, int width) {
+    double captureMb = file.getFileSize() != null ? file.getFileSize() / 1024.0 / 1024.0 : 0;
+    Integer packets = file.getPacketCount();
+    double heap;
+    double cpu;
+    if (packets != null && packets > 0) {
+      double kPkt = packets / 1000.0;
+      heap =
+          HEAP_FIXED_MB
+              + (streaming
+                  ? kPkt * STREAMING_HEAP_MB_PER_KPKT
+                  : kPkt * MEMORY_HEAP_MB_PER_KPKT + captureMb * MEMORY_HEAP_MB_PER_CAPTURE_MB);
+      cpu = width * Math.min(1.0, kPkt / CPU_FULL_WIDTH_KPKT);
+    } else {
+      heap =
+          HEAP_FIXED_MB
+              + captureMb
+                  * (streaming
+                      ? STREAMING_HEAP_MB_PER_CAPTURE_MB_ONLY
+                      : MEMORY_HEAP_MB_PER_CAPTURE_MB_ONLY);
+      // Unknown work: assume enough of it to keep every thread busy.
+      cpu = width;
+    }
+    return new Demand(heap, Math.max(CPU_MIN, cpu));
+  }
+
+  /**
+   * Waits until {@code file}'s analysis fits alongside those already running, and admits it. The
+   * ticket must be closed when the analysis ends, however it ends.
+   */
+  public Ticket admit(FileEntity file) throws InterruptedException {
+    Demand demand =
+        predict(
+            file,
+            PcapParserService.INGEST_STREAMING.equalsIgnoreCase(ingestMode),
+            width(file));
+    Ticket ticket = new Ticket(file, demand);
+    if (!enabled) return ticket;
+
+    long start = System.nanoTime();
+    synchronized (this) {
+      waiting.add(ticket);
+      try {
+        while (!admissible(ticket)) wait();
+      } finally {
+        waiting.remove(ticket);
+        notifyAll();
+      }
+      admitted.add(ticket);
+      ticket.admittedAt = System.nanoTime();
+      startSampling();
+      log.info(
+          "[{}] Admission: admitted after {}ms (predicted heap {}MB, cpu {}; "
+              + "in flight {} job(s), heap {}/{}MB, cpu {}/{})",
+          file.getId(),
+          TimeUnit.NANOSECONDS.toMillis(ticket.admittedAt - start),
+          Math.round(demand.heapMb()),
+          round1(demand.cpu()),
+          admitted.size(),
+          Math.round(inFlight().heapMb()),
+          Math.round(heapBudgetMb()),
+          round1(inFlight().cpu()),
+          round1(cpuBudget()));
+    }
+    if (registry != null) {
+      Timer.builder("tracepcap.analysis.admission.wait")
+          .description("Time a claimed analysis waited for room in the heap and CPU budget")
+          .register(registry)
+          .record(Duration.ofNanos(ticket.admittedAt - start));
+    }
+    return ticket;
+  }
+
+  /**
+   * Whether {@code ticket} may start now: it fits in the budget left after everything admitted and
+   * everything that arrived before it, or it is first in line and nothing is running.
+   */
+  private boolean admissible(Ticket ticket) {
+    double heap = ticket.demand.heapMb();
+    double cpu = ticket.demand.cpu();
+    for (Ticket t : admitted) {
+      heap += t.demand.heapMb();
+      cpu += t.demand.cpu();
+    }
+    for (Ticket t : waiting) {
+      if (t == ticket) break;
+      heap += t.demand.heapMb();
+      cpu += t.demand.cpu();
+    }
+    if (heap <= heapBudgetMb() && cpu <= cpuBudget()) return true;
+    return admitted.isEmpty() && waiting.get(0) == ticket;
+  }
+
+  private synchronized void release(Ticket ticket) {
+    if (!admitted.remove(ticket)) return;
+    notifyAll();
+    long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - ticket.admittedAt);
+    log.info(
+        "[{}] Admission actual: {} packets, {} bytes, predicted heap {}MB, peak live heap {}MB"
+            + " with {} job(s) in flight at most, {}ms",
+        ticket.file.getId(),
+        ticket.file.getPacketCount(),
+        ticket.file.getFileSize(),
+        Math.round(ticket.demand.heapMb()),
+        ticket.peakLiveHeapMb,
+        ticket.maxInFlight,
+        millis);
+  }
+
+  private int width(FileEntity file) {
+    int parse = parseWorkers > 0 ? parseWorkers : Runtime.getRuntime().availableProcessors();
+    // nDPI, tshark and Suricata are the extractors that run side by side.
+    int extractors = (file.isEnableNdpi() ? 2 : 1) + (file.isEnableSuricata() ? 1 : 0);
+    return Math.max(parse, Math.min(Math.max(extractWorkers, 1), extractors));
+  }
+
+  private double heapBudgetMb() {
+    return Runtime.getRuntime().maxMemory() / 1024.0 / 1024.0 * heapBudgetPercent / 100.0;
+  }
+
+  private double cpuBudget() {
+    return cpuBudget > 0 ? cpuBudget : Runtime.getRuntime().availableProcessors();
+  }
+
+  private synchronized Demand inFlight() {
+    double heap = 0;
+    double cpu = 0;
+    for (Ticket t : admitted) {
+      heap += t.demand.heapMb();
+      cpu += t.demand.cpu();
+    }
+    return new Demand(heap, cpu);
+  }
+
+  private synchronized int waitingCount() {
+    return waiting.size();
+  }
+
+  // ---------------------------------------------------------------------------
+  // Observed heap
+  // ---------------------------------------------------------------------------
+
+  private void startSampling() {
+    if (sampler != null) return;
+    sampler =
+        Executors.newSingleThreadScheduledExecutor(
+            r -> {
+              Thread t = new Thread(r, "analysis-admission-sampler");
+              t.setDaemon(true);
+              return t;
+            });
+    sampler.scheduleWithFixedDelay(this::sample, 0, SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  private void sample() {
+    long live = liveHeapMb();
+    synchronized (this) {
+      for (Ticket t : admitted) {
+        t.peakLiveHeapMb = Math.max(t.peakLiveHeapMb, live);
+        t.maxInFlight = Math.max(t.maxInFlight, admitted.size());
+      }
+    }
+  }
+
+  /**
+   * The heap's live size: each heap pool's usage after its last collection, which leaves out the
+   * garbage a plain "used" reading would count.
+   */
+  private static long liveHeapMb() {
+    long bytes = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() != MemoryType.HEAP) continue;
+      MemoryUsage afterGc = pool.getCollectionUsage();
+      bytes += (afterGc != null ? afterGc : pool.getUsage()).getUsed();
+    }
+    return bytes / 1024 / 1024;
+  }
+
+  @PreDestroy
+  synchronized void stop() {
+    if (sampler != null) sampler.shutdownNow();
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    this.registry = registry;
+    Gauge.builder("tracepcap.analysis.admission.heap", this, a -> a.inFlight().heapMb())
+        .description("Heap the admitted analyses are predicted to use between them")
+        .baseUnit("megabytes")
+        .register(registry);
+    Gauge.builder("tracepcap.analysis.admission.heap.budget", this, a -> a.heapBudgetMb())
+        .description("Heap analyses may be predicted to use between them")
+        .baseUnit("megabytes")
+        .register(registry);
+    Gauge.builder("tracepcap.analysis.admission.cpu", this, a -> a.inFlight().cpu())
+        .description("Cores the admitted analyses are predicted to use between them")
+        .register(registry);
+    Gauge.builder("tracepcap.analysis.admission.waiting", this, a -> a.waitingCount())
+        .description("Claimed analyses waiting for room in the budget")
+        .register(registry);
+  }
+
+  private static double round1(double v) {
+    return Math.round(v * 10) / 10.0;
+  }
+
+  /** One analysis's place in the budget, held from admission until it is closed. */
+  public final class Ticket implements AutoCloseable {
+    private final FileEntity file;
+    private final Demand demand;
+    private long admittedAt;
+    private long peakLiveHeapMb;
+    private int maxInFlight;
+
+    private Ticket(FileEntity file, Demand demand) {
+      this.file = file;
+      this.demand = demand;
+    }
+
+    @Override
+    public void close() {
+      release(this);
+    }
+  }
+}
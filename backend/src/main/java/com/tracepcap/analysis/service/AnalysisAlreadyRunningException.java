@@ -0,0 +1,15 @@
+package com.tracepcap.analysis.service;
+
+import java.util.UUID;
+
+/**
+ * Thrown by {@link AnalysisService#analyzeFile} when this process is already analysing the file.
+ * The attempt never ran, so it is neither a success nor a failure: {@link AnalysisJobWorkers} hands
+ * the job back to the queue rather than completing it or spending one of its attempts.
+ */
+class AnalysisAlreadyRunningException extends RuntimeException {
+
+  AnalysisAlreadyRunningException(UUID fileId) {
+    super("File " + fileId + " is already being analyzed");
+  }
+}
@@ -0,0 +1,181 @@
+package com.tracepcap.analysis.service;
+
+import com.tracepcap.analysis.entity.AnalysisResultEntity;
+import com.tracepcap.analysis.entity.ConversationEntity;
+import com.tracepcap.analysis.repository.ConversationRepository;
+import com.tracepcap.analysis.service.PcapParserService.ConversationInfo;
+import com.tracepcap.analysis.service.PcapParserService.PacketInfo;
+import com.tracepcap.analysis.service.PcapParserService.PcapAnalysisResult;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+
+/**
+ * What a resumed analysis starts from instead of the parse.
+ *
+ * <p>Once an analysis has passed {@link AnalysisResultEntity.AnalysisCheckpoint#PARSED}, everything
+ * the later stages read from the parse is in the database: the conversations as the last committed
+ * stage left them, their packets, and on the analysis record the totals and the {@link
+ * #parseFacts} no table holds. {@link #restore} reassembles a {@link PcapAnalysisResult} from that,
+ * so the stages after the checkpoint run exactly as they would have on the original parse.
+ *
+ * <p><b>Packets are not loaded.</b> A resumed conversation reads its packets back from its
+ * partition each time {@link ConversationInfo#iteratePackets()} is called. The only later reader is
+ * a payload signature, which reaches a conversation's packets only after the rule's cheaper
+ * criteria match — so most are never read, and none are held.
+ */
+@Component
+@RequiredArgsConstructor
+class AnalysisCheckpoints {
+
+  private static final String SELECT_PACKETS =
+      "SELECT packet_number, timestamp, src_ip, src_port, dst_ip, dst_port, protocol, packet_size,"
+          + " info, payload, detected_file_type FROM packets"
+          + " WHERE file_id = ? AND conversation_id = ? ORDER BY packet_number";
+
+  private static final RowMapper<PacketInfo> PACKET_ROW =
+      (rs, i) -> {
+        PacketInfo p = new PacketInfo();
+        p.setPacketNumber(rs.getLong("packet_number"));
+        p.setTimestamp(rs.getObject("timestamp", LocalDateTime.class));
+        p.setSrcIp(rs.getString("src_ip"));
+        p.setSrcPort(rs.getObject("src_port", Integer.class));
+        p.setDstIp(rs.getString("dst_ip"));
+        p.setDstPort(rs.getObject("dst_port", Integer.class));
+        p.setProtocol(rs.getString("protocol"));
+        p.setPacketSize(rs.getObject("packet_size", Integer.class));
+        p.setInfo(rs.getString("info"));
+        p.setPayload(rs.getBytes("payload"));
+        p.setDetectedFileType(rs.getString("detected_file_type"));
+        return p;
+      };
+
+  private final ConversationRepository conversationRepository;
+  private final JdbcTemplate jdbc;
+
+  /** A resumed run's starting point: the parse result, and each conversation's row id. */
+  record Restored(PcapAnalysisResult parseResult, List<UUID> conversationIds) {}
+
+  /**
+   * The per-host facts the parse collects for classification, as stored in {@code parse_facts}.
+   * Written with the PARSED checkpoint; {@link #restore} reads them back.
+   */
+  static Map<String, Object> parseFacts(PcapAnalysisResult parse) {
+    Map<String, Object> facts = new HashMap<>();
+    facts.put("hostTtls", parse.getHostTtls());
+    facts.put("hostMacs", parse.getHostMacs());
+    facts.put("hostMacObservations", parse.getHostMacObservations());
+    return facts;
+  }
+
+  /** Rebuilds the parse result {@code analysis} was checkpointed with. */
+  Restored restore(UUID fileId, AnalysisResultEntity analysis) {
+    PcapAnalysisResult result = new PcapAnalysisResult();
+    result.setPacketCount(analysis.getPacketCount());
+    result.setTotalBytes(analysis.getTotalBytes());
+    result.setStartTime(analysis.getStartTime());
+    result.setEndTime(analysis.getEndTime());
+
+    Map<String, Long> protocolCounts = new HashMap<>();
+    Map<String, Long> protocolBytes = new HashMap<>();
+    if (analysis.getProtocolStats() != null) {
+      analysis
+          .getProtocolStats()
+          .forEach(
+              (protocol, statObj) -> {
+                Map<?, ?> stat = (Map<?, ?>) statObj;
+                protocolCounts.put(protocol, longOf(stat.get("packetCount")));
+                protocolBytes.put(protocol, longOf(stat.get("bytes")));
+              });
+    }
+    result.setProtocolCounts(protocolCounts);
+    result.setProtocolBytes(protocolBytes);
+
+    Map<String, Object> facts = mapOf(analysis.getParseFacts());
+    Map<String, Integer> hostTtls = new HashMap<>();
+    mapOf(facts.get("hostTtls")).forEach((ip, ttl) -> hostTtls.put(ip, ((Number) ttl).intValue()));
+    result.setHostTtls(hostTtls);
+    Map<String, String> hostMacs = new HashMap<>();
+    mapOf(facts.get("hostMacs")).forEach((ip, mac) -> hostMacs.put(ip, (String) mac));
+    result.setHostMacs(hostMacs);
+    Map<String, LinkedHashSet<String>> observations = new HashMap<>();
+    mapOf(facts.get("hostMacObservations"))
+        .forEach(
+            (ip, macs) -> {
+              LinkedHashSet<String> set = new LinkedHashSet<>();
+              for (Object mac : (List<?>) macs) set.add((String) mac);
+              observations.put(ip, set);
+            });
+    result.setHostMacObservations(observations);
+
+    List<ConversationEntity> rows = conversationRepository.findByFileId(fileId);
+    List<ConversationInfo> conversations = new ArrayList<>(rows.size());
+    List<UUID> ids = new ArrayList<>(rows.size());
+    for (ConversationEntity row : rows) {
+      ConversationInfo c = toConversationInfo(row);
+      UUID id = row.getId();
+      Iterable<PacketInfo> packets =
+          () -> jdbc.query(SELECT_PACKETS, PACKET_ROW, fileId, id).iterator();
+      c.readPacketsFrom(packets);
+      conversations.add(c);
+      ids.add(id);
+    }
+    result.setConversations(conversations);
+    return new Restored(result, ids);
+  }
+
+  private static ConversationInfo toConversationInfo(ConversationEntity row) {
+    ConversationInfo c = new ConversationInfo();
+    c.setSrcIp(row.getSrcIp());
+    c.setSrcPort(row.getSrcPort());
+    c.setDstIp(row.getDstIp());
+    c.setDstPort(row.getDstPort());
+    c.setInitiatorIp(row.getInitiatorIp());
+    c.setInitiatorPort(row.getInitiatorPort());
+    c.setProtocol(row.getProtocol());
+    c.setAppName(row.getAppName());
+    c.setTsharkProtocol(row.getTsharkProtocol());
+    // BulkCopyWriter writes an empty list as NULL; the parse's lists are never null.
+    c.setFlowRisks(listOf(row.getFlowRisks()));
+    c.setCustomSignatures(listOf(row.getCustomSignatures()));
+    c.setSuricataAlerts(listOf(row.getSuricataAlerts()));
+    c.setHttpUserAgents(listOf(row.getHttpUserAgents()));
+    c.setCategory(row.getCategory());
+    c.setHostname(row.getHostname());
+    c.setJa3Client(row.getJa3Client());
+    c.setJa3Server(row.getJa3Server());
+    c.setTlsIssuer(row.getTlsIssuer());
+    c.setTlsSubject(row.getTlsSubject());
+    c.setTlsNotBefore(row.getTlsNotBefore());
+    c.setTlsNotAfter(row.getTlsNotAfter());
+    c.setTcpStream(row.getTcpStream());
+    c.setUdpStream(row.getUdpStream());
+    c.setPacketCount(row.getPacketCount());
+    c.setTotalBytes(row.getTotalBytes());
+    c.setStartTime(row.getStartTime());
+    c.setEndTime(row.getEndTime());
+    return c;
+  }
+
+  private static List<String> listOf(String[] values) {
+    return values != null ? new ArrayList<>(Arrays.asList(values)) : new ArrayList<>();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> mapOf(Object value) {
+    return value != null ? (Map<String, Object>) value : Map.of();
+  }
+
+  private static long longOf(Object value) {
+    return value != null ? ((Number) value).longValue() : 0L;
+  }
+}
@@ -0,0 +1,93 @@
+package com.tracepcap.analysis.service;
+
+import jakarta.annotation.PreDestroy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import javax.sql.DataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Wakes this node's idle workers when a job is queued on any node.
+ *
+ * <p>A worker with nothing to do waits up to {@code poll-millis} before looking again, and the
+ * in-process wake-up in {@link AnalysisJobQueue#submit} only reaches workers on the node that took
+ * the upload. Here one connection per node {@code LISTEN}s on the {@code analysis_jobs} channel,
+ * which a trigger notifies whenever a job becomes queued, so a capture uploaded through one node
+ * starts on whichever node has a free worker without waiting out the poll.
+ *
+ * <p>Holds one pooled connection for as long as the application runs. Purely an accelerator: if the
+ * connection drops it is reopened after a pause, and in the meantime the workers' own polling
+ * picks up every job regardless.
+ */
+@Slf4j
+@Component
+public class AnalysisJobListener {
+
+  private static final String CHANNEL = "analysis_jobs";
+  private static final long RECONNECT_MILLIS = 10_000;
+
+  private final DataSource dataSource;
+  private final AnalysisJobQueue queue;
+
+  @Value("${tracepcap.analysis.queue.listen:true}")
+  private boolean enabled;
+
+  private volatile Thread thread;
+
+  public AnalysisJobListener(DataSource dataSource, AnalysisJobQueue queue) {
+    this.dataSource = dataSource;
+    this.queue = queue;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public synchronized void start() {
+    if (!enabled || thread != null) return;
+    thread = new Thread(this::listen, "analysis-job-listener");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  @PreDestroy
+  synchronized void stop() {
+    if (thread != null) thread.interrupt();
+    thread = null;
+  }
+
+  private void listen() {
+    while (!Thread.currentThread().isInterrupted()) {
+      try (Connection con = dataSource.getConnection()) {
+        try (Statement st = con.createStatement()) {
+          st.execute("LISTEN " + CHANNEL);
+        }
+        log.info("Listening for queued analysis jobs on channel {}", CHANNEL);
+        PGConnection pg = con.unwrap(PGConnection.class);
+        try {
+          while (!Thread.currentThread().isInterrupted()) {
+            PGNotification[] notifications = pg.getNotifications((int) RECONNECT_MILLIS);
+            if (notifications != null && notifications.length > 0) queue.signalWork();
+          }
+        } finally {
+          // The connection goes back to the pool; it must not keep collecting notifications there.
+          try (Statement st = con.createStatement()) {
+            st.execute("UNLISTEN " + CHANNEL);
+          }
+        }
+      } catch (SQLException e) {
+        if (Thread.currentThread().isInterrupted()) return;
+        log.warn("Analysis job listener lost its connection: {}", e.getMessage());
+        try {
+          Thread.sleep(RECONNECT_MILLIS);
+        } catch (InterruptedException ie) {
+          return;
+        }
+      }
+    }
+  }
+}
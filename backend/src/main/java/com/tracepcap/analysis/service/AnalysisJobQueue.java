@@ -0,0 +1,367 @@
+package com.tracepcap.analysis.service;
+
+import com.tracepcap.analysis.entity.AnalysisJobEntity;
+import com.tracepcap.analysis.entity.AnalysisJobEntity.Lane;
+import com.tracepcap.analysis.entity.AnalysisJobEntity.Status;
+import com.tracepcap.analysis.repository.AnalysisJobRepository;
+import com.tracepcap.common.exception.ResourceNotFoundException;
+import com.tracepcap.file.entity.FileEntity;
+import com.tracepcap.file.repository.FileRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.ToDoubleFunction;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * The persistent analysis job queue: a table ({@code analysis_jobs}) rather than a thread pool's
+ * in-memory queue.
+ *
+ * <p>The pool it replaces lost every queued analysis on a restart (the reconciliation cron failed
+ * the files an hour later), and once its queue filled it ran the analysis on the upload request's
+ * own thread. Jobs here survive restarts and are claimed with {@code FOR UPDATE SKIP LOCKED}, so
+ * any number of workers, in any number of backend instances, take distinct jobs without
+ * coordinating.
+ *
+ * <p><b>Order.</b> Higher {@code priority} first. Within a priority, the job whose submitter has
+ * the fewest analyses running goes first — one user uploading a hundred captures does not hold up
+ * another's one — and then the oldest.
+ *
+ * <p><b>Lanes.</b> A capture no larger than {@code fast-lane-max-mb} is queued FAST, anything else
+ * BULK. Some workers ({@link AnalysisJobWorkers}) take FAST jobs only, so a small capture is never
+ * stuck behind a backlog of multi-GB ones however long those take.
+ *
+ * <p><b>Retries.</b> A failed attempt is queued again after a backoff that doubles each time, until
+ * {@code max-attempts}; the analysis resumes from its last checkpoint rather than starting over. A
+ * file that no longer exists is not retried. A job whose worker disappears mid-run — its heartbeat
+ * stops — is queued again once its lease lapses.
+ */
+@Slf4j
+@Service
+public class AnalysisJobQueue implements MeterBinder {
+
+  /** A new upload. */
+  public static final int PRIORITY_UPLOAD = 0;
+
+  /**
+   * A stuck analysis resumed from its checkpoint: ahead of new uploads, as it has already waited
+   * once and has part of its work done.
+   */
+  public static final int PRIORITY_RESUME = 10;
+
+  private static final int MAX_ERROR_LENGTH = 2000;
+
+  private final AnalysisJobRepository jobRepository;
+  private final FileRepository fileRepository;
+
+  /** Captures up to this size go to the fast lane. */
+  @Value("${tracepcap.analysis.queue.fast-lane-max-mb:50}")
+  private long fastLaneMaxMb;
+
+  /** Attempts per job, the first included, before it is failed for good. */
+  @Value("${tracepcap.analysis.queue.max-attempts:3}")
+  private int maxAttempts;
+
+  /** Wait before the first retry; doubled for each one after. */
+  @Value("${tracepcap.analysis.queue.retry-backoff-seconds:30}")
+  private long retryBackoffSeconds;
+
+  /**
+   * How long a running job's worker may go without a heartbeat before the job is presumed lost.
+   * Must be comfortably longer than the workers' heartbeat interval.
+   */
+  @Value("${tracepcap.analysis.queue.lease-seconds:300}")
+  private long leaseSeconds;
+
+  /** Finished jobs are kept this long, then deleted. */
+  @Value("${tracepcap.analysis.queue.retention-days:7}")
+  private int retentionDays;
+
+  /** Workers idle between polls wait on this; a commit that queues a job wakes them. */
+  private final Object work = new Object();
+
+  private MeterRegistry registry;
+
+  public AnalysisJobQueue(AnalysisJobRepository jobRepository, FileRepository fileRepository) {
+    this.jobRepository = jobRepository;
+    this.fileRepository = fileRepository;
+  }
+
+  /**
+   * Queues an analysis of {@code fileId}, unless one is already queued or running, and wakes idle
+   * workers once it is committed.
+   *
+   * <p>Always in a transaction of its own: the upload listener calls this after the upload's
+   * transaction has committed, when joining it would leave the insert uncommitted.
+   *
+   * @return whether a job was queued
+   */
+  @Transactional(propagation = Propagation.REQUIRES_NEW)
+  public boolean submit(UUID fileId, String submittedBy, int priority) {
+    FileEntity file =
+        fileRepository
+            .findById(fileId)
+            .orElseThrow(() -> new ResourceNotFoundException("File not found: " + fileId));
+    Lane lane = laneFor(file);
+    boolean queued = jobRepository.enqueue(fileId, lane.name(), priority, submittedBy) > 0;
+    if (queued) {
+      log.info(
+          "Queued analysis of file {} (lane={}, priority={}, by {})",
+          fileId,
+          lane,
+          priority,
+          submittedBy);
+      wakeAfterCommit();
+    } else {
+      log.info("Analysis of file {} is already queued or running", fileId);
+    }
+    return queued;
+  }
+
+  Lane laneFor(FileEntity file) {
+    Long size = file.getFileSize();
+    return size != null && size <= fastLaneMaxMb * 1024 * 1024 ? Lane.FAST : Lane.BULK;
+  }
+
+  /**
+   * Takes the next job from {@code lanes} for {@code worker} and marks it running, or returns empty
+   * if there is none ready.
+   */
+  @Transactional
+  public Optional<AnalysisJobEntity> claim(String worker, Collection<Lane> lanes) {
+    List<String> names = lanes.stream().map(Lane::name).toList();
+    Optional<AnalysisJobEntity> claimed =
+        jobRepository
+            .lockNextQueued(names)
+            .flatMap(
+                id -> {
+                  jobRepository.markRunning(id, worker);
+                  return jobRepository.findById(id);
+                });
+    claimed.ifPresent(this::recordWait);
+    return claimed;
+  }
+
+  private void recordWait(AnalysisJobEntity job) {
+    if (registry == null || job.getStartedAt() == null || job.getAvailableAt() == null) return;
+    Duration waited = Duration.between(job.getAvailableAt(), job.getStartedAt());
+    Timer.builder("tracepcap.analysis.queue.wait")
+        .description("Time a ready analysis job waited for a worker")
+        .tag("lane", job.getLane().name())
+        .register(registry)
+        .record(waited.isNegative() ? Duration.ZERO : waited);
+  }
+
+  @Transactional
+  public void complete(AnalysisJobEntity job) {
+    jobRepository.markDone(job.getId());
+    count("done");
+  }
+
+  /**
+   * Records a failed attempt: queued again after the backoff while it has attempts left, failed
+   * for good otherwise.
+   *
+   * @return whether this was the job's last attempt
+   */
+  @Transactional
+  public boolean fail(AnalysisJobEntity job, Exception cause) {
+    String error = describe(cause);
+    boolean retryable = !(cause instanceof ResourceNotFoundException);
+    if (retryable && job.getAttempts() < maxAttempts) {
+      long delay = backoffSeconds(job.getAttempts());
+      jobRepository.markRetry(job.getId(), delay, error);
+      log.warn(
+          "Analysis of file {} failed on attempt {}/{}; retrying in {}s: {}",
+          job.getFileId(),
+          job.getAttempts(),
+          maxAttempts,
+          delay,
+          error);
+      count("retried");
+      return false;
+    }
+    jobRepository.markFailed(job.getId(), error);
+    log.error(
+        "Analysis of file {} failed on attempt {}/{}; giving up: {}",
+        job.getFileId(),
+        job.getAttempts(),
+        maxAttempts,
+        error);
+    count("failed");
+    return true;
+  }
+
+  /**
+   * Puts back a job this worker claimed but could not start, without counting the attempt: nothing
+   * was tried, so nothing failed. Claimable again after the base retry backoff.
+   */
+  @Transactional
+  public void release(AnalysisJobEntity job) {
+    jobRepository.markReleased(job.getId(), retryBackoffSeconds);
+    log.info(
+        "Analysis of file {} could not start; back in the queue in {}s",
+        job.getFileId(),
+        retryBackoffSeconds);
+    count("released");
+  }
+
+  /** Backoff after the {@code attempt}th failure: the base, doubled per earlier attempt. */
+  long backoffSeconds(int attempt) {
+    return retryBackoffSeconds << Math.min(Math.max(attempt - 1, 0), 16);
+  }
+
+  /** Renews the leases on the jobs a worker is running. */
+  @Transactional
+  public void heartbeat(Collection<UUID> jobIds) {
+    if (!jobIds.isEmpty()) jobRepository.heartbeat(jobIds);
+  }
+
+  /** Requeues or fails jobs whose worker was lost, and deletes finished jobs past retention. */
+  @Transactional
+  public void maintain() {
+    int requeued = jobRepository.requeueExpired(leaseSeconds, maxAttempts);
+    int failed = jobRepository.failExpired(leaseSeconds);
+    if (requeued + failed > 0) {
+      log.warn(
+          "Analysis jobs with an expired lease: {} requeued, {} failed after their last attempt",
+          requeued,
+          failed);
+    }
+    int purged = jobRepository.deleteFinishedOlderThan(retentionDays);
+    if (purged > 0) log.debug("Deleted {} finished analysis job(s)", purged);
+  }
+
+  /** Where a file's live job stands, as far as anyone outside the queue need know. */
+  public enum JobState {
+    /** No job queued or running: nothing in the queue will finish the file's analysis. */
+    NONE,
+    /** Waiting for a worker, or backing off before a retry. */
+    QUEUED,
+    /** Running, on whichever instance, with a worker that is still renewing its lease. */
+    RUNNING,
+    /** Marked running, but its worker stopped renewing the lease; {@link #maintain} takes it. */
+    LEASE_EXPIRED
+  }
+
+  /**
+   * Where {@code fileId}'s job stands. How long a job has been running says nothing about whether
+   * it is stuck — a large capture legitimately runs for an hour — so a running one is judged only
+   * by its lease.
+   */
+  public JobState jobState(UUID fileId) {
+    Optional<AnalysisJobEntity> job =
+        jobRepository.findFirstByFileIdAndStatusIn(fileId, List.of(Status.QUEUED, Status.RUNNING));
+    if (job.isEmpty()) return JobState.NONE;
+    if (job.get().getStatus() == Status.QUEUED) return JobState.QUEUED;
+    return jobRepository.hasLiveLease(fileId, leaseSeconds)
+        ? JobState.RUNNING
+        : JobState.LEASE_EXPIRED;
+  }
+
+  /** Blocks for up to {@code millis}, or until a job is queued in this process. */
+  void awaitWork(long millis) throws InterruptedException {
+    synchronized (work) {
+      work.wait(millis);
+    }
+  }
+
+  void signalWork() {
+    synchronized (work) {
+      work.notifyAll();
+    }
+  }
+
+  private void wakeAfterCommit() {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      signalWork();
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronization() {
+          @Override
+          public void afterCommit() {
+            signalWork();
+          }
+        });
+  }
+
+  private void count(String outcome) {
+    if (registry == null) return;
+    Counter.builder("tracepcap.analysis.queue.outcomes")
+        .description("Analysis job attempts by how they ended")
+        .tag("outcome", outcome)
+        .register(registry)
+        .increment();
+  }
+
+  private static String describe(Exception cause) {
+    String message = cause.getMessage() != null ? cause.getMessage() : cause.toString();
+    Throwable root = cause;
+    while (root.getCause() != null && root.getCause() != root) root = root.getCause();
+    if (root != cause && root.getMessage() != null) message += ": " + root.getMessage();
+    return message.length() > MAX_ERROR_LENGTH ? message.substring(0, MAX_ERROR_LENGTH) : message;
+  }
+
+  /**
+   * Queue depth and age, read from the table on each scrape so they hold across every instance's
+   * workers; the wait timer and outcome counter are this instance's own.
+   */
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    this.registry = registry;
+    for (Lane lane : Lane.values()) {
+      Gauge.builder(
+              "tracepcap.analysis.queue.depth",
+              this,
+              safely(q -> q.jobRepository.countByStatusAndLane(Status.QUEUED, lane)))
+          .description("Analysis jobs queued, including those backing off before a retry")
+          .tag("lane", lane.name())
+          .register(registry);
+      Gauge.builder("tracepcap.analysis.queue.oldest", this, safely(q -> q.oldestReady(lane)))
+          .description("How long the longest-waiting ready analysis job has waited")
+          .tag("lane", lane.name())
+          .baseUnit("seconds")
+          .register(registry);
+    }
+    Gauge.builder(
+            "tracepcap.analysis.queue.running",
+            this,
+            safely(q -> q.jobRepository.countByStatus(Status.RUNNING)))
+        .description("Analysis jobs running across all workers")
+        .register(registry);
+  }
+
+  private double oldestReady(Lane lane) {
+    return jobRepository.oldestReadyByLane().stream()
+        .filter(row -> lane.name().equals(row[0]))
+        .mapToDouble(row -> ((Number) row[1]).doubleValue())
+        .findFirst()
+        .orElse(0);
+  }
+
+  /** A scrape while the database is unreachable reports no value rather than failing. */
+  private static ToDoubleFunction<AnalysisJobQueue> safely(ToDoubleFunction<AnalysisJobQueue> f) {
+    return q -> {
+      try {
+        return f.applyAsDouble(q);
+      } catch (RuntimeException e) {
+        log.debug("Could not read analysis queue metrics: {}", e.getMessage());
+        return Double.NaN;
+      }
+    };
+  }
+}
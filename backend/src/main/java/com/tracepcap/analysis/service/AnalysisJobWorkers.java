@@ -0,0 +1,214 @@
+package com.tracepcap.analysis.service;
+
+import com.tracepcap.analysis.entity.AnalysisJobEntity;
+import com.tracepcap.analysis.entity.AnalysisJobEntity.Lane;
+import com.tracepcap.analysis.entity.AnalysisResultEntity;
+import com.tracepcap.analysis.repository.AnalysisResultRepository;
+import com.tracepcap.common.exception.ResourceNotFoundException;
+import com.tracepcap.common.scheduling.SchedulerLeases;
+import com.tracepcap.file.entity.FileEntity;
+import com.tracepcap.file.repository.FileRepository;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * The threads that take jobs from the {@link AnalysisJobQueue} and run them.
+ *
+ * <p>{@code workers} threads in all, of which {@code fast-lane-workers} take FAST jobs only and the
+ * rest take either lane. A burst of large captures can therefore occupy every general worker and
+ * still leave the small ones moving.
+ *
+ * <p>An idle worker polls every {@code poll-millis}, or sooner when a job is queued — on this node
+ * directly, on any other through {@link AnalysisJobListener}. Every running job's lease is renewed
+ * on a schedule, which is also when lost workers' jobs are requeued.
+ *
+ * <p>A claimed job does not start until {@link AnalysisAdmission} finds room for it in the heap and
+ * CPU budget, so {@code workers} is the most analyses that may run at once, not how many will.
+ */
+@Slf4j
+@Component
+public class AnalysisJobWorkers {
+
+  private final AnalysisJobQueue queue;
+  private final AnalysisService analysisService;
+  private final AnalysisRecordService analysisRecordService;
+  private final AnalysisResultRepository analysisResultRepository;
+  private final AnalysisProgressService progressService;
+  private final AnalysisAdmission admission;
+  private final FileRepository fileRepository;
+
+  /** Analyses this instance runs at once. */
+  @Value("${tracepcap.analysis.queue.workers:5}")
+  private int workers;
+
+  /** Of {@code workers}, how many are kept for the fast lane. At least one is always general. */
+  @Value("${tracepcap.analysis.queue.fast-lane-workers:1}")
+  private int fastLaneWorkers;
+
+  @Value("${tracepcap.analysis.queue.poll-millis:2000}")
+  private long pollMillis;
+
+  /** Jobs this instance's workers are running, whose leases it renews. */
+  private final Set<UUID> held = ConcurrentHashMap.newKeySet();
+
+  private final List<Thread> threads = new ArrayList<>();
+  private volatile boolean running;
+
+  public AnalysisJobWorkers(
+      AnalysisJobQueue queue,
+      AnalysisService analysisService,
+      AnalysisRecordService analysisRecordService,
+      AnalysisResultRepository analysisResultRepository,
+      AnalysisProgressService progressService,
+      AnalysisAdmission admission,
+      FileRepository fileRepository) {
+    this.queue = queue;
+    this.analysisService = analysisService;
+    this.analysisRecordService = analysisRecordService;
+    this.analysisResultRepository = analysisResultRepository;
+    this.progressService = progressService;
+    this.admission = admission;
+    this.fileRepository = fileRepository;
+  }
+
+  /** Started once the application is ready, so no job runs against a half-built context. */
+  @EventListener(ApplicationReadyEvent.class)
+  public synchronized void start() {
+    if (running) return;
+    running = true;
+    int total = Math.max(workers, 1);
+    int fast = Math.max(0, Math.min(fastLaneWorkers, total - 1));
+    for (int i = 0; i < total; i++) {
+      Set<Lane> lanes = i < fast ? EnumSet.of(Lane.FAST) : EnumSet.allOf(Lane.class);
+      String name = "analysis-worker-" + (i + 1);
+      Thread thread = new Thread(() -> work(SchedulerLeases.NODE + "/" + name, lanes), name);
+      thread.setDaemon(true);
+      threads.add(thread);
+      thread.start();
+    }
+    log.info("Started {} analysis worker(s), {} reserved for the fast lane", total, fast);
+  }
+
+  @PreDestroy
+  synchronized void stop() {
+    running = false;
+    threads.forEach(Thread::interrupt);
+    threads.clear();
+  }
+
+  private void work(String worker, Set<Lane> lanes) {
+    while (running) {
+      try {
+        Optional<AnalysisJobEntity> job = queue.claim(worker, lanes);
+        if (job.isPresent()) {
+          run(job.get());
+        } else {
+          queue.awaitWork(pollMillis);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (Exception e) {
+        // The database being unreachable, most likely; the job, if any, is still leased to this
+        // worker and is requeued when the lease lapses.
+        log.error("Analysis worker {} could not claim a job: {}", worker, e.getMessage());
+        sleepQuietly(pollMillis);
+      }
+    }
+  }
+
+  /** One attempt at {@code job}; package-private for tests, which call it without a worker. */
+  void run(AnalysisJobEntity job) throws InterruptedException {
+    UUID fileId = job.getFileId();
+    held.add(job.getId());
+    try {
+      FileEntity file =
+          fileRepository
+              .findById(fileId)
+              .orElseThrow(() -> new ResourceNotFoundException("File not found: " + fileId));
+      try (AnalysisAdmission.Ticket ticket = admission.admit(file)) {
+        log.info("Starting analysis for file {} (attempt {})", fileId, job.getAttempts());
+        analysisService.analyzeFile(fileId);
+      }
+      queue.complete(job);
+      log.info("Completed analysis for file {}", fileId);
+    } catch (AnalysisAlreadyRunningException e) {
+      // Another run of this file is still going in this process — typically one whose lease
+      // lapsed under a stalled heartbeat. This attempt did nothing; try again once that one ends.
+      log.warn("{}; releasing job {} back to the queue", e.getMessage(), job.getId());
+      queue.release(job);
+    } catch (InterruptedException e) {
+      // Shutting down while waiting for admission: the job never started, and stays leased to this
+      // worker until the lease lapses and another takes it.
+      throw e;
+    } catch (Exception e) {
+      log.error("Failed analysis for file {}: {}", fileId, e.getMessage(), e);
+      if (queue.fail(job, e)) markFailedIfStillPending(fileId, e);
+    } finally {
+      held.remove(job.getId());
+    }
+  }
+
+  /**
+   * Marks the analysis and its file FAILED once the queue has given up on the job — the only place
+   * a failure becomes final. Until then a failed attempt leaves both as they were, IN_PROGRESS and
+   * PROCESSING, for the retry.
+   *
+   * <p>The message is the one the failed attempt recorded, when it got as far as recording one;
+   * otherwise (the file vanished, or the record could not be written) the exception's own. Without
+   * this the file would sit in PROCESSING until the reconciliation cron noticed.
+   */
+  private void markFailedIfStillPending(UUID fileId, Exception cause) {
+    try {
+      analysisResultRepository
+          .findByFileId(fileId)
+          .filter(a -> a.getStatus() != AnalysisResultEntity.AnalysisStatus.FAILED)
+          .ifPresent(
+              a ->
+                  analysisRecordService.markFailed(
+                      a.getId(),
+                      fileId,
+                      a.getErrorMessage() != null ? a.getErrorMessage() : cause.getMessage()));
+    } catch (Exception markEx) {
+      log.error("Could not mark analysis for file {} as FAILED: {}", fileId, markEx.getMessage());
+    }
+  }
+
+  /**
+   * Renews this instance's leases, then requeues the jobs of workers that stopped renewing and
+   * drops the progress they left behind. Every node does this; the updates are idempotent.
+   */
+  @Scheduled(
+      fixedDelayString = "${tracepcap.analysis.queue.heartbeat-seconds:30}",
+      timeUnit = TimeUnit.SECONDS)
+  public void heartbeat() {
+    try {
+      queue.heartbeat(Set.copyOf(held));
+      queue.maintain();
+      progressService.clearOrphaned();
+    } catch (Exception e) {
+      log.error("Analysis queue heartbeat failed: {}", e.getMessage());
+    }
+  }
+
+  private static void sleepQuietly(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
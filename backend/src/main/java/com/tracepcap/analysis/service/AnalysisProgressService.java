@@ -1,39 +1,99 @@
 package com.tracepcap.analysis.service;
 
 import com.tracepcap.analysis.dto.AnalysisProgressResponse;
+import com.tracepcap.common.scheduling.SchedulerLeases;
 import java.util.Optional;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
 /**
- * In-memory, per-file live analysis progress. The analysis pipeline runs inside one long
- * transaction, so nothing it writes is visible to pollers until it commits at the very end — this
+ * Per-file live analysis progress. The analysis pipeline commits only at its checkpoints, each of
+ * which can be minutes apart, so what it writes says little to pollers about where it is — this
  * bean is the out-of-band channel that publishes progress <em>during</em> the run.
  *
- * <p>Intentionally not persisted: progress is ephemeral and only meaningful while the (single)
- * backend is running the job. Entries are cleared when the job finishes or fails, so the map stays
- * bounded by the number of concurrently-analysing files. A process restart simply drops progress
- * and the loading view falls back to its size-based estimate.
+ * <p>Kept in {@code analysis_progress} rather than in memory so that any node can answer the poll,
+ * not only the one whose worker is running the job. Written once per stage, so a handful of rows
+ * per analysis; each write commits on its own, outside the stage transaction it is called from,
+ * or pollers would only see it when the stage ended.
+ *
+ * <p>Still ephemeral: rows are deleted when the job finishes or fails, and a node that dies leaves
+ * its rows to the queue maintenance ({@link AnalysisJobWorkers#heartbeat}). Losing progress costs
+ * nothing but the bar — the loading view falls back to its size-based estimate — so a failed write
+ * is logged and the analysis carries on.
  */
+@Slf4j
 @Service
 public class AnalysisProgressService {
 
-  private final ConcurrentHashMap<UUID, AnalysisProgressResponse> progressByFile =
-      new ConcurrentHashMap<>();
+  private final JdbcTemplate jdbc;
+  private final TransactionTemplate ownTransaction;
+
+  public AnalysisProgressService(JdbcTemplate jdbc, PlatformTransactionManager transactionManager) {
+    this.jdbc = jdbc;
+    this.ownTransaction = new TransactionTemplate(transactionManager);
+    this.ownTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+  }
 
   /** Publishes the latest progress for a file, overwriting any previous value. */
   public void update(UUID fileId, AnalysisProgressResponse progress) {
-    progressByFile.put(fileId, progress);
+    write(
+        fileId,
+        "INSERT INTO analysis_progress"
+            + " (file_id, stage_index, total_stages, stage, percent, node, updated_at)"
+            + " VALUES (?, ?, ?, ?, ?, ?, now())"
+            + " ON CONFLICT (file_id) DO UPDATE SET stage_index = EXCLUDED.stage_index,"
+            + " total_stages = EXCLUDED.total_stages, stage = EXCLUDED.stage,"
+            + " percent = EXCLUDED.percent, node = EXCLUDED.node, updated_at = now()",
+        fileId,
+        progress.stageIndex(),
+        progress.totalStages(),
+        progress.stage(),
+        progress.percent(),
+        SchedulerLeases.NODE);
   }
 
   /** Current progress for a file, or empty if none is being tracked. */
   public Optional<AnalysisProgressResponse> get(UUID fileId) {
-    return Optional.ofNullable(progressByFile.get(fileId));
+    return jdbc
+        .query(
+            "SELECT stage_index, total_stages, stage, percent FROM analysis_progress"
+                + " WHERE file_id = ?",
+            (rs, i) ->
+                new AnalysisProgressResponse(
+                    rs.getInt("stage_index"),
+                    rs.getInt("total_stages"),
+                    rs.getString("stage"),
+                    rs.getInt("percent")),
+            fileId)
+        .stream()
+        .findFirst();
   }
 
   /** Drops tracking for a file once its analysis has finished (success or failure). */
   public void clear(UUID fileId) {
-    progressByFile.remove(fileId);
+    write(fileId, "DELETE FROM analysis_progress WHERE file_id = ?", fileId);
+  }
+
+  /**
+   * Drops progress left by analyses that are no longer running anywhere — their node died before
+   * it could {@link #clear} them.
+   */
+  public int clearOrphaned() {
+    return jdbc.update(
+        "DELETE FROM analysis_progress p WHERE NOT EXISTS (SELECT 1 FROM analysis_jobs j"
+            + " WHERE j.file_id = p.file_id AND j.status = 'RUNNING')");
+  }
+
+  private void write(UUID fileId, String sql, Object... args) {
+    try {
+      ownTransaction.executeWithoutResult(status -> jdbc.update(sql, args));
+    } catch (RuntimeException e) {
+      log.debug("Could not record analysis progress for file {}: {}", fileId, e.getMessage());
+    }
   }
 }
@@ -1,9 +1,11 @@
 package com.tracepcap.analysis.service;
 
 import com.tracepcap.analysis.entity.AnalysisResultEntity;
+import com.tracepcap.analysis.entity.AnalysisResultEntity.AnalysisCheckpoint;
 import com.tracepcap.analysis.repository.AnalysisResultRepository;
 import com.tracepcap.file.entity.FileEntity;
 import com.tracepcap.file.repository.FileRepository;
+import java.time.LocalDateTime;
 import java.util.UUID;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -38,6 +40,101 @@ public class AnalysisRecordService {
     return analysisResultRepository.save(analysis);
   }
 
+  /**
+   * Puts an unfinished analysis back IN_PROGRESS, and its file back in PROCESSING, for a run that
+   * is about to resume it from its checkpoint. Commits at once, like {@link #createInProgress}.
+   */
+  @Transactional(propagation = Propagation.REQUIRES_NEW)
+  public AnalysisResultEntity reopen(UUID analysisId) {
+    AnalysisResultEntity analysis =
+        analysisResultRepository
+            .findById(analysisId)
+            .orElseThrow(() -> new IllegalStateException("Analysis " + analysisId + " is gone"));
+    analysis.setStatus(AnalysisResultEntity.AnalysisStatus.IN_PROGRESS);
+    analysis.setErrorMessage(null);
+    fileRepository
+        .findById(analysis.getFile().getId())
+        .ifPresent(
+            file -> {
+              file.setStatus(FileEntity.FileStatus.PROCESSING);
+              fileRepository.save(file);
+            });
+    return analysisResultRepository.save(analysis);
+  }
+
+  /**
+   * Records that {@code analysis} has reached {@code checkpoint}, along with whatever else the
+   * caller set on it. MANDATORY because the point is atomicity: the checkpoint must commit in the
+   * transaction that wrote the stage's output, or it could claim rows that were rolled back.
+   */
+  @Transactional(propagation = Propagation.MANDATORY)
+  public void saveCheckpoint(AnalysisResultEntity analysis, AnalysisCheckpoint checkpoint) {
+    analysis.setCheckpoint(checkpoint);
+    analysisResultRepository.save(analysis);
+  }
+
+  /** What reconciliation does with a file stuck in PROCESSING; see {@link #claimStuckFile}. */
+  public enum StuckFileAction {
+    /** Resubmit it: it has a checkpoint to resume from, and resumes left. */
+    RESUME,
+    /** Leave it: its analysis committed a checkpoint, or was resumed, within the timeout. */
+    WAIT,
+    /** Fail it, as {@link #markStuckFileFailed} does. */
+    FAIL
+  }
+
+  /**
+   * Decides the fate of a file stuck in PROCESSING and, for {@link StuckFileAction#RESUME}, claims
+   * the resume by counting it — before the job is queued, so a resume that has not started by the
+   * next reconciliation pass is seen as recent and not queued twice.
+   *
+   * <p>{@code cutoff} is measured against the analysis record's last update rather than the upload:
+   * every checkpoint touches the record, so a long analysis that is still committing stages is not
+   * stuck however old its upload is.
+   */
+  @Transactional(propagation = Propagation.REQUIRES_NEW)
+  public StuckFileAction claimStuckFile(UUID fileId, LocalDateTime cutoff, int maxResumes) {
+    AnalysisResultEntity analysis = analysisResultRepository.findByFileId(fileId).orElse(null);
+    if (analysis == null
+        || analysis.getStatus() == AnalysisResultEntity.AnalysisStatus.COMPLETED
+        || analysis.getCheckpoint() == null) {
+      return StuckFileAction.FAIL;
+    }
+    if (analysis.getUpdatedAt() != null && analysis.getUpdatedAt().isAfter(cutoff)) {
+      return StuckFileAction.WAIT;
+    }
+    if (analysis.getResumeCount() >= maxResumes) {
+      return StuckFileAction.FAIL;
+    }
+    analysis.setResumeCount(analysis.getResumeCount() + 1);
+    analysis.setStatus(AnalysisResultEntity.AnalysisStatus.IN_PROGRESS);
+    analysisResultRepository.save(analysis);
+    log.info(
+        "Resuming analysis {} from {} (resume {} of {})",
+        analysis.getId(),
+        analysis.getCheckpoint(),
+        analysis.getResumeCount(),
+        maxResumes);
+    return StuckFileAction.RESUME;
+  }
+
+  /**
+   * Keeps the error of an attempt that failed without ending the analysis, which stays IN_PROGRESS
+   * and its file PROCESSING until the job queue has decided whether to try again. Commits at once;
+   * the next attempt's {@link #reopen} clears the error, and {@link #markFailed} after the last one
+   * reports it.
+   */
+  @Transactional(propagation = Propagation.REQUIRES_NEW)
+  public void recordFailedAttempt(UUID analysisId, String errorMessage) {
+    analysisResultRepository
+        .findById(analysisId)
+        .ifPresent(
+            analysis -> {
+              analysis.setErrorMessage(errorMessage != null ? errorMessage : "Unknown error");
+              analysisResultRepository.save(analysis);
+            });
+  }
+
   /**
    * Marks both the analysis record and its parent file as FAILED and immediately commits. Uses
    * REQUIRES_NEW so the update persists even when called from a catch block where the outer
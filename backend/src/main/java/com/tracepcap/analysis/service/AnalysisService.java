@@ -5,15 +5,15 @@ import com.tracepcap.analysis.dto.AnalysisSummaryResponse;
 import com.tracepcap.analysis.dto.ConversationResponse;
 import com.tracepcap.analysis.dto.ProtocolStatsResponse;
 import com.tracepcap.analysis.entity.AnalysisResultEntity;
+import com.tracepcap.analysis.entity.AnalysisResultEntity.AnalysisCheckpoint;
 import com.tracepcap.analysis.entity.ConversationEntity;
 import com.tracepcap.analysis.entity.HostClassificationEntity;
-import com.tracepcap.analysis.entity.PacketEntity;
 import com.tracepcap.analysis.entity.IpMacObservationEntity;
 import com.tracepcap.analysis.repository.AnalysisResultRepository;
 import com.tracepcap.analysis.repository.ConversationRepository;
 import com.tracepcap.analysis.repository.HostClassificationRepository;
 import com.tracepcap.analysis.repository.IpMacObservationRepository;
-import com.tracepcap.analysis.repository.PacketRepository;
+import com.tracepcap.analysis.spi.Dissection;
 import com.tracepcap.analysis.spi.ExtractionManifest;
 import com.tracepcap.analysis.spi.FileExtractionStage;
 import com.tracepcap.analysis.spi.HostClassifier;
@@ -28,38 +28,39 @@ import com.tracepcap.common.exception.ResourceNotFoundException;
 import com.tracepcap.file.entity.FileEntity;
 import com.tracepcap.file.repository.FileRepository;
 import com.tracepcap.file.service.StorageService;
-import jakarta.persistence.EntityManager;
-import jakarta.persistence.PersistenceContext;
 import java.io.File;
 import java.time.Duration;
 import java.util.*;
 import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class AnalysisService {
 
-  private static final int PACKET_BATCH_SIZE = 1000;
-
   @Value("${tracepcap.overview.apps-limited:true}")
   private boolean overviewAppsLimited;
 
   @Value("${tracepcap.overview.apps-max:100}")
   private int overviewAppsMax;
 
+  // Pipelined ingest: packets are written by IngestPipeline while the capture is parsed, and stage
+  // 6 only patches the conversations. See application.yml.
+  @Value("${tracepcap.analysis.ingest.pipelined:false}")
+  private boolean pipelinedIngest;
+
   // Global Suricata kill-switch (SURICATA_ENABLED). When false, Suricata is skipped for every file
   // regardless of the per-file enableSuricata flag. Suricata dominates per-file analysis cost, so
   // this is the single biggest throughput lever. See application.yml.
-  // Flush interval: how many conversations to process before flushing the JPA session.
-  // Keeps the Hibernate first-level cache from accumulating unbounded saved entities.
-  private static final int JPA_FLUSH_INTERVAL = 50;
 
   // ---- Live progress stage plan -------------------------------------------------------------
   // One step per pipeline stage that will actually run for a file. The weights are relative shares
@@ -96,24 +97,40 @@ public class AnalysisService {
     boolean suricata = file.isEnableSuricata();
     boolean coldEngine = suricata && !suricataEngine.isWarm();
 
+    // Pipelined, the packet writes happen during the parse and the parse stage waits for the last
+    // of them, so their share moves there and stage 6 keeps only the conversation patch.
+    int parseWeight = coldEngine ? 2 : 21;
+    int writeWeight = coldEngine ? 1 : 4;
+
     List<StageStep> plan = new ArrayList<>();
     plan.add(new StageStep("Downloading capture", 3));
-    plan.add(new StageStep("Parsing packets", coldEngine ? 2 : 21));
+    plan.add(
+        pipelinedIngest
+            ? new StageStep("Parsing & writing packets", parseWeight + writeWeight - 1)
+            : new StageStep("Parsing packets", parseWeight));
+    // Written straight after the parse, so that its checkpoint holds everything a resumed run
+    // needs in place of the parse; later stages patch the conversations they enrich.
+    plan.add(
+        pipelinedIngest
+            ? new StageStep("Writing conversations", 1)
+            : new StageStep("Writing conversations & packets", writeWeight));
     // The one stage whose cost is not about this capture at all: on a cold engine it is the
-    // ruleset build, which dwarfs everything else and is paid once per process.
+    // ruleset build, which dwarfs everything else and is paid once per process — at startup when
+    // the engines are prewarmed, so a capture only meets it while that build is still running, or
+    // with prewarm off.
     // Labelled for what it is on a cold engine. The bar cannot move inside a stage, so this one
     // stands still for ~45s however it is weighted; naming the wait as one-time setup is the
     // difference between "hung" and "working on something known to be slow".
     plan.add(
         coldEngine
-            ? new StageStep("Building threat-detection ruleset (first run)", 90)
+            ? new StageStep("Building threat-detection ruleset (once per restart)", 90)
             : new StageStep("Detecting applications & threats", 21));
     plan.add(new StageStep("Classifying hosts & geo-locating", coldEngine ? 2 : 30));
-    plan.add(new StageStep("Saving analysis summary", 1));
-    plan.add(new StageStep("Writing conversations & packets", coldEngine ? 1 : 4));
     if (extraction) {
       plan.add(new StageStep("Extracting transferred files", coldEngine ? 1 : 22));
     }
+    // Last, because it is what marks the analysis COMPLETED.
+    plan.add(new StageStep("Saving analysis summary", 1));
     return plan;
   }
 
@@ -139,19 +156,19 @@ public class AnalysisService {
         new AnalysisProgressResponse(index + 1, plan.size(), plan.get(index).label(), percent));
   }
 
-  @PersistenceContext private EntityManager entityManager;
-
   private final AnalysisResultRepository analysisResultRepository;
   private final ConversationRepository conversationRepository;
-  private final PacketRepository packetRepository;
   private final PacketPartitions packetPartitions;
+  private final BulkCopyWriter bulkCopyWriter;
   private final HostClassificationRepository hostClassificationRepository;
   private final IpMacObservationRepository ipMacObservationRepository;
   private final FileRepository fileRepository;
   private final StorageService storageService;
+  private final FrameIndexer frameIndexer;
   private final PcapParserService pcapParserService;
   // No extractor fields: the runner discovers every Extractor. Adding one touches nothing here.
   private final ExtractorRunner extractorRunner;
+  private final DissectionBus dissectionBus;
   private final SignatureApplier signatureApplier;
   private final HostClassifier hostClassifier;
   private final HostnameResolverService hostnameResolverService;
@@ -165,6 +182,14 @@ public class AnalysisService {
   private final org.springframework.context.ApplicationEventPublisher eventPublisher;
   private final HostnameClaimWriter hostnameClaimWriter;
   private final SuricataEngine suricataEngine;
+  private final AnalysisCheckpoints analysisCheckpoints;
+  private final PlatformTransactionManager transactionManager;
+
+  /**
+   * Files this process is analysing. The record cannot say: an IN_PROGRESS analysis may be one a
+   * restart orphaned, which is exactly the kind that is resumed.
+   */
+  private final Set<UUID> activeFiles = ConcurrentHashMap.newKeySet();
 
   /**
    * Runs the capture through the pipeline (#512 slice 7).
@@ -174,11 +199,22 @@ public class AnalysisService {
    * writes this?" was answered by scrolling. Each stage is now a method taking an explicit {@link
    * Run}, so what a stage consumes and produces is in its signature.
    *
+   * <p><b>Committed in steps, not all at once.</b> The pipeline was also one transaction, so a
+   * failure in its last stage — or a restart forty minutes into a large capture — rolled back the
+   * parse, nDPI and Suricata along with every row they had produced. Now each step commits its
+   * output together with the {@link AnalysisCheckpoint} it reached ({@link #commitStage}), and a
+   * later call for a file whose analysis never completed carries on after the last one. The capture
+   * is downloaded again; the conversations are not re-derived but read back ({@link
+   * AnalysisCheckpoints}).
+   *
    * <p>What stays here is what genuinely belongs to the whole job: the guard against re-analysis,
-   * the temp file's lifetime, and the failure path — which has to mark the record FAILED in its own
-   * committed transaction, since the one being rolled back cannot record why it failed.
+   * the temp file's lifetime, and the failure path — which records the error in its own committed
+   * transaction and leaves the checkpoints before the failure for the next attempt. It does not
+   * mark the analysis FAILED: whether there is a next attempt is the job queue's decision, and
+   * {@link AnalysisJobWorkers} marks the failure once the queue has given up.
+   *
+   * @throws AnalysisAlreadyRunningException if this process is analysing the file already
    */
-  @Transactional
   public void analyzeFile(UUID fileId) {
     log.info("Starting analysis for file: {}", fileId);
 
@@ -187,15 +223,42 @@ public class AnalysisService {
             .findById(fileId)
             .orElseThrow(() -> new ResourceNotFoundException("File not found: " + fileId));
 
-    // Check if already analyzed or currently in progress
-    if (analysisResultRepository.existsByFileId(fileId)) {
-      log.info("File {} already analyzed or in progress, skipping", fileId);
+    // A completed analysis is never redone; an unfinished one is resumed from its checkpoint.
+    AnalysisResultEntity existing = analysisResultRepository.findByFileId(fileId).orElse(null);
+    if (existing != null && existing.getStatus() == AnalysisResultEntity.AnalysisStatus.COMPLETED) {
+      log.info("File {} already analyzed, skipping", fileId);
       return;
     }
+    if (!activeFiles.add(fileId)) {
+      // Not a completion: the caller's job must not be marked DONE for an analysis it never ran.
+      throw new AnalysisAlreadyRunningException(fileId);
+    }
+    try {
+      analyze(file, existing);
+    } finally {
+      activeFiles.remove(fileId);
+    }
+  }
+
+  /** Whether this process is running {@code fileId}'s analysis at this moment. */
+  public boolean isAnalyzing(UUID fileId) {
+    return activeFiles.contains(fileId);
+  }
+
+  private void analyze(FileEntity file, AnalysisResultEntity existing) {
+    UUID fileId = file.getId();
 
     // Create the IN_PROGRESS record immediately in a separate committed transaction so the
     // frontend can see that analysis has started rather than waiting for the entire job to finish.
-    AnalysisResultEntity analysis = analysisRecordService.createInProgress(file);
+    // A resumed analysis keeps its record, and with it the checkpoint it is resumed from.
+    AnalysisResultEntity analysis =
+        existing == null
+            ? analysisRecordService.createInProgress(file)
+            : analysisRecordService.reopen(existing.getId());
+    AnalysisCheckpoint resumeFrom = analysis.getCheckpoint();
+    if (resumeFrom != null) {
+      log.info("[{}] Resuming analysis after checkpoint {}", fileId, resumeFrom);
+    }
 
     // Live progress plan: which stages will run for this file, and their relative weights.
     List<StageStep> plan = buildStagePlan(file);
@@ -208,13 +271,39 @@ public class AnalysisService {
       run.pcap = tempFile;
       try {
         downloadCapture(run);
-        parseCapture(run);
-        runExtractors(run);
-        enrichAndClassify(run);
-        persistAnalysisResult(run);
-        persistConversationsAndPackets(run);
+        // Every field-reading stage shares this one pass; it runs alongside the parse.
+        run.dissection = dissectionBus.start(run.file, run.pcap);
+        if (resumeFrom == null) {
+          commitStage(run, AnalysisCheckpoint.PARSED, () -> parseAndPersist(run));
+        } else {
+          restoreCheckpoint(run);
+        }
+        if (resumeFrom == null || resumeFrom.isBefore(AnalysisCheckpoint.EXTRACTED)) {
+          commitStage(
+              run,
+              AnalysisCheckpoint.EXTRACTED,
+              () -> {
+                runExtractors(run);
+                patchConversations(run);
+              });
+        }
+        if (resumeFrom == null || resumeFrom.isBefore(AnalysisCheckpoint.CLASSIFIED)) {
+          commitStage(
+              run,
+              AnalysisCheckpoint.CLASSIFIED,
+              () -> {
+                enrichAndClassify(run);
+                patchConversations(run);
+              });
+        }
         extractEmbeddedFiles(run);
-        completeFile(run);
+        commitStage(
+            run,
+            null,
+            () -> {
+              persistAnalysisResult(run);
+              completeFile(run);
+            });
 
         log.info(
             "[{}] Analysis complete: total {}ms",
@@ -222,9 +311,12 @@ public class AnalysisService {
             System.currentTimeMillis() - analysisStart);
 
       } finally {
+        if (run.dissection != null) run.dissection.close();
         tempFile.delete();
+        // Streaming ingest's spill file lives exactly as long as the capture's temp copy.
+        if (run.parseResult != null) run.parseResult.releasePackets();
         // Stop tracking live progress: on success the poller flips to the 200 summary; on failure
-        // it flips to 500. Either way the in-memory entry is no longer needed.
+        // it flips to 500. Either way the progress row is no longer needed.
         analysisProgressService.clear(fileId);
       }
 
@@ -235,19 +327,40 @@ public class AnalysisService {
       // (e.g. createTempFile throwing after the first reportStage). Idempotent — safe if already done.
       analysisProgressService.clear(fileId);
 
-      // Mark analysis and file as FAILED in a separate committed transaction so the status persists
-      // even though the outer transaction is being rolled back.
+      // Record the error in a separate committed transaction, leaving the analysis IN_PROGRESS and
+      // the file PROCESSING: the queue may well retry it, and a FAILED the retry then reopens would
+      // tell the user it is over when it is not. Whatever stage was running has rolled back; the
+      // checkpoints committed before it stand.
       try {
-        analysisRecordService.markFailed(analysis.getId(), fileId, e.getMessage());
+        analysisRecordService.recordFailedAttempt(analysis.getId(), e.getMessage());
       } catch (Exception markEx) {
         log.error(
-            "Failed to mark analysis {} as FAILED: {}", analysis.getId(), markEx.getMessage());
+            "Failed to record the failed attempt on analysis {}: {}",
+            analysis.getId(),
+            markEx.getMessage());
       }
 
       throw new RuntimeException("Failed to analyze file", e);
     }
   }
 
+  /**
+   * Runs {@code stages} in a transaction of their own and, if {@code reached} is given, records it
+   * on the analysis in that same transaction — so a checkpoint commits with exactly the rows it
+   * vouches for, or not at all.
+   *
+   * <p>A template rather than {@code @Transactional} methods: these are private methods of this
+   * bean, which a self-call would reach without going through the proxy.
+   */
+  private void commitStage(Run run, AnalysisCheckpoint reached, Runnable stages) {
+    new TransactionTemplate(transactionManager)
+        .executeWithoutResult(
+            status -> {
+              stages.run();
+              if (reached != null) analysisRecordService.saveCheckpoint(run.analysis, reached);
+            });
+  }
+
   /**
    * State handed from one stage to the next.
    *
@@ -265,10 +378,22 @@ public class AnalysisService {
     /** Stage 1 writes; stages 2, 3, 4 and 7 read. Deleted by the caller's finally. */
     File pcap;
 
-    /** Stage 2 writes; every later stage reads. */
+    /**
+     * Started once the capture is downloaded; read by stages 3, 4 and 7. Closed by the caller's
+     * finally, before the capture is deleted.
+     */
+    DissectionBus.Pass dissection;
+
+    /** Stage 2, or the checkpoint it is resumed from, writes; every later stage reads. */
     PcapParserService.PcapAnalysisResult parseResult;
 
-    /** Stage 6 writes; stage 7 reads. */
+    /** Pipelined ingest only: stage 2 starts it and closes it before its transaction ends. */
+    IngestPipeline pipeline;
+
+    /**
+     * Each conversation's row id, in {@code parseResult}'s order. Written with the conversations,
+     * or restored with them; read by each stage that patches them, and by stage 7.
+     */
     List<UUID> savedConversationIds = List.of();
 
     Run(UUID fileId, FileEntity file, List<StageStep> plan, AnalysisResultEntity analysis) {
@@ -286,6 +411,8 @@ public class AnalysisService {
     long t = System.currentTimeMillis();
     storageService.downloadFileToLocal(run.file.getMinioPath(), run.pcap);
     log.info("[{}] [1/7] Download: {}ms", run.fileId, System.currentTimeMillis() - t);
+    // While the whole capture is on local disk anyway: exports seek into it by this index later.
+    frameIndexer.index(run.file, run.pcap.toPath());
   }
 
   // ── Stage 2: parse ──────────────────────────────────────────────────────────
@@ -293,15 +420,67 @@ public class AnalysisService {
   private void parseCapture(Run run) {
     reportStage(run.fileId, run.plan, 1);
     long t = System.currentTimeMillis();
-    run.parseResult = pcapParserService.analyzePcapFile(run.pcap);
+    if (!pipelinedIngest) {
+      run.parseResult = pcapParserService.analyzePcapFile(run.pcap);
+      log.info(
+          "[{}] [2/7] PCAP parse: {}ms  ({} packets, {} conversations)",
+          run.fileId,
+          System.currentTimeMillis() - t,
+          run.parseResult.getPacketCount(),
+          run.parseResult.getConversations().size());
+      return;
+    }
+
+    // The writer COPYs into the partition as a table of its own from the first segment; it is
+    // indexed and attached once the last is in, as the batch path's loadPartition does.
+    PacketPartitions.StagedPartition partition = packetPartitions.stagePartition(run.fileId);
+    run.pipeline = bulkCopyWriter.startPipeline(run.fileId, partition.table());
+    run.parseResult = pcapParserService.analyzePcapFile(run.pcap, run.pipeline);
+    long parsed = System.currentTimeMillis() - t;
+    // Waits for the writer to drain, so this stage ends when the packets are in, as it says.
+    long written = run.pipeline.finish();
+    partition.attach();
+    long total = System.currentTimeMillis() - t;
     log.info(
-        "[{}] [2/7] PCAP parse: {}ms  ({} packets, {} conversations)",
+        "[{}] [2/7] PCAP parse + packet writes: {}ms, of which {}ms waiting on the writer and"
+            + " attaching  ({} packets written, {} conversations)",
         run.fileId,
-        System.currentTimeMillis() - t,
-        run.parseResult.getPacketCount(),
+        total,
+        total - parsed,
+        written,
         run.parseResult.getConversations().size());
   }
 
+  /**
+   * Stage 2 and its writes, up to the PARSED checkpoint: after this, nothing later needs the parse
+   * itself. The pipeline, if there is one, is closed here — its writer borrows this transaction's
+   * connection and must be done with it before the commit or rollback.
+   */
+  private void parseAndPersist(Run run) {
+    try {
+      parseCapture(run);
+      persistConversationsAndPackets(run);
+    } finally {
+      if (run.pipeline != null) run.pipeline.close();
+    }
+    recordParse(run);
+  }
+
+  /** Stage 2 for a resumed analysis: the parse result, as checkpointed, instead of a parse. */
+  private void restoreCheckpoint(Run run) {
+    reportStage(run.fileId, run.plan, 1);
+    long t = System.currentTimeMillis();
+    AnalysisCheckpoints.Restored restored = analysisCheckpoints.restore(run.fileId, run.analysis);
+    run.parseResult = restored.parseResult();
+    run.savedConversationIds = restored.conversationIds();
+    log.info(
+        "[{}] [2/7] Restored from checkpoint {}: {}ms  ({} conversations)",
+        run.fileId,
+        run.analysis.getCheckpoint(),
+        System.currentTimeMillis() - t,
+        run.savedConversationIds.size());
+  }
+
   // ── Stage 3: extract ────────────────────────────────────────────────────────
 
   /**
@@ -313,16 +492,17 @@ public class AnalysisService {
    * row is automatic (#512).
    */
   private void runExtractors(Run run) {
-    reportStage(run.fileId, run.plan, 2);
+    reportStage(run.fileId, run.plan, 3);
     long t = System.currentTimeMillis();
-    extractorRunner.runAll(run.file, run.pcap, run.parseResult.getConversations());
+    extractorRunner.runAll(
+        run.file, run.pcap, run.dissection, run.parseResult.getConversations());
     log.info("[{}] [3/7] Extract: {}ms", run.fileId, System.currentTimeMillis() - t);
   }
 
   // ── Stage 4: signatures, classification, geo-IP ─────────────────────────────
 
   private void enrichAndClassify(Run run) {
-    reportStage(run.fileId, run.plan, 3);
+    reportStage(run.fileId, run.plan, 4);
     long t = System.currentTimeMillis();
     UUID fileId = run.fileId;
 
@@ -332,7 +512,8 @@ public class AnalysisService {
     // resolve() degrades gracefully and never throws. Claims are persisted conflict-preserving
     // (#512 slice 4); the adjudicator picks display winners with the same semantics the
     // resolver used to apply at write time, so downstream behaviour is unchanged.
-    List<HostnameResolverService.Claim> hostnameClaims = hostnameResolverService.resolve(run.pcap);
+    List<HostnameResolverService.Claim> hostnameClaims =
+        hostnameResolverService.resolve(run.dissection);
     try {
       hostnameClaimWriter.replaceForFile(fileId, hostnameClaims);
     } catch (Exception e) {
@@ -346,11 +527,11 @@ public class AnalysisService {
     Map<String, HostnameResolverService.ResolvedHostname> hostnames =
         hostnameAdjudicator.adjudicate(hostnameClaims);
 
-    // Per-host service activity logs (DNS today; web servers etc. later). Each extractor runs
-    // one tshark pass, persists its own rows, and reports which hosts serve its role + any
-    // suspicious ones. Runs before classification so a host's roles can drive its device type
-    // (e.g. a DNS responder → DNS_SERVER). Adding a role needs no change here.
-    ServiceLogOutcome serviceLogs = runServiceLogExtractors(run.file, run.pcap);
+    // Per-host service activity logs (DNS today; web servers etc. later). Each extractor reads its
+    // frames from the shared tshark pass, persists its own rows, and reports which hosts serve its
+    // role + any suspicious ones. Runs before classification so a host's roles can drive its device
+    // type (e.g. a DNS responder → DNS_SERVER). Adding a role needs no change here.
+    ServiceLogOutcome serviceLogs = runServiceLogExtractors(run.file, run.dissection);
 
     List<HostClassificationEntity> hostClassifications =
         hostClassifier.classify(
@@ -389,9 +570,11 @@ public class AnalysisService {
 
   // ── Stage 5: persist the analysis result ────────────────────────────────────
 
-  private void persistAnalysisResult(Run run) {
-    reportStage(run.fileId, run.plan, 4);
-    long t = System.currentTimeMillis();
+  /**
+   * The parse's totals, onto the record that the PARSED checkpoint saves — with the per-host facts
+   * no table holds, which a resumed run classifies from.
+   */
+  private void recordParse(Run run) {
     AnalysisResultEntity analysis = run.analysis;
     PcapParserService.PcapAnalysisResult parseResult = run.parseResult;
 
@@ -416,124 +599,151 @@ public class AnalysisService {
               protocolStats.put(protocol, stat);
             });
     analysis.setProtocolStats(protocolStats);
+    analysis.setParseFacts(AnalysisCheckpoints.parseFacts(parseResult));
+  }
+
+  private void persistAnalysisResult(Run run) {
+    reportStage(run.fileId, run.plan, run.plan.size() - 1);
+    long t = System.currentTimeMillis();
+    AnalysisResultEntity analysis = run.analysis;
     analysis.setStatus(AnalysisResultEntity.AnalysisStatus.COMPLETED);
+    // Only a resumed run reads them, and a completed analysis is never resumed.
+    analysis.setParseFacts(null);
     analysisResultRepository.save(analysis);
     log.info("[{}] [5/7] Analysis result saved: {}ms", run.fileId, System.currentTimeMillis() - t);
   }
 
   // ── Stage 6: conversation and packet inserts ────────────────────────────────
 
+  /** Runs in the PARSED checkpoint's transaction, with the conversations as the parse left them. */
   private void persistConversationsAndPackets(Run run) {
-    reportStage(run.fileId, run.plan, 5);
+    reportStage(run.fileId, run.plan, 2);
     long t = System.currentTimeMillis();
     UUID fileId = run.fileId;
+    List<PcapParserService.ConversationInfo> conversations = run.parseResult.getConversations();
+    if (run.pipeline != null) {
+      patchPipelinedConversations(run, conversations);
+      return;
+    }
 
-    // `packets` is LIST-partitioned on file_id (#394) and has no default partition, so the
-    // partition must exist before the first insert below or the row has nowhere to land.
-    packetPartitions.ensurePartition(fileId);
-
-    int convIndex = 0;
-    long packetsInserted = 0;
-    List<UUID> savedConversationIds = new ArrayList<>();
-
-    for (PcapParserService.ConversationInfo convInfo : run.parseResult.getConversations()) {
-      ConversationEntity conversation =
-          ConversationEntity.builder()
-              .file(run.file)
-              .srcIp(convInfo.getSrcIp())
-              .srcPort(convInfo.getSrcPort())
-              .dstIp(convInfo.getDstIp())
-              .dstPort(convInfo.getDstPort())
-              .protocol(convInfo.getProtocol())
-              .initiatorIp(convInfo.getInitiatorIp())
-              .initiatorPort(convInfo.getInitiatorPort())
-              .appName(convInfo.getAppName())
-              .tsharkProtocol(convInfo.getTsharkProtocol())
-              .category(convInfo.getCategory())
-              .hostname(convInfo.getHostname())
-              .ja3Client(convInfo.getJa3Client())
-              .ja3Server(convInfo.getJa3Server())
-              .tlsIssuer(convInfo.getTlsIssuer())
-              .tlsSubject(convInfo.getTlsSubject())
-              .tlsNotBefore(convInfo.getTlsNotBefore())
-              .tlsNotAfter(convInfo.getTlsNotAfter())
-              .flowRisks(toNullableArray(convInfo.getFlowRisks()))
-              .customSignatures(toNullableArray(convInfo.getCustomSignatures()))
-              .suricataAlerts(toNullableArray(convInfo.getSuricataAlerts()))
-              .httpUserAgents(toNullableArray(convInfo.getHttpUserAgents()))
-              .packetCount(convInfo.getPacketCount())
-              .totalBytes(convInfo.getTotalBytes())
-              .startTime(convInfo.getStartTime())
-              .endTime(convInfo.getEndTime())
-              .build();
-      ConversationEntity savedConversation = conversationRepository.save(conversation);
-      savedConversationIds.add(savedConversation.getId());
-
-      List<PcapParserService.PacketInfo> packetInfos = convInfo.getPackets();
-      if (!packetInfos.isEmpty()) {
-        for (int i = 0; i < packetInfos.size(); i += PACKET_BATCH_SIZE) {
-          int end = Math.min(i + PACKET_BATCH_SIZE, packetInfos.size());
-          List<PacketEntity> batch =
-              packetInfos.subList(i, end).stream()
-                  .map(
-                      pktInfo ->
-                          PacketEntity.builder()
-                              .file(run.file)
-                              .conversation(savedConversation)
-                              .packetNumber(pktInfo.getPacketNumber())
-                              .timestamp(pktInfo.getTimestamp())
-                              .srcIp(pktInfo.getSrcIp())
-                              .srcPort(pktInfo.getSrcPort())
-                              .dstIp(pktInfo.getDstIp())
-                              .dstPort(pktInfo.getDstPort())
-                              .protocol(pktInfo.getProtocol())
-                              .packetSize(pktInfo.getPacketSize())
-                              .info(pktInfo.getInfo())
-                              .payload(pktInfo.getPayload())
-                              .detectedFileType(pktInfo.getDetectedFileType())
-                              .build())
-                  .collect(Collectors.toList());
-          packetRepository.saveAll(batch);
-          packetsInserted += batch.size();
-        }
-        // Released as we go: a large capture's packet payloads do not all fit in heap at once.
-        packetInfos.clear();
-      }
-
-      if (++convIndex % JPA_FLUSH_INTERVAL == 0) {
-        entityManager.flush();
-        entityManager.clear();
-        log.info(
-            "[{}] [6/7] DB insert progress: {}/{} conversations, {} packets",
-            fileId,
-            convIndex,
-            run.parseResult.getConversations().size(),
-            packetsInserted);
+    // Ids are minted before anything is written, so the packet COPY can name each row's
+    // conversation without reading a generated key back per conversation.
+    UUID[] conversationIds = new UUID[conversations.size()];
+    for (int i = 0; i < conversationIds.length; i++) conversationIds[i] = BulkCopyWriter.newId();
+    bulkCopyWriter.copyConversations(fileId, conversations, conversationIds);
+
+    long packetsInserted;
+    PacketSpill spill = run.parseResult.getPacketSpill();
+    if (spill == null) {
+      // The iterator is a flyweight over the packet store; each row is encoded as it is read.
+      packetsInserted =
+          loadPackets(
+              fileId,
+              sink -> {
+                for (int i = 0; i < conversationIds.length; i++) {
+                  for (PcapParserService.PacketRecord p : conversations.get(i).iteratePackets()) {
+                    sink.add(conversationIds[i], p);
+                  }
+                }
+              });
+    } else {
+      // Streaming ingest: packets are on disk, not on the conversations, and name their
+      // conversation by ordinal. One sequential read of the spill, straight into the COPY.
+      UUID[] conversationIdByOrdinal = new UUID[spill.conversationCount()];
+      for (int i = 0; i < conversationIds.length; i++) {
+        conversationIdByOrdinal[conversations.get(i).spillOrdinal()] = conversationIds[i];
       }
+      packetsInserted =
+          loadPackets(
+              fileId,
+              sink -> {
+                PacketSpill.Cursor cursor = spill.cursor();
+                while (cursor.next()) {
+                  sink.add(conversationIdByOrdinal[cursor.ordinal()], cursor.packet());
+                }
+              });
     }
 
-    run.savedConversationIds = savedConversationIds;
+    run.savedConversationIds = List.of(conversationIds);
     log.info(
         "[{}] [6/7] DB inserts done: {}ms  ({} conversations, {} packets)",
         fileId,
         System.currentTimeMillis() - t,
-        run.parseResult.getConversations().size(),
+        conversations.size(),
         packetsInserted);
   }
 
+  /**
+   * Creates the file's partition and copies {@code source} into it. {@code packets} is
+   * LIST-partitioned on file_id (#394) with no default partition, so the partition has to exist
+   * before the first row; {@link PacketPartitions#loadPartition} builds it around the load, which
+   * may run {@code source} a second time if its first attempt is abandoned — both sources above
+   * can be read again.
+   */
+  private long loadPackets(UUID fileId, BulkCopyWriter.PacketSource source) {
+    return packetPartitions.loadPartition(
+        fileId, table -> bulkCopyWriter.copyPackets(fileId, table, source));
+  }
+
+  /**
+   * Pipelined ingest's stage 6: the packets are in, as are the conversations, but as they were when
+   * first seen. What came after — final counts, end times, initiators — is written over them in one
+   * pass; stages 3 and 4 patch theirs on in turn.
+   */
+  private void patchPipelinedConversations(
+      Run run, List<PcapParserService.ConversationInfo> conversations) {
+    long t = System.currentTimeMillis();
+    UUID[] conversationIds = new UUID[conversations.size()];
+    for (int i = 0; i < conversationIds.length; i++) {
+      conversationIds[i] = run.pipeline.conversationId(conversations.get(i));
+    }
+    bulkCopyWriter.patchConversations(run.fileId, conversations, conversationIds);
+    run.savedConversationIds = List.of(conversationIds);
+    log.info(
+        "[{}] [6/7] Conversations patched: {}ms  ({} conversations)",
+        run.fileId,
+        System.currentTimeMillis() - t,
+        conversations.size());
+  }
+
+  /**
+   * Writes what a stage has just added to the conversations over their rows, so that the checkpoint
+   * it commits with is true of the database and not only of this run's memory.
+   */
+  private void patchConversations(Run run) {
+    long t = System.currentTimeMillis();
+    List<PcapParserService.ConversationInfo> conversations = run.parseResult.getConversations();
+    bulkCopyWriter.patchConversations(
+        run.fileId, conversations, run.savedConversationIds.toArray(UUID[]::new));
+    log.debug(
+        "[{}] Conversations patched: {}ms  ({} conversations)",
+        run.fileId,
+        System.currentTimeMillis() - t,
+        conversations.size());
+  }
+
   // ── Stage 7: carve embedded files ───────────────────────────────────────────
 
-  /** Optional, and never fatal: a capture with unreadable payloads is still a valid analysis. */
+  /**
+   * Optional, and never fatal: a capture with unreadable payloads is still a valid analysis. In a
+   * transaction of its own, so that a failure which poisons it rather than throwing costs the
+   * carved files and not the completion after it.
+   */
   private void extractEmbeddedFiles(Run run) {
     long t = System.currentTimeMillis();
     if (!run.file.isEnableFileExtraction()) {
       log.info("[{}] [7/7] File extraction: skipped", run.fileId);
       return;
     }
-    // Only in the plan when enabled — index 6.
-    reportStage(run.fileId, run.plan, 6);
+    // Only in the plan when enabled — index 5.
+    reportStage(run.fileId, run.plan, 5);
     try {
-      fileExtractionStage.extractFiles(run.file, run.pcap, run.savedConversationIds);
+      commitStage(
+          run,
+          null,
+          () ->
+              fileExtractionStage.extractFiles(
+                  run.file, run.pcap, run.dissection, run.savedConversationIds));
       log.info("[{}] [7/7] File extraction: {}ms", run.fileId, System.currentTimeMillis() - t);
     } catch (Exception e) {
       log.warn(
@@ -885,14 +1095,6 @@ public class AnalysisService {
     return arr != null ? Arrays.asList(arr) : List.of();
   }
 
-  /**
-   * Converts a list to a String array for PostgreSQL array storage. Returns null for empty lists so
-   * the DB column stores NULL rather than an empty array.
-   */
-  private static String[] toNullableArray(List<String> list) {
-    return (list == null || list.isEmpty()) ? null : list.toArray(new String[0]);
-  }
-
   /** Collected output of all service-log extractors: which roles each IP serves, plus suspicions. */
   private record ServiceLogOutcome(
       Map<String, Set<String>> rolesByIp, List<HostServiceSuspicion> suspicions) {}
@@ -903,12 +1105,12 @@ public class AnalysisService {
    * the per-IP role map (fed into device classification) and the combined suspicion list. A new
    * service role just adds an extractor bean — nothing here changes.
    */
-  private ServiceLogOutcome runServiceLogExtractors(FileEntity file, File pcap) {
+  private ServiceLogOutcome runServiceLogExtractors(FileEntity file, Dissection dissection) {
     Map<String, Set<String>> rolesByIp = new HashMap<>();
     List<HostServiceSuspicion> suspicions = new ArrayList<>();
     for (HostServiceLogExtractor extractor : hostServiceLogExtractors) {
       try {
-        HostServiceLogResult result = extractor.extractAndPersist(file, pcap);
+        HostServiceLogResult result = extractor.extractAndPersist(file, dissection);
         result
             .roleByServerIp()
             .forEach(
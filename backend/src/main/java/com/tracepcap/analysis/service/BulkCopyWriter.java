@@ -0,0 +1,465 @@
+package com.tracepcap.analysis.service;
+
+import com.tracepcap.analysis.service.PcapParserService.ConversationInfo;
+import com.tracepcap.analysis.service.PcapParserService.PacketRecord;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import javax.sql.DataSource;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Writes a parse's conversations and packets with {@code COPY ... FROM STDIN (FORMAT binary)}.
+ *
+ * <p>Stage 6 used to go through JPA: one {@code INSERT} per conversation to get its generated id
+ * back, then the packets in {@code saveAll} batches of a thousand, each a thousand entities built,
+ * dirty-checked, flushed and cleared. For a capture of a few million frames that was most of the
+ * stage. COPY sends the rows as one stream the server parses in a single pass, and the binary
+ * format spares it from parsing them at all — a UUID is 16 bytes, a timestamp is 8.
+ *
+ * <p><b>Ids are minted here, not by the database.</b> A packet row names its conversation, so with
+ * server-side ids every conversation cost a round trip before its first packet could be written.
+ * With client-side ids the conversations go in one COPY and the packets in a second, and nothing is
+ * ever read back.
+ *
+ * <p>Runs on the caller's transaction: {@link JdbcTemplate} is handed the connection the
+ * pipeline's JPA transaction holds, so a failed analysis rolls the copied rows back with everything
+ * else, and later stages see them through JPA as if they had been saved there. Columns left out of
+ * the COPY ({@code created_at}) take their database defaults.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BulkCopyWriter {
+
+  // In the order writeConversation writes them. id and file_id lead; the patch relies on it.
+  private static final List<String> CONVERSATION_COLUMNS =
+      List.of(
+          "id",
+          "file_id",
+          "src_ip",
+          "src_port",
+          "dst_ip",
+          "dst_port",
+          "initiator_ip",
+          "initiator_port",
+          "protocol",
+          "app_name",
+          "tshark_protocol",
+          "category",
+          "hostname",
+          "ja3_client",
+          "ja3_server",
+          "tls_issuer",
+          "tls_subject",
+          "tls_not_before",
+          "tls_not_after",
+          "tcp_stream",
+          "udp_stream",
+          "flow_risks",
+          "custom_signatures",
+          "suricata_alerts",
+          "http_user_agents",
+          "packet_count",
+          "total_bytes",
+          "start_time",
+          "end_time");
+
+  // In the order writePacket writes them.
+  private static final List<String> PACKET_COLUMNS =
+      List.of(
+          "id",
+          "file_id",
+          "conversation_id",
+          "packet_number",
+          "timestamp",
+          "src_ip",
+          "src_port",
+          "dst_ip",
+          "dst_port",
+          "protocol",
+          "packet_size",
+          "payload",
+          "detected_file_type",
+          "info");
+
+  static final String COPY_CONVERSATIONS = copyInto("conversations", CONVERSATION_COLUMNS);
+
+  private static final String PATCH_TABLE = "conversation_patch";
+  private static final String PATCH_CONVERSATIONS =
+      "UPDATE conversations c SET "
+          + String.join(
+              ", ",
+              CONVERSATION_COLUMNS.subList(2, CONVERSATION_COLUMNS.size()).stream()
+                  .map(column -> column + " = p." + column)
+                  .toList())
+          + " FROM "
+          + PATCH_TABLE
+          + " p WHERE c.id = p.id";
+
+  /** The driver's send buffer; each full buffer is one CopyData message. */
+  private static final int COPY_BUFFER_BYTES = 1 << 16;
+
+  private static final long PROGRESS_INTERVAL = 1_000_000;
+
+  private final JdbcTemplate jdbc;
+
+  /** Where {@link #copyPackets} gets its rows: calls {@link PacketSink#add} once per packet. */
+  @FunctionalInterface
+  interface PacketSource {
+    void writeTo(PacketSink sink) throws IOException;
+  }
+
+  interface PacketSink {
+    void add(UUID conversationId, PacketRecord packet) throws IOException;
+  }
+
+  /**
+   * A random (version 4) UUID for a new row.
+   *
+   * <p>From {@link ThreadLocalRandom} rather than {@link UUID#randomUUID()}: the latter draws on a
+   * shared {@code SecureRandom}, which at one id per packet costs more than encoding the packet.
+   * These ids are keys, not secrets, and 122 random bits keep them unique either way.
+   */
+  static UUID newId() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    long msb = (random.nextLong() & ~0xF000L) | 0x4000L;
+    long lsb = (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+    return new UUID(msb, lsb);
+  }
+
+  /** Copies {@code conversations} into {@code fileId}, the i-th under {@code ids[i]}. */
+  void copyConversations(UUID fileId, List<ConversationInfo> conversations, UUID[] ids) {
+    copy(COPY_CONVERSATIONS, out -> writeConversations(out, fileId, conversations, ids));
+  }
+
+  /**
+   * Overwrites conversation rows already inserted — by {@link IngestPipeline}, as each one was
+   * first seen — with their finished state: final counts and end time, and everything the
+   * extractors and signatures have set since. One COPY into a temporary table and one joined
+   * UPDATE, rather than an UPDATE per conversation. Fails if any of {@code ids} has no row.
+   */
+  void patchConversations(UUID fileId, List<ConversationInfo> conversations, UUID[] ids) {
+    // Not ON COMMIT DROP: a failed analysis rolls the CREATE back, and a finished one drops it
+    // here, so it never outlives this call.
+    jdbc.execute("CREATE TEMP TABLE " + PATCH_TABLE + " (LIKE conversations INCLUDING DEFAULTS)");
+    copy(
+        copyInto(PATCH_TABLE, CONVERSATION_COLUMNS),
+        out -> writeConversations(out, fileId, conversations, ids));
+    int updated = jdbc.update(PATCH_CONVERSATIONS);
+    jdbc.execute("DROP TABLE " + PATCH_TABLE);
+    if (updated != conversations.size()) {
+      throw new IllegalStateException(
+          "Patched "
+              + updated
+              + " of "
+              + conversations.size()
+              + " conversations for file "
+              + fileId
+              + "; the rest were never inserted");
+    }
+  }
+
+  /**
+   * Copies every packet {@code source} produces into {@code table}: {@code packets}, which routes
+   * them to {@code fileId}'s partition, or a partition being loaded on its own (see {@link
+   * PacketPartitionAdapter#loadPartition}). The target must already exist. Returns the number of
+   * rows written.
+   */
+  long copyPackets(UUID fileId, String table, PacketSource source) {
+    return copy(
+        copyInto(table, PACKET_COLUMNS),
+        out -> {
+          long[] rows = {0};
+          source.writeTo(
+              (conversationId, p) -> {
+                writePacket(out, fileId, conversationId, p);
+                if (++rows[0] % PROGRESS_INTERVAL == 0) {
+                  log.info("[{}] [6/7] DB insert progress: {} packets", fileId, rows[0]);
+                }
+              });
+          return rows[0];
+        });
+  }
+
+  /**
+   * Starts writing packets into {@code table} while the capture is still being parsed; see {@link
+   * IngestPipeline}: {@code fileId}'s partition while it is staged on its own (see {@link
+   * PacketPartitionAdapter#stagePartition}), or {@code packets}. The target must already exist.
+   * Must be called inside the analysis transaction, whose connection the pipeline borrows.
+   */
+  IngestPipeline startPipeline(UUID fileId, String table) {
+    if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+      // Outside a transaction this would be a fresh auto-commit connection, and a failed analysis
+      // would leave every packet written so far behind.
+      throw new IllegalStateException("Pipelined ingest needs the analysis transaction");
+    }
+    DataSource dataSource = jdbc.getDataSource();
+    Connection con = DataSourceUtils.getConnection(dataSource);
+    try {
+      return new IngestPipeline(
+          fileId,
+          copyInto(table, PACKET_COLUMNS),
+          con.unwrap(PGConnection.class),
+          () -> DataSourceUtils.releaseConnection(con, dataSource));
+    } catch (SQLException e) {
+      DataSourceUtils.releaseConnection(con, dataSource);
+      throw new IllegalStateException("Not a PostgreSQL connection: " + e.getMessage(), e);
+    }
+  }
+
+  static void writeConversation(BinaryRows out, UUID id, UUID fileId, ConversationInfo c)
+      throws IOException {
+    out.row(CONVERSATION_COLUMNS.size());
+    out.uuid(id);
+    out.uuid(fileId);
+    out.text(c.getSrcIp());
+    out.int4(c.getSrcPort());
+    out.text(c.getDstIp());
+    out.int4(c.getDstPort());
+    out.text(c.getInitiatorIp());
+    out.int4(c.getInitiatorPort());
+    out.text(c.getProtocol());
+    out.text(c.getAppName());
+    out.text(c.getTsharkProtocol());
+    out.text(c.getCategory());
+    out.text(c.getHostname());
+    out.text(c.getJa3Client());
+    out.text(c.getJa3Server());
+    out.text(c.getTlsIssuer());
+    out.text(c.getTlsSubject());
+    out.timestamp(c.getTlsNotBefore());
+    out.timestamp(c.getTlsNotAfter());
+    out.int4(c.getTcpStream());
+    out.int4(c.getUdpStream());
+    out.textArray(c.getFlowRisks());
+    out.textArray(c.getCustomSignatures());
+    out.textArray(c.getSuricataAlerts());
+    out.textArray(c.getHttpUserAgents());
+    out.int8(c.getPacketCount() != null ? c.getPacketCount() : 0L);
+    out.int8(c.getTotalBytes() != null ? c.getTotalBytes() : 0L);
+    out.timestamp(c.getStartTime());
+    out.timestamp(c.getEndTime());
+  }
+
+  /** One packet row under a fresh id. */
+  static void writePacket(BinaryRows out, UUID fileId, UUID conversationId, PacketRecord p)
+      throws IOException {
+    out.row(PACKET_COLUMNS.size());
+    out.uuid(newId());
+    out.uuid(fileId);
+    out.uuid(conversationId);
+    out.int8(p.getPacketNumber());
+    out.timestamp(p.getTimestamp());
+    out.text(p.getSrcIp());
+    out.int4(p.getSrcPort());
+    out.text(p.getDstIp());
+    out.int4(p.getDstPort());
+    out.text(p.getProtocol());
+    out.int4(p.getPacketSize());
+    out.bytea(p.getPayload());
+    out.text(p.getDetectedFileType());
+    out.text(p.getInfo());
+  }
+
+  private static long writeConversations(
+      BinaryRows out, UUID fileId, List<ConversationInfo> conversations, UUID[] ids)
+      throws IOException {
+    for (int i = 0; i < conversations.size(); i++) {
+      writeConversation(out, ids[i], fileId, conversations.get(i));
+    }
+    return conversations.size();
+  }
+
+  private static String copyInto(String table, List<String> columns) {
+    return "COPY " + table + " (" + String.join(", ", columns) + ") FROM STDIN (FORMAT binary)";
+  }
+
+  @FunctionalInterface
+  interface Body {
+    long write(BinaryRows out) throws IOException;
+  }
+
+  private long copy(String sql, Body body) {
+    Long rows =
+        jdbc.execute(
+            (ConnectionCallback<Long>) con -> copy(con.unwrap(PGConnection.class), sql, body));
+    return rows != null ? rows : 0;
+  }
+
+  /** One COPY on {@code pg}: header, {@code body}'s rows, trailer. Returns what body returns. */
+  static long copy(PGConnection pg, String sql, Body body) throws SQLException {
+    PGCopyOutputStream stream = new PGCopyOutputStream(pg, sql, COPY_BUFFER_BYTES);
+    try {
+      BinaryRows out = new BinaryRows(stream);
+      out.header();
+      long n = body.write(out);
+      out.trailer();
+      stream.endCopy();
+      return n;
+    } catch (IOException | RuntimeException e) {
+      // A COPY left open holds the connection in copy mode, and the rollback that follows this
+      // exception would fail on it instead of undoing the rows.
+      if (stream.isActive()) stream.cancelCopy();
+      if (e instanceof RuntimeException re) throw re;
+      throw new SQLException("COPY failed: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * PostgreSQL's binary COPY encoding, for the handful of types these two tables use.
+   *
+   * <p>A stream is a fixed header, then per row a 16-bit field count and each field as a 32-bit
+   * length (-1 for NULL) followed by the value in the type's binary send format, then a -1 trailer.
+   * All integers are big-endian, which is what {@link DataOutputStream} writes.
+   */
+  static final class BinaryRows {
+
+    private static final byte[] SIGNATURE = {
+      'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0
+    };
+
+    /** {@code timestamp} counts microseconds from 2000-01-01, not from the Unix epoch. */
+    private static final long POSTGRES_EPOCH_SECONDS = 946_684_800L;
+
+    private static final int TEXT_OID = 25;
+
+    private final DataOutputStream out;
+
+    BinaryRows(OutputStream out) {
+      this.out = new DataOutputStream(out);
+    }
+
+    void header() throws IOException {
+      out.write(SIGNATURE);
+      out.writeInt(0); // flags: no OIDs
+      out.writeInt(0); // header extension length
+    }
+
+    void trailer() throws IOException {
+      out.writeShort(-1);
+      out.flush();
+    }
+
+    /** Rows already encoded by another {@code BinaryRows}, as they are. */
+    void encoded(byte[] rows, int length) throws IOException {
+      out.write(rows, 0, length);
+    }
+
+    void row(int fields) throws IOException {
+      out.writeShort(fields);
+    }
+
+    void uuid(UUID value) throws IOException {
+      if (value == null) {
+        out.writeInt(-1);
+        return;
+      }
+      out.writeInt(16);
+      out.writeLong(value.getMostSignificantBits());
+      out.writeLong(value.getLeastSignificantBits());
+    }
+
+    void int4(Integer value) throws IOException {
+      if (value == null) {
+        out.writeInt(-1);
+        return;
+      }
+      out.writeInt(4);
+      out.writeInt(value);
+    }
+
+    void int8(Long value) throws IOException {
+      if (value == null) {
+        out.writeInt(-1);
+        return;
+      }
+      out.writeInt(8);
+      out.writeLong(value);
+    }
+
+    /** {@code timestamp without time zone}: the wall-clock fields as is, as JPA binds them. */
+    void timestamp(LocalDateTime value) throws IOException {
+      if (value == null) {
+        out.writeInt(-1);
+        return;
+      }
+      long seconds = value.toEpochSecond(ZoneOffset.UTC) - POSTGRES_EPOCH_SECONDS;
+      out.writeInt(8);
+      out.writeLong(seconds * 1_000_000L + value.getNano() / 1_000);
+    }
+
+    void text(String value) throws IOException {
+      if (value == null) {
+        out.writeInt(-1);
+        return;
+      }
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+
+    void bytea(byte[] value) throws IOException {
+      if (value == null) {
+        out.writeInt(-1);
+        return;
+      }
+      out.writeInt(value.length);
+      out.write(value);
+    }
+
+    /**
+     * A one-dimensional {@code text[]}. Null or empty is written as NULL rather than {@code '{}'},
+     * which is what the entity path stored: "no risks" has always been NULL in these columns.
+     */
+    void textArray(List<String> values) throws IOException {
+      if (values == null || values.isEmpty()) {
+        out.writeInt(-1);
+        return;
+      }
+      byte[][] elements = new byte[values.size()][];
+      boolean hasNull = false;
+      int length = 20; // ndim, has-null flag, element type, dimension size, lower bound
+      for (int i = 0; i < elements.length; i++) {
+        String v = values.get(i);
+        if (v == null) {
+          hasNull = true;
+          length += 4;
+        } else {
+          elements[i] = v.getBytes(StandardCharsets.UTF_8);
+          length += 4 + elements[i].length;
+        }
+      }
+      out.writeInt(length);
+      out.writeInt(1);
+      out.writeInt(hasNull ? 1 : 0);
+      out.writeInt(TEXT_OID);
+      out.writeInt(elements.length);
+      out.writeInt(1);
+      for (byte[] e : elements) {
+        if (e == null) {
+          out.writeInt(-1);
+        } else {
+          out.writeInt(e.length);
+          out.write(e);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,131 @@
+package com.tracepcap.analysis.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Cuts a capture into contiguous runs of records, each written out as a capture of its own, so
+ * that several parser passes can work on one upload at once.
+ *
+ * <p>Cuts fall on record boundaries found by {@link PcapFileReader}, with no tshark or editcap
+ * pass, and a chunk is the raw bytes of its records behind a copy of the file header ({@link
+ * PcapFileReader#preamble()}). Records are not re-encoded, so a chunk decodes to exactly the
+ * packets it was cut from.
+ *
+ * <p><b>Warm-up frames.</b> tshark's Protocol and Info columns depend on what it has already seen
+ * of a flow: a segment that completes a reassembled PDU, the first packet of a stream it would
+ * have followed from its handshake. A chunk that starts cold can label those differently from the
+ * sequential pass. So each chunk after the first also carries up to {@code warmupFrames} records
+ * from before its cut, which the caller parses and then discards ({@link Chunk#warmup()}). Only a
+ * flow that was silent for the whole warm-up and straddles the cut can still be labelled
+ * differently.
+ *
+ * <p>Chunks are handed to the callback as soon as they are written, so parsing the first overlaps
+ * cutting the rest. The caller owns and deletes the files.
+ */
+final class CaptureSplitter {
+
+  /**
+   * One chunk: its file, the capture's frame number for its first own record, and how many warm-up
+   * records precede that one in the file.
+   */
+  record Chunk(int index, Path file, long firstFrame, int warmup) {}
+
+  private CaptureSplitter() {}
+
+  /**
+   * Writes chunks of roughly {@code chunkBytes} into {@code dir}. Returns the number written; the
+   * last chunk takes whatever is left, however small.
+   */
+  static int split(
+      Path capture, Path dir, long chunkBytes, int warmupFrames, Consumer<Chunk> onChunk)
+      throws IOException {
+    long[] ring = new long[Math.max(warmupFrames, 1)];
+    int ringSize = 0;
+    int ringHead = 0;
+    int generation = -1;
+
+    int chunks = 0;
+    boolean open = false;
+    long firstFrame = 0;
+    long firstOffset = 0;
+    long copyFrom = 0;
+    int warmup = 0;
+    byte[] preamble = null;
+
+    try (PcapFileReader reader = PcapFileReader.open(capture);
+        FileChannel in = FileChannel.open(capture, StandardOpenOption.READ)) {
+      while (reader.next()) {
+        if (reader.headerGeneration() != generation) {
+          // Warm-up records must share the preamble written ahead of them, so a new section or
+          // interface starts the window over.
+          generation = reader.headerGeneration();
+          ringSize = 0;
+        }
+        if (!open) {
+          open = true;
+          firstFrame = reader.frameNumber();
+          firstOffset = reader.recordOffset();
+          warmup = warmupFrames > 0 ? ringSize : 0;
+          copyFrom =
+              warmup > 0 ? ring[Math.floorMod(ringHead - ringSize, ring.length)] : firstOffset;
+          preamble = reader.preamble();
+        }
+        if (warmupFrames > 0) {
+          ring[ringHead] = reader.recordOffset();
+          ringHead = (ringHead + 1) % ring.length;
+          if (ringSize < ring.length) ringSize++;
+        }
+        long end = reader.recordOffset() + reader.recordLength();
+        if (end - firstOffset >= chunkBytes) {
+          onChunk.accept(write(in, dir, chunks++, preamble, copyFrom, end, firstFrame, warmup));
+          open = false;
+        }
+      }
+      if (open) {
+        // The reader stops at the last whole record; a truncated tail is not copied.
+        long end = reader.recordOffset() + reader.recordLength();
+        onChunk.accept(write(in, dir, chunks++, preamble, copyFrom, end, firstFrame, warmup));
+      }
+    }
+    return chunks;
+  }
+
+  private static Chunk write(
+      FileChannel in,
+      Path dir,
+      int index,
+      byte[] preamble,
+      long from,
+      long to,
+      long firstFrame,
+      int warmup)
+      throws IOException {
+    Path file = dir.resolve(String.format("chunk-%05d.cap", index));
+    try (FileChannel out =
+        FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+      ByteBuffer header = ByteBuffer.wrap(preamble);
+      while (header.hasRemaining()) out.write(header);
+      long at = from;
+      while (at < to) {
+        long n = in.transferTo(at, to - at, out);
+        if (n <= 0) throw new IOException("Capture ended while copying chunk " + index);
+        at += n;
+      }
+    }
+    return new Chunk(index, file, firstFrame, warmup);
+  }
+
+  static void deleteQuietly(Path file) {
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException ignored) {
+      // Temp directory; the OS reclaims it if this fails.
+    }
+  }
+}
@@ -303,7 +303,9 @@ public class ConversationLookupAdapter implements ConversationLookup {
             e.getPacketCount() == null ? 0 : e.getPacketCount(),
             e.getTotalBytes() == null ? 0 : e.getTotalBytes(),
             e.getStartTime(),
-            e.getEndTime()),
+            e.getEndTime(),
+            e.getTcpStream(),
+            e.getUdpStream()),
         new TlsFacts(
             e.getHostname(),
             e.getTlsIssuer(),
@@ -0,0 +1,279 @@
+package com.tracepcap.analysis.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.tracepcap.analysis.spi.DissectedFrame;
+import com.tracepcap.analysis.spi.Dissection;
+import com.tracepcap.analysis.spi.FrameSubscriber;
+import com.tracepcap.analysis.spi.FrameSubscriber.FrameConsumer;
+import com.tracepcap.common.exception.SubprocessBusyException;
+import com.tracepcap.common.process.SubprocessGovernor;
+import com.tracepcap.common.process.SubprocessGovernor.Budget;
+import com.tracepcap.common.process.SubprocessGovernor.Tool;
+import com.tracepcap.file.entity.FileEntity;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Runs the capture's one shared tshark pass and fans each frame out to every {@link
+ * FrameSubscriber}.
+ *
+ * <p>One analysis used to dissect the capture seven times over: tshark enrichment, hostname
+ * resolution, the DNS query log, two web-server passes and two file-extraction passes, each asking
+ * for a handful of fields and each paying for every dissector on every frame. They are now one
+ * pass asking for the union. The parse's Protocol/Info pass ({@link TsharkColumnPass}) is not among
+ * them: it is read in lockstep with the native parse, and tying that to the slowest consumer here
+ * would put all of this on the parse's critical path.
+ *
+ * <p><b>JSON, not {@code -T fields}.</b> A fields row is one separator-joined line, and with every
+ * stage's fields in one row there is no separator none of them can contain — query names, URIs,
+ * user agents and hostnames are all free text, and each pass used to pick its separator around its
+ * own. {@code -T json -e} gives each field its own array of occurrences, so a value is never split
+ * and {@code -E occurrence} becomes the consumer's choice rather than the pass's.
+ */
+@Slf4j
+@Service
+public class DissectionBus {
+
+  private static final JsonFactory JSON = new JsonFactory();
+
+  private final List<FrameSubscriber<?>> subscribers;
+
+  /**
+   * How long the pass may run, from its start, before the stage waiting on it takes what the
+   * consumers have so far. The passes it replaced had two minutes each, and truncated large
+   * captures silently; this bounds a wedged tshark, not a slow one.
+   */
+  @Value("${tracepcap.analysis.dissection.timeout-minutes:30}")
+  private int timeoutMinutes = 30;
+
+  private final SubprocessGovernor governor;
+
+  public DissectionBus(List<FrameSubscriber<?>> subscribers, SubprocessGovernor governor) {
+    this.subscribers = subscribers;
+    this.governor = governor;
+  }
+
+  /**
+   * Starts the pass over {@code capture} for every subscriber enabled for {@code file}, and returns
+   * at once. The caller closes it when the analysis is done with the capture.
+   */
+  public Pass start(FileEntity file, File capture) {
+    Map<FrameSubscriber<?>, FrameConsumer> consumers = new IdentityHashMap<>();
+    Set<String> fields = new LinkedHashSet<>();
+    fields.add(DissectedFrame.PROTOCOLS);
+    for (FrameSubscriber<?> subscriber : subscribers) {
+      if (!subscriber.enabledFor(file)) continue;
+      consumers.put(subscriber, subscriber.open());
+      fields.addAll(subscriber.fields());
+    }
+    Pass pass = new Pass(consumers, TimeUnit.MINUTES.toNanos(timeoutMinutes));
+    if (consumers.isEmpty()) {
+      pass.finished = true;
+      return pass;
+    }
+
+    List<String> cmd =
+        new ArrayList<>(List.of("tshark", "-r", capture.getAbsolutePath(), "-T", "json"));
+    for (String field : fields) {
+      cmd.add("-e");
+      cmd.add(field);
+    }
+    try {
+      pass.process =
+          governor.start(
+              Tool.TSHARK,
+              Budget.BATCH,
+              new ProcessBuilder(cmd).redirectError(ProcessBuilder.Redirect.DISCARD));
+    } catch (IOException | SubprocessBusyException e) {
+      log.warn(
+          "tshark unavailable for the shared dissection of {} ({}); its {} consumer(s) see no"
+              + " frames",
+          capture.getName(),
+          e.getMessage(),
+          consumers.size());
+      pass.finished = true;
+      return pass;
+    }
+    log.debug(
+        "Dissecting {} once for {} subscriber(s), {} field(s)",
+        capture.getName(),
+        consumers.size(),
+        fields.size());
+    pass.reader = new Thread(pass::read, "dissection-" + capture.getName());
+    pass.reader.setDaemon(true);
+    pass.reader.start();
+    return pass;
+  }
+
+  /** One capture's pass. Not a bean: one per analysis. */
+  public static final class Pass implements Dissection, AutoCloseable {
+
+    private final Map<FrameSubscriber<?>, FrameConsumer> consumers;
+    private final long deadline;
+    private final Set<FrameConsumer> failed = Collections.newSetFromMap(new IdentityHashMap<>());
+    private Process process;
+    private Thread reader;
+    private boolean finished;
+    /** Written by the reader only; read for logging. */
+    private volatile long frames;
+
+    Pass(Map<FrameSubscriber<?>, FrameConsumer> consumers, long timeoutNanos) {
+      this.consumers = consumers;
+      this.deadline = System.nanoTime() + timeoutNanos;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked") // Opened by this very subscriber, so of its consumer type.
+    public <C extends FrameConsumer> C consumer(FrameSubscriber<C> subscriber) {
+      await();
+      FrameConsumer consumer = consumers.get(subscriber);
+      return consumer != null ? (C) consumer : subscriber.open();
+    }
+
+    /** Stops tshark if it is still running. The consumers are not to be read afterwards. */
+    @Override
+    public synchronized void close() {
+      if (process != null && process.isAlive()) process.destroyForcibly();
+    }
+
+    /** Waits for the reader to finish, stopping tshark first if the deadline has passed. */
+    private synchronized void await() {
+      if (finished) return;
+      boolean interrupted = false;
+      try {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0 || !process.waitFor(remaining, TimeUnit.NANOSECONDS)) {
+          log.warn(
+              "Shared tshark dissection still running at its timeout; stages carry on with the {}"
+                  + " frame(s) read so far",
+              frames);
+          process.destroyForcibly();
+        }
+      } catch (InterruptedException e) {
+        interrupted = true;
+        process.destroyForcibly();
+      }
+      // With tshark gone its output ends, so the reader is about to; until it has, the consumers
+      // are still being written and cannot be handed out.
+      while (reader.isAlive()) {
+        try {
+          reader.join();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      finished = true;
+      if (!process.isAlive() && process.exitValue() != 0) {
+        log.warn(
+            "Shared tshark dissection exited with code {} after {} frame(s); results may be"
+                + " partial",
+            process.exitValue(),
+            frames);
+      }
+      if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    private void read() {
+      try (InputStream in = process.getInputStream()) {
+        read(in);
+      } catch (IOException e) {
+        log.warn(
+            "Reading the shared tshark dissection failed after {} frame(s): {}",
+            frames,
+            e.getMessage());
+      }
+    }
+
+    /**
+     * Streams tshark's JSON array: {@code [{"_source": {"layers": {"<field>": ["<value>", ...]}}},
+     * ...]}. Everything outside {@code layers} is skipped.
+     */
+    void read(InputStream in) throws IOException {
+      try (JsonParser parser = JSON.createParser(in)) {
+        if (parser.nextToken() != JsonToken.START_ARRAY) return;
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+          DissectedFrame frame = readPacket(parser);
+          if (frame != null) dispatch(frame);
+        }
+      }
+    }
+
+    private static DissectedFrame readPacket(JsonParser parser) throws IOException {
+      DissectedFrame frame = null;
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String name = parser.currentName();
+        if (parser.nextToken() == JsonToken.START_OBJECT && name.equals("_source")) {
+          while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String inner = parser.currentName();
+            if (parser.nextToken() == JsonToken.START_OBJECT && inner.equals("layers")) {
+              frame = new DissectedFrame(readLayers(parser));
+            } else {
+              parser.skipChildren();
+            }
+          }
+        } else {
+          parser.skipChildren();
+        }
+      }
+      return frame;
+    }
+
+    private static Map<String, List<String>> readLayers(JsonParser parser) throws IOException {
+      Map<String, List<String>> fields = new HashMap<>();
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.currentName();
+        JsonToken value = parser.nextToken();
+        if (value == JsonToken.START_ARRAY) {
+          List<String> values = new ArrayList<>(1);
+          while ((value = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (value.isScalarValue()) {
+              values.add(parser.getText());
+            } else {
+              parser.skipChildren();
+            }
+          }
+          fields.put(field, values);
+        } else if (value.isScalarValue()) {
+          fields.put(field, List.of(parser.getText()));
+        } else {
+          parser.skipChildren();
+        }
+      }
+      return fields;
+    }
+
+    /** Every consumer sees the frame; one that throws is dropped, and costs only itself. */
+    private void dispatch(DissectedFrame frame) {
+      frames++;
+      for (Map.Entry<FrameSubscriber<?>, FrameConsumer> entry : consumers.entrySet()) {
+        FrameConsumer consumer = entry.getValue();
+        if (failed.contains(consumer)) continue;
+        try {
+          consumer.accept(frame);
+        } catch (RuntimeException e) {
+          failed.add(consumer);
+          log.warn(
+              "{} failed on frame {} and sees no further frames: {}",
+              entry.getKey().getClass().getSimpleName(),
+              frames,
+              e.toString());
+        }
+      }
+    }
+  }
+}
@@ -1,16 +1,29 @@
 package com.tracepcap.analysis.service;
 
+import com.tracepcap.analysis.spi.Dissection;
 import com.tracepcap.analysis.spi.ExtractionTarget;
 import com.tracepcap.analysis.spi.Extractor;
 import com.tracepcap.common.stage.Tier;
 import com.tracepcap.file.entity.FileEntity;
 import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 /**
@@ -21,7 +34,22 @@ import org.springframework.stereotype.Service;
  * extractor, an {@code if} per enable flag, and a manifest call per branch; adding an extractor
  * meant editing the pipeline's core, which is the thing this architecture exists to prevent.
  *
- * <p>Two jobs beyond looping:
+ * <p><b>Independent extractors run concurrently.</b> nDPI, tshark and Suricata each read the whole
+ * capture in a process of their own, and used to do so one after another. Each now starts once the
+ * extractors it {@link Extractor#dependsOn() depends on} have finished, on a pool of {@code
+ * tracepcap.analysis.extract.workers} threads, so Suricata's pass overlaps nDPI's and tshark's.
+ *
+ * <p><b>The result does not depend on who finished first.</b> An extractor writes to its own copy
+ * of the conversations, which holds the parse plus its dependencies' writes and nothing else. What
+ * it changed is merged in one fixed order — dependencies first, otherwise by name — on the calling
+ * thread, into {@code conversations} once every extractor is done.
+ *
+ * <p><b>Only what changed is kept.</b> A copy is the whole capture's conversations, so holding
+ * every extractor's copy until the end would cost a multiple of the parse. Once an extractor
+ * returns, its copy is reduced to the conversations it changed, and those are merged and dropped as
+ * soon as everything that depends on it has built its own copy from them.
+ *
+ * <p>Two jobs beyond scheduling:
  *
  * <ul>
  *   <li><b>The manifest is automatic.</b> Every extractor with a key gets a row, every run —
@@ -29,7 +57,8 @@ import org.springframework.stereotype.Service;
  *       forgetting is what makes "the tool found nothing" indistinguishable from "the tool never
  *       ran" (#501).
  *   <li><b>Failures are isolated.</b> One extractor throwing costs its own facts and nothing else;
- *       the capture is still worth analysing without one enrichment.
+ *       the capture is still worth analysing without one enrichment. What it wrote before throwing
+ *       is on its copy, which is dropped. Its dependents still run, without its facts.
  * </ul>
  */
 @Slf4j
@@ -40,54 +69,262 @@ public class ExtractorRunner {
   private final List<Extractor> extractors;
   private final ExtractionRunService extractionRunService;
 
+  /** Extractors running at once for one capture; 1 runs them one after another. */
+  @Value("${tracepcap.analysis.extract.workers:2}")
+  private int workers = 2;
+
   /**
-   * Runs the enabled extractors in {@link Extractor#order()} order, writing their facts onto {@code
+   * Runs the enabled extractors, each after the ones it depends on, writing their facts onto {@code
    * conversations} and recording each one's provenance.
    */
-  public void runAll(FileEntity file, File capture, List<PcapParserService.ConversationInfo> conversations) {
-    ExtractionTarget target = new Target(file, capture, conversations);
-    List<Extractor> ordered =
-        extractors.stream().sorted(Comparator.comparingInt(Extractor::order)).toList();
+  public void runAll(
+      FileEntity file,
+      File capture,
+      Dissection dissection,
+      List<PcapParserService.ConversationInfo> conversations) {
+    List<Extractor> ordered = mergeOrder(extractors);
+    Target probe = new Target(file, capture, dissection, conversations);
 
+    List<Extractor> enabled = new ArrayList<>();
     for (Extractor extractor : ordered) {
-      long started = System.currentTimeMillis();
       try {
-        if (!extractor.enabledFor(target)) {
+        if (extractor.enabledFor(probe)) {
+          enabled.add(extractor);
+        } else {
           // Skipped is a real answer, not an absence — record it so downstream can tell the two
           // apart rather than inferring "found nothing" from a missing row.
           record(extractor, file.getId(), Extractor.Outcome.skipped("not enabled for this file"));
-          continue;
         }
-        Extractor.Outcome outcome = extractor.extract(target);
-        if (outcome == null) {
-          // The port says "never null", but Extractor is a public SPI and a third-party module can
-          // break that. Say what happened rather than NPE into the catch below and report a
-          // FAILED row that blames a NullPointerException instead of the contract breach.
-          log.warn("[{}] extractor {} returned no outcome", file.getId(), extractor.name());
-          outcome = Extractor.Outcome.failed("extractor returned null (contract: never null)");
-        }
-        record(extractor, file.getId(), outcome);
-        log.debug(
-            "[{}] extractor {} -> {} ({}ms)",
-            file.getId(),
-            extractor.name(),
-            outcome.status(),
-            System.currentTimeMillis() - started);
       } catch (Exception e) {
-        // The whole exception, not getMessage(): an NPE's message is null, and "ndpi failed: null"
-        // helps nobody at 3am.
-        log.warn("[{}] extractor {} failed", file.getId(), extractor.name(), e);
-        record(
-            extractor,
-            file.getId(),
-            Extractor.Outcome.failed(e.getClass().getSimpleName() + ": " + e.getMessage()));
+        fail(extractor, file.getId(), e);
       }
     }
 
+    if (!enabled.isEmpty()) {
+      Map<Integer, PcapParserService.ConversationInfo> merged = runConcurrently(enabled, probe);
+      // Every copy was taken from conversations, and every change compared against them, before
+      // this point; only now are they written to. Each is its own baseline here: mergeFrom reads a
+      // field before assigning it.
+      merged.forEach((i, c) -> conversations.get(i).mergeFrom(conversations.get(i), c));
+    }
+
     log.info(
         "[{}] Extract: {} extractors ({})", file.getId(), ordered.size(), tierBreakdown(ordered));
   }
 
+  /**
+   * Starts each extractor once its dependencies have finished, and merges each one's changes, in
+   * merge order, as soon as everything depending on it has started. {@code enabled} is in merge
+   * order, so every extractor's dependencies were submitted before it. Returns the merged result
+   * for the conversations any extractor changed, by position, each a copy of the parse with every
+   * change applied.
+   */
+  private Map<Integer, PcapParserService.ConversationInfo> runConcurrently(
+      List<Extractor> enabled, Target probe) {
+    Map<Extractor, CompletableFuture<Run>> futures = new IdentityHashMap<>();
+    Map<Extractor, CompletableFuture<Void>> started = new IdentityHashMap<>();
+    Map<Extractor, List<Extractor>> dependents = new IdentityHashMap<>();
+    int threads = Math.max(1, Math.min(workers, enabled.size()));
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      for (Extractor extractor : enabled) {
+        List<Extractor> upstreamOf = upstream(extractor, enabled);
+        for (Extractor u : upstreamOf) {
+          dependents.computeIfAbsent(u, k -> new ArrayList<>()).add(extractor);
+        }
+        // Looked up here rather than in the task: this thread is still adding to the map.
+        List<CompletableFuture<Run>> upstream = upstreamOf.stream().map(futures::get).toList();
+        CompletableFuture<Void> viewBuilt = new CompletableFuture<>();
+        started.put(extractor, viewBuilt);
+        futures.put(
+            extractor,
+            CompletableFuture.allOf(upstream.toArray(CompletableFuture[]::new))
+                .thenApplyAsync(
+                    ignored -> {
+                      View view;
+                      try {
+                        List<Run> finished =
+                            upstream.stream().map(CompletableFuture::join).toList();
+                        view = view(probe.conversations(), finished);
+                      } finally {
+                        viewBuilt.complete(null);
+                      }
+                      return run(extractor, probe, view);
+                    },
+                    pool));
+        // A task that never ran builds no copy either; the merge below must not wait on it.
+        futures.get(extractor).whenComplete((run, e) -> viewBuilt.complete(null));
+      }
+
+      Map<Integer, PcapParserService.ConversationInfo> merged = new HashMap<>();
+      for (Extractor extractor : enabled) {
+        Run run = futures.get(extractor).join();
+        // Its changes are part of every dependent's copy; once all of those exist, nothing but
+        // the merge needs them.
+        for (Extractor d : dependents.getOrDefault(extractor, List.of())) started.get(d).join();
+        run.mergeInto(merged, probe.conversations());
+        record(extractor, probe.fileId(), run.outcome());
+      }
+      return merged;
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * An extractor's working set — a copy of the parse, with what each of its dependencies (and
+   * theirs) wrote applied in merge order — and, for the conversations those dependencies changed,
+   * the copy as handed over. Every other conversation is handed over as parsed.
+   */
+  private record View(
+      List<PcapParserService.ConversationInfo> conversations,
+      Map<Integer, PcapParserService.ConversationInfo> baselines) {
+
+    /** Conversation {@code i} as it was before the extractor ran. */
+    PcapParserService.ConversationInfo before(
+        int i, List<PcapParserService.ConversationInfo> parse) {
+      PcapParserService.ConversationInfo baseline = baselines.get(i);
+      return baseline != null ? baseline : parse.get(i);
+    }
+  }
+
+  private static View view(List<PcapParserService.ConversationInfo> parse, List<Run> upstream) {
+    List<PcapParserService.ConversationInfo> view = new ArrayList<>(parse.size());
+    for (PcapParserService.ConversationInfo c : parse) view.add(c.extractionCopy());
+    Set<Integer> touched = new HashSet<>();
+    for (Run run : upstream) {
+      run.changes().forEach((i, change) -> view.get(i).mergeFrom(change.before(), change.after()));
+      touched.addAll(run.changes().keySet());
+    }
+    Map<Integer, PcapParserService.ConversationInfo> baselines = new HashMap<>();
+    for (int i : touched) baselines.put(i, view.get(i).extractionCopy());
+    return new View(view, baselines);
+  }
+
+  /** What {@code extractor} depends on among {@code enabled}, transitively, in merge order. */
+  private static List<Extractor> upstream(Extractor extractor, List<Extractor> enabled) {
+    Set<String> names = new HashSet<>();
+    Deque<String> pending = new ArrayDeque<>(extractor.dependsOn());
+    while (!pending.isEmpty()) {
+      String name = pending.pop();
+      if (!names.add(name)) continue;
+      enabled.stream()
+          .filter(e -> e.name().equals(name))
+          .findFirst()
+          .ifPresent(e -> pending.addAll(e.dependsOn()));
+    }
+    return enabled.stream().filter(e -> names.contains(e.name())).toList();
+  }
+
+  /**
+   * One extractor against its own copy, reduced afterwards to the conversations it changed; never
+   * throws, so a failure stays with its extractor.
+   */
+  private Run run(Extractor extractor, Target probe, View view) {
+    FileEntity file = probe.file();
+    long started = System.currentTimeMillis();
+    try {
+      Extractor.Outcome outcome = extractor.extract(probe.on(view.conversations()));
+      if (outcome == null) {
+        // The port says "never null", but Extractor is a public SPI and a third-party module can
+        // break that. Say what happened rather than NPE into the catch below and report a
+        // FAILED row that blames a NullPointerException instead of the contract breach.
+        log.warn("[{}] extractor {} returned no outcome", file.getId(), extractor.name());
+        outcome = Extractor.Outcome.failed("extractor returned null (contract: never null)");
+      }
+      log.debug(
+          "[{}] extractor {} -> {} ({}ms)",
+          file.getId(),
+          extractor.name(),
+          outcome.status(),
+          System.currentTimeMillis() - started);
+      return new Run(outcome, changes(view, probe.conversations()));
+    } catch (Exception e) {
+      // The whole exception, not getMessage(): an NPE's message is null, and "ndpi failed: null"
+      // helps nobody at 3am.
+      log.warn("[{}] extractor {} failed", file.getId(), extractor.name(), e);
+      return new Run(failure(e), new HashMap<>());
+    }
+  }
+
+  /** The conversations the extractor left different from how it was handed them. */
+  private static Map<Integer, Change> changes(
+      View view, List<PcapParserService.ConversationInfo> parse) {
+    Map<Integer, Change> changes = new HashMap<>();
+    List<PcapParserService.ConversationInfo> after = view.conversations();
+    for (int i = 0; i < after.size(); i++) {
+      PcapParserService.ConversationInfo before = view.before(i, parse);
+      // ConversationInfo's equality covers exactly the fields an extraction copy carries.
+      if (!before.equals(after.get(i))) changes.put(i, new Change(before, after.get(i)));
+    }
+    return changes;
+  }
+
+  /**
+   * Extractors sorted so that each follows everything it depends on, ties broken by name — the
+   * order copies are merged in, and so what decides a field two extractors both set.
+   *
+   * @throws IllegalStateException if the declared dependencies form a cycle
+   */
+  static List<Extractor> mergeOrder(List<Extractor> extractors) {
+    Map<String, Extractor> byName = new HashMap<>();
+    for (Extractor e : extractors) byName.put(e.name(), e);
+    List<Extractor> ordered = new ArrayList<>(extractors.size());
+    Set<String> placed = new HashSet<>();
+    List<Extractor> remaining =
+        new ArrayList<>(extractors.stream().sorted(Comparator.comparing(Extractor::name)).toList());
+    while (!remaining.isEmpty()) {
+      Extractor next =
+          remaining.stream()
+              .filter(
+                  e ->
+                      e.dependsOn().stream()
+                          .allMatch(d -> placed.contains(d) || !byName.containsKey(d)))
+              .findFirst()
+              .orElseThrow(
+                  () ->
+                      new IllegalStateException(
+                          "Extractor dependencies form a cycle among "
+                              + remaining.stream().map(Extractor::name).toList()));
+      remaining.remove(next);
+      placed.add(next.name());
+      ordered.add(next);
+    }
+    return ordered;
+  }
+
+  /** One conversation an extractor changed: as it was handed over, and as the extractor left it. */
+  private record Change(
+      PcapParserService.ConversationInfo before, PcapParserService.ConversationInfo after) {}
+
+  /** What one extractor reported, and the conversations it changed, by position. */
+  private record Run(Extractor.Outcome outcome, Map<Integer, Change> changes) {
+
+    /**
+     * Applies the changes to {@code merged}, starting a conversation from a copy of the parse the
+     * first time any extractor changes it, and lets go of them.
+     */
+    void mergeInto(
+        Map<Integer, PcapParserService.ConversationInfo> merged,
+        List<PcapParserService.ConversationInfo> parse) {
+      changes.forEach(
+          (i, change) ->
+              merged
+                  .computeIfAbsent(i, k -> parse.get(k).extractionCopy())
+                  .mergeFrom(change.before(), change.after()));
+      changes.clear();
+    }
+  }
+
+  private void fail(Extractor extractor, UUID fileId, Exception e) {
+    log.warn("[{}] extractor {} failed", fileId, extractor.name(), e);
+    record(extractor, fileId, failure(e));
+  }
+
+  private static Extractor.Outcome failure(Exception e) {
+    return Extractor.Outcome.failed(e.getClass().getSimpleName() + ": " + e.getMessage());
+  }
+
   /** Records provenance for extractors that claim a manifest key; the rest pass silently. */
   private void record(Extractor extractor, UUID fileId, Extractor.Outcome outcome) {
     String key = extractor.manifestKey();
@@ -108,13 +345,21 @@ public class ExtractorRunner {
 
   /** The target handed to each extractor. Not a bean: one per capture. */
   private record Target(
-      FileEntity file, File capture, List<PcapParserService.ConversationInfo> conversations)
+      FileEntity file,
+      File capture,
+      Dissection dissection,
+      List<PcapParserService.ConversationInfo> conversations)
       implements ExtractionTarget {
 
     @Override
     public UUID fileId() {
       return file.getId();
     }
+
+    /** The same capture, with {@code view} as the working set. */
+    Target on(List<PcapParserService.ConversationInfo> view) {
+      return new Target(file, capture, dissection, view);
+    }
   }
 
   /** Exposed for the extract-registry test: which extractors Spring discovered. */
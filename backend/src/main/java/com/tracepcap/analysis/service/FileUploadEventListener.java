@@ -1,5 +1,6 @@
 package com.tracepcap.analysis.service;
 
+import com.tracepcap.config.security.CurrentActor;
 import com.tracepcap.file.event.FileUploadedEvent;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -18,15 +19,18 @@ import org.springframework.transaction.event.TransactionalEventListener;
 @RequiredArgsConstructor
 public class FileUploadEventListener {
 
-  private final AsyncAnalysisService asyncAnalysisService;
+  private final AnalysisJobQueue analysisJobQueue;
+  private final CurrentActor currentActor;
 
-  /** Triggered AFTER the upload transaction commits successfully */
+  /**
+   * Triggered AFTER the upload transaction commits successfully, still on the upload's request
+   * thread — so the job is attributed to whoever uploaded the capture.
+   */
   @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
   public void handleFileUploaded(FileUploadedEvent event) {
     log.info(
-        "File upload transaction committed, triggering async analysis for file: {}",
-        event.getFileId());
-    asyncAnalysisService.analyzeFileAsync(event.getFileId());
-    log.info("Async analysis task submitted for file: {}", event.getFileId());
+        "File upload transaction committed, queueing analysis for file: {}", event.getFileId());
+    analysisJobQueue.submit(
+        event.getFileId(), currentActor.username(), AnalysisJobQueue.PRIORITY_UPLOAD);
   }
 }
@@ -0,0 +1,112 @@
+package com.tracepcap.analysis.service;
+
+import java.util.Arrays;
+
+/**
+ * The parse's conversation index: a binary 5-tuple to a dense index, by open addressing.
+ *
+ * <p>Replaces a {@code String.format("%s:%s-%s:%s-%s")} key per packet — a format call, a
+ * StringBuilder, boxed ports and a string compare, just to find a bucket. Here a packet's key is
+ * three primitives: each endpoint packed into a long as {@code addressId << 32 | port} ({@link
+ * #endpoint}), and a protocol id, where the ids come from the parse's {@link StringDictionary}.
+ * Addresses stay dictionary ids rather than 16-byte values because both parser passes hand them
+ * over as text — and for ARP and other layer-2 frames the "address" is a MAC.
+ *
+ * <p><b>Direction.</b> The key is the unordered endpoint pair: the two longs are stored smaller
+ * first, so A→B and B→A land on one conversation. That is the grouping the string key gave; which
+ * endpoint the conversation calls src is still the first packet's, decided by the caller.
+ *
+ * <p>Linear probing over an {@code int[]} of slots holding index + 1, kept at most half full; the
+ * keys themselves live in dense per-index arrays, which is also what lets a parallel parse read a
+ * chunk's flows back in order ({@link #endpointA}, {@link #endpointB}, {@link #protocol}).
+ *
+ * <p>Not thread-safe; owned by one {@code ParseState}.
+ */
+final class FlowTable {
+
+  /** The port of an endpoint that has none (ARP, ICMP, anything without TCP/UDP). */
+  static final int NO_PORT = -1;
+
+  private static final int INITIAL_FLOWS = 1 << 10;
+
+  private long[] lows = new long[INITIAL_FLOWS];
+  private long[] highs = new long[INITIAL_FLOWS];
+  private int[] protocols = new int[INITIAL_FLOWS];
+  private int size;
+
+  private int[] slots = new int[INITIAL_FLOWS * 2];
+  private int mask = slots.length - 1;
+
+  /** One end of a flow as a key component: dictionary id of its address, and its port. */
+  static long endpoint(int addressId, int port) {
+    return ((long) addressId << 32) | (port & 0xffffffffL);
+  }
+
+  /**
+   * Index of the flow between {@code a} and {@code b} (either order) over {@code protocol}. If it
+   * is new it is added, and the result is {@code -(index + 1)}: the caller creates the
+   * conversation for that index.
+   */
+  int findOrAdd(long a, long b, int protocol) {
+    long low = Math.min(a, b);
+    long high = Math.max(a, b);
+    int slot = hash(low, high, protocol) & mask;
+    while (true) {
+      int entry = slots[slot];
+      if (entry == 0) break;
+      int i = entry - 1;
+      if (lows[i] == low && highs[i] == high && protocols[i] == protocol) return i;
+      slot = (slot + 1) & mask;
+    }
+
+    if (size == lows.length) {
+      lows = Arrays.copyOf(lows, size * 2);
+      highs = Arrays.copyOf(highs, size * 2);
+      protocols = Arrays.copyOf(protocols, size * 2);
+    }
+    int index = size++;
+    lows[index] = low;
+    highs[index] = high;
+    protocols[index] = protocol;
+    slots[slot] = index + 1;
+    if (size * 2 > slots.length) rehash();
+    return -(index + 1);
+  }
+
+  int size() {
+    return size;
+  }
+
+  /** The smaller endpoint of flow {@code index}, as given to {@link #findOrAdd}. */
+  long endpointA(int index) {
+    return lows[index];
+  }
+
+  long endpointB(int index) {
+    return highs[index];
+  }
+
+  int protocol(int index) {
+    return protocols[index];
+  }
+
+  private void rehash() {
+    slots = new int[slots.length * 2];
+    mask = slots.length - 1;
+    for (int i = 0; i < size; i++) {
+      int slot = hash(lows[i], highs[i], protocols[i]) & mask;
+      while (slots[slot] != 0) slot = (slot + 1) & mask;
+      slots[slot] = i + 1;
+    }
+  }
+
+  /** Address ids and ports are small and clustered, so every bit is mixed before masking. */
+  private static int hash(long low, long high, int protocol) {
+    long h = low * 0x9E3779B97F4A7C15L;
+    h ^= Long.rotateLeft(high * 0xC2B2AE3D27D4EB4FL, 31);
+    h ^= protocol * 0x165667B19E3779F9L;
+    h ^= h >>> 29;
+    h *= 0xBF58476D1CE4E5B9L;
+    return (int) (h ^ (h >>> 32));
+  }
+}
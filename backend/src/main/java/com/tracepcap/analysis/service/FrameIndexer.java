@@ -0,0 +1,69 @@
+package com.tracepcap.analysis.service;
+
+import com.tracepcap.file.entity.FileEntity;
+import com.tracepcap.file.service.FrameIndex;
+import com.tracepcap.file.service.StorageService;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+/**
+ * Records where each frame of a capture lies, while analysis has it on local disk, and stores that
+ * {@link FrameIndex} next to the capture so that exports can later copy frames out of it by
+ * offset.
+ *
+ * <p>One header-only walk with {@link PcapFileReader} — no payload is read — which is seconds on a
+ * multi-gigabyte capture. It is a separate walk rather than part of the parse because the parallel
+ * parse reads cut-up chunks whose offsets are not the stored capture's.
+ *
+ * <p>Best effort: a capture the reader cannot walk (not pcap or pcapng, say) or an upload that
+ * fails leaves the file without an index, and its exports go through tshark as they always have.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+class FrameIndexer {
+
+  private final StorageService storageService;
+
+  /** Indexes {@code capture}, the local copy of {@code file}'s stored capture. */
+  void index(FileEntity file, Path capture) {
+    long t = System.currentTimeMillis();
+    Path tmp = null;
+    try {
+      tmp = Files.createTempFile("frames-", ".idx");
+      long frames = write(capture, tmp);
+      storageService.uploadFile(
+          tmp.toFile(), FrameIndex.objectName(file.getMinioPath()), "application/octet-stream");
+      log.info(
+          "[{}] Frame index: {} frames, {} bytes, {}ms",
+          file.getId(),
+          frames,
+          Files.size(tmp),
+          System.currentTimeMillis() - t);
+    } catch (Exception e) {
+      log.warn("[{}] No frame index for this capture: {}", file.getId(), e.getMessage());
+    } finally {
+      if (tmp != null) CaptureSplitter.deleteQuietly(tmp);
+    }
+  }
+
+  /** Writes the index of {@code capture} to {@code target}; returns the number of frames. */
+  static long write(Path capture, Path target) throws IOException {
+    try (PcapFileReader reader = PcapFileReader.open(capture);
+        FrameIndex.Writer index = FrameIndex.writer(target, Files.size(capture))) {
+      int generation = -1;
+      while (reader.next()) {
+        if (reader.headerGeneration() != generation) {
+          generation = reader.headerGeneration();
+          index.preamble(reader.preamble());
+        }
+        index.frame(reader.recordOffset(), reader.recordLength());
+      }
+      return index.frames();
+    }
+  }
+}
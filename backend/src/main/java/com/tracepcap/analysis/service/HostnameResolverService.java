@@ -1,17 +1,13 @@
 package com.tracepcap.analysis.service;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
+import com.tracepcap.analysis.spi.DissectedFrame;
+import com.tracepcap.analysis.spi.Dissection;
+import com.tracepcap.analysis.spi.FrameSubscriber;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
+import java.util.Set;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
@@ -31,12 +27,14 @@ import org.springframework.stereotype.Service;
  * <p>A single host may be named by several sources; the most authoritative for the host's own
  * identity wins — but winner-picking no longer happens here (#512 slice 4): this extractor
  * records every claim it sees, conflict-preserving, and {@link HostnameAdjudicator} picks the
- * display winner from the persisted claims. Runs as a single read-only tshark pass and never
- * throws — on any failure it returns whatever was collected so far (possibly empty).
+ * display winner from the persisted claims. Rides the capture's shared tshark pass ({@link
+ * DissectionBus}) and never throws — if the pass fails it returns whatever was collected so far
+ * (possibly empty).
  */
 @Slf4j
 @Service
-public class HostnameResolverService {
+public class HostnameResolverService
+    implements FrameSubscriber<HostnameResolverService.Claims> {
 
   public static final String SOURCE_REVERSE_DNS = "reverse_dns";
   public static final String SOURCE_MDNS = "mdns";
@@ -52,129 +50,81 @@ public class HostnameResolverService {
   /** One raw claim: {@code source} asserted that {@code ip} is named {@code hostname}. */
   public record Claim(String ip, String hostname, String source) {}
 
-  /**
-   * Scans the capture and returns a map of IP → resolved hostname for every host whose name could
-   * be derived from DHCP, mDNS, NBNS or reverse DNS.
-   */
-  public List<Claim> resolve(File pcapFile) {
-    // Concurrent: the stdout reader (background thread) writes while the main thread reads size().
-    // Keyed by (ip, hostname, source) to dedupe repeats while preserving distinct claims.
-    Map<Claim, Boolean> result = new ConcurrentHashMap<>();
-
-    // Fields (pipe-separated, first occurrence only):
-    //   0 _ws.col.Protocol  1 ip.src  2 dhcp.option.hostname
-    //   3 dhcp.option.requested_ip_address  4 dns.resp.name  5 dns.a  6 dns.aaaa
-    //   7 dns.ptr.domain_name  8 dns.qry.name  9 nbns.name  10 nbns.addr
-    ProcessBuilder pb =
-        new ProcessBuilder(
-            "tshark",
-            "-r",
-            pcapFile.getAbsolutePath(),
-            "-Y",
-            "dhcp.option.hostname || (mdns && dns.flags.response==1) || nbns.name"
-                + " || (dns.flags.response==1 && dns.qry.type==12)",
-            "-T",
-            "fields",
-            "-E",
-            "separator=|",
-            "-E",
-            "occurrence=f",
-            "-e",
-            "_ws.col.Protocol",
-            "-e",
-            "ip.src",
-            "-e",
-            "dhcp.option.hostname",
-            "-e",
-            "dhcp.option.requested_ip_address",
-            "-e",
-            "dns.resp.name",
-            "-e",
-            "dns.a",
-            "-e",
-            "dns.aaaa",
-            "-e",
-            "dns.ptr.domain_name",
-            "-e",
-            "dns.qry.name",
-            "-e",
-            "nbns.name",
-            "-e",
-            "nbns.addr");
-    pb.redirectErrorStream(false);
-
-    Process process = null;
-    ExecutorService ioExecutor = null;
-    try {
-      process = pb.start();
-      final Process proc = process;
+  /** Read from the shared pass, first occurrence only (as {@code -E occurrence=f} gave). */
+  static final List<String> FIELDS =
+      List.of(
+          "ip.src",
+          "dhcp.option.hostname",
+          "dhcp.option.requested_ip_address",
+          "dns.resp.name",
+          "dns.a",
+          "dns.aaaa",
+          "dns.ptr.domain_name",
+          "dns.qry.name",
+          "nbns.name",
+          "nbns.addr",
+          "dns.flags.response",
+          "dns.qry.type");
+
+  @Override
+  public Set<String> fields() {
+    return Set.copyOf(FIELDS);
+  }
 
-      // Drain stderr so it can't block stdout.
-      Thread stderrThread =
-          new Thread(
-              () -> {
-                try (BufferedReader err =
-                    new BufferedReader(
-                        new InputStreamReader(proc.getErrorStream(), StandardCharsets.UTF_8))) {
-                  while (err.readLine() != null) {
-                    // discard
-                  }
-                } catch (Exception ignored) {
-                  // best-effort
-                }
-              });
-      stderrThread.setDaemon(true);
-      stderrThread.start();
+  @Override
+  public Claims open() {
+    return new Claims();
+  }
 
-      // Read stdout on a separate thread so a tshark that hangs while holding stdout open
-      // can't block the waitFor timeout below indefinitely.
-      ioExecutor = Executors.newSingleThreadExecutor();
-      Future<?> stdoutTask =
-          ioExecutor.submit(
-              () -> {
-                try (BufferedReader reader =
-                    new BufferedReader(
-                        new InputStreamReader(proc.getInputStream(), StandardCharsets.UTF_8))) {
-                  String line;
-                  while ((line = reader.readLine()) != null) {
-                    if (!line.isEmpty()) parseRow(line.split("\\|", -1), result);
-                  }
-                } catch (Exception ignored) {
-                  // best-effort
-                }
-              });
+  /**
+   * Returns every claim the capture's shared dissection saw that can be derived from DHCP, mDNS,
+   * NBNS or reverse DNS.
+   */
+  public List<Claim> resolve(Dissection dissection) {
+    List<Claim> claims = new ArrayList<>(dissection.consumer(this).result.keySet());
+    log.info("Collected {} hostname claim(s) from DHCP/mDNS/NBNS/reverse-DNS", claims.size());
+    return claims;
+  }
 
-      boolean finished = process.waitFor(2, TimeUnit.MINUTES);
-      if (!finished) {
-        log.warn("Hostname resolution timed out; returning {} partial result(s)", result.size());
-      } else {
-        int exit = process.exitValue();
-        if (exit != 0) {
-          log.warn("Hostname resolution: tshark exited with code {}; results may be partial", exit);
-        }
-        // Let the reader drain any output still buffered after the process exited.
-        try {
-          stdoutTask.get(5, TimeUnit.SECONDS);
-        } catch (Exception ignored) {
-          // best-effort
-        }
+  /** One capture's claims, keyed by (ip, hostname, source) to dedupe repeats. */
+  public final class Claims implements FrameSubscriber.FrameConsumer {
+    private final Map<Claim, Boolean> result = new LinkedHashMap<>();
+
+    @Override
+    public void accept(DissectedFrame frame) {
+      // What the pass's own display filter used to be:
+      //   dhcp.option.hostname || (mdns && dns.flags.response==1) || nbns.name
+      //   || (dns.flags.response==1 && dns.qry.type==12)
+      boolean response = frame.isTrue("dns.flags.response");
+      if (!frame.has("dhcp.option.hostname")
+          && !(response && frame.carries("mdns"))
+          && !frame.has("nbns.name")
+          && !(response && frame.values("dns.qry.type").contains("12"))) {
+        return;
       }
-    } catch (InterruptedException e) {
-      log.warn("Hostname resolution interrupted");
-      Thread.currentThread().interrupt();
-    } catch (Exception e) {
-      log.warn("Hostname resolution failed: {}", e.getMessage());
-    } finally {
-      if (process != null) process.destroyForcibly();
-      if (ioExecutor != null) ioExecutor.shutdownNow();
+      String[] f = new String[11];
+      f[0] = protocolOf(frame);
+      for (int i = 0; i < 10; i++) f[i + 1] = frame.first(FIELDS.get(i));
+      parseRow(f, result);
     }
+  }
 
-    log.info("Collected {} hostname claim(s) from DHCP/mDNS/NBNS/reverse-DNS", result.size());
-    return new ArrayList<>(result.keySet());
+  /**
+   * The label the Protocol column would have shown for a frame the filter let through: its
+   * topmost naming protocol.
+   */
+  private static String protocolOf(DissectedFrame frame) {
+    if (frame.carries("dhcp") || frame.carries("bootp")) return "DHCP";
+    if (frame.carries("mdns")) return "MDNS";
+    if (frame.carries("nbns")) return "NBNS";
+    return frame.carries("dns") ? "DNS" : "";
   }
 
   // ── Row parsing ─────────────────────────────────────────────────────────────
 
+  //   0 protocol  1 ip.src  2 dhcp.option.hostname  3 dhcp.option.requested_ip_address
+  //   4 dns.resp.name  5 dns.a  6 dns.aaaa  7 dns.ptr.domain_name  8 dns.qry.name  9 nbns.name
+  //   10 nbns.addr
   private void parseRow(String[] f, Map<Claim, Boolean> result) {
     if (f.length < 11) return;
     String proto = f[0].toUpperCase();
@@ -0,0 +1,220 @@
+package com.tracepcap.analysis.service;
+
+import com.tracepcap.analysis.service.BulkCopyWriter.BinaryRows;
+import com.tracepcap.analysis.service.PcapParserService.ConversationInfo;
+import com.tracepcap.analysis.service.PcapParserService.PacketRecord;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+
+/**
+ * Writes a capture's packets to the database while the parser is still producing them.
+ *
+ * <p>Without it the stages take turns: Postgres is idle for the whole parse, then the parser's CPU
+ * is idle while Postgres ingests. Here the parser encodes each packet as a binary COPY row ({@link
+ * BulkCopyWriter#writePacket}) and hands full segments to a writer thread through a bounded queue,
+ * so the server is ingesting one segment while the parser fills the next. The queue bounds the
+ * memory in flight; when the database is the slower side, the parser waits on it.
+ *
+ * <p><b>Conversations go in ahead of their packets.</b> A packet row references its conversation,
+ * and the foreign key is checked at the end of each COPY, so a conversation is inserted — as it is
+ * at that moment, under an id minted here — in the segment where its first packet appears, and each
+ * segment is two COPYs, conversations then packets. What the rest of the pipeline learns about a
+ * conversation afterwards (final counts, nDPI, Suricata, signatures) is patched onto those rows in
+ * stage 6 ({@link BulkCopyWriter#patchConversations}), keyed by {@link #conversationId}.
+ *
+ * <p><b>One connection, one transaction.</b> The writer borrows the parse stage's transaction's
+ * connection rather than opening its own, so a failed parse still rolls back every row. That is
+ * safe because the thread that owns the connection does nothing with it until {@link #finish}
+ * returns: it is parsing. Were it to issue a statement anyway, the driver would hold it until the
+ * COPY in progress ended, not interleave it.
+ *
+ * <p>Not thread-safe on the parsing side: {@link #onPacket}, {@link #finish} and {@link #close} are
+ * for the thread running the parse.
+ */
+@Slf4j
+final class IngestPipeline implements PcapParserService.PacketListener, AutoCloseable {
+
+  /** Encoded packet bytes per segment, ~5-10k packets: one COPY statement's worth. */
+  static final int SEGMENT_BYTES = 1 << 20;
+
+  /**
+   * Segments waiting for the writer, at most. With one being filled and one being written that is
+   * ten segments in existence, a few tens of MiB whatever the capture's size.
+   */
+  static final int QUEUE_SEGMENTS = 8;
+
+  private record Segment(Buffer conversations, Buffer packets, long packetCount) {}
+
+  private static final Segment END = new Segment(null, null, 0);
+
+  private final UUID fileId;
+  private final String copyPackets;
+  private final PGConnection connection;
+  private final Runnable release;
+  private final BlockingQueue<Segment> queue = new ArrayBlockingQueue<>(QUEUE_SEGMENTS);
+  private final Map<ConversationInfo, UUID> ids = new IdentityHashMap<>();
+  private final Thread writer;
+
+  private Buffer conversations = new Buffer();
+  private Buffer packets = new Buffer();
+  private long segmentPackets;
+  private boolean ended;
+
+  // Written by the writer thread.
+  private volatile Throwable failure;
+  private volatile boolean discarding;
+  private volatile long writtenPackets;
+
+  IngestPipeline(UUID fileId, String copyPackets, PGConnection connection, Runnable release) {
+    this.fileId = fileId;
+    this.copyPackets = copyPackets;
+    this.connection = connection;
+    this.release = release;
+    this.writer = new Thread(this::drain, "ingest-writer-" + fileId);
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  @Override
+  public void onPacket(ConversationInfo conversation, PacketRecord packet) {
+    try {
+      UUID id = ids.get(conversation);
+      if (id == null) {
+        id = BulkCopyWriter.newId();
+        ids.put(conversation, id);
+        BulkCopyWriter.writeConversation(conversations.rows, id, fileId, conversation);
+      }
+      BulkCopyWriter.writePacket(packets.rows, fileId, id, packet);
+    } catch (IOException e) {
+      // Only ever an in-memory buffer underneath.
+      throw new UncheckedIOException(e);
+    }
+    segmentPackets++;
+    if (packets.size() >= SEGMENT_BYTES) handOff();
+  }
+
+  /** The id {@code conversation} was inserted under; null if no packet of it was ever shown. */
+  UUID conversationId(ConversationInfo conversation) {
+    return ids.get(conversation);
+  }
+
+  /**
+   * Hands over the last segment and waits until everything queued is in the database. Returns the
+   * number of packets written; rethrows what stopped the writer, if anything did.
+   */
+  long finish() {
+    if (segmentPackets > 0) handOff();
+    end();
+    join();
+    rethrowFailure();
+    return writtenPackets;
+  }
+
+  /**
+   * Stops the writer — discarding anything it has not started on — and returns the connection. A
+   * no-op after {@link #finish}. Always called before the transaction ends, so the connection is
+   * never rolled back under a COPY in progress.
+   */
+  @Override
+  public void close() {
+    discarding = true;
+    if (!ended) {
+      queue.clear();
+      end();
+    }
+    join();
+    release.run();
+  }
+
+  private void handOff() {
+    rethrowFailure();
+    put(new Segment(conversations, packets, segmentPackets));
+    conversations = new Buffer();
+    packets = new Buffer();
+    segmentPackets = 0;
+  }
+
+  private void end() {
+    ended = true;
+    put(END);
+  }
+
+  private void put(Segment segment) {
+    try {
+      queue.put(segment);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while queueing packets for the database", e);
+    }
+  }
+
+  private void join() {
+    boolean interrupted = false;
+    while (writer.isAlive()) {
+      try {
+        writer.join();
+      } catch (InterruptedException e) {
+        // The writer must be gone before the transaction ends; see close().
+        interrupted = true;
+      }
+    }
+    if (interrupted) Thread.currentThread().interrupt();
+  }
+
+  private void rethrowFailure() {
+    Throwable t = failure;
+    if (t == null) return;
+    if (t instanceof RuntimeException e) throw e;
+    if (t instanceof Error e) throw e;
+    throw new IllegalStateException("Writing packets for " + fileId + " failed", t);
+  }
+
+  /** Writer thread. After a failure it keeps taking segments, so the parser never blocks on it. */
+  private void drain() {
+    while (true) {
+      Segment segment;
+      try {
+        segment = queue.take();
+      } catch (InterruptedException e) {
+        // Nothing interrupts this thread; it ends on END.
+        continue;
+      }
+      if (segment == END) return;
+      if (failure != null || discarding) continue;
+      try {
+        if (segment.conversations().size() > 0) {
+          BulkCopyWriter.copy(
+              connection, BulkCopyWriter.COPY_CONVERSATIONS, segment.conversations());
+        }
+        BulkCopyWriter.copy(connection, copyPackets, segment.packets());
+        writtenPackets += segment.packetCount();
+      } catch (Throwable t) {
+        log.warn("[{}] Packet writer failed: {}", fileId, t.getMessage());
+        failure = t;
+      }
+    }
+  }
+
+  /** Rows encoded on the parsing thread, written out as they are on the writer's. */
+  private static final class Buffer extends ByteArrayOutputStream implements BulkCopyWriter.Body {
+    final BinaryRows rows = new BinaryRows(this);
+
+    Buffer() {
+      super(1 << 16);
+    }
+
+    @Override
+    public long write(BinaryRows out) throws IOException {
+      out.encoded(buf, count);
+      return 0;
+    }
+  }
+}
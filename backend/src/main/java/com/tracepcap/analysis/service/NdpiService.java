@@ -4,6 +4,10 @@ import com.tracepcap.analysis.entity.ConversationEntity;
 import com.tracepcap.analysis.spi.ExtractionManifest;
 import com.tracepcap.analysis.spi.ExtractionTarget;
 import com.tracepcap.analysis.spi.Extractor;
+import com.tracepcap.common.concurrent.IoThreads;
+import com.tracepcap.common.process.SubprocessGovernor;
+import com.tracepcap.common.process.SubprocessGovernor.Budget;
+import com.tracepcap.common.process.SubprocessGovernor.Tool;
 import com.tracepcap.common.stage.Tier;
 import java.io.BufferedReader;
 import java.io.File;
@@ -42,6 +46,12 @@ import org.springframework.stereotype.Service;
 @Service
 public class NdpiService implements Extractor {
 
+  private final SubprocessGovernor governor;
+
+  public NdpiService(SubprocessGovernor governor) {
+    this.governor = governor;
+  }
+
   @Override
   public String name() {
     return ExtractionManifest.NDPI;
@@ -57,12 +67,6 @@ public class NdpiService implements Extractor {
     return ExtractionManifest.NDPI;
   }
 
-  /** Runs first: tshark enrichment reads fields this populates. See Extractor#order(). */
-  @Override
-  public int order() {
-    return 10;
-  }
-
   /** Per-file toggle, chosen at upload. The runner does not know this flag exists. */
   @Override
   public boolean enabledFor(ExtractionTarget target) {
@@ -233,22 +237,12 @@ public class NdpiService implements Extractor {
         new ProcessBuilder(NDPI_BINARY, "-i", pcapFile.getAbsolutePath(), "-v", "2");
 
     try {
-      Process process = pb.start();
-
-      Thread stderrDrainer =
-          new Thread(
-              () -> {
-                try (BufferedReader err =
-                    new BufferedReader(new InputStreamReader(process.getErrorStream()))) {
-                  String line;
-                  while ((line = err.readLine()) != null) {
-                    log.debug("ndpiReader stderr: {}", line);
-                  }
-                } catch (Exception ignored) {
-                }
-              });
-      stderrDrainer.setDaemon(true);
-      stderrDrainer.start();
+      Process process = governor.start(Tool.NDPI_READER, Budget.BATCH, pb);
+
+      IoThreads.drainLines(
+          process.getErrorStream(),
+          "ndpi-reader-stderr",
+          line -> log.debug("ndpiReader stderr: {}", line));
 
       try (BufferedReader reader =
           new BufferedReader(new InputStreamReader(process.getInputStream()))) {
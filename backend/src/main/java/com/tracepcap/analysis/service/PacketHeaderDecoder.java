@@ -0,0 +1,467 @@
+package com.tracepcap.analysis.service;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes the link, network and transport headers of one captured frame into plain fields.
+ *
+ * <p>Covers exactly what {@link PcapParserService} used to ask tshark for: addresses, ports, TTL,
+ * the TCP SYN/ACK bits, the L4 payload, and the ARP sender/target claims. Anything beyond that —
+ * the Protocol and Info columns above all — is tshark's job and stays there.
+ *
+ * <p><b>Mirrors tshark's field semantics, not just the wire format.</b> The parse loop used to take
+ * the <em>first</em> value of every multi-valued field, so the decoder keeps the outermost address
+ * and TTL and the innermost ports, the same values tshark would have put first:
+ *
+ * <ul>
+ *   <li>IP-in-IP, 6in4, GRE and VXLAN are followed into the inner packet for ports and payload; the
+ *       addresses stay the outer ones, except that an inner IPv4 address still wins over an outer
+ *       IPv6 one (the parser always preferred {@code ip.src} over {@code ipv6.src}).
+ *   <li>ICMP and ICMPv6 errors expose the ports of the quoted header, as tshark's dissection of the
+ *       embedded packet does.
+ *   <li>The payload is bounded by the IP and UDP length fields, so Ethernet padding never leaks
+ *       into it.
+ * </ul>
+ *
+ * <p>Known differences, all rare: fragmented datagrams carry no ports here (tshark reports them on
+ * the reassembled final fragment), and tunnels other than the four above are not entered.
+ *
+ * <p>One instance is reused for every frame of a parse; it is not thread-safe.
+ */
+final class PacketHeaderDecoder {
+
+  static final int IPPROTO_ICMP = 1;
+  static final int IPPROTO_IPIP = 4;
+  static final int IPPROTO_TCP = 6;
+  static final int IPPROTO_UDP = 17;
+  static final int IPPROTO_IPV6 = 41;
+  static final int IPPROTO_GRE = 47;
+  static final int IPPROTO_ICMPV6 = 58;
+
+  private static final int ETHERTYPE_IPV4 = 0x0800;
+  private static final int ETHERTYPE_ARP = 0x0806;
+  private static final int ETHERTYPE_IPV6 = 0x86dd;
+  private static final int VXLAN_PORT = 4789;
+
+  /** Guards against pathological tunnel nesting in a crafted capture. */
+  private static final int MAX_DEPTH = 4;
+
+  // Layer 2 (Ethernet only — tshark's eth.src/eth.dst are empty for other link types)
+  long srcMac;
+  long dstMac;
+
+  // First IPv4 and first IPv6 layer seen, outermost first
+  boolean hasIpv4;
+  int ipv4Src;
+  int ipv4Dst;
+  boolean hasIpv6;
+  final byte[] ipv6Src = new byte[16];
+  final byte[] ipv6Dst = new byte[16];
+
+  /** Outermost IPv4 TTL, or -1. ({@code ip.ttl} is IPv4-only; IPv6 hop limit is not reported.) */
+  int ttl;
+
+  /** Innermost transport protocol number reached, or -1. */
+  int ipProtocol;
+
+  boolean hasTcp;
+  boolean hasUdp;
+  int srcPort;
+  int dstPort;
+  boolean syn;
+  boolean ack;
+
+  /** Offset and length of the innermost TCP/UDP payload within the frame; length 0 when none. */
+  int payloadOffset;
+
+  int payloadLength;
+
+  // ARP (IPv4 over Ethernet only)
+  boolean hasArp;
+  long arpSenderMac;
+  int arpSenderIp;
+  int arpTargetIp;
+
+  /** Whether a link type is one this decoder understands. */
+  static boolean supports(int linkType) {
+    return switch (linkType) {
+      case PcapFileReader.LINKTYPE_ETHERNET,
+              PcapFileReader.LINKTYPE_NULL,
+              PcapFileReader.LINKTYPE_LOOP,
+              PcapFileReader.LINKTYPE_RAW,
+              PcapFileReader.LINKTYPE_RAW_OPENBSD,
+              PcapFileReader.LINKTYPE_RAW_BSDOS,
+              PcapFileReader.LINKTYPE_IPV4,
+              PcapFileReader.LINKTYPE_IPV6,
+              PcapFileReader.LINKTYPE_LINUX_SLL,
+              PcapFileReader.LINKTYPE_LINUX_SLL2 ->
+          true;
+      default -> false;
+    };
+  }
+
+  /** Decode one frame. The buffer must be big-endian with position 0; it is not modified. */
+  void decode(int linkType, ByteBuffer frame) {
+    reset();
+    int len = frame.limit();
+    switch (linkType) {
+      case PcapFileReader.LINKTYPE_ETHERNET -> ethernet(frame, 0, len, 0, true);
+      case PcapFileReader.LINKTYPE_NULL, PcapFileReader.LINKTYPE_LOOP -> {
+        // A 4-byte address family (host order for NULL, network order for LOOP) precedes the
+        // packet; the IP version nibble identifies it just as well, whatever the byte order.
+        if (len >= 4) byRawVersion(frame, 4, len, 0);
+      }
+      case PcapFileReader.LINKTYPE_RAW,
+              PcapFileReader.LINKTYPE_RAW_OPENBSD,
+              PcapFileReader.LINKTYPE_RAW_BSDOS,
+              PcapFileReader.LINKTYPE_IPV4,
+              PcapFileReader.LINKTYPE_IPV6 ->
+          byRawVersion(frame, 0, len, 0);
+      case PcapFileReader.LINKTYPE_LINUX_SLL -> {
+        if (len >= 16) etherType(frame, u16(frame, 14), 16, len, 0);
+      }
+      case PcapFileReader.LINKTYPE_LINUX_SLL2 -> {
+        if (len >= 20) etherType(frame, u16(frame, 0), 20, len, 0);
+      }
+      default -> {}
+    }
+  }
+
+  private void reset() {
+    srcMac = -1;
+    dstMac = -1;
+    hasIpv4 = false;
+    hasIpv6 = false;
+    ttl = -1;
+    ipProtocol = -1;
+    hasTcp = false;
+    hasUdp = false;
+    srcPort = -1;
+    dstPort = -1;
+    syn = false;
+    ack = false;
+    payloadOffset = 0;
+    payloadLength = 0;
+    hasArp = false;
+  }
+
+  private void ethernet(ByteBuffer f, int off, int end, int depth, boolean outer) {
+    if (end - off < 14) return;
+    if (outer) {
+      dstMac = mac(f, off);
+      srcMac = mac(f, off + 6);
+    }
+    int type = u16(f, off + 12);
+    int p = off + 14;
+    // 802.1Q / 802.1ad / legacy QinQ tags, possibly stacked
+    while ((type == 0x8100 || type == 0x88a8 || type == 0x9100) && end - p >= 4) {
+      type = u16(f, p + 2);
+      p += 4;
+    }
+    etherType(f, type, p, end, depth);
+  }
+
+  private void etherType(ByteBuffer f, int type, int off, int end, int depth) {
+    switch (type) {
+      case ETHERTYPE_IPV4 -> ipv4(f, off, end, depth);
+      case ETHERTYPE_IPV6 -> ipv6(f, off, end, depth);
+      case ETHERTYPE_ARP -> arp(f, off, end);
+      default -> {}
+    }
+  }
+
+  private void byRawVersion(ByteBuffer f, int off, int end, int depth) {
+    if (end - off < 1) return;
+    int version = (f.get(off) & 0xff) >>> 4;
+    if (version == 4) ipv4(f, off, end, depth);
+    else if (version == 6) ipv6(f, off, end, depth);
+  }
+
+  private void ipv4(ByteBuffer f, int off, int end, int depth) {
+    if (end - off < 20 || depth > MAX_DEPTH) return;
+    int ihl = (f.get(off) & 0x0f) * 4;
+    if (ihl < 20 || end - off < ihl) return;
+    int totalLength = u16(f, off + 2);
+    int fragment = u16(f, off + 6);
+    int proto = f.get(off + 9) & 0xff;
+    if (!hasIpv4) {
+      hasIpv4 = true;
+      ipv4Src = f.getInt(off + 12);
+      ipv4Dst = f.getInt(off + 16);
+    }
+    if (ttl < 0) ttl = f.get(off + 8) & 0xff;
+
+    // A TSO/offloaded capture can record total length 0; trust the frame then, as tshark does.
+    int ipEnd = totalLength >= ihl ? Math.min(end, off + totalLength) : end;
+    boolean fragmented = (fragment & 0x3fff) != 0; // MF set or non-zero offset
+    if (fragmented) {
+      ipProtocol = proto;
+      return;
+    }
+    transport(f, proto, off + ihl, ipEnd, depth, false);
+  }
+
+  private void ipv6(ByteBuffer f, int off, int end, int depth) {
+    if (end - off < 40 || depth > MAX_DEPTH) return;
+    int payloadLen = u16(f, off + 4);
+    int next = f.get(off + 6) & 0xff;
+    if (!hasIpv6) {
+      hasIpv6 = true;
+      f.get(off + 8, ipv6Src, 0, 16);
+      f.get(off + 24, ipv6Dst, 0, 16);
+    }
+    int p = off + 40;
+    // Jumbograms (payload length 0 with a hop-by-hop option) fall back to the frame length.
+    int ipEnd = payloadLen > 0 ? Math.min(end, p + payloadLen) : end;
+
+    // Walk the extension-header chain to the upper-layer protocol.
+    for (int hops = 0; hops < 8; hops++) {
+      switch (next) {
+        case 0, 43, 60 -> { // hop-by-hop, routing, destination options
+          if (ipEnd - p < 8) return;
+          int hdrLen = ((f.get(p + 1) & 0xff) + 1) * 8;
+          next = f.get(p) & 0xff;
+          p += hdrLen;
+        }
+        case 51 -> { // AH
+          if (ipEnd - p < 8) return;
+          int hdrLen = ((f.get(p + 1) & 0xff) + 2) * 4;
+          next = f.get(p) & 0xff;
+          p += hdrLen;
+        }
+        case 44 -> { // fragment
+          if (ipEnd - p < 8) return;
+          int offsetAndFlags = u16(f, p + 2);
+          next = f.get(p) & 0xff;
+          p += 8;
+          if ((offsetAndFlags & 0xfff9) != 0) { // offset or M flag
+            ipProtocol = next;
+            return;
+          }
+        }
+        default -> {
+          if (p > ipEnd) return;
+          transport(f, next, p, ipEnd, depth, false);
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * @param quoted true while decoding the packet quoted inside an ICMP error — only its ports are
+   *     taken, and its (usually absent) payload is not.
+   */
+  private void transport(ByteBuffer f, int proto, int off, int end, int depth, boolean quoted) {
+    ipProtocol = proto;
+    switch (proto) {
+      case IPPROTO_TCP -> tcp(f, off, end, quoted);
+      case IPPROTO_UDP -> udp(f, off, end, depth, quoted);
+      case IPPROTO_IPIP -> ipv4(f, off, end, depth + 1);
+      case IPPROTO_IPV6 -> ipv6(f, off, end, depth + 1);
+      case IPPROTO_GRE -> gre(f, off, end, depth);
+      case IPPROTO_ICMP -> {
+        if (quoted || end - off < 8) return;
+        int type = f.get(off) & 0xff;
+        if (type == 3 || type == 4 || type == 5 || type == 11 || type == 12) {
+          quotedHeader(f, off + 8, end, depth);
+        }
+      }
+      case IPPROTO_ICMPV6 -> {
+        if (quoted || end - off < 8) return;
+        int type = f.get(off) & 0xff;
+        if (type >= 1 && type <= 4) quotedHeader(f, off + 8, end, depth);
+      }
+      default -> {}
+    }
+  }
+
+  private void quotedHeader(ByteBuffer f, int off, int end, int depth) {
+    if (end - off < 1 || depth > MAX_DEPTH) return;
+    int version = (f.get(off) & 0xff) >>> 4;
+    int proto;
+    int l4;
+    if (version == 4 && end - off >= 20) {
+      int ihl = (f.get(off) & 0x0f) * 4;
+      if (ihl < 20) return;
+      proto = f.get(off + 9) & 0xff;
+      l4 = off + ihl;
+    } else if (version == 6 && end - off >= 40) {
+      proto = f.get(off + 6) & 0xff;
+      l4 = off + 40;
+    } else {
+      return;
+    }
+    if (proto == IPPROTO_TCP || proto == IPPROTO_UDP) {
+      int keep = ipProtocol;
+      transport(f, proto, l4, end, depth + 1, true);
+      ipProtocol = keep;
+    }
+  }
+
+  private void tcp(ByteBuffer f, int off, int end, boolean quoted) {
+    if (end - off < 4) return;
+    hasTcp = true;
+    hasUdp = false;
+    srcPort = u16(f, off);
+    dstPort = u16(f, off + 2);
+    if (end - off >= 14) {
+      int flags = f.get(off + 13) & 0xff;
+      syn = (flags & 0x02) != 0;
+      ack = (flags & 0x10) != 0;
+    }
+    if (quoted || end - off < 20) return;
+    int hdrLen = ((f.get(off + 12) & 0xff) >>> 4) * 4;
+    // No payload of its own leaves an outer UDP payload in place (tshark's udp.payload fallback).
+    if (hdrLen < 20 || end - off <= hdrLen) return;
+    payloadOffset = off + hdrLen;
+    payloadLength = end - payloadOffset;
+  }
+
+  private void udp(ByteBuffer f, int off, int end, int depth, boolean quoted) {
+    if (end - off < 4) return;
+    int sport = u16(f, off);
+    int dport = u16(f, off + 2);
+    // The outermost UDP layer owns the UDP ports and payload, as the first value of tshark's
+    // udp.srcport/udp.payload would. A TCP layer found inside a VXLAN tunnel overrides them later,
+    // because the parse loop prefers tcp.srcport whenever it is present.
+    if (hasUdp || hasTcp) return;
+    hasUdp = true;
+    srcPort = sport;
+    dstPort = dport;
+    if (quoted || end - off < 8) return;
+    int udpLen = u16(f, off + 4);
+    int udpEnd = udpLen >= 8 ? Math.min(end, off + udpLen) : end;
+    if (udpEnd - off > 8) {
+      payloadOffset = off + 8;
+      payloadLength = udpEnd - payloadOffset;
+    }
+    if (dport == VXLAN_PORT && udpEnd - off >= 16 + 14 && depth < MAX_DEPTH) {
+      ethernet(f, off + 16, udpEnd, depth + 1, false);
+    }
+  }
+
+  private void gre(ByteBuffer f, int off, int end, int depth) {
+    if (end - off < 4) return;
+    int flags = u16(f, off);
+    if ((flags & 0x0007) != 0) return; // only version 0 carries an EtherType payload
+    int type = u16(f, off + 2);
+    int p = off + 4;
+    if ((flags & 0x8000) != 0) p += 4; // checksum + reserved
+    if ((flags & 0x2000) != 0) p += 4; // key
+    if ((flags & 0x1000) != 0) p += 4; // sequence number
+    if (p > end) return;
+    if (type == 0x6558) ethernet(f, p, end, depth + 1, false); // transparent Ethernet bridging
+    else etherType(f, type, p, end, depth + 1);
+  }
+
+  private void arp(ByteBuffer f, int off, int end) {
+    if (end - off < 28) return;
+    int hwType = u16(f, off);
+    int protoType = u16(f, off + 2);
+    int hwLen = f.get(off + 4) & 0xff;
+    int protoLen = f.get(off + 5) & 0xff;
+    if (hwType != 1 || protoType != ETHERTYPE_IPV4 || hwLen != 6 || protoLen != 4) return;
+    hasArp = true;
+    arpSenderMac = mac(f, off + 8);
+    arpSenderIp = f.getInt(off + 14);
+    arpTargetIp = f.getInt(off + 24);
+  }
+
+  private static int u16(ByteBuffer f, int off) {
+    return f.getShort(off) & 0xffff;
+  }
+
+  private static long mac(ByteBuffer f, int off) {
+    return ((long) u16(f, off) << 32) | Integer.toUnsignedLong(f.getInt(off + 2));
+  }
+
+  // ---------------------------------------------------------------------------
+  // Formatting — tshark's spelling of each address type
+  // ---------------------------------------------------------------------------
+
+  static String formatIpv4(int addr) {
+    return ((addr >>> 24) & 0xff)
+        + "."
+        + ((addr >>> 16) & 0xff)
+        + "."
+        + ((addr >>> 8) & 0xff)
+        + "."
+        + (addr & 0xff);
+  }
+
+  /**
+   * RFC 5952 text form as Wireshark prints it: lower-case, leading zeros dropped, the first longest
+   * run of two or more zero groups collapsed to {@code ::}, and IPv4-mapped/compatible addresses
+   * ending in dotted quad. {@link java.net.Inet6Address#getHostAddress()} does none of the
+   * compression, so its strings would never match a tshark-parsed conversation.
+   */
+  static String formatIpv6(byte[] a) {
+    int[] words = new int[8];
+    for (int i = 0; i < 8; i++) words[i] = ((a[2 * i] & 0xff) << 8) | (a[2 * i + 1] & 0xff);
+
+    int bestBase = -1;
+    int bestLen = 0;
+    int curBase = -1;
+    int curLen = 0;
+    for (int i = 0; i < 8; i++) {
+      if (words[i] == 0) {
+        if (curBase < 0) {
+          curBase = i;
+          curLen = 1;
+        } else {
+          curLen++;
+        }
+      } else if (curBase >= 0) {
+        if (curLen > bestLen) {
+          bestBase = curBase;
+          bestLen = curLen;
+        }
+        curBase = -1;
+      }
+    }
+    if (curBase >= 0 && curLen > bestLen) {
+      bestBase = curBase;
+      bestLen = curLen;
+    }
+    if (bestLen < 2) bestBase = -1;
+
+    StringBuilder sb = new StringBuilder(39);
+    for (int i = 0; i < 8; i++) {
+      if (bestBase >= 0 && i >= bestBase && i < bestBase + bestLen) {
+        if (i == bestBase) sb.append(':');
+        continue;
+      }
+      if (i != 0) sb.append(':');
+      if (i == 6 && bestBase == 0 && (bestLen == 6 || (bestLen == 5 && words[5] == 0xffff))) {
+        sb.append(a[12] & 0xff).append('.').append(a[13] & 0xff).append('.');
+        sb.append(a[14] & 0xff).append('.').append(a[15] & 0xff);
+        return sb.toString();
+      }
+      sb.append(Integer.toHexString(words[i]));
+    }
+    if (bestBase >= 0 && bestBase + bestLen == 8) sb.append(':');
+    return sb.toString();
+  }
+
+  static String formatMac(long mac) {
+    char[] out = new char[17];
+    for (int i = 0; i < 6; i++) {
+      int b = (int) (mac >>> (40 - 8 * i)) & 0xff;
+      out[i * 3] = HEX[b >>> 4];
+      out[i * 3 + 1] = HEX[b & 0x0f];
+      if (i < 5) out[i * 3 + 2] = ':';
+    }
+    return new String(out);
+  }
+
+  /** A copy of up to {@code maxBytes} payload bytes, or null when there is no payload. */
+  byte[] payload(ByteBuffer frame, int maxBytes) {
+    if (payloadLength <= 0) return null;
+    byte[] out = new byte[Math.min(payloadLength, maxBytes)];
+    frame.get(payloadOffset, out);
+    return out;
+  }
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+}
@@ -4,8 +4,10 @@ import com.tracepcap.analysis.spi.PacketPartitions;
 import java.util.UUID;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 /**
  * Serves {@link PacketPartitions} with DDL against the partitioned {@code packets} table (#394).
@@ -13,12 +15,26 @@ import org.springframework.stereotype.Component;
  * <p>Raw JDBC rather than JPA: these are {@code CREATE TABLE} / {@code DROP TABLE} statements, which
  * have no entity to map and must not be caught up in Hibernate's flush ordering — the partition has
  * to be committed and visible before any packet insert for the file is attempted.
+ *
+ * <p><b>Load, then index, then attach.</b> {@link #loadPartition} does not create the partition
+ * and then fill it. A partition created {@code PARTITION OF packets} inherits the parent's four
+ * indexes and primary key, and every row loaded into it updates all five plus a foreign-key check,
+ * one row at a time. Instead the table is created on its own, loaded bare, indexed in one sorted
+ * build per index, and only then attached: Postgres adopts indexes that match the parent's rather
+ * than building them again, and a {@code CHECK} on {@code file_id} lets it skip the scan that
+ * would otherwise prove every row belongs in the partition. {@link #stagePartition} does the same
+ * for a load the caller drives itself, such as pipelined ingest's writer.
  */
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class PacketPartitionAdapter implements PacketPartitions {
 
+  private static final String STAGED_LOAD = "packet_partition_load";
+  private static final String STAGED_ATTACH = "packet_partition_attach";
+  private static final String ADD_CONVERSATIONS_FK =
+      " ADD FOREIGN KEY (conversation_id) REFERENCES conversations (id) ON DELETE CASCADE";
+
   private final JdbcTemplate jdbc;
 
   /**
@@ -48,21 +64,187 @@ public class PacketPartitionAdapter implements PacketPartitions {
     // The FK to conversations lives on the partition, not the parent, so DROP TABLE takes the
     // constraint with it. Adding it separately means it must be guarded: unlike CREATE TABLE,
     // ADD CONSTRAINT has no IF NOT EXISTS, and this method is called more than once per file.
+    // The guard names the referenced table because the partition also has the parent's FK to
+    // files, cloned onto it by PARTITION OF — counting every FK would find that one and skip this.
     Integer existing =
         jdbc.queryForObject(
-            "SELECT count(*) FROM pg_constraint WHERE conrelid = ?::regclass AND contype = 'f'",
+            "SELECT count(*) FROM pg_constraint WHERE conrelid = ?::regclass AND contype = 'f'"
+                + " AND confrelid = 'conversations'::regclass",
             Integer.class,
             name);
     if (existing != null && existing == 0) {
-      jdbc.execute(
-          "ALTER TABLE "
-              + name
-              + " ADD FOREIGN KEY (conversation_id) REFERENCES conversations (id) ON DELETE CASCADE");
+      jdbc.execute("ALTER TABLE " + name + ADD_CONVERSATIONS_FK);
     }
 
     log.debug("Ensured packet partition {} for file {}", name, fileId);
   }
 
+  /**
+   * Builds the partition detached and attaches it once loaded; see the class comment. Every step
+   * runs under a savepoint in the caller's transaction — which must exist, or there is nothing to
+   * roll back to — so if any of them fails, the half-built table and whatever was loaded into it
+   * are rolled back and the load is run again the {@linkplain PacketPartitions#loadPartition
+   * default} way. The same goes when the partition already exists: a retry has nothing to stage.
+   */
+  @Override
+  public long loadPartition(UUID fileId, PacketLoad load) {
+    String name = partitionName(fileId);
+    if (!TransactionSynchronizationManager.isActualTransactionActive() || exists(name)) {
+      return PacketPartitions.super.loadPartition(fileId, load);
+    }
+
+    jdbc.execute("SAVEPOINT " + STAGED_LOAD);
+    long t = System.currentTimeMillis();
+    long loaded;
+    long loadMs;
+    long indexMs;
+    try {
+      createStaged(name, fileId);
+      loaded = load.into(name);
+      loadMs = System.currentTimeMillis() - t;
+      index(name);
+      indexMs = System.currentTimeMillis() - t - loadMs;
+      attach(name, fileId);
+      jdbc.execute("RELEASE SAVEPOINT " + STAGED_LOAD);
+    } catch (DataAccessException e) {
+      jdbc.execute("ROLLBACK TO SAVEPOINT " + STAGED_LOAD);
+      jdbc.execute("RELEASE SAVEPOINT " + STAGED_LOAD);
+      log.warn(
+          "[{}] Staged load of packet partition {} failed after {}ms, loading through packets"
+              + " instead: {}",
+          fileId,
+          name,
+          System.currentTimeMillis() - t,
+          e.getMostSpecificCause().getMessage());
+      return PacketPartitions.super.loadPartition(fileId, load);
+    }
+
+    log.info(
+        "[{}] Packet partition {} staged: {}ms  (load {}ms, indexes {}ms, attach {}ms; {} rows)",
+        fileId,
+        name,
+        System.currentTimeMillis() - t,
+        loadMs,
+        indexMs,
+        System.currentTimeMillis() - t - loadMs - indexMs,
+        loaded);
+    return loaded;
+  }
+
+  /**
+   * Creates the partition on its own, as {@link #loadPartition} does, and leaves the caller to fill
+   * it. Unlike there, a failed attach cannot ask for the rows again: it is rolled back to the
+   * loaded table, whose rows are then copied through {@code packets} into a partition created the
+   * ordinary way — one {@code INSERT ... SELECT} instead of a second parse.
+   */
+  @Override
+  public StagedPartition stagePartition(UUID fileId) {
+    String name = partitionName(fileId);
+    if (!TransactionSynchronizationManager.isActualTransactionActive() || exists(name)) {
+      return PacketPartitions.super.stagePartition(fileId);
+    }
+
+    jdbc.execute("SAVEPOINT " + STAGED_LOAD);
+    try {
+      createStaged(name, fileId);
+      jdbc.execute("RELEASE SAVEPOINT " + STAGED_LOAD);
+    } catch (DataAccessException e) {
+      jdbc.execute("ROLLBACK TO SAVEPOINT " + STAGED_LOAD);
+      jdbc.execute("RELEASE SAVEPOINT " + STAGED_LOAD);
+      log.warn(
+          "[{}] Could not stage packet partition {}, writing through packets instead: {}",
+          fileId,
+          name,
+          e.getMostSpecificCause().getMessage());
+      return PacketPartitions.super.stagePartition(fileId);
+    }
+
+    return new StagedPartition() {
+      @Override
+      public String table() {
+        return name;
+      }
+
+      @Override
+      public void attach() {
+        attachStaged(name, fileId);
+      }
+    };
+  }
+
+  private void attachStaged(String name, UUID fileId) {
+    long t = System.currentTimeMillis();
+    jdbc.execute("SAVEPOINT " + STAGED_ATTACH);
+    try {
+      index(name);
+      long indexMs = System.currentTimeMillis() - t;
+      attach(name, fileId);
+      jdbc.execute("RELEASE SAVEPOINT " + STAGED_ATTACH);
+      log.info(
+          "[{}] Packet partition {} attached: {}ms  (indexes {}ms, attach {}ms)",
+          fileId,
+          name,
+          System.currentTimeMillis() - t,
+          indexMs,
+          System.currentTimeMillis() - t - indexMs);
+    } catch (DataAccessException e) {
+      // Back to the loaded, unindexed table: its rows are all that is left of the parse.
+      jdbc.execute("ROLLBACK TO SAVEPOINT " + STAGED_ATTACH);
+      jdbc.execute("RELEASE SAVEPOINT " + STAGED_ATTACH);
+      log.warn(
+          "[{}] Attaching packet partition {} failed after {}ms, copying it through packets"
+              + " instead: {}",
+          fileId,
+          name,
+          System.currentTimeMillis() - t,
+          e.getMostSpecificCause().getMessage());
+      String loaded = name + "_staged";
+      jdbc.execute("ALTER TABLE " + name + " RENAME TO " + loaded);
+      ensurePartition(fileId);
+      // LIKE packets gave the staged table the parent's columns in the parent's order.
+      jdbc.execute("INSERT INTO packets SELECT * FROM " + loaded);
+      jdbc.execute("DROP TABLE " + loaded);
+    }
+  }
+
+  /** The partition's table, standing alone: no keys or indexes yet, so loading it is cheap. */
+  private void createStaged(String name, UUID fileId) {
+    // LIKE copies columns, NOT NULLs and defaults — not indexes or keys, which is the point.
+    jdbc.execute("CREATE TABLE " + name + " (LIKE packets INCLUDING DEFAULTS)");
+    jdbc.execute(
+        "ALTER TABLE "
+            + name
+            + " ADD CONSTRAINT "
+            + name
+            + "_file CHECK (file_id IS NOT NULL AND file_id = '"
+            + fileId
+            + "')");
+  }
+
+  /** Builds a loaded staged table's key, indexes and foreign key, each in one pass. */
+  private void index(String name) {
+    // The same key and indexes the parent declares (V41), so ATTACH adopts each one as is.
+    jdbc.execute("ALTER TABLE " + name + " ADD PRIMARY KEY (id, file_id)");
+    jdbc.execute("CREATE INDEX ON " + name + " (file_id)");
+    jdbc.execute("CREATE INDEX ON " + name + " (conversation_id)");
+    jdbc.execute("CREATE INDEX ON " + name + " (timestamp)");
+    jdbc.execute("CREATE INDEX ON " + name + " (file_id, packet_number)");
+    // One validating join over the loaded rows instead of a trigger call per row.
+    jdbc.execute("ALTER TABLE " + name + ADD_CONVERSATIONS_FK);
+  }
+
+  private void attach(String name, UUID fileId) {
+    jdbc.execute(
+        "ALTER TABLE packets ATTACH PARTITION " + name + " FOR VALUES IN ('" + fileId + "')");
+    // Implied by the partition bound from here on.
+    jdbc.execute("ALTER TABLE " + name + " DROP CONSTRAINT " + name + "_file");
+  }
+
+  private boolean exists(String name) {
+    return jdbc.queryForObject("SELECT to_regclass(?)::text", String.class, "public." + name)
+        != null;
+  }
+
   @Override
   public boolean dropPartition(UUID fileId) {
     String name = partitionName(fileId);
@@ -0,0 +1,371 @@
+package com.tracepcap.analysis.service;
+
+import com.tracepcap.analysis.service.PcapParserService.PacketInfo;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Where streaming ingest puts packets instead of the heap.
+ *
+ * <p>In memory mode every {@link PacketInfo} sits in its conversation's list from the moment it is
+ * parsed until stage 6 inserts it, so the heap has to hold the whole capture (#779) — which is why
+ * the upload cap is a fraction of {@code APP_MEMORY_MB}. Here each packet is appended to a temp
+ * file as it is parsed, and what stays in heap is per conversation (its counters, and a {@link
+ * Chain} of three numbers), not per packet.
+ *
+ * <p>Two ways back in, matching the two places that read packets:
+ *
+ * <ul>
+ *   <li>{@link #cursor()} — one sequential pass over every record, in parse order. Stage 6 inserts
+ *       from it.
+ *   <li>{@link Chain} — one conversation's packets, found through a back-pointer each record
+ *       carries to the previous record of the same conversation. Payload signatures read these,
+ *       and only for conversations whose header criteria already matched.
+ * </ul>
+ *
+ * <p>Record layout, big-endian: {@code int length} (of what follows), {@code int} conversation
+ * ordinal, {@code long} previous record of the conversation (-1 for the first), {@code long} frame
+ * number, {@code long} timestamp (the parser's LocalDateTime as if it were UTC — exact, and no
+ * time-zone round trip), {@code int} size, {@code int} src and dst port (-1 for none), {@code int}
+ * dictionary ids for src IP, dst IP, protocol and detected file type (-1 for null), {@code short}
+ * payload length (-1 for null) and the payload bytes, {@code int} info length (-1 for null) and its
+ * UTF-8 bytes. Addresses, protocols and file types are ids into an in-heap {@link
+ * StringDictionary}, so their text is not written once per packet.
+ *
+ * <p>Single-threaded, like the parse that fills it. The file is deleted by {@link #close()}.
+ */
+@Slf4j
+final class PacketSpill implements Closeable {
+
+  private static final int WRITE_BUFFER_BYTES = 1 << 20;
+  private static final int READ_BUFFER_BYTES = 1 << 20;
+  // ordinal, prev, frame, timestamp, size, ports, 4 dictionary ids, payload len, info len
+  private static final int FIXED_BYTES = 4 + 8 + 8 + 8 + 4 + 4 + 4 + 4 * 4 + 2 + 4;
+
+
+  private final Path path;
+  private final FileChannel channel;
+  private final ByteBuffer out = ByteBuffer.allocate(WRITE_BUFFER_BYTES);
+  private ByteBuffer scratch = ByteBuffer.allocate(512);
+  /** Logical end of the file, including what is still in {@link #out}. */
+  private long end;
+
+  private final StringDictionary dictionary = new StringDictionary();
+  private int conversations;
+  private long records;
+
+  private PacketSpill(Path path, FileChannel channel) {
+    this.path = path;
+    this.channel = channel;
+  }
+
+  static PacketSpill create() throws IOException {
+    Path path = Files.createTempFile("tracepcap-packets-", ".spill");
+    try {
+      FileChannel channel =
+          FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      return new PacketSpill(path, channel);
+    } catch (IOException e) {
+      Files.deleteIfExists(path);
+      throw e;
+    }
+  }
+
+  /** A new, empty conversation. Its ordinal is its position in creation order, from 0. */
+  Chain newChain() {
+    return new Chain(this, conversations++);
+  }
+
+  int conversationCount() {
+    return conversations;
+  }
+
+  long recordCount() {
+    return records;
+  }
+
+  long sizeBytes() {
+    return end;
+  }
+
+  void append(Chain chain, PacketInfo p) {
+    byte[] payload = p.getPayload();
+    byte[] info = p.getInfo() != null ? p.getInfo().getBytes(StandardCharsets.UTF_8) : null;
+    int length =
+        FIXED_BYTES + (payload != null ? payload.length : 0) + (info != null ? info.length : 0);
+
+    if (scratch.capacity() < 4 + length) {
+      scratch = ByteBuffer.allocate(Math.max(4 + length, scratch.capacity() * 2));
+    }
+    ByteBuffer b = scratch.clear();
+    b.putInt(length);
+    b.putInt(chain.ordinal);
+    b.putLong(chain.tail);
+    b.putLong(p.getPacketNumber());
+    b.putLong(p.getTimestamp().toInstant(ZoneOffset.UTC).toEpochMilli());
+    b.putInt(p.getPacketSize());
+    b.putInt(p.getSrcPort() != null ? p.getSrcPort() : -1);
+    b.putInt(p.getDstPort() != null ? p.getDstPort() : -1);
+    b.putInt(dictionary.idOf(p.getSrcIp()));
+    b.putInt(dictionary.idOf(p.getDstIp()));
+    b.putInt(dictionary.idOf(p.getProtocol()));
+    b.putInt(dictionary.idOf(p.getDetectedFileType()));
+    if (payload == null) {
+      b.putShort((short) -1);
+    } else {
+      b.putShort((short) payload.length);
+      b.put(payload);
+    }
+    if (info == null) {
+      b.putInt(-1);
+    } else {
+      b.putInt(info.length);
+      b.put(info);
+    }
+    b.flip();
+
+    try {
+      if (out.remaining() < b.remaining()) drain();
+      if (out.remaining() < b.remaining()) {
+        writeFully(b); // larger than the whole buffer: a multi-kilobyte Info column
+      } else {
+        out.put(b);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Writing packet spill " + path + " failed", e);
+    }
+
+    chain.tail = end;
+    chain.count++;
+    end += 4 + length;
+    records++;
+  }
+
+  /** Pushes buffered records to the file. Reads call it, so a record is readable once appended. */
+  void flush() {
+    try {
+      drain();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Writing packet spill " + path + " failed", e);
+    }
+  }
+
+  /** Every record in the order it was appended. */
+  Cursor cursor() {
+    flush();
+    return new Cursor();
+  }
+
+  @Override
+  public void close() {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      log.warn("Closing packet spill {} failed: {}", path, e.getMessage());
+    }
+    try {
+      Files.deleteIfExists(path);
+    } catch (IOException e) {
+      log.warn("Deleting packet spill {} failed: {}", path, e.getMessage());
+    }
+  }
+
+  private void drain() throws IOException {
+    out.flip();
+    writeFully(out);
+    out.clear();
+  }
+
+  private void writeFully(ByteBuffer b) throws IOException {
+    while (b.hasRemaining()) channel.write(b);
+  }
+
+  private void readFully(ByteBuffer b, long position) throws IOException {
+    while (b.hasRemaining()) {
+      int n = channel.read(b, position);
+      if (n < 0) throw new EOFException("Packet spill " + path + " ends at " + position);
+      position += n;
+    }
+  }
+
+  /** Decodes the record body {@code b} is positioned at (past its length); returns the ordinal. */
+  private int decode(ByteBuffer b, PacketInfo p) {
+    int ordinal = b.getInt();
+    b.getLong(); // previous record; only chains follow it
+    p.setPacketNumber(b.getLong());
+    long millis = b.getLong();
+    p.setTimestamp(
+        LocalDateTime.ofEpochSecond(
+            Math.floorDiv(millis, 1000L),
+            (int) Math.floorMod(millis, 1000L) * 1_000_000,
+            ZoneOffset.UTC));
+    p.setPacketSize(b.getInt());
+    int srcPort = b.getInt();
+    int dstPort = b.getInt();
+    p.setSrcPort(srcPort >= 0 ? srcPort : null);
+    p.setDstPort(dstPort >= 0 ? dstPort : null);
+    p.setSrcIp(dictionary.valueOf(b.getInt()));
+    p.setDstIp(dictionary.valueOf(b.getInt()));
+    p.setProtocol(dictionary.valueOf(b.getInt()));
+    p.setDetectedFileType(dictionary.valueOf(b.getInt()));
+    short payloadLength = b.getShort();
+    if (payloadLength < 0) {
+      p.setPayload(null);
+    } else {
+      byte[] payload = new byte[payloadLength];
+      b.get(payload);
+      p.setPayload(payload);
+    }
+    int infoLength = b.getInt();
+    if (infoLength < 0) {
+      p.setInfo(null);
+    } else {
+      byte[] info = new byte[infoLength];
+      b.get(info);
+      p.setInfo(new String(info, StandardCharsets.UTF_8));
+    }
+    return ordinal;
+  }
+
+  private PacketInfo readAt(long offset) throws IOException {
+    ByteBuffer len = ByteBuffer.allocate(4);
+    readFully(len, offset);
+    ByteBuffer body = ByteBuffer.allocate(len.flip().getInt());
+    readFully(body, offset + 4);
+    PacketInfo p = new PacketInfo();
+    decode(body.flip(), p);
+    return p;
+  }
+
+  private long previousOf(long offset) throws IOException {
+    ByteBuffer b = ByteBuffer.allocate(8);
+    readFully(b, offset + 4 + 4);
+    return b.flip().getLong();
+  }
+
+  /**
+   * One conversation's place in the spill: its ordinal and the offset of its newest record.
+   *
+   * <p>Iterating walks the back-pointers once to collect the offsets, then reads forward, so the
+   * packets come back in the order they were parsed — the same order the in-memory list has.
+   */
+  static final class Chain implements Iterable<PacketInfo> {
+    private final PacketSpill spill;
+    final int ordinal;
+    private long tail = -1;
+    private int count;
+
+    private Chain(PacketSpill spill, int ordinal) {
+      this.spill = spill;
+      this.ordinal = ordinal;
+    }
+
+    @Override
+    public Iterator<PacketInfo> iterator() {
+      spill.flush();
+      long[] offsets = new long[count];
+      try {
+        long at = tail;
+        for (int i = count - 1; i >= 0; i--) {
+          offsets[i] = at;
+          at = spill.previousOf(at);
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException("Reading packet spill " + spill.path + " failed", e);
+      }
+      return new Iterator<>() {
+        private int next;
+
+        @Override
+        public boolean hasNext() {
+          return next < offsets.length;
+        }
+
+        @Override
+        public PacketInfo next() {
+          if (!hasNext()) throw new NoSuchElementException();
+          try {
+            return spill.readAt(offsets[next++]);
+          } catch (IOException e) {
+            throw new UncheckedIOException("Reading packet spill " + spill.path + " failed", e);
+          }
+        }
+      };
+    }
+  }
+
+  /**
+   * Sequential pass over every record. Each {@link #next()} yields a fresh {@link PacketInfo}: the
+   * caller batches them, so reusing one instance would alias every element of the batch.
+   */
+  final class Cursor {
+    private final ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_BYTES).flip();
+    /** File offset just past the last byte read into {@link #in}. */
+    private long readEnd;
+    private int ordinal = -1;
+    private PacketInfo packet;
+
+    private Cursor() {}
+
+    boolean next() {
+      if (readEnd - in.remaining() >= end) return false;
+      try {
+        fill(4);
+        int length = in.getInt();
+        ByteBuffer body;
+        if (length <= in.capacity()) {
+          fill(length);
+          body = in;
+        } else {
+          // Larger than the read window (a very long Info): read it on its own rather than growing
+          // the window for every record after it.
+          int buffered = in.remaining();
+          body = ByteBuffer.allocate(length).put(in);
+          readFully(body, readEnd);
+          readEnd += length - buffered;
+          body.flip();
+        }
+        int recordEnd = body.position() + length;
+        packet = new PacketInfo();
+        ordinal = decode(body, packet);
+        body.position(recordEnd);
+        return true;
+      } catch (IOException e) {
+        throw new UncheckedIOException("Reading packet spill " + path + " failed", e);
+      }
+    }
+
+    /** Creation-order ordinal of the current record's conversation; see {@link #newChain()}. */
+    int ordinal() {
+      return ordinal;
+    }
+
+    PacketInfo packet() {
+      return packet;
+    }
+
+    private void fill(int bytes) throws IOException {
+      if (in.remaining() >= bytes) return;
+      in.compact();
+      while (in.position() < bytes) {
+        int n = channel.read(in, readEnd);
+        if (n < 0) throw new EOFException("Packet spill " + path + " truncated at " + readEnd);
+        readEnd += n;
+      }
+      in.flip();
+    }
+  }
+}
@@ -0,0 +1,363 @@
+package com.tracepcap.analysis.service;
+
+import com.tracepcap.analysis.service.PcapParserService.PacketRecord;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Memory-mode packets, one column per field instead of one object per packet.
+ *
+ * <p>A {@code PacketInfo} cost ~776 bytes (#779): an object header and eleven references, a boxed
+ * frame number and size, a LocalDateTime that is three objects, the payload as a hex String twice
+ * the size of its bytes, and an Info String. Pooling the addresses and protocols saved ~150 of
+ * those. Here a packet is a row index: 52 bytes of fixed-width columns, plus its payload and Info
+ * bytes in a shared {@link Arena} — the payload as bytes, not hex — plus 4 bytes for its slot in
+ * its conversation's {@link Rows}. Addresses, protocols and file types are {@link
+ * StringDictionary} ids.
+ *
+ * <p>Readers get a flyweight: {@link Rows#iterator()} returns one {@link View} repositioned on each
+ * {@code next()}, so a pass over a conversation allocates nothing per packet beyond the strings its
+ * getters decode. A caller that keeps a packet past the next step takes {@link
+ * PacketRecord#toPacketInfo()}.
+ *
+ * <p>Append-only and single-threaded: filled by the parse, read by the stages after it.
+ */
+final class PacketStore {
+
+  private static final int INITIAL_ROWS = 1 << 12;
+
+  private final StringDictionary dictionary = new StringDictionary();
+  private final Arena arena = new Arena();
+
+  private int rows;
+  private long[] frameNumber = new long[INITIAL_ROWS];
+  private long[] epochMicros = new long[INITIAL_ROWS];
+  private int[] size = new int[INITIAL_ROWS];
+  private int[] srcPort = new int[INITIAL_ROWS];
+  private int[] dstPort = new int[INITIAL_ROWS];
+  private int[] srcIp = new int[INITIAL_ROWS];
+  private int[] dstIp = new int[INITIAL_ROWS];
+  private int[] protocol = new int[INITIAL_ROWS];
+  private int[] fileType = new int[INITIAL_ROWS];
+  /** Arena address of the row's payload and Info; see {@link Arena}. */
+  private long[] variable = new long[INITIAL_ROWS];
+
+  /** A new, empty conversation. */
+  Rows newRows() {
+    return new Rows(this);
+  }
+
+  /** A flyweight for reading rows by the index {@link #append} returns; see {@link View#at}. */
+  View newView() {
+    return new View(this);
+  }
+
+  int rowCount() {
+    return rows;
+  }
+
+  /** Heap held by the columns and the arena, for the parse log; excludes the dictionary. */
+  long retainedBytes() {
+    return (long) frameNumber.length * (8 + 8 + 4 * 7 + 8) + arena.retainedBytes();
+  }
+
+  /**
+   * Appends one packet to {@code to}. Ports are {@link FlowTable#NO_PORT} and {@code payload} null
+   * when the packet has none; the timestamp is the parser's LocalDateTime, kept as microseconds of that local time
+   * read as UTC — exact, with no time-zone round trip. Returns the new row's index.
+   */
+  int append(
+      Rows to,
+      long frame,
+      LocalDateTime timestamp,
+      int packetSize,
+      String src,
+      int sport,
+      String dst,
+      int dport,
+      String proto,
+      String info,
+      byte[] payload,
+      String detectedFileType) {
+    if (rows == frameNumber.length) grow();
+    int r = rows++;
+    frameNumber[r] = frame;
+    epochMicros[r] =
+        timestamp.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + timestamp.getNano() / 1_000;
+    size[r] = packetSize;
+    srcPort[r] = sport;
+    dstPort[r] = dport;
+    srcIp[r] = dictionary.idOf(src);
+    dstIp[r] = dictionary.idOf(dst);
+    protocol[r] = dictionary.idOf(proto);
+    fileType[r] = dictionary.idOf(detectedFileType);
+    byte[] infoBytes = info != null ? info.getBytes(StandardCharsets.UTF_8) : null;
+    variable[r] = arena.append(payload, infoBytes);
+    to.add(r);
+    return r;
+  }
+
+  /**
+   * Appends copies of {@code from}'s rows, which belong to another store, to {@code to}. Column
+   * values and arena bytes are copied as they are; only dictionary ids are translated. Used to fold
+   * a parallel parse's per-chunk stores into one.
+   */
+  void appendAll(Rows to, Rows from) {
+    PacketStore src = from.store;
+    for (int i = 0; i < from.count; i++) {
+      int s = from.index[i];
+      if (rows == frameNumber.length) grow();
+      int r = rows++;
+      frameNumber[r] = src.frameNumber[s];
+      epochMicros[r] = src.epochMicros[s];
+      size[r] = src.size[s];
+      srcPort[r] = src.srcPort[s];
+      dstPort[r] = src.dstPort[s];
+      srcIp[r] = dictionary.idOf(src.dictionary.valueOf(src.srcIp[s]));
+      dstIp[r] = dictionary.idOf(src.dictionary.valueOf(src.dstIp[s]));
+      protocol[r] = dictionary.idOf(src.dictionary.valueOf(src.protocol[s]));
+      fileType[r] = dictionary.idOf(src.dictionary.valueOf(src.fileType[s]));
+      variable[r] = arena.copy(src.arena, src.variable[s]);
+      to.add(r);
+    }
+  }
+
+  private void grow() {
+    int n = frameNumber.length * 2;
+    frameNumber = Arrays.copyOf(frameNumber, n);
+    epochMicros = Arrays.copyOf(epochMicros, n);
+    size = Arrays.copyOf(size, n);
+    srcPort = Arrays.copyOf(srcPort, n);
+    dstPort = Arrays.copyOf(dstPort, n);
+    srcIp = Arrays.copyOf(srcIp, n);
+    dstIp = Arrays.copyOf(dstIp, n);
+    protocol = Arrays.copyOf(protocol, n);
+    fileType = Arrays.copyOf(fileType, n);
+    variable = Arrays.copyOf(variable, n);
+  }
+
+  /** One conversation's rows, in the order they were appended. */
+  static final class Rows implements Iterable<PacketRecord> {
+    private final PacketStore store;
+    private int[] index = new int[4];
+    private int count;
+
+    private Rows(PacketStore store) {
+      this.store = store;
+    }
+
+    private void add(int row) {
+      if (count == index.length) index = Arrays.copyOf(index, count * 2);
+      index[count++] = row;
+    }
+
+    int size() {
+      return count;
+    }
+
+    /** Each {@code next()} returns the same {@link View}, moved to the next row. */
+    @Override
+    public Iterator<PacketRecord> iterator() {
+      View view = new View(store);
+      return new Iterator<>() {
+        private int next;
+
+        @Override
+        public boolean hasNext() {
+          return next < count;
+        }
+
+        @Override
+        public PacketRecord next() {
+          if (!hasNext()) throw new NoSuchElementException();
+          view.row = index[next++];
+          return view;
+        }
+      };
+    }
+
+    /** Snapshots of every row; for tests and callers that genuinely need to hold them all. */
+    List<PcapParserService.PacketInfo> toPacketInfos() {
+      List<PcapParserService.PacketInfo> out = new ArrayList<>(count);
+      for (PacketRecord p : this) out.add(p.toPacketInfo());
+      return out;
+    }
+  }
+
+  /** Flyweight over one row. Getters decode on each call; nothing is cached. */
+  static final class View implements PacketRecord {
+    private final PacketStore s;
+    private int row;
+
+    private View(PacketStore store) {
+      this.s = store;
+    }
+
+    /** Moves this view to {@code row} and returns it. */
+    View at(int row) {
+      this.row = row;
+      return this;
+    }
+
+    @Override
+    public Long getPacketNumber() {
+      return s.frameNumber[row];
+    }
+
+    @Override
+    public LocalDateTime getTimestamp() {
+      long micros = s.epochMicros[row];
+      return LocalDateTime.ofEpochSecond(
+          Math.floorDiv(micros, 1_000_000L),
+          (int) Math.floorMod(micros, 1_000_000L) * 1_000,
+          ZoneOffset.UTC);
+    }
+
+    @Override
+    public String getSrcIp() {
+      return s.dictionary.valueOf(s.srcIp[row]);
+    }
+
+    @Override
+    public Integer getSrcPort() {
+      int p = s.srcPort[row];
+      return p >= 0 ? p : null;
+    }
+
+    @Override
+    public String getDstIp() {
+      return s.dictionary.valueOf(s.dstIp[row]);
+    }
+
+    @Override
+    public Integer getDstPort() {
+      int p = s.dstPort[row];
+      return p >= 0 ? p : null;
+    }
+
+    @Override
+    public String getProtocol() {
+      return s.dictionary.valueOf(s.protocol[row]);
+    }
+
+    @Override
+    public Integer getPacketSize() {
+      return s.size[row];
+    }
+
+    @Override
+    public String getInfo() {
+      return s.arena.info(s.variable[row]);
+    }
+
+    @Override
+    public byte[] getPayload() {
+      return s.arena.payload(s.variable[row]);
+    }
+
+    @Override
+    public String getDetectedFileType() {
+      return s.dictionary.valueOf(s.fileType[row]);
+    }
+  }
+
+  /**
+   * Payload and Info bytes for every row, in 1 MB chunks so growth never copies what is already
+   * written. A row's entry is {@code short} payload length (-1 for none), the payload, {@code int}
+   * Info length (-1 for none), the Info UTF-8; its address is {@code chunk << 32 | offset}. An
+   * entry larger than a chunk (a very long Info) gets a chunk of its own.
+   */
+  static final class Arena {
+    private static final int CHUNK_BYTES = 1 << 20;
+
+    private final List<byte[]> chunks = new ArrayList<>();
+    private byte[] current;
+    private int position;
+    private long retained;
+
+    long append(byte[] payload, byte[] info) {
+      int length =
+          2 + (payload != null ? payload.length : 0) + 4 + (info != null ? info.length : 0);
+      reserve(length);
+      long address = ((long) (chunks.size() - 1) << 32) | position;
+      byte[] c = current;
+      int p = position;
+      int payloadLength = payload != null ? payload.length : -1;
+      c[p++] = (byte) (payloadLength >> 8);
+      c[p++] = (byte) payloadLength;
+      if (payload != null) {
+        System.arraycopy(payload, 0, c, p, payload.length);
+        p += payload.length;
+      }
+      int infoLength = info != null ? info.length : -1;
+      c[p++] = (byte) (infoLength >> 24);
+      c[p++] = (byte) (infoLength >> 16);
+      c[p++] = (byte) (infoLength >> 8);
+      c[p++] = (byte) infoLength;
+      if (info != null) {
+        System.arraycopy(info, 0, c, p, info.length);
+        p += info.length;
+      }
+      position = p;
+      return address;
+    }
+
+    /** Appends the entry at {@code address} in {@code src} verbatim; returns its address here. */
+    long copy(Arena src, long address) {
+      byte[] c = src.chunks.get((int) (address >>> 32));
+      int p = (int) address;
+      int infoAt = p + 2 + Math.max(shortAt(c, p), 0);
+      int length = infoAt + 4 + Math.max(intAt(c, infoAt), 0) - p;
+      reserve(length);
+      long at = ((long) (chunks.size() - 1) << 32) | position;
+      System.arraycopy(c, p, current, position, length);
+      position += length;
+      return at;
+    }
+
+    byte[] payload(long address) {
+      byte[] c = chunks.get((int) (address >>> 32));
+      int p = (int) address;
+      int length = shortAt(c, p);
+      return length < 0 ? null : Arrays.copyOfRange(c, p + 2, p + 2 + length);
+    }
+
+    String info(long address) {
+      byte[] c = chunks.get((int) (address >>> 32));
+      int p = (int) address;
+      p += 2 + Math.max(shortAt(c, p), 0);
+      int length = intAt(c, p);
+      return length < 0 ? null : new String(c, p + 4, length, StandardCharsets.UTF_8);
+    }
+
+    private void reserve(int length) {
+      if (current == null || CHUNK_BYTES - position < length) {
+        current = new byte[Math.max(CHUNK_BYTES, length)];
+        chunks.add(current);
+        position = 0;
+        retained += current.length;
+      }
+    }
+
+    private static int shortAt(byte[] c, int p) {
+      return (short) (((c[p] & 0xff) << 8) | (c[p + 1] & 0xff));
+    }
+
+    private static int intAt(byte[] c, int p) {
+      return ((c[p] & 0xff) << 24)
+          | ((c[p + 1] & 0xff) << 16)
+          | ((c[p + 2] & 0xff) << 8)
+          | (c[p + 3] & 0xff);
+    }
+
+    long retainedBytes() {
+      return retained;
+    }
+  }
+}
@@ -0,0 +1,515 @@
+package com.tracepcap.analysis.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Sequential record reader for classic pcap and pcapng captures.
+ *
+ * <p>Replaces the part of the tshark text pass that only ever re-derived what the file already
+ * stores in binary: record boundaries, timestamps and lengths. {@link #next()} advances to the next
+ * packet record and exposes its bytes as a {@link ByteBuffer} view over the mapped file — nothing
+ * is copied or formatted on the way.
+ *
+ * <p><b>Mapped in windows, not whole.</b> A single {@code MappedByteBuffer} cannot exceed 2 GB and
+ * captures can, so the file is mapped {@value #MAP_WINDOW_BYTES} bytes at a time and remapped at
+ * the record that crosses the end of a window. Where the filesystem refuses a mapping, the same
+ * windows are read into heap buffers instead; the caller cannot tell the difference.
+ *
+ * <p><b>Frame numbers follow tshark.</b> Every packet-bearing block (classic record, pcapng EPB,
+ * SPB and the obsolete PB) counts, in file order, from 1 — so a number produced here addresses the
+ * same packet as {@code frame.number} in any tshark pass over the same file.
+ *
+ * <p>A record cut short at end of file ends the iteration with a warning, as tshark does, rather
+ * than failing the packets already read.
+ */
+@Slf4j
+final class PcapFileReader implements Closeable {
+
+  static final int LINKTYPE_NULL = 0;
+  static final int LINKTYPE_ETHERNET = 1;
+  static final int LINKTYPE_RAW_OPENBSD = 12;
+  static final int LINKTYPE_RAW_BSDOS = 14;
+  static final int LINKTYPE_RAW = 101;
+  static final int LINKTYPE_LOOP = 108;
+  static final int LINKTYPE_LINUX_SLL = 113;
+  static final int LINKTYPE_IPV4 = 228;
+  static final int LINKTYPE_IPV6 = 229;
+  static final int LINKTYPE_LINUX_SLL2 = 276;
+
+  static final long MAP_WINDOW_BYTES = 256L << 20;
+  private static final int HEAP_WINDOW_BYTES = 8 << 20;
+
+  /** Larger than any real snaplen; a bigger length means the file is corrupt, not a jumbo frame. */
+  private static final int MAX_RECORD_BYTES = 256 << 20;
+
+  private static final int PCAP_MAGIC_MICROS = 0xa1b2c3d4;
+  private static final int PCAP_MAGIC_NANOS = 0xa1b23c4d;
+  private static final int PCAPNG_SHB = 0x0a0d0d0a;
+  private static final int PCAPNG_BYTE_ORDER_MAGIC = 0x1a2b3c4d;
+  private static final int PCAPNG_IDB = 1;
+  private static final int PCAPNG_PB = 2;
+  private static final int PCAPNG_SPB = 3;
+  private static final int PCAPNG_EPB = 6;
+
+  private final FileChannel channel;
+  private final long fileSize;
+  private final boolean pcapng;
+  private ByteOrder order;
+
+  private boolean mapped = true;
+  private ByteBuffer window;
+  private long windowStart;
+
+  /** Classic pcap: one link type and timestamp unit for the whole file. */
+  private int classicLinkType;
+
+  private boolean classicNanos;
+
+  /** pcapng: interfaces declared so far in the current section. */
+  private final List<Interface> interfaces = new ArrayList<>();
+
+  /** pcapng: offsets of the current section's SHB and of its IDBs, for {@link #preamble()}. */
+  private long sectionStart;
+
+  private final List<Long> interfaceBlocks = new ArrayList<>();
+  private int headerGeneration;
+
+  private long position;
+
+  private long frameNumber;
+  private long epochNanos;
+  private int capturedLength;
+  private int originalLength;
+  private int linkType;
+  private long recordOffset;
+  private long recordLength;
+  private ByteBuffer data;
+
+  private record Interface(int linkType, boolean decimal, int resolution, long offsetSeconds) {}
+
+  private PcapFileReader(FileChannel channel) throws IOException {
+    this.channel = channel;
+    this.fileSize = channel.size();
+    if (fileSize < 4) throw new EOFException("Capture is shorter than a file header");
+
+    order = ByteOrder.BIG_ENDIAN;
+    int magic = intAt(0);
+    if (magic == PCAPNG_SHB) {
+      pcapng = true;
+      position = 0;
+      return;
+    }
+    pcapng = false;
+    if (fileSize < 24) throw new EOFException("Capture is shorter than a pcap file header");
+    if (magic == PCAP_MAGIC_MICROS || magic == PCAP_MAGIC_NANOS) {
+      order = ByteOrder.BIG_ENDIAN;
+    } else if (Integer.reverseBytes(magic) == PCAP_MAGIC_MICROS
+        || Integer.reverseBytes(magic) == PCAP_MAGIC_NANOS) {
+      order = ByteOrder.LITTLE_ENDIAN;
+      magic = Integer.reverseBytes(magic);
+    } else {
+      throw new IOException(
+          "Not a pcap or pcapng file (magic 0x" + Integer.toHexString(magic) + ")");
+    }
+    classicNanos = magic == PCAP_MAGIC_NANOS;
+    // The upper bits of the link-type word carry FCS metadata in newer writers; the type is the
+    // low 16.
+    classicLinkType = intAt(20) & 0xffff;
+    position = 24;
+  }
+
+  static PcapFileReader open(Path path) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      return new PcapFileReader(channel);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * The link type of the first interface, or -1 when a pcapng file declares none before its first
+   * packet. Used to decide up front whether this reader can decode the capture at all.
+   */
+  int primaryLinkType() throws IOException {
+    if (!pcapng) return classicLinkType;
+    long pos = 0;
+    while (pos + 12 <= fileSize) {
+      ensure(pos, 12);
+      if (pos == 0 || intAt(pos) == PCAPNG_SHB) order = sectionOrder(pos);
+      int type = intAt(pos);
+      long len = Integer.toUnsignedLong(intAt(pos + 4));
+      if (len < 12 || pos + len > fileSize) return -1;
+      if (type == PCAPNG_IDB && len >= 20) return shortAt(pos + 8);
+      if (type == PCAPNG_EPB || type == PCAPNG_SPB || type == PCAPNG_PB) return -1;
+      pos += len;
+    }
+    return -1;
+  }
+
+  /** Advance to the next packet record. Returns false at end of file. */
+  boolean next() throws IOException {
+    return pcapng ? nextBlock() : nextClassic();
+  }
+
+  /** 1-based frame number, matching tshark's {@code frame.number}. */
+  long frameNumber() {
+    return frameNumber;
+  }
+
+  /** Capture timestamp in nanoseconds since the epoch; 0 for a pcapng SPB, which carries none. */
+  long epochNanos() {
+    return epochNanos;
+  }
+
+  /** Bytes of the frame present in the file (tshark {@code frame.cap_len}). */
+  int capturedLength() {
+    return capturedLength;
+  }
+
+  /** Length of the frame on the wire (tshark {@code frame.len}). */
+  int originalLength() {
+    return originalLength;
+  }
+
+  int linkType() {
+    return linkType;
+  }
+
+  /** File offset of the whole record, header included. */
+  long recordOffset() {
+    return recordOffset;
+  }
+
+  /** Length of the whole record, header included. */
+  long recordLength() {
+    return recordLength;
+  }
+
+  /**
+   * Changes whenever a block that {@link #preamble()} copies is read — a pcapng section header or
+   * interface description. Constant for classic pcap.
+   */
+  int headerGeneration() {
+    return headerGeneration;
+  }
+
+  /**
+   * The bytes that must precede the current record for it to be read as a capture of its own: the
+   * classic file header, or the current pcapng section header followed by every interface
+   * description seen in the section so far (a packet names its interface by position). The section
+   * header's length is rewritten to -1, "unspecified", since the copy no longer holds the section.
+   */
+  byte[] preamble() throws IOException {
+    if (!pcapng) return copy(0, 24);
+    byte[] shb = copy(sectionStart, intAt(sectionStart + 4));
+    Arrays.fill(shb, 16, 24, (byte) 0xff);
+    ByteArrayOutputStream out = new ByteArrayOutputStream(shb.length + 64 * interfaceBlocks.size());
+    out.write(shb);
+    for (long idb : interfaceBlocks) out.write(copy(idb, intAt(idb + 4)));
+    return out.toByteArray();
+  }
+
+  private byte[] copy(long pos, int len) throws IOException {
+    ensure(pos, len);
+    byte[] bytes = new byte[len];
+    window.get(offset(pos), bytes);
+    return bytes;
+  }
+
+  /**
+   * The captured bytes, big-endian, position 0 and limit {@link #capturedLength()}. Valid only
+   * until the next call to {@link #next()}.
+   */
+  ByteBuffer data() {
+    return data;
+  }
+
+  @Override
+  public void close() throws IOException {
+    window = null;
+    data = null;
+    channel.close();
+  }
+
+  // ---------------------------------------------------------------------------
+  // Classic pcap
+  // ---------------------------------------------------------------------------
+
+  private boolean nextClassic() throws IOException {
+    if (position + 16 > fileSize) return endOfFile(position);
+    ensure(position, 16);
+    long seconds = Integer.toUnsignedLong(intAt(position));
+    long fraction = Integer.toUnsignedLong(intAt(position + 4));
+    int caplen = intAt(position + 8);
+    int origlen = intAt(position + 12);
+    if (caplen < 0 || caplen > MAX_RECORD_BYTES) {
+      log.warn("Corrupt pcap record at offset {} (caplen {}); stopping", position, caplen);
+      return false;
+    }
+    if (position + 16 + caplen > fileSize) return endOfFile(position);
+
+    frameNumber++;
+    recordOffset = position;
+    recordLength = 16L + caplen;
+    epochNanos = seconds * 1_000_000_000L + (classicNanos ? fraction : fraction * 1_000L);
+    capturedLength = caplen;
+    originalLength = origlen;
+    linkType = classicLinkType;
+    data = slice(position + 16, caplen);
+    position += recordLength;
+    return true;
+  }
+
+  // ---------------------------------------------------------------------------
+  // pcapng
+  // ---------------------------------------------------------------------------
+
+  private boolean nextBlock() throws IOException {
+    while (true) {
+      if (position + 12 > fileSize) return endOfFile(position);
+      ensure(position, 12);
+      if (intAt(position) == PCAPNG_SHB) {
+        order = sectionOrder(position);
+        interfaces.clear();
+        interfaceBlocks.clear();
+        sectionStart = position;
+        headerGeneration++;
+      }
+      int type = intAt(position);
+      long len = Integer.toUnsignedLong(intAt(position + 4));
+      if (len < 12 || len > MAX_RECORD_BYTES || (len & 3) != 0) {
+        log.warn("Corrupt pcapng block at offset {} (length {}); stopping", position, len);
+        return false;
+      }
+      if (position + len > fileSize) return endOfFile(position);
+
+      long block = position;
+      position += len;
+      switch (type) {
+        case PCAPNG_IDB -> {
+          readInterface(block, len);
+          interfaceBlocks.add(block);
+          headerGeneration++;
+        }
+        case PCAPNG_EPB -> {
+          if (len < 32) continue;
+          ensure(block, 28);
+          int ifaceId = intAt(block + 8);
+          long ts =
+              (Integer.toUnsignedLong(intAt(block + 12)) << 32)
+                  | Integer.toUnsignedLong(intAt(block + 16));
+          int caplen = intAt(block + 20);
+          int origlen = intAt(block + 24);
+          if (emit(block, len, ifaceId, ts, true, caplen, origlen, 28)) return true;
+        }
+        case PCAPNG_SPB -> {
+          if (len < 16) continue;
+          ensure(block, 12);
+          int origlen = intAt(block + 8);
+          int caplen = (int) Math.min(Integer.toUnsignedLong(origlen), len - 16);
+          if (emit(block, len, 0, 0, false, caplen, origlen, 12)) return true;
+        }
+        case PCAPNG_PB -> {
+          if (len < 32) continue;
+          ensure(block, 28);
+          int ifaceId = shortAt(block + 8);
+          long ts =
+              (Integer.toUnsignedLong(intAt(block + 12)) << 32)
+                  | Integer.toUnsignedLong(intAt(block + 16));
+          int caplen = intAt(block + 20);
+          int origlen = intAt(block + 24);
+          if (emit(block, len, ifaceId, ts, true, caplen, origlen, 28)) return true;
+        }
+        default -> {
+          // SHB handled above; name resolution, statistics, custom and unknown blocks carry no
+          // packets.
+        }
+      }
+    }
+  }
+
+  private boolean emit(
+      long block,
+      long blockLen,
+      int ifaceId,
+      long ts,
+      boolean hasTimestamp,
+      int caplen,
+      int origlen,
+      int dataOffset)
+      throws IOException {
+    if (caplen < 0 || dataOffset + (long) caplen > blockLen - 4) {
+      log.warn("pcapng packet block at offset {} overruns its block; skipped", block);
+      return false;
+    }
+    Interface iface =
+        ifaceId >= 0 && ifaceId < interfaces.size()
+            ? interfaces.get(ifaceId)
+            : new Interface(-1, true, 6, 0);
+
+    frameNumber++;
+    recordOffset = block;
+    recordLength = blockLen;
+    epochNanos = hasTimestamp ? toNanos(ts, iface) : 0L;
+    capturedLength = caplen;
+    originalLength = origlen;
+    linkType = iface.linkType();
+    data = slice(block + dataOffset, caplen);
+    return true;
+  }
+
+  private void readInterface(long block, long len) throws IOException {
+    if (len < 20) return;
+    ensure(block, (int) len);
+    int type = shortAt(block + 8);
+    boolean decimal = true;
+    int resolution = 6;
+    long offsetSeconds = 0;
+
+    long opt = block + 16;
+    long end = block + len - 4;
+    while (opt + 4 <= end) {
+      int code = shortAt(opt);
+      int optLen = shortAt(opt + 2);
+      if (code == 0 || opt + 4 + optLen > end) break;
+      if (code == 9 && optLen >= 1) { // if_tsresol
+        int v = window.get(offset(opt + 4)) & 0xff;
+        decimal = (v & 0x80) == 0;
+        resolution = v & 0x7f;
+      } else if (code == 14 && optLen >= 8) { // if_tsoffset
+        offsetSeconds = window.order(order).getLong(offset(opt + 4));
+      }
+      opt += 4 + ((optLen + 3) & ~3);
+    }
+    interfaces.add(new Interface(type, decimal, resolution, offsetSeconds));
+  }
+
+  private static long toNanos(long ts, Interface iface) {
+    long nanos;
+    if (iface.decimal()) {
+      int r = iface.resolution();
+      if (r == 9) {
+        nanos = ts;
+      } else if (r < 9) {
+        nanos = ts * POW10[9 - r];
+      } else {
+        nanos = r - 9 < POW10.length ? ts / POW10[r - 9] : 0L;
+      }
+    } else {
+      int r = Math.min(iface.resolution(), 63);
+      long seconds = ts >>> r;
+      long fraction = ts & ((1L << r) - 1);
+      nanos = seconds * 1_000_000_000L + (long) (fraction / (double) (1L << r) * 1e9);
+    }
+    return nanos + iface.offsetSeconds() * 1_000_000_000L;
+  }
+
+  private static final long[] POW10 = {
+    1L,
+    10L,
+    100L,
+    1_000L,
+    10_000L,
+    100_000L,
+    1_000_000L,
+    10_000_000L,
+    100_000_000L,
+    1_000_000_000L,
+    10_000_000_000L,
+    100_000_000_000L,
+    1_000_000_000_000L,
+    10_000_000_000_000L,
+    100_000_000_000_000L,
+    1_000_000_000_000_000L,
+    10_000_000_000_000_000L,
+    100_000_000_000_000_000L,
+    1_000_000_000_000_000_000L
+  };
+
+  private ByteOrder sectionOrder(long shb) throws IOException {
+    ensure(shb, 12);
+    int bom = window.order(ByteOrder.BIG_ENDIAN).getInt(offset(shb + 8));
+    if (bom == PCAPNG_BYTE_ORDER_MAGIC) return ByteOrder.BIG_ENDIAN;
+    if (Integer.reverseBytes(bom) == PCAPNG_BYTE_ORDER_MAGIC) return ByteOrder.LITTLE_ENDIAN;
+    throw new IOException("Bad pcapng byte-order magic at offset " + shb);
+  }
+
+  private boolean endOfFile(long at) {
+    if (at < fileSize) {
+      log.warn(
+          "Capture appears to have been cut short: {} trailing byte(s) at offset {} ignored",
+          fileSize - at,
+          at);
+    }
+    data = null;
+    return false;
+  }
+
+  // ---------------------------------------------------------------------------
+  // Windowed access
+  // ---------------------------------------------------------------------------
+
+  /** Make [pos, pos+len) addressable through {@link #window}. */
+  private void ensure(long pos, int len) throws IOException {
+    if (window != null && pos >= windowStart && pos + len <= windowStart + window.capacity()) {
+      return;
+    }
+    long remaining = fileSize - pos;
+    if (remaining < len) throw new EOFException("Read past end of capture at offset " + pos);
+    if (mapped) {
+      try {
+        window =
+            channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(MAP_WINDOW_BYTES, remaining));
+        windowStart = pos;
+        return;
+      } catch (IOException | UnsupportedOperationException e) {
+        log.debug("Memory-mapping the capture failed, reading into heap buffers instead", e);
+        mapped = false;
+      }
+    }
+    int size = (int) Math.min(Math.max(HEAP_WINDOW_BYTES, len), remaining);
+    ByteBuffer buf = ByteBuffer.allocate(size);
+    long at = pos;
+    while (buf.hasRemaining()) {
+      int read = channel.read(buf, at);
+      if (read < 0) throw new EOFException("Read past end of capture at offset " + at);
+      at += read;
+    }
+    buf.flip();
+    window = buf;
+    windowStart = pos;
+  }
+
+  private ByteBuffer slice(long pos, int len) throws IOException {
+    ensure(pos, len);
+    return window.slice(offset(pos), len).order(ByteOrder.BIG_ENDIAN);
+  }
+
+  private int offset(long pos) {
+    return (int) (pos - windowStart);
+  }
+
+  private int intAt(long pos) throws IOException {
+    ensure(pos, 4);
+    return window.order(order).getInt(offset(pos));
+  }
+
+  private int shortAt(long pos) throws IOException {
+    ensure(pos, 2);
+    return window.order(order).getShort(offset(pos)) & 0xffff;
+  }
+}
@@ -2,39 +2,302 @@ package com.tracepcap.analysis.service;
 
 import com.tracepcap.analysis.entity.PacketEntity;
 import com.tracepcap.common.TsharkHexUtil;
+import com.tracepcap.common.concurrent.IoThreads;
+import com.tracepcap.common.process.SubprocessGovernor;
+import com.tracepcap.common.process.SubprocessGovernor.Budget;
+import com.tracepcap.common.process.SubprocessGovernor.Tool;
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-/** Service for parsing PCAP/pcapng files using tshark. */
+/**
+ * Service for parsing PCAP/pcapng files into conversations and packets.
+ *
+ * <p>Two header sources, chosen per deployment by {@code tracepcap.analysis.parser.mode}:
+ *
+ * <ul>
+ *   <li>{@code tshark} (default) — one {@code tshark -T fields} pass emitting every field as text.
+ *   <li>{@code native} — {@link PcapFileReader} and {@link PacketHeaderDecoder} read records and
+ *       headers straight from the file; tshark runs alongside only for the Protocol and Info
+ *       columns ({@link TsharkColumnPass}). On a 1 GB capture the text round-trip — printing,
+ *       splitting and re-parsing 23 fields per packet — was most of the parse stage.
+ * </ul>
+ *
+ * <p>Both feed the same {@link ParseState}, so conversation keys, first-seen TTL/MAC and initiator
+ * detection cannot drift between them. {@code PcapParserParityTest} holds the two outputs equal
+ * over the sample captures.
+ *
+ * <p>Where the parsed packets go is a separate choice, {@code tracepcap.analysis.ingest.mode}:
+ * {@code memory} (default) keeps them in a columnar {@link PacketStore} in heap; {@code streaming}
+ * appends them to a {@link PacketSpill} as they are parsed, so the heap holds conversations, not
+ * packets, and the capture size stops being bounded by it. Read them back through {@link
+ * ConversationInfo#iteratePackets()}, which works in either mode. A {@link PacketListener} is
+ * additionally shown each packet as the parse accepts it, for a caller that wants to start on them
+ * before the parse is over.
+ */
 @Slf4j
 @Service
 public class PcapParserService {
 
+  static final String MODE_TSHARK = "tshark";
+  static final String MODE_NATIVE = "native";
+  static final String INGEST_MEMORY = "memory";
+  static final String INGEST_STREAMING = "streaming";
+
+  @Value("${tracepcap.analysis.parser.mode:tshark}")
+  private String parserMode = MODE_TSHARK;
+
+  @Value("${tracepcap.analysis.ingest.mode:memory}")
+  private String ingestMode = INGEST_MEMORY;
+
+  /** Parser passes over one capture at once; 0 = one per available CPU. See analyzeInParallel. */
+  @Value("${tracepcap.analysis.parser.workers:1}")
+  private int parseWorkers = 1;
+
+  @Value("${tracepcap.analysis.parser.min-chunk-mb:64}")
+  private int minChunkMb = 64;
+
+  /** Records each chunk re-reads from before its cut; see {@link CaptureSplitter}. */
+  static final int WARMUP_FRAMES = 1000;
+
+  private final SubprocessGovernor governor;
+
+  public PcapParserService(SubprocessGovernor governor) {
+    this.governor = governor;
+  }
+
   public PcapAnalysisResult analyzePcapFile(File pcapFile) {
+    return analyzePcapFile(pcapFile, null);
+  }
+
+  /**
+   * As {@link #analyzePcapFile(File)}, showing {@code listener} each packet as it is accepted. It
+   * is called on this thread, and sees every packet exactly once whichever pass runs: a pass that
+   * gives up and falls back does so before the first packet is shown.
+   */
+  public PcapAnalysisResult analyzePcapFile(File pcapFile, PacketListener listener) {
+    if (!MODE_NATIVE.equalsIgnoreCase(parserMode) && !MODE_TSHARK.equalsIgnoreCase(parserMode)) {
+      log.warn("Unknown tracepcap.analysis.parser.mode '{}'; using tshark", parserMode);
+    }
+    // availableProcessors() is the container's CPU limit (BACKEND_CPU_LIMIT), not the host's.
+    int workers = parseWorkers > 0 ? parseWorkers : Runtime.getRuntime().availableProcessors();
+    if (workers > 1) {
+      PcapAnalysisResult result =
+          analyzeInParallel(
+              pcapFile, workers, (long) minChunkMb << 20, WARMUP_FRAMES, listener);
+      if (result != null) return result;
+    }
+    if (MODE_NATIVE.equalsIgnoreCase(parserMode)) {
+      PcapAnalysisResult result = analyzeNative(pcapFile, listener);
+      if (result != null) return result;
+    }
+    return analyzeWithTshark(pcapFile, listener);
+  }
+
+  PcapAnalysisResult analyzeWithTshark(File pcapFile) {
+    return analyzeWithTshark(pcapFile, null);
+  }
+
+  PcapAnalysisResult analyzeWithTshark(File pcapFile, PacketListener listener) {
     log.info("Starting PCAP analysis for file: {}", pcapFile.getName());
+    ParseState state = newParseState(listener);
+    parseWithTshark(pcapFile, state);
+    return state.finish();
+  }
 
-    PcapAnalysisResult result = new PcapAnalysisResult();
-    result.setProtocolCounts(new HashMap<>());
-    result.setProtocolBytes(new HashMap<>());
-    result.setConversations(new ArrayList<>());
-    // First-seen TTL and MAC per source IP (used for device classification)
-    Map<String, Integer> hostTtls = new HashMap<>();
-    Map<String, String> hostMacs = new HashMap<>();
-    // All distinct source MACs seen per IP. Usually one; more than one within a single capture is
-    // the tell for two devices sharing an IP (overlapping networks / ARP conflict) — #461.
-    Map<String, LinkedHashSet<String>> hostMacObservations = new HashMap<>();
+  /**
+   * Native header pass. Returns null — and the caller falls back to {@link #analyzeWithTshark} —
+   * when the file is not classic pcap/pcapng or its link type is one the decoder does not handle
+   * (802.11 radiotap, for one), so switching a deployment to native never loses a capture tshark
+   * could read.
+   */
+  PcapAnalysisResult analyzeNative(File pcapFile) {
+    return analyzeNative(pcapFile, null);
+  }
 
-    Map<String, ConversationInfo> conversationMap = new HashMap<>();
-    // Discarded with the parse; see pooled().
-    Map<String, String> stringPool = new HashMap<>();
+  PcapAnalysisResult analyzeNative(File pcapFile, PacketListener listener) {
+    PcapFileReader reader = openNative(pcapFile);
+    if (reader == null) return null;
+    log.info("Starting native PCAP analysis for file: {}", pcapFile.getName());
+    ParseState state = newParseState(listener);
+    parseNative(reader, pcapFile, state);
+    return state.finish();
+  }
 
+  /**
+   * Parallel parse: the capture is cut into chunks ({@link CaptureSplitter}), up to {@code workers}
+   * of them are parsed at once, each into its own {@link ParseState}, and the states are merged in
+   * chunk order ({@link ParseState#merge}). One tshark pass is single-threaded, so this is what
+   * puts the rest of {@code BACKEND_CPU_LIMIT} to work on a large upload.
+   *
+   * <p>Merging in chunk order is what keeps the result the sequential one: every first-seen rule
+   * (TTL, MAC, conversation start, SYN initiator) is decided by the earliest chunk that has the
+   * answer, and per-conversation packet order is chunk order then frame order. Frame numbers are
+   * the capture's, not the chunk's. The one thing a cut can still change is a tshark
+   * Protocol/Info label; see the warm-up note on {@link CaptureSplitter}.
+   *
+   * <p>Returns null, and the caller parses sequentially, for a capture under two chunks or one the
+   * native reader cannot cut (not pcap/pcapng, or the temp disk refused the copy). Needs temp disk
+   * for chunks not yet parsed — at worst about the size of the capture.
+   */
+  PcapAnalysisResult analyzeInParallel(
+      File pcapFile, int workers, long minChunkBytes, int warmupFrames) {
+    return analyzeInParallel(pcapFile, workers, minChunkBytes, warmupFrames, null);
+  }
+
+  /**
+   * {@code listener} is shown the packets as each chunk is merged, not as the workers parse them:
+   * only the merge knows which conversation a chunk's packet finally belongs to.
+   */
+  PcapAnalysisResult analyzeInParallel(
+      File pcapFile, int workers, long minChunkBytes, int warmupFrames, PacketListener listener) {
+    long size = pcapFile.length();
+    if (size < 2 * minChunkBytes) return null;
+    long chunkBytes = Math.max(minChunkBytes, size / (2L * workers));
+
+    Path dir;
+    try {
+      dir = Files.createTempDirectory("tracepcap-split-");
+    } catch (IOException e) {
+      log.warn(
+          "Cannot create a directory for capture chunks ({}); parsing sequentially",
+          e.getMessage());
+      return null;
+    }
+    ExecutorService pool = Executors.newFixedThreadPool(workers);
+    List<Future<?>> tasks = new ArrayList<>();
+    // A chunk's state is published here, under the lock, unless the parse has already been given
+    // up — in which case the task discards it itself, so no spill file outlives a failed parse.
+    List<ParseState> parts = new ArrayList<>();
+    boolean[] abandoned = {false};
+    int merged = 0;
+    ParseState state = null;
+    try {
+      int chunks;
+      try {
+        chunks =
+            CaptureSplitter.split(
+                pcapFile.toPath(),
+                dir,
+                chunkBytes,
+                warmupFrames,
+                chunk -> {
+                  synchronized (parts) {
+                    parts.add(null);
+                  }
+                  tasks.add(
+                      pool.submit(
+                          () -> {
+                            ParseState part = parseChunk(chunk);
+                            synchronized (parts) {
+                              if (!abandoned[0]) {
+                                parts.set(chunk.index(), part);
+                                return;
+                              }
+                            }
+                            part.abandon();
+                          }));
+                });
+      } catch (IOException e) {
+        log.warn(
+            "Cannot cut {} into chunks ({}); parsing sequentially",
+            pcapFile.getName(),
+            e.getMessage());
+        return null;
+      }
+      log.info(
+          "Starting parallel PCAP analysis for file: {} ({} chunks, {} workers)",
+          pcapFile.getName(),
+          chunks,
+          workers);
+
+      state = newParseState(listener);
+      for (Future<?> task : tasks) {
+        await(task);
+        ParseState part;
+        synchronized (parts) {
+          part = parts.set(merged++, null);
+        }
+        state.merge(part);
+      }
+      return state.finish();
+    } catch (RuntimeException e) {
+      if (state != null) state.abandon();
+      throw e;
+    } finally {
+      pool.shutdownNow();
+      synchronized (parts) {
+        abandoned[0] = true;
+        for (ParseState part : parts) {
+          if (part != null) part.abandon();
+        }
+      }
+      deleteChunks(dir);
+    }
+  }
+
+  /** One chunk into its own state: frames renumbered to the capture's, warm-up frames dropped. */
+  private ParseState parseChunk(CaptureSplitter.Chunk chunk) {
+    File file = chunk.file().toFile();
+    ParseState state =
+        newParseState(chunk.firstFrame() - 1 - chunk.warmup(), chunk.warmup(), null);
+    try {
+      PcapFileReader reader = MODE_NATIVE.equalsIgnoreCase(parserMode) ? openNative(file) : null;
+      if (reader != null) {
+        parseNative(reader, file, state);
+      } else {
+        parseWithTshark(file, state);
+      }
+    } finally {
+      CaptureSplitter.deleteQuietly(chunk.file());
+    }
+    return state;
+  }
+
+  private static void await(Future<?> task) {
+    try {
+      task.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException r) throw r;
+      Throwable cause = e.getCause();
+      throw new RuntimeException("Parallel parse failed: " + cause.getMessage(), cause);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while parsing", e);
+    }
+  }
+
+  private static void deleteChunks(Path dir) {
+    try (Stream<Path> files = Files.list(dir)) {
+      files.forEach(CaptureSplitter::deleteQuietly);
+    } catch (IOException ignored) {
+      // Best effort; the directory is under java.io.tmpdir.
+    }
+    CaptureSplitter.deleteQuietly(dir);
+  }
+
+  private void parseWithTshark(File pcapFile, ParseState state) {
     // Fields: epoch | len | ipv4.src | ipv4.dst | ipv6.src | ipv6.dst |
     //         tcp.sport | tcp.dport | udp.sport | udp.dport | protocol | info |
     //         tcp.payload | udp.payload | ip.ttl | eth.src |
@@ -108,27 +371,17 @@ public class PcapParserService {
     // a packet by it.
     long packetNumber = 0;
     try {
-      Process process = pb.start();
+      Process process = governor.start(Tool.TSHARK, Budget.BATCH, pb);
 
       // Drain stderr in a background thread so it doesn't block stdout
       StringBuffer stderrBuf = new StringBuffer();
       Thread stderrThread =
-          new Thread(
-              () -> {
-                try (BufferedReader err =
-                    new BufferedReader(
-                        new InputStreamReader(
-                            process.getErrorStream(), java.nio.charset.StandardCharsets.UTF_8))) {
-                  String l;
-                  while ((l = err.readLine()) != null) {
-                    if (stderrBuf.length() < 10_000) stderrBuf.append(l).append('\n');
-                  }
-                } catch (Exception e) {
-                  log.warn("Failed to drain tshark stderr", e);
-                }
+          IoThreads.drainLines(
+              process.getErrorStream(),
+              "tshark-parse-stderr",
+              l -> {
+                if (stderrBuf.length() < 10_000) stderrBuf.append(l).append('\n');
               });
-      stderrThread.setDaemon(true);
-      stderrThread.start();
 
       try (BufferedReader reader =
           new BufferedReader(new InputStreamReader(process.getInputStream()))) {
@@ -154,8 +407,7 @@ public class PcapParserService {
           String tcpDport = firstValue(f[7]);
           String udpSport = firstValue(f[8]);
           String udpDport = firstValue(f[9]);
-          String protocolRaw = f[10].isEmpty() ? "OTHER" : firstValue(f[10]).toUpperCase();
-          String protocol = protocolRaw.length() > 20 ? protocolRaw.substring(0, 20) : protocolRaw;
+          String protocol = normaliseProtocol(f[10].isEmpty() ? null : firstValue(f[10]));
           // Everything from _ws.col.Info (index 11) onward is read RELATIVE TO THE END of the row,
           // never by fixed index. _ws.col.Info is free text that can contain the '|' separator (FTP
           // passive-mode "(|||50076", multi-line SMTP/SIP/LDAP messages, ...). A '|' there splits
@@ -225,38 +477,9 @@ public class PcapParserService {
               LocalDateTime.ofInstant(
                   Instant.ofEpochMilli((long) (epochSec * 1000)), ZoneId.systemDefault());
 
-          if (result.getStartTime() == null || timestamp.isBefore(result.getStartTime())) {
-            result.setStartTime(timestamp);
-          }
-          if (result.getEndTime() == null || timestamp.isAfter(result.getEndTime())) {
-            result.setEndTime(timestamp);
-          }
-
-          result.setTotalBytes(result.getTotalBytes() + packetSize);
-          incrementProtocolCount(result, protocol, packetSize);
-
-          // Record first-seen TTL and MAC for source IP
-          if (srcIp != null) {
-            if (ttl != null) hostTtls.putIfAbsent(srcIp, ttl);
-            if (srcMac != null) hostMacs.putIfAbsent(srcIp, srcMac);
-          }
-
-          // Overlap detection (#461): record the IP↔MAC ownership claim from ARP
-          // (arp.src.proto_ipv4 ↔ arp.src.hw_mac) — NOT the IP-layer eth.src. A routed host's
-          // IP packets carry the gateway's MAC as eth.src, so keying off eth.src would falsely flag
-          // every off-subnet server as "two MACs". ARP is the authoritative "who owns this IP"
-          // statement, so two distinct hw_macs claiming one IP is a genuine same-segment conflict.
-          if (arpSrcIp != null && arpSrcMac != null) {
-            hostMacObservations
-                .computeIfAbsent(arpSrcIp, k -> new LinkedHashSet<>())
-                .add(arpSrcMac);
-          }
-
-          // Track conversations for IP traffic
+          int srcPort = FlowTable.NO_PORT;
+          int dstPort = FlowTable.NO_PORT;
           if (srcIp != null && dstIp != null) {
-            Integer srcPort = null;
-            Integer dstPort = null;
-
             if (!tcpSport.isEmpty()) {
               srcPort = Integer.parseInt(tcpSport);
               dstPort = Integer.parseInt(tcpDport);
@@ -264,89 +487,53 @@ public class PcapParserService {
               srcPort = Integer.parseInt(udpSport);
               dstPort = Integer.parseInt(udpDport);
             }
+          }
 
-            final String fSrcIp = srcIp, fDstIp = dstIp;
-            final Integer fSrcPort = srcPort, fDstPort = dstPort;
-            final String fProtocol = protocol;
-            final LocalDateTime fTs = timestamp;
-
-            String convKey = createConversationKey(srcIp, srcPort, dstIp, dstPort, protocol);
-            ConversationInfo conv =
-                conversationMap.computeIfAbsent(
-                    convKey,
-                    k -> {
-                      ConversationInfo c = new ConversationInfo();
-                      c.setSrcIp(fSrcIp);
-                      c.setSrcPort(fSrcPort);
-                      c.setDstIp(fDstIp);
-                      c.setDstPort(fDstPort);
-                      c.setProtocol(fProtocol);
-                      c.setStartTime(fTs);
-                      c.setEndTime(fTs);
-                      c.setPacketCount(0L);
-                      c.setTotalBytes(0L);
-                      return c;
-                    });
-            conv.setPacketCount(conv.getPacketCount() + 1);
-            conv.setTotalBytes(conv.getTotalBytes() + packetSize);
-            if (timestamp.isAfter(conv.getEndTime())) conv.setEndTime(timestamp);
-
-            // Who opened this connection (#496). SYN without ACK is the opening packet; SYN+ACK is
-            // the answer to it, so the ACK bit is what tells the two apart. The first one wins: a
-            // retransmitted SYN must not flip the initiator, and it cannot legitimately change.
-            //
-            // Absent for UDP/ICMP/ARP, and for TCP flows the capture joined mid-stream. That stays
-            // null. Falling back to "lower port wins" is exactly the guess this replaces — a server
-            // on :4434 is a server, whatever its port number says.
-            // SYN without ACK — the two trailing fields, read from the end for the same reason
-            // frame.number is (an Info-column '|' must not shift them). Guarded on length so a row
-            // that somehow lacks the flag columns skips this rather than indexing out of bounds.
-            if (conv.getInitiatorIp() == null
-                && f.length >= 3
-                && "1".equals(f[f.length - 2])
-                && !"1".equals(f[f.length - 1])) {
-              conv.setInitiatorIp(fSrcIp);
-              conv.setInitiatorPort(fSrcPort);
-            }
-
-            // Extract payload hex from tcp.payload / udp.payload (both read tail-relative above, for
-            // the same reason as the other post-Info fields — a '|' in Info must not shift them).
-            // tshark outputs byte arrays as colon-separated hex pairs (e.g. "48:54:54:50").
-            String tsharkPayload = null;
-            if (!tcpPayloadField.isEmpty()) {
-              tsharkPayload = tcpPayloadField; // tcp.payload
-            } else if (!udpPayloadField.isEmpty()) {
-              tsharkPayload = udpPayloadField; // udp.payload
-            }
-            String payloadHex = TsharkHexUtil.toHex(tsharkPayload, PacketEntity.PAYLOAD_BYTE_LIMIT);
-            // The three trailing fields, in order, are frame.number, tcp.flags.syn, tcp.flags.ack.
-            // Read them from the END, not by fixed index: a '|' inside an earlier column (Info) would
-            // shift every fixed index, and appending syn/ack already moved frame.number off the last
-            // slot once — reading from the tail is what keeps that from silently corrupting data.
-            long frameNumber = packetNumber;
-            String rawFrame = f.length >= 3 ? f[f.length - 3] : null;
-            if (rawFrame != null && !rawFrame.isEmpty()) {
-              try {
-                frameNumber = Long.parseLong(rawFrame.trim());
-              } catch (NumberFormatException ignored) {
-                // keep counter fallback
-              }
+          // Extract the payload from tcp.payload / udp.payload (both read tail-relative above, for
+          // the same reason as the other post-Info fields — a '|' in Info must not shift them).
+          // tshark outputs byte arrays as colon-separated hex pairs (e.g. "48:54:54:50").
+          String tsharkPayload = null;
+          if (!tcpPayloadField.isEmpty()) {
+            tsharkPayload = tcpPayloadField; // tcp.payload
+          } else if (!udpPayloadField.isEmpty()) {
+            tsharkPayload = udpPayloadField; // udp.payload
+          }
+          byte[] payload = TsharkHexUtil.toBytes(tsharkPayload, PacketEntity.PAYLOAD_BYTE_LIMIT);
+          // The three trailing fields, in order, are frame.number, tcp.flags.syn, tcp.flags.ack.
+          // Read them from the END, not by fixed index: a '|' inside an earlier column (Info) would
+          // shift every fixed index, and appending syn/ack already moved frame.number off the last
+          // slot once — reading from the tail is what keeps that from silently corrupting data.
+          long frameNumber = packetNumber;
+          String rawFrame = f.length >= 3 ? f[f.length - 3] : null;
+          if (rawFrame != null && !rawFrame.isEmpty()) {
+            try {
+              frameNumber = Long.parseLong(rawFrame.trim());
+            } catch (NumberFormatException ignored) {
+              // keep counter fallback
             }
-            conv.getPackets()
-                .add(
-                    buildPacketInfo(
-                        stringPool,
-                        frameNumber,
-                        timestamp,
-                        srcIp,
-                        srcPort,
-                        dstIp,
-                        dstPort,
-                        protocol,
-                        packetSize,
-                        info,
-                        payloadHex));
           }
+          // SYN without ACK — the two trailing fields, read from the end for the same reason
+          // frame.number is (an Info-column '|' must not shift them). Guarded on length so a row
+          // that somehow lacks the flag columns skips this rather than indexing out of bounds.
+          boolean opensConnection =
+              f.length >= 3 && "1".equals(f[f.length - 2]) && !"1".equals(f[f.length - 1]);
+
+          state.accept(
+              frameNumber,
+              timestamp,
+              packetSize,
+              srcIp,
+              srcPort,
+              dstIp,
+              dstPort,
+              protocol,
+              info,
+              payload,
+              ttl,
+              srcMac,
+              arpSrcIp,
+              arpSrcMac,
+              opensConnection);
         }
       }
 
@@ -360,24 +547,450 @@ public class PcapParserService {
       }
 
     } catch (RuntimeException e) {
+      state.abandon();
       throw e;
     } catch (Exception e) {
+      state.abandon();
       throw new RuntimeException("tshark parsing failed: " + e.getMessage(), e);
     }
+  }
+
+  /** A reader at the start of the capture, or null when the native pass cannot decode it. */
+  private static PcapFileReader openNative(File pcapFile) {
+    PcapFileReader reader;
+    try {
+      reader = PcapFileReader.open(pcapFile.toPath());
+      int linkType = reader.primaryLinkType();
+      if (!PacketHeaderDecoder.supports(linkType)) {
+        reader.close();
+        log.info(
+            "Link type {} of {} is not natively decoded; parsing with tshark",
+            linkType,
+            pcapFile.getName());
+        return null;
+      }
+    } catch (IOException e) {
+      log.info(
+          "Native reader cannot open {} ({}); parsing with tshark",
+          pcapFile.getName(),
+          e.getMessage());
+      return null;
+    }
+    return reader;
+  }
+
+  private void parseNative(PcapFileReader reader, File pcapFile, ParseState state) {
+    PacketHeaderDecoder d = new PacketHeaderDecoder();
+    // Formatting an address is most of what the decoder's output still costs; a capture has a few
+    // hundred distinct ones, so each is spelled once.
+    Map<Integer, String> ipv4Text = new HashMap<>();
+    Map<Long, String> macText = new HashMap<>();
+    ZoneId zone = ZoneId.systemDefault();
+    long packetNumber = 0;
+    long labelledFromHeaders = 0;
+
+    try (reader;
+        TsharkColumnPass columns = TsharkColumnPass.start(pcapFile, governor)) {
+      while (reader.next()) {
+        packetNumber++;
+        ByteBuffer frame = reader.data();
+        d.decode(reader.linkType(), frame);
+
+        String protocol;
+        String info;
+        String[] cols = columns.columns(reader.frameNumber());
+        if (cols != null) {
+          protocol = normaliseProtocol(firstValue(cols[0]));
+          info = cols[1].isEmpty() ? protocol : cols[1];
+        } else {
+          protocol = headerProtocol(d);
+          info = protocol;
+          labelledFromHeaders++;
+        }
+
+        String srcIp =
+            d.hasIpv4
+                ? ipv4Text.computeIfAbsent(d.ipv4Src, PacketHeaderDecoder::formatIpv4)
+                : d.hasIpv6 ? state.pooled(PacketHeaderDecoder.formatIpv6(d.ipv6Src)) : null;
+        String dstIp =
+            d.hasIpv4
+                ? ipv4Text.computeIfAbsent(d.ipv4Dst, PacketHeaderDecoder::formatIpv4)
+                : d.hasIpv6 ? state.pooled(PacketHeaderDecoder.formatIpv6(d.ipv6Dst)) : null;
+        String srcMac =
+            d.srcMac >= 0
+                ? macText.computeIfAbsent(d.srcMac, PacketHeaderDecoder::formatMac)
+                : null;
+        String dstMac =
+            d.dstMac >= 0
+                ? macText.computeIfAbsent(d.dstMac, PacketHeaderDecoder::formatMac)
+                : null;
+        String arpSrcIp = null;
+        String arpDstIp = null;
+        String arpSrcMac = null;
+        if (d.hasArp) {
+          arpSrcIp = ipv4Text.computeIfAbsent(d.arpSenderIp, PacketHeaderDecoder::formatIpv4);
+          arpDstIp = ipv4Text.computeIfAbsent(d.arpTargetIp, PacketHeaderDecoder::formatIpv4);
+          arpSrcMac = macText.computeIfAbsent(d.arpSenderMac, PacketHeaderDecoder::formatMac);
+        }
+        // Same layer-2 fallback as the tshark pass: ARP's embedded IPs, else the Ethernet MACs.
+        if (srcIp == null) srcIp = (arpSrcIp != null) ? arpSrcIp : srcMac;
+        if (dstIp == null) dstIp = (arpDstIp != null) ? arpDstIp : dstMac;
+
+        boolean hasPorts = (d.hasTcp || d.hasUdp) && srcIp != null && dstIp != null;
+        LocalDateTime timestamp =
+            LocalDateTime.ofInstant(
+                Instant.ofEpochMilli(Math.floorDiv(reader.epochNanos(), 1_000_000L)), zone);
+
+        state.accept(
+            reader.frameNumber(),
+            timestamp,
+            reader.originalLength(),
+            srcIp,
+            hasPorts ? d.srcPort : FlowTable.NO_PORT,
+            dstIp,
+            hasPorts ? d.dstPort : FlowTable.NO_PORT,
+            protocol,
+            info,
+            d.payload(frame, PacketEntity.PAYLOAD_BYTE_LIMIT),
+            d.ttl >= 0 ? d.ttl : null,
+            srcMac,
+            arpSrcIp,
+            arpSrcMac,
+            d.hasTcp && d.syn && !d.ack);
+      }
+    } catch (IOException e) {
+      state.abandon();
+      throw new RuntimeException("Native PCAP parsing failed: " + e.getMessage(), e);
+    } catch (RuntimeException e) {
+      state.abandon();
+      throw e;
+    }
+
+    if (labelledFromHeaders > 0) {
+      log.warn(
+          "{} of {} packets in {} had no tshark Protocol/Info row and were labelled from headers",
+          labelledFromHeaders,
+          packetNumber,
+          pcapFile.getName());
+    }
+  }
+
+  private ParseState newParseState(PacketListener listener) {
+    return newParseState(0, 0, listener);
+  }
+
+  private ParseState newParseState(long frameBase, int warmup, PacketListener listener) {
+    if (INGEST_STREAMING.equalsIgnoreCase(ingestMode)) {
+      try {
+        return new ParseState(PacketSpill.create(), frameBase, warmup, listener);
+      } catch (IOException e) {
+        // Not a fallback to memory: streaming is chosen for captures the heap cannot hold, and
+        // quietly buffering one of those would trade a clear error for an OutOfMemoryError.
+        throw new RuntimeException("Cannot create packet spill file: " + e.getMessage(), e);
+      }
+    }
+    if (!INGEST_MEMORY.equalsIgnoreCase(ingestMode)) {
+      log.warn("Unknown tracepcap.analysis.ingest.mode '{}'; using memory", ingestMode);
+    }
+    return new ParseState(null, frameBase, warmup, listener);
+  }
+
+  /**
+   * Everything derived from a parsed packet, whichever pass produced it. Holding it in one place is
+   * the point: the first-seen rules below are subtle (#461, #496) and must not exist twice.
+   */
+  private final class ParseState {
+    private final PcapAnalysisResult result = new PcapAnalysisResult();
+    // First-seen TTL and MAC per source IP (used for device classification)
+    private final Map<String, Integer> hostTtls = new HashMap<>();
+    private final Map<String, String> hostMacs = new HashMap<>();
+    // All distinct source MACs seen per IP. Usually one; more than one within a single capture is
+    // the tell for two devices sharing an IP (overlapping networks / ARP conflict) — #461.
+    private final Map<String, LinkedHashSet<String>> hostMacObservations = new HashMap<>();
+    // Conversations in first-seen order, found through `flows` by their binary key; `endpoints`
+    // numbers the addresses and protocols the keys are made of.
+    private final List<ConversationInfo> conversations = new ArrayList<>();
+    private final FlowTable flows = new FlowTable();
+    private final StringDictionary endpoints = new StringDictionary();
+    // Discarded with the parse; see pooled().
+    private final Map<String, String> stringPool = new HashMap<>();
+    // Exactly one of these holds the packets: the spill in streaming ingest, the store otherwise.
+    private final PacketSpill spill;
+    private final PacketStore store;
+    // Parallel parse: a chunk numbers its frames from 1. The first `warmup` of them only prime
+    // tshark and are dropped; `frameBase` turns the rest back into the capture's frame numbers.
+    private final long frameBase;
+    private final int warmup;
+    private long accepted;
+    // Shown each packet once it is stored. Only ever set on the state a parse returns: a parallel
+    // parse's per-chunk states have none, and their packets are shown as they are merged.
+    private final PacketListener listener;
+    private final PacketStore.View shown;
+
+    ParseState(PacketSpill spill, long frameBase, int warmup, PacketListener listener) {
+      this.spill = spill;
+      this.frameBase = frameBase;
+      this.warmup = warmup;
+      this.listener = listener;
+      this.store = spill == null ? new PacketStore() : null;
+      this.shown = store != null && listener != null ? store.newView() : null;
+      result.setProtocolCounts(new HashMap<>());
+      result.setProtocolBytes(new HashMap<>());
+      result.setConversations(new ArrayList<>());
+    }
 
-    result.setPacketCount(packetNumber);
-    result.setConversations(new ArrayList<>(conversationMap.values()));
-    result.setHostTtls(hostTtls);
-    result.setHostMacs(hostMacs);
-    result.setHostMacObservations(hostMacObservations);
+    String pooled(String value) {
+      return PcapParserService.pooled(stringPool, value);
+    }
+
+    /** Ports are {@link FlowTable#NO_PORT} for a packet without TCP or UDP. */
+    void accept(
+        long frameNumber,
+        LocalDateTime timestamp,
+        int packetSize,
+        String srcIp,
+        int srcPort,
+        String dstIp,
+        int dstPort,
+        String protocol,
+        String info,
+        byte[] payload,
+        Integer ttl,
+        String srcMac,
+        String arpSrcIp,
+        String arpSrcMac,
+        boolean opensConnection) {
 
-    log.info(
-        "PCAP analysis completed: {} packets, {} bytes, {} conversations",
-        result.getPacketCount(),
-        result.getTotalBytes(),
-        result.getConversations().size());
+      if (frameNumber <= warmup) return;
+      frameNumber += frameBase;
+      accepted++;
 
-    return result;
+      if (result.getStartTime() == null || timestamp.isBefore(result.getStartTime())) {
+        result.setStartTime(timestamp);
+      }
+      if (result.getEndTime() == null || timestamp.isAfter(result.getEndTime())) {
+        result.setEndTime(timestamp);
+      }
+
+      result.setTotalBytes(result.getTotalBytes() + packetSize);
+      incrementProtocolCount(result, protocol, packetSize);
+
+      // Record first-seen TTL and MAC for source IP
+      if (srcIp != null) {
+        if (ttl != null) hostTtls.putIfAbsent(srcIp, ttl);
+        if (srcMac != null) hostMacs.putIfAbsent(srcIp, srcMac);
+      }
+
+      // Overlap detection (#461): record the IP↔MAC ownership claim from ARP
+      // (arp.src.proto_ipv4 ↔ arp.src.hw_mac) — NOT the IP-layer eth.src. A routed host's
+      // IP packets carry the gateway's MAC as eth.src, so keying off eth.src would falsely flag
+      // every off-subnet server as "two MACs". ARP is the authoritative "who owns this IP"
+      // statement, so two distinct hw_macs claiming one IP is a genuine same-segment conflict.
+      if (arpSrcIp != null && arpSrcMac != null) {
+        hostMacObservations.computeIfAbsent(arpSrcIp, k -> new LinkedHashSet<>()).add(arpSrcMac);
+      }
+
+      // Track conversations for IP traffic
+      if (srcIp == null || dstIp == null) return;
+
+      int found =
+          flows.findOrAdd(
+              FlowTable.endpoint(endpoints.idOf(srcIp), srcPort),
+              FlowTable.endpoint(endpoints.idOf(dstIp), dstPort),
+              endpoints.idOf(protocol));
+      ConversationInfo conv;
+      if (found >= 0) {
+        conv = conversations.get(found);
+      } else {
+        conv = new ConversationInfo();
+        conv.setSrcIp(srcIp);
+        conv.setSrcPort(boxed(srcPort));
+        conv.setDstIp(dstIp);
+        conv.setDstPort(boxed(dstPort));
+        conv.setProtocol(protocol);
+        conv.setStartTime(timestamp);
+        conv.setEndTime(timestamp);
+        conv.setPacketCount(0L);
+        conv.setTotalBytes(0L);
+        if (spill != null) {
+          conv.spilled = spill.newChain();
+        } else {
+          conv.stored = store.newRows();
+        }
+        conversations.add(conv);
+      }
+      conv.setPacketCount(conv.getPacketCount() + 1);
+      conv.setTotalBytes(conv.getTotalBytes() + packetSize);
+      if (timestamp.isAfter(conv.getEndTime())) conv.setEndTime(timestamp);
+
+      // Who opened this connection (#496). SYN without ACK is the opening packet; SYN+ACK is
+      // the answer to it, so the ACK bit is what tells the two apart. The first one wins: a
+      // retransmitted SYN must not flip the initiator, and it cannot legitimately change.
+      //
+      // Absent for UDP/ICMP/ARP, and for TCP flows the capture joined mid-stream. That stays
+      // null. Falling back to "lower port wins" is exactly the guess this replaces — a server
+      // on :4434 is a server, whatever its port number says.
+      if (conv.getInitiatorIp() == null && opensConnection) {
+        conv.setInitiatorIp(srcIp);
+        conv.setInitiatorPort(boxed(srcPort));
+      }
+
+      if (spill != null) {
+        PacketInfo packet =
+            buildPacketInfo(
+                stringPool,
+                frameNumber,
+                timestamp,
+                srcIp,
+                boxed(srcPort),
+                dstIp,
+                boxed(dstPort),
+                protocol,
+                packetSize,
+                info,
+                payload);
+        spill.append(conv.spilled, packet);
+        if (listener != null) listener.onPacket(conv, packet);
+        return;
+      }
+      int row =
+          store.append(
+              conv.stored,
+              frameNumber,
+              timestamp,
+              packetSize,
+              srcIp,
+              srcPort,
+              dstIp,
+              dstPort,
+              protocol,
+              info,
+              payload,
+              FileSignatureDetector.detect(payload));
+      if (listener != null) listener.onPacket(conv, shown.at(row));
+    }
+
+    /**
+     * Folds in the state of the chunk that follows everything already here. Called in chunk order,
+     * it applies the first-seen rules {@link #accept} does: this state's TTL, MAC, conversation
+     * start and initiator stand, and the later chunk only adds counts, extends end times and fills
+     * what is still unknown. {@code part} is released.
+     */
+    void merge(ParseState part) {
+      accepted += part.accepted;
+      PcapAnalysisResult r = part.result;
+      if (r.getStartTime() != null
+          && (result.getStartTime() == null || r.getStartTime().isBefore(result.getStartTime()))) {
+        result.setStartTime(r.getStartTime());
+      }
+      if (r.getEndTime() != null
+          && (result.getEndTime() == null || r.getEndTime().isAfter(result.getEndTime()))) {
+        result.setEndTime(r.getEndTime());
+      }
+      result.setTotalBytes(result.getTotalBytes() + r.getTotalBytes());
+      r.getProtocolCounts().forEach((k, v) -> result.getProtocolCounts().merge(k, v, Long::sum));
+      r.getProtocolBytes().forEach((k, v) -> result.getProtocolBytes().merge(k, v, Long::sum));
+      part.hostTtls.forEach(hostTtls::putIfAbsent);
+      part.hostMacs.forEach(hostMacs::putIfAbsent);
+      part.hostMacObservations.forEach(
+          (ip, macs) ->
+              hostMacObservations.computeIfAbsent(ip, k -> new LinkedHashSet<>()).addAll(macs));
+
+      PacketSpill.Chain[] chainByOrdinal =
+          part.spill != null ? new PacketSpill.Chain[part.spill.conversationCount()] : null;
+      ConversationInfo[] intoByOrdinal =
+          part.spill != null && listener != null
+              ? new ConversationInfo[part.spill.conversationCount()]
+              : null;
+      for (int i = 0; i < part.conversations.size(); i++) {
+        ConversationInfo from = part.conversations.get(i);
+        PacketStore.Rows rows = from.stored;
+        int ordinal = from.spillOrdinal();
+        // The chunk's ids are its own dictionary's; the key is rebuilt from the strings.
+        int found =
+            flows.findOrAdd(
+                translate(part.endpoints, part.flows.endpointA(i)),
+                translate(part.endpoints, part.flows.endpointB(i)),
+                endpoints.idOf(part.endpoints.valueOf(part.flows.protocol(i))));
+        ConversationInfo into;
+        if (found < 0) {
+          // First seen in this chunk: the chunk's conversation is the merged one, re-homed here.
+          into = from;
+          into.stored = store != null ? store.newRows() : null;
+          into.spilled = spill != null ? spill.newChain() : null;
+          conversations.add(into);
+        } else {
+          into = conversations.get(found);
+          into.setPacketCount(into.getPacketCount() + from.getPacketCount());
+          into.setTotalBytes(into.getTotalBytes() + from.getTotalBytes());
+          if (from.getEndTime().isAfter(into.getEndTime())) into.setEndTime(from.getEndTime());
+          if (into.getInitiatorIp() == null && from.getInitiatorIp() != null) {
+            into.setInitiatorIp(from.getInitiatorIp());
+            into.setInitiatorPort(from.getInitiatorPort());
+          }
+        }
+        if (store != null) {
+          store.appendAll(into.stored, rows);
+          if (listener != null) {
+            for (PacketRecord p : rows) listener.onPacket(into, p);
+          }
+        } else {
+          chainByOrdinal[ordinal] = into.spilled;
+          if (intoByOrdinal != null) intoByOrdinal[ordinal] = into;
+        }
+      }
+      if (spill != null) {
+        // One sequential pass over the chunk's spill rather than a chain walk per conversation.
+        part.spill.flush();
+        PacketSpill.Cursor cursor = part.spill.cursor();
+        while (cursor.next()) {
+          int ordinal = cursor.ordinal();
+          spill.append(chainByOrdinal[ordinal], cursor.packet());
+          if (intoByOrdinal != null) listener.onPacket(intoByOrdinal[ordinal], cursor.packet());
+        }
+      }
+      part.abandon();
+    }
+
+    private long translate(StringDictionary from, long endpoint) {
+      String address = from.valueOf((int) (endpoint >>> 32));
+      return FlowTable.endpoint(endpoints.idOf(address), (int) endpoint);
+    }
+
+    PcapAnalysisResult finish() {
+      result.setPacketCount(accepted);
+      result.setConversations(conversations);
+      result.setHostTtls(hostTtls);
+      result.setHostMacs(hostMacs);
+      result.setHostMacObservations(hostMacObservations);
+
+      log.info(
+          "PCAP analysis completed: {} packets, {} bytes, {} conversations",
+          result.getPacketCount(),
+          result.getTotalBytes(),
+          result.getConversations().size());
+      if (spill != null) {
+        spill.flush();
+        result.packetSpill = spill;
+        log.info(
+            "Streaming ingest: {} packets spilled to disk ({} bytes)",
+            spill.recordCount(),
+            spill.sizeBytes());
+      } else {
+        result.packetStore = store;
+        log.debug(
+            "Packet store: {} packets in {} bytes of heap",
+            store.rowCount(),
+            store.retainedBytes());
+      }
+
+      return result;
+    }
+
+    /** A failed parse leaves nothing for the caller to close, so its spill goes here. */
+    void abandon() {
+      if (spill != null) spill.close();
+    }
   }
 
   // ---------------------------------------------------------------------------
@@ -413,7 +1026,7 @@ public class PcapParserService {
       String protocol,
       int packetSize,
       String info,
-      String payloadHex) {
+      byte[] payload) {
 
     PacketInfo pkt = new PacketInfo();
     pkt.setPacketNumber(packetNumber);
@@ -425,13 +1038,36 @@ public class PcapParserService {
     pkt.setProtocol(pooled(pool, protocol));
     pkt.setPacketSize(packetSize);
     pkt.setInfo(info);
-    pkt.setPayload(payloadHex);
-    pkt.setDetectedFileType(FileSignatureDetector.detect(TsharkHexUtil.toBytes(payloadHex)));
+    pkt.setPayload(payload);
+    pkt.setDetectedFileType(FileSignatureDetector.detect(payload));
     return pkt;
   }
 
+  /** Upper-cased and capped at the conversations.protocol column width; "OTHER" when absent. */
+  private static String normaliseProtocol(String column) {
+    if (column == null || column.isEmpty()) return "OTHER";
+    String upper = column.toUpperCase();
+    return upper.length() > 20 ? upper.substring(0, 20) : upper;
+  }
+
+  /**
+   * Protocol label for a frame tshark gave no row for — the transport name where there is one, else
+   * the network layer. Coarser than tshark's column ("TCP" rather than "TLSV1.2") but enough to key
+   * a conversation, which is all a fallback has to do.
+   */
+  private static String headerProtocol(PacketHeaderDecoder d) {
+    if (d.hasArp) return "ARP";
+    if (d.hasTcp) return "TCP";
+    if (d.hasUdp) return "UDP";
+    if (d.ipProtocol == PacketHeaderDecoder.IPPROTO_ICMP) return "ICMP";
+    if (d.ipProtocol == PacketHeaderDecoder.IPPROTO_ICMPV6) return "ICMPV6";
+    if (d.hasIpv4) return "IPV4";
+    if (d.hasIpv6) return "IPV6";
+    return "OTHER";
+  }
+
   /** Return the first comma-separated value, or the original string if no comma. */
-  private String firstValue(String s) {
+  private static String firstValue(String s) {
     if (s == null || s.isEmpty()) return s;
     int comma = s.indexOf(',');
     return comma < 0 ? s : s.substring(0, comma);
@@ -442,24 +1078,8 @@ public class PcapParserService {
     result.getProtocolBytes().merge(protocol, (long) packetSize, Long::sum);
   }
 
-  private String createConversationKey(
-      String srcIp, Integer srcPort, String dstIp, Integer dstPort, String protocol) {
-    String ip1, ip2;
-    Integer port1, port2;
-
-    int cmp = srcIp.compareTo(dstIp);
-    if (cmp < 0 || (cmp == 0 && srcPort != null && dstPort != null && srcPort < dstPort)) {
-      ip1 = srcIp;
-      port1 = srcPort;
-      ip2 = dstIp;
-      port2 = dstPort;
-    } else {
-      ip1 = dstIp;
-      port1 = dstPort;
-      ip2 = srcIp;
-      port2 = srcPort;
-    }
-    return String.format("%s:%s-%s:%s-%s", ip1, port1, ip2, port2, protocol);
+  private static Integer boxed(int port) {
+    return port != FlowTable.NO_PORT ? port : null;
   }
 
   // ---------------------------------------------------------------------------
@@ -484,6 +1104,37 @@ public class PcapParserService {
 
     /** All distinct source MACs seen per source IP (>1 ⇒ possible overlapping networks, #461). */
     private Map<String, LinkedHashSet<String>> hostMacObservations = new HashMap<>();
+
+    /** Streaming ingest: the file every conversation's packets are in. Null in memory mode. */
+    @Getter(AccessLevel.PACKAGE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private PacketSpill packetSpill;
+
+    /** Memory ingest: the columns every conversation's packets are rows of. Null when streaming. */
+    @Getter(AccessLevel.PACKAGE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private PacketStore packetStore;
+
+    /**
+     * Deletes the spill file or drops the store, after which {@link
+     * ConversationInfo#iteratePackets()} cannot be read. The owner of the result calls this once
+     * the last stage that reads packets is done.
+     */
+    void releasePackets() {
+      if (packetSpill != null) {
+        packetSpill.close();
+        packetSpill = null;
+      }
+      if (packetStore != null && conversations != null) {
+        // The rows reference the store, so it is only collectable once every conversation lets go.
+        for (ConversationInfo c : conversations) c.stored = null;
+      }
+      packetStore = null;
+    }
   }
 
   @lombok.Data
@@ -524,15 +1175,212 @@ public class PcapParserService {
     private String tlsSubject;
     private LocalDateTime tlsNotBefore;
     private LocalDateTime tlsNotAfter;
+
+    /** tshark's stream number for {@code -z follow}; see {@link StreamIndexService}. */
+    private Integer tcpStream;
+
+    private Integer udpStream;
     private Long packetCount;
     private Long totalBytes;
     private LocalDateTime startTime;
     private LocalDateTime endTime;
-    private List<PacketInfo> packets = new ArrayList<>();
+
+    /** Memory ingest: this conversation's rows in the parse's {@link PacketStore}. */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private PacketStore.Rows stored;
+
+    /** Streaming ingest: where this conversation's packets went instead. */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private PacketSpill.Chain spilled;
+
+    /** Resumed analysis: this conversation's packets, read back from the database on demand. */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private Iterable<? extends PacketRecord> persisted;
+
+    /**
+     * This conversation's packets in parse order, whichever ingest mode ran.
+     *
+     * <p>Read them in the loop, do not collect them: in memory mode the iterator hands back one
+     * flyweight repositioned on every step, and in streaming mode each iteration reads the packets
+     * back from disk. {@link PacketRecord#toPacketInfo()} is the copy for anything kept.
+     */
+    public Iterable<? extends PacketRecord> iteratePackets() {
+      if (spilled != null) return spilled;
+      if (stored != null) return stored;
+      return persisted != null ? persisted : List.of();
+    }
+
+    /** For a run resumed past the parse, which has no store or spill to read packets from. */
+    void readPacketsFrom(Iterable<? extends PacketRecord> packets) {
+      this.persisted = packets;
+    }
+
+    /**
+     * A copy for one extractor to write on while its peers run against their own (see {@link
+     * ExtractorRunner}). The lists are copied, so adding to them does not reach this conversation;
+     * the packets are shared, since nothing writes to those.
+     *
+     * <p>A field added to this class belongs here and in {@link #mergeFrom}, or extractors'
+     * writes to it are silently dropped.
+     */
+    ConversationInfo extractionCopy() {
+      ConversationInfo c = new ConversationInfo();
+      c.srcIp = srcIp;
+      c.srcPort = srcPort;
+      c.dstIp = dstIp;
+      c.dstPort = dstPort;
+      c.initiatorIp = initiatorIp;
+      c.initiatorPort = initiatorPort;
+      c.protocol = protocol;
+      c.appName = appName;
+      c.tsharkProtocol = tsharkProtocol;
+      c.flowRisks = new ArrayList<>(flowRisks);
+      c.customSignatures = new ArrayList<>(customSignatures);
+      c.suricataAlerts = new ArrayList<>(suricataAlerts);
+      c.httpUserAgents = new ArrayList<>(httpUserAgents);
+      c.category = category;
+      c.hostname = hostname;
+      c.ja3Client = ja3Client;
+      c.ja3Server = ja3Server;
+      c.tlsIssuer = tlsIssuer;
+      c.tlsSubject = tlsSubject;
+      c.tlsNotBefore = tlsNotBefore;
+      c.tlsNotAfter = tlsNotAfter;
+      c.tcpStream = tcpStream;
+      c.udpStream = udpStream;
+      c.packetCount = packetCount;
+      c.totalBytes = totalBytes;
+      c.startTime = startTime;
+      c.endTime = endTime;
+      c.stored = stored;
+      c.spilled = spilled;
+      c.persisted = persisted;
+      return c;
+    }
+
+    /**
+     * Applies what one extractor wrote: every field {@code after} changed relative to {@code
+     * before}, its copy as handed over and as returned. A changed value replaces this one; a list
+     * gains the entries it lacks, so two extractors adding to the same list both keep theirs.
+     */
+    void mergeFrom(ConversationInfo before, ConversationInfo after) {
+      srcIp = changed(before.srcIp, after.srcIp, srcIp);
+      srcPort = changed(before.srcPort, after.srcPort, srcPort);
+      dstIp = changed(before.dstIp, after.dstIp, dstIp);
+      dstPort = changed(before.dstPort, after.dstPort, dstPort);
+      initiatorIp = changed(before.initiatorIp, after.initiatorIp, initiatorIp);
+      initiatorPort = changed(before.initiatorPort, after.initiatorPort, initiatorPort);
+      protocol = changed(before.protocol, after.protocol, protocol);
+      appName = changed(before.appName, after.appName, appName);
+      tsharkProtocol = changed(before.tsharkProtocol, after.tsharkProtocol, tsharkProtocol);
+      flowRisks = added(before.flowRisks, after.flowRisks, flowRisks);
+      customSignatures = added(before.customSignatures, after.customSignatures, customSignatures);
+      suricataAlerts = added(before.suricataAlerts, after.suricataAlerts, suricataAlerts);
+      httpUserAgents = added(before.httpUserAgents, after.httpUserAgents, httpUserAgents);
+      category = changed(before.category, after.category, category);
+      hostname = changed(before.hostname, after.hostname, hostname);
+      ja3Client = changed(before.ja3Client, after.ja3Client, ja3Client);
+      ja3Server = changed(before.ja3Server, after.ja3Server, ja3Server);
+      tlsIssuer = changed(before.tlsIssuer, after.tlsIssuer, tlsIssuer);
+      tlsSubject = changed(before.tlsSubject, after.tlsSubject, tlsSubject);
+      tlsNotBefore = changed(before.tlsNotBefore, after.tlsNotBefore, tlsNotBefore);
+      tlsNotAfter = changed(before.tlsNotAfter, after.tlsNotAfter, tlsNotAfter);
+      tcpStream = changed(before.tcpStream, after.tcpStream, tcpStream);
+      udpStream = changed(before.udpStream, after.udpStream, udpStream);
+      packetCount = changed(before.packetCount, after.packetCount, packetCount);
+      totalBytes = changed(before.totalBytes, after.totalBytes, totalBytes);
+      startTime = changed(before.startTime, after.startTime, startTime);
+      endTime = changed(before.endTime, after.endTime, endTime);
+    }
+
+    private static <T> T changed(T before, T after, T current) {
+      return Objects.equals(before, after) ? current : after;
+    }
+
+    private static List<String> added(
+        List<String> before, List<String> after, List<String> current) {
+      if (Objects.equals(before, after)) return current;
+      List<String> merged = new ArrayList<>(current);
+      for (String entry : after) {
+        if (!merged.contains(entry)) merged.add(entry);
+      }
+      return merged;
+    }
+
+    /** Creation-order position in the spill, which its records are tagged with; -1 if none. */
+    int spillOrdinal() {
+      return spilled != null ? spilled.ordinal : -1;
+    }
+  }
+
+  /**
+   * One parsed packet, as every reader sees it. {@link PacketInfo} is the standalone value; {@link
+   * PacketStore.View} is the flyweight memory ingest hands out, valid until its iterator moves on.
+   */
+  /**
+   * Shown each packet the parse accepts, with the conversation it was grouped into, on the parsing
+   * thread. The record is only valid for the duration of the call — in memory ingest it is a
+   * flyweight the parse moves on — and the conversation is still being counted, so anything kept
+   * must be copied out there and then.
+   */
+  public interface PacketListener {
+    void onPacket(ConversationInfo conversation, PacketRecord packet);
+  }
+
+  public interface PacketRecord {
+    Long getPacketNumber();
+
+    LocalDateTime getTimestamp();
+
+    String getSrcIp();
+
+    Integer getSrcPort();
+
+    String getDstIp();
+
+    Integer getDstPort();
+
+    String getProtocol();
+
+    Integer getPacketSize();
+
+    String getInfo();
+
+    /** First {@link PacketEntity#PAYLOAD_BYTE_LIMIT} payload bytes, or null. */
+    byte[] getPayload();
+
+    /** File type detected from magic bytes, or null if unknown. */
+    String getDetectedFileType();
+
+    /** A copy that stays valid after the record it was taken from moves on. */
+    default PacketInfo toPacketInfo() {
+      PacketInfo p = new PacketInfo();
+      p.setPacketNumber(getPacketNumber());
+      p.setTimestamp(getTimestamp());
+      p.setSrcIp(getSrcIp());
+      p.setSrcPort(getSrcPort());
+      p.setDstIp(getDstIp());
+      p.setDstPort(getDstPort());
+      p.setProtocol(getProtocol());
+      p.setPacketSize(getPacketSize());
+      p.setInfo(getInfo());
+      p.setPayload(getPayload());
+      p.setDetectedFileType(getDetectedFileType());
+      return p;
+    }
   }
 
   @lombok.Data
-  public static class PacketInfo {
+  public static class PacketInfo implements PacketRecord {
     private Long packetNumber;
     private LocalDateTime timestamp;
     private String srcIp;
@@ -543,8 +1391,8 @@ public class PcapParserService {
     private Integer packetSize;
     private String info;
 
-    /** First {@link PacketEntity#PAYLOAD_BYTE_LIMIT} bytes as a lowercase hex string, or null. */
-    private String payload;
+    /** First {@link PacketEntity#PAYLOAD_BYTE_LIMIT} payload bytes, or null. */
+    private byte[] payload;
 
     /** File type detected from magic bytes, or null if unknown. */
     private String detectedFileType;
@@ -4,7 +4,13 @@ import com.tracepcap.analysis.dto.SessionResponse;
 import com.tracepcap.analysis.entity.ConversationEntity;
 import com.tracepcap.analysis.repository.ConversationRepository;
 import com.tracepcap.common.exception.ResourceNotFoundException;
-import com.tracepcap.file.service.StorageService;
+import com.tracepcap.common.exception.SubprocessBusyException;
+import com.tracepcap.common.process.SubprocessGovernor;
+import com.tracepcap.common.process.SubprocessGovernor.Budget;
+import com.tracepcap.common.process.SubprocessGovernor.Tool;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.tracepcap.file.service.CaptureCache;
+import com.tracepcap.file.service.SharkdPool;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
@@ -18,7 +24,8 @@ import org.springframework.transaction.annotation.Transactional;
 
 /**
  * Reconstructs the full TCP/UDP byte stream for a conversation using {@code tshark -z follow} and
- * decodes the application-layer payload.
+ * decodes the application-layer payload. When the capture has a warm sharkd session ({@link
+ * SharkdPool}) the stream is followed there instead, without another pass over the capture.
  */
 @Slf4j
 @Service
@@ -34,8 +41,17 @@ public class SessionReconstructionService {
   /** Refuse reconstruction for PCAP files larger than this to protect disk/I/O. */
   private static final long MAX_PCAP_FILE_BYTES = 500L * 1024 * 1024; // 500 MB
 
+  /**
+   * Conversations larger than this are followed with tshark even when sharkd could: sharkd sends
+   * the whole stream in one reply, where tshark's output is read as it comes and cut off at {@link
+   * #MAX_SESSION_BYTES}.
+   */
+  private static final long MAX_SHARKD_FOLLOW_BYTES = 8 * MAX_SESSION_BYTES;
+
   private final ConversationRepository conversationRepository;
-  private final StorageService storageService;
+  private final CaptureCache captureCache;
+  private final SubprocessGovernor governor;
+  private final SharkdPool sharkd;
 
   // -------------------------------------------------------------------------
   // Public API
@@ -59,24 +75,33 @@ public class SessionReconstructionService {
               pcapSize / 1_048_576.0, MAX_PCAP_FILE_BYTES / 1_048_576));
     }
 
-    File tempFile = null;
     try {
-      tempFile = File.createTempFile("session-", ".pcap");
-      log.debug(
-          "Downloading {} bytes from {} for session reconstruction",
-          pcapSize,
-          conv.getFile().getMinioPath());
-      storageService.downloadFileToLocal(conv.getFile().getMinioPath(), tempFile);
-      return doReconstruct(conv, tempFile);
-    } catch (ResourceNotFoundException e) {
+      // Everyone looking at one conversation asks for its stream at about the same moment (a shared
+      // link, an incident call); they share one download and one set of tshark passes.
+      return governor.coalesce(
+          "session:" + conversationId, () -> reconstructFromCapture(conv, pcapSize));
+    } catch (ResourceNotFoundException | SubprocessBusyException e) {
       throw e;
     } catch (Exception e) {
       log.error("Session reconstruction failed for {}: {}", conversationId, e.getMessage(), e);
       return error("Reconstruction failed: " + e.getMessage());
-    } finally {
-      if (tempFile != null && !tempFile.delete()) {
-        tempFile.deleteOnExit();
-      }
+    }
+  }
+
+  private SessionResponse reconstructFromCapture(ConversationEntity conv, Long pcapSize)
+      throws Exception {
+    log.debug(
+        "Reading {} bytes from {} for session reconstruction",
+        pcapSize,
+        conv.getFile().getMinioPath());
+    StreamLocation stored = storedStreamIndex(conv);
+    if (stored != null) {
+      List<RawChunk> followed = followWithSharkd(conv, stored);
+      if (followed != null) return describe(conv, followed);
+    }
+    // The next stream followed in this capture is usually minutes away, so the copy is kept.
+    try (CaptureCache.Lease capture = captureCache.acquire(conv.getFile())) {
+      return doReconstruct(conv, capture.path().toFile());
     }
   }
 
@@ -86,9 +111,10 @@ public class SessionReconstructionService {
 
   private SessionResponse doReconstruct(ConversationEntity conv, File pcapFile) throws Exception {
 
-    // The stored protocol is the highest-level protocol tshark saw (HTTP, TLS, DNS, etc.).
-    // We need the transport layer, so try tcp then udp regardless of what is stored.
-    StreamLocation loc = findStreamIndex(pcapFile, conv);
+    // Recorded at ingest (StreamIndexService). Conversations analysed before that have neither,
+    // and the stream is looked up in the capture instead.
+    StreamLocation loc = storedStreamIndex(conv);
+    if (loc == null) loc = findStreamIndex(pcapFile, conv);
     if (loc == null) {
       return error(
           "Could not locate this conversation's stream in the capture file. "
@@ -97,7 +123,11 @@ public class SessionReconstructionService {
     String followProto = loc.proto;
 
     List<RawChunk> rawChunks = runFollowCommand(pcapFile, followProto, loc.streamIndex, conv);
+    return describe(conv, rawChunks);
+  }
 
+  /** Decodes the followed stream into the response. */
+  private SessionResponse describe(ConversationEntity conv, List<RawChunk> rawChunks) {
     long clientBytes =
         rawChunks.stream()
             .filter(c -> "CLIENT".equals(c.direction))
@@ -142,6 +172,12 @@ public class SessionReconstructionService {
   // Stream index lookup
   // -------------------------------------------------------------------------
 
+  private static StreamLocation storedStreamIndex(ConversationEntity conv) {
+    if (conv.getTcpStream() != null) return new StreamLocation("tcp", conv.getTcpStream());
+    if (conv.getUdpStream() != null) return new StreamLocation("udp", conv.getUdpStream());
+    return null;
+  }
+
   /**
    * Finds the tshark stream index for the conversation by trying both TCP and UDP, and both
    * endpoint directions. Returns a {@link StreamLocation} with the transport protocol and index, or
@@ -149,6 +185,9 @@ public class SessionReconstructionService {
    *
    * <p>The protocol stored on the conversation entity is the application-layer protocol (HTTP, TLS,
    * DNS, …) not the transport, so we probe both transports unconditionally.
+   *
+   * <p>Up to four passes over the whole capture before the follow can start, which is why ingest
+   * now records the index; this remains for conversations analysed without it.
    */
   private StreamLocation findStreamIndex(File pcapFile, ConversationEntity conv) throws Exception {
     for (String transport : new String[] {"tcp", "udp"}) {
@@ -188,7 +227,7 @@ public class SessionReconstructionService {
             "-T",
             "fields");
     pb.redirectError(ProcessBuilder.Redirect.DISCARD);
-    Process process = pb.start();
+    Process process = governor.start(Tool.TSHARK, Budget.INTERACTIVE, pb);
 
     try (BufferedReader reader =
         new BufferedReader(new InputStreamReader(process.getInputStream()))) {
@@ -243,18 +282,11 @@ public class SessionReconstructionService {
 
     ProcessBuilder pb = new ProcessBuilder(cmd);
     pb.redirectError(ProcessBuilder.Redirect.DISCARD);
-    Process process = pb.start();
+    Process process = governor.start(Tool.TSHARK, Budget.INTERACTIVE, pb);
 
-    List<RawChunk> chunks = new ArrayList<>();
+    ChunkCollector chunks = new ChunkCollector();
     String node0Direction = null; // "CLIENT" or "SERVER"
 
-    // Accumulate consecutive same-direction bytes in a stream to avoid O(N²) array copies
-    ByteArrayOutputStream accumulator = new ByteArrayOutputStream();
-    String currentDirection = null;
-
-    long totalBytes = 0;
-    boolean truncated = false;
-
     try (BufferedReader reader =
         new BufferedReader(new InputStreamReader(process.getInputStream()))) {
       String line;
@@ -269,7 +301,7 @@ public class SessionReconstructionService {
         if (line.startsWith("Node1:")) continue;
         if (line.isBlank()) continue;
 
-        if (truncated) continue; // drain stdout without processing
+        if (chunks.truncated) continue; // drain stdout without processing
 
         boolean isNode1 = line.startsWith("\t");
         String hexLine = isNode1 ? line.stripLeading() : line;
@@ -280,46 +312,42 @@ public class SessionReconstructionService {
                 ? (isNode1 ? "SERVER" : "CLIENT")
                 : (isNode1 ? opposite(node0Direction) : node0Direction);
 
-        byte[] data = hexToBytes(hexLine);
-        if (data == null || data.length == 0) continue;
-
-        // Handle truncation: include bytes up to the limit then stop accumulating
-        if (totalBytes + data.length > MAX_SESSION_BYTES) {
-          truncated = true;
-          int remaining = (int) (MAX_SESSION_BYTES - totalBytes);
-          if (remaining > 0) {
-            if (!direction.equals(currentDirection)) {
-              flushAccumulator(chunks, accumulator, currentDirection);
-              currentDirection = direction;
-            }
-            accumulator.write(data, 0, remaining);
-            totalBytes += remaining;
-          }
-          continue;
-        }
-
-        totalBytes += data.length;
-
-        if (!direction.equals(currentDirection)) {
-          flushAccumulator(chunks, accumulator, currentDirection);
-          currentDirection = direction;
-        }
-        accumulator.write(data);
+        chunks.add(direction, hexToBytes(hexLine));
       }
     }
-    // Flush any remaining accumulated bytes
-    flushAccumulator(chunks, accumulator, currentDirection);
 
     process.waitFor();
-    return chunks;
+    return chunks.finish();
   }
 
-  private void flushAccumulator(
-      List<RawChunk> chunks, ByteArrayOutputStream accumulator, String direction) {
-    if (direction != null && accumulator.size() > 0) {
-      chunks.add(new RawChunk(direction, accumulator.toByteArray()));
-      accumulator.reset();
+  /**
+   * Follows the stream in the capture's sharkd session, which has the capture dissected already,
+   * and returns what {@link #runFollowCommand} would; null to leave it to tshark.
+   */
+  private List<RawChunk> followWithSharkd(ConversationEntity conv, StreamLocation loc) {
+    if (conv.getTotalBytes() != null && conv.getTotalBytes() > MAX_SHARKD_FOLLOW_BYTES) {
+      return null;
+    }
+    SharkdPool.Reply reply =
+        sharkd.request(
+            conv.getFile(),
+            "follow",
+            Map.of(
+                "follow", loc.proto.toUpperCase(),
+                "filter", loc.proto + ".stream eq " + loc.streamIndex));
+    if (reply == null || !reply.ok()) return null;
+
+    // sharkd's client host is tshark's Node0; payloads from the other side carry "s".
+    JsonNode result = reply.result();
+    String clientDirection =
+        result.path("chost").asText().equals(conv.getSrcIp()) ? "CLIENT" : "SERVER";
+    ChunkCollector chunks = new ChunkCollector();
+    for (JsonNode payload : result.path("payloads")) {
+      if (chunks.truncated) break;
+      String direction = payload.has("s") ? opposite(clientDirection) : clientDirection;
+      chunks.add(direction, Base64.getDecoder().decode(payload.path("d").asText("")));
     }
+    return chunks.finish();
   }
 
   private String extractIp(String nodeStr) {
@@ -1404,6 +1432,47 @@ public class SessionReconstructionService {
     }
   }
 
+  /**
+   * Gathers a followed stream's data into chunks, one per run of the same direction — appending to
+   * one buffer rather than copying arrays — and stops at {@link #MAX_SESSION_BYTES}.
+   */
+  private static class ChunkCollector {
+    final List<RawChunk> chunks = new ArrayList<>();
+    final ByteArrayOutputStream accumulator = new ByteArrayOutputStream();
+    String currentDirection;
+    long totalBytes;
+    boolean truncated;
+
+    void add(String direction, byte[] data) {
+      if (truncated || data == null || data.length == 0) return;
+      int length = data.length;
+      // Include bytes up to the limit, then stop accumulating
+      if (totalBytes + length > MAX_SESSION_BYTES) {
+        truncated = true;
+        length = (int) (MAX_SESSION_BYTES - totalBytes);
+        if (length <= 0) return;
+      }
+      if (!direction.equals(currentDirection)) {
+        flush();
+        currentDirection = direction;
+      }
+      accumulator.write(data, 0, length);
+      totalBytes += length;
+    }
+
+    List<RawChunk> finish() {
+      flush();
+      return chunks;
+    }
+
+    private void flush() {
+      if (currentDirection != null && accumulator.size() > 0) {
+        chunks.add(new RawChunk(currentDirection, accumulator.toByteArray()));
+        accumulator.reset();
+      }
+    }
+  }
+
   private static class RawChunk {
     final String direction;
     final byte[] data;
@@ -0,0 +1,187 @@
+package com.tracepcap.analysis.service;
+
+import com.tracepcap.analysis.spi.DissectedFrame;
+import com.tracepcap.analysis.spi.ExtractionTarget;
+import com.tracepcap.analysis.spi.Extractor;
+import com.tracepcap.analysis.spi.FrameSubscriber;
+import com.tracepcap.common.stage.Tier;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+/**
+ * Records each conversation's {@code tcp.stream} or {@code udp.stream} — tshark's own number for
+ * the connection, which is what {@code -z follow} takes — so that following a stream later does
+ * not start with a tshark pass to find it.
+ *
+ * <p>Session reconstruction used to look the number up on every click, filtering the whole capture
+ * by the conversation's endpoints once per transport and direction; file extraction kept a map of
+ * its own from the same fields. Both now read the number off the conversation. Reading it here
+ * costs two fields on the shared pass, which runs for every capture anyway.
+ *
+ * <p>A conversation gets the stream of the first frame with its exact endpoints, in either
+ * direction. tshark opens a new stream when a port pair is reused after a close; the conversation,
+ * keyed by endpoints, spans both, and its number is the first one's.
+ *
+ * <p>The transport is the conversation's own, not whichever was found first: a TCP and a UDP flow
+ * can share an address and port 4-tuple (QUIC beside HTTPS on 443, DNS on 53), and each must get
+ * its own stream. The conversation's protocol is tshark's label for it — {@code TCP}, {@code UDP},
+ * or an application protocol such as {@code QUIC} — so the pass also learns which transport
+ * carried each label. A label it cannot place is tried against TCP, then UDP.
+ */
+@Slf4j
+@Service
+public class StreamIndexService implements Extractor, FrameSubscriber<StreamIndexService.Streams> {
+
+  private static final String TCP = "tcp";
+  private static final String UDP = "udp";
+
+  private static final List<String> FIELDS =
+      List.of(
+          "ip.src",
+          "ip.dst",
+          "ipv6.src",
+          "ipv6.dst",
+          "tcp.srcport",
+          "tcp.dstport",
+          "tcp.stream",
+          "udp.srcport",
+          "udp.dstport",
+          "udp.stream");
+
+  @Override
+  public String name() {
+    return "stream-index";
+  }
+
+  /** tshark's numbering, read straight off the dissection. */
+  @Override
+  public Tier tier() {
+    return Tier.DETERMINISTIC;
+  }
+
+  /** Always: following a stream is available for every capture, whatever else was enabled. */
+  @Override
+  public boolean enabledFor(ExtractionTarget target) {
+    return true;
+  }
+
+  @Override
+  public Set<String> fields() {
+    return Set.copyOf(FIELDS);
+  }
+
+  @Override
+  public Streams open() {
+    return new Streams();
+  }
+
+  @Override
+  public Outcome extract(ExtractionTarget target) {
+    int found = assign(target.conversations(), target.dissection().consumer(this));
+    return Outcome.completed(
+        "stream index recorded for " + found + "/" + target.conversations().size());
+  }
+
+  /** Sets the stream on each conversation the pass saw one for; returns how many. */
+  static int assign(List<PcapParserService.ConversationInfo> conversations, Streams streams) {
+    int found = 0;
+    for (PcapParserService.ConversationInfo conv : conversations) {
+      String key =
+          streamKey(conv.getSrcIp(), conv.getSrcPort(), conv.getDstIp(), conv.getDstPort());
+      boolean udpFirst = UDP.equals(streams.transportOf(conv.getProtocol()));
+      Integer tcp = null;
+      Integer udp = null;
+      if (udpFirst) {
+        udp = streams.udp.get(key);
+        if (udp == null) tcp = streams.tcp.get(key);
+      } else {
+        tcp = streams.tcp.get(key);
+        if (tcp == null) udp = streams.udp.get(key);
+      }
+      conv.setTcpStream(tcp);
+      conv.setUdpStream(udp);
+      if (tcp != null || udp != null) found++;
+    }
+    log.debug("Stream index recorded for {}/{} conversations", found, conversations.size());
+    return found;
+  }
+
+  /**
+   * The first stream number seen for each endpoint pair, both ways round, per transport; and the
+   * transport each protocol label was first seen over.
+   */
+  public static final class Streams implements FrameSubscriber.FrameConsumer {
+    final Map<String, Integer> tcp = new HashMap<>();
+    final Map<String, Integer> udp = new HashMap<>();
+    private final Map<String, String> transports = new HashMap<>(Map.of("TCP", TCP, "UDP", UDP));
+
+    @Override
+    public void accept(DissectedFrame frame) {
+      String srcIp = firstNonEmpty(frame.first("ip.src"), frame.first("ipv6.src"));
+      String dstIp = firstNonEmpty(frame.first("ip.dst"), frame.first("ipv6.dst"));
+      if (srcIp == null || dstIp == null) return;
+      if (put(tcp, frame, TCP, srcIp, dstIp)) learn(frame, TCP);
+      if (put(udp, frame, UDP, srcIp, dstIp)) learn(frame, UDP);
+    }
+
+    /** {@code "tcp"}, {@code "udp"}, or null for a label no frame with a stream carried. */
+    String transportOf(String protocol) {
+      return protocol == null ? null : transports.get(protocol.toUpperCase());
+    }
+
+    /**
+     * The frame's top layer is what tshark's protocol column, and so a conversation's protocol,
+     * names in the common case ({@code ...:udp:quic} → {@code QUIC}).
+     */
+    private void learn(DissectedFrame frame, String transport) {
+      String stack = frame.first(DissectedFrame.PROTOCOLS);
+      if (stack.isEmpty()) return;
+      String top = stack.substring(stack.lastIndexOf(':') + 1).toUpperCase();
+      transports.putIfAbsent(top, transport);
+    }
+
+    /** Whether the frame had a {@code transport} stream number. */
+    private static boolean put(
+        Map<String, Integer> streams,
+        DissectedFrame frame,
+        String transport,
+        String srcIp,
+        String dstIp) {
+      String stream = frame.first(transport + ".stream");
+      if (stream.isEmpty()) return false;
+      try {
+        Integer index = Integer.valueOf(stream.trim());
+        Integer srcPort = port(frame.first(transport + ".srcport"));
+        Integer dstPort = port(frame.first(transport + ".dstport"));
+        streams.putIfAbsent(streamKey(srcIp, srcPort, dstIp, dstPort), index);
+        streams.putIfAbsent(streamKey(dstIp, dstPort, srcIp, srcPort), index);
+        return true;
+      } catch (NumberFormatException ignored) {
+        // Not a stream number; nothing to record for this frame.
+        return false;
+      }
+    }
+  }
+
+  private static String streamKey(String ip1, Integer p1, String ip2, Integer p2) {
+    return ip1 + ":" + p1 + "→" + ip2 + ":" + p2;
+  }
+
+  private static String firstNonEmpty(String a, String b) {
+    if (!a.isBlank()) return a.trim();
+    return b.isBlank() ? null : b.trim();
+  }
+
+  private static Integer port(String value) {
+    if (value.isBlank()) return null;
+    try {
+      return Integer.valueOf(value.trim());
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,43 @@
+package com.tracepcap.analysis.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dense ids for the strings every packet repeats — addresses, protocols, detected file types.
+ *
+ * <p>A capture has a few hundred of each and millions of packets, so a packet that stores an int
+ * id instead of a reference (or, on disk, instead of the text) pays four bytes for the field, and
+ * the text exists once. {@link #valueOf(int)} always returns the same instance for an id, which
+ * gives readers the sharing {@code pooled()} gives the parse.
+ *
+ * <p>Not thread-safe; owned by the single parse that fills it.
+ */
+final class StringDictionary {
+
+  private final List<String> values = new ArrayList<>();
+  private final Map<String, Integer> ids = new HashMap<>();
+
+  /** The id for {@code value}, assigning the next one on first sight; -1 for null. */
+  int idOf(String value) {
+    if (value == null) return -1;
+    Integer id = ids.get(value);
+    if (id == null) {
+      id = values.size();
+      values.add(value);
+      ids.put(value, id);
+    }
+    return id;
+  }
+
+  /** The string for an id from {@link #idOf(String)}; null for -1. */
+  String valueOf(int id) {
+    return id < 0 ? null : values.get(id);
+  }
+
+  int size() {
+    return values.size();
+  }
+}
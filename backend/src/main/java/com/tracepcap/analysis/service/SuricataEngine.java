@@ -1,16 +1,25 @@
 package com.tracepcap.analysis.service;
 
+import com.tracepcap.common.concurrent.IoThreads;
 import com.tracepcap.common.stage.DetectionEngineStatus;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import jakarta.annotation.PreDestroy;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
 /**
@@ -30,14 +39,26 @@ import org.springframework.stereotype.Component;
  * caller falls back to the cold subprocess. A warm engine is an optimisation; losing it must not
  * lose threat detection.
  *
- * <p><b>Serialised.</b> Suricata processes queued captures one at a time, and {@code pcap-current}
- * reports a single global "what am I working on", so two concurrent submissions could not tell
- * whose file had finished. The lock makes that explicit; it costs no throughput, because the engine
- * was serial regardless.
+ * <p><b>Serialised per engine.</b> Suricata processes queued captures one at a time, and {@code
+ * pcap-current} reports a single global "what am I working on", so two concurrent submissions could
+ * not tell whose file had finished. Each engine's lock makes that explicit.
+ *
+ * <p><b>Pooled.</b> One engine meant every concurrent analysis queued for it: with eight captures
+ * submitted together, the eighth waited behind seven. Up to {@code pool-size} engines run, each
+ * with its own socket and log directory, and a capture goes to the least-loaded one. Each holds a
+ * built ruleset of hundreds of MB, so the pool only grows while the engines already running plus
+ * one more fit in {@code memory-budget-mb}, sized by what the running ones actually occupy. An
+ * engine that wedges is stopped and rebuilt on its next use; the others carry on.
+ *
+ * <p><b>Restarts.</b> A warm engine dies with the backend, so the first capture after every
+ * restart paid the full build. {@code prewarm}, on by default, moves that build to when the
+ * application is ready, instead of the first capture. (The installed Suricata 6 cannot keep
+ * compiled rule groups on disk between processes; {@code detect.sgh-mpm-caching} arrived later, so
+ * every start still builds.)
  */
 @Slf4j
 @Component
-public class SuricataEngine implements DetectionEngineStatus {
+public class SuricataEngine implements DetectionEngineStatus, MeterBinder {
 
   private static final String SURICATASC = "suricatasc";
   private static final String SURICATA = "suricata";
@@ -74,26 +95,51 @@ public class SuricataEngine implements DetectionEngineStatus {
   @Value("${tracepcap.suricata.warm-engine.command-timeout-seconds:30}")
   private int commandTimeoutSeconds;
 
-  private final ReentrantLock lock = new ReentrantLock();
-  private volatile Process daemon;
+  /** Most engines kept warm at once. 1 is the single shared engine this pool replaced. */
+  @Value("${tracepcap.suricata.warm-engine.pool-size:1}")
+  private int poolSize = 1;
+
+  /** Resident memory the pool's engines may hold between them; 0 caps by pool-size alone. */
+  @Value("${tracepcap.suricata.warm-engine.memory-budget-mb:1024}")
+  private long memoryBudgetMb = 1024;
 
   /**
-   * Whether the engine has finished building its ruleset.
-   *
-   * <p>A plain flag rather than a probe: callers ask this to size a progress bar, and shelling out
-   * to suricatasc to answer would cost more than the question is worth.
+   * What an engine is assumed to hold until one has been measured: the ET Open ruleset builds to
+   * roughly this much. Only decides whether a second engine may start before the first is warm.
    */
-  private volatile boolean warm;
+  static final long ENGINE_MB_ESTIMATE = 500;
+
+  /**
+   * Build the engines once the application is ready, rather than on the first capture, so the
+   * first analysis after a restart does not wait for a ruleset build. Off trades that wait for not
+   * holding the engines' memory until something is analysed; see {@link Engine#ensureStarted}.
+   */
+  @Value("${tracepcap.suricata.warm-engine.prewarm:true}")
+  private boolean prewarm = true;
+
+  /**
+   * Guards the pool. A lock rather than {@code synchronized}: every file response asks {@link
+   * #isWarm} for its time estimate on a request thread, which is virtual, and choosing an engine
+   * reads each daemon's {@code /proc} status — a virtual thread blocked inside a monitor pins its
+   * carrier, a lock does not.
+   */
+  private final ReentrantLock poolLock = new ReentrantLock();
+
+  private List<Engine> engines;
 
   /**
    * Whether the next capture can skip the ~45 s detection-engine build (#569).
    *
    * <p>Progress estimation needs this because it is the difference between one stage taking 0.3 s
-   * and taking 45 s, and no static weighting can describe both (#758).
+   * and taking 45 s, and no static weighting can describe both (#758). With a pool it is a question
+   * about the engine the next capture would be handed, which may be a cold one while the warm ones
+   * are busy.
    */
   @Override
   public boolean isWarm() {
-    return warm && daemon != null && daemon.isAlive();
+    if (!warmEngineEnabled) return false;
+    Engine next = leastLoaded();
+    return next != null && next.isWarm();
   }
 
   /** Where a warm run writes, kept apart from the caller's fallback output. */
@@ -101,187 +147,429 @@ public class SuricataEngine implements DetectionEngineStatus {
     return outDir.resolve("warm");
   }
 
-  private void discardDaemon() {
-    warm = false;
-    Process p = daemon;
-    daemon = null;
-    if (p != null && p.isAlive()) p.destroyForcibly();
-  }
-
   /**
-   * Starts the engine if it is not already running, and waits for it to accept commands.
+   * Processes {@code pcapFile} on the least-loaded engine, writing eve.json into {@code outDir}.
    *
-   * <p>Called lazily rather than at boot: an application that never analyses a capture should not
-   * hold a Suricata process, and a 45 s startup must not delay readiness.
+   * @return true if a warm engine handled it; false if the caller should fall back
    */
-  private boolean ensureStarted() {
+  public boolean process(File pcapFile, Path outDir) {
     if (!warmEngineEnabled) return false;
-    if (isResponsive()) return true;
+    Engine engine;
+    poolLock.lock();
+    try {
+      engine = leastLoaded();
+      if (engine == null) return false;
+      engine.load.incrementAndGet();
+    } finally {
+      poolLock.unlock();
+    }
+    try {
+      return engine.process(pcapFile, outDir);
+    } finally {
+      engine.load.decrementAndGet();
+    }
+  }
 
+  /**
+   * The engine with the fewest captures running or waiting on it, preferring a warm one on a tie.
+   * An engine that is not running is only a candidate while starting it stays within the memory
+   * budget — otherwise the capture waits for a running one, which is cheaper than the OOM killer.
+   */
+  Engine leastLoaded() {
+    poolLock.lock();
     try {
-      // A daemon can be alive but unresponsive — wedged, or its socket gone. Starting a
-      // replacement without stopping it first would orphan a process holding a built rule engine
-      // (hundreds of MB) that nothing can reach afterwards. Same defect the startup-timeout path
-      // had; this is the restart path.
-      discardDaemon();
-
-      Path socket = Path.of(socketPath);
-      Files.createDirectories(socket.getParent());
-      Files.deleteIfExists(socket);
-
-      // Socket mode rejects -l, so the log directory has to come from config instead. The
-      // packaged default (/var/log/suricata) is root-owned and the runtime user is not root, so
-      // without this the engine exits immediately with SC_ERR_LOGDIR_CONFIG.
-      Path engineLogDir = socket.getParent().resolve("log");
-      Files.createDirectories(engineLogDir);
-
-      log.info("Starting warm Suricata engine on {} (first run builds the ruleset)", socketPath);
-      daemon =
-          new ProcessBuilder(
-                  SURICATA,
-                  "--unix-socket=" + socketPath,
-                  // Same reason the per-file path sets it: Suricata otherwise starts one worker
-                  // per core, each pre-allocating large stream/flow pools. On a 112-core host that
-                  // fails thread init ("pool grow failed") and the engine limps — measured 165s
-                  // for a capture the per-file path did in 46s, i.e. worse than the bug being
-                  // fixed. One packet thread is right for a one-shot offline read either way.
-                  "--runmode",
-                  "single",
-                  "--set",
-                  "default-log-dir=" + engineLogDir.toAbsolutePath())
-              // Kept, not discarded: a warm engine that fails silently is worse than no warm
-              // engine, because the fallback hides it and only the timings show anything is wrong.
-              .redirectErrorStream(true)
-              .redirectOutput(engineLogDir.resolve("engine.log").toFile())
-              .start();
-
-      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(startupTimeoutSeconds);
-      while (System.nanoTime() < deadline) {
-        if (!daemon.isAlive()) {
-          log.warn("Warm Suricata engine exited during startup — falling back to per-file runs");
-          discardDaemon();
-          return false;
-        }
-        if (isResponsive()) {
-          log.info("Warm Suricata engine ready");
-          warm = true;
-          return true;
+      List<Engine> pool = engines();
+      int inUse = 0;
+      for (Engine e : pool) if (e.inUse()) inUse++;
+      boolean mayStart = inUse < capacity(pool);
+
+      Engine best = null;
+      for (Engine e : pool) {
+        if (!e.inUse() && !mayStart) continue;
+        if (best == null
+            || e.load.get() < best.load.get()
+            || (e.load.get() == best.load.get() && e.isWarm() && !best.isWarm())) {
+          best = e;
         }
-        Thread.sleep(1000);
       }
-      log.warn("Warm Suricata engine did not become ready in {}s", startupTimeoutSeconds);
-      // Alive but unresponsive: without this the next attempt starts a second daemon and this
-      // one becomes unreachable, so stop() could never terminate it.
-      discardDaemon();
-      return false;
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
-      return false;
-    } catch (IOException e) {
-      log.warn("Could not start the warm Suricata engine: {}", e.getMessage());
-      return false;
+      return best;
+    } finally {
+      poolLock.unlock();
     }
   }
 
   /**
-   * Processes {@code pcapFile}, writing eve.json into {@code outDir}.
-   *
-   * @return true if the warm engine handled it; false if the caller should fall back
+   * How many engines fit in the memory budget: measured from the largest warm engine's resident set
+   * where there is one, from {@link #ENGINE_MB_ESTIMATE} before — an engine still building its
+   * ruleset is still growing. Never below one, so a budget too small for any engine still behaves
+   * as the single engine always did.
    */
-  public boolean process(File pcapFile, Path outDir) {
-    if (!warmEngineEnabled) return false;
-    // Bounded: while the engine builds its ruleset (~45s) other analyses should fall back to the
-    // per-file path rather than queue behind it.
+  private int capacity(List<Engine> pool) {
+    if (memoryBudgetMb <= 0) return pool.size();
+    long perEngine = ENGINE_MB_ESTIMATE;
+    long measured = 0;
+    for (Engine e : pool) if (e.isWarm()) measured = Math.max(measured, e.residentMb());
+    if (measured > 0) perEngine = measured;
+    return (int) Math.max(1, Math.min(pool.size(), memoryBudgetMb / perEngine));
+  }
+
+  /**
+   * Starts the pool's engines in the background when {@code prewarm} is set, one at a time and only
+   * as many as the memory budget admits — the first one's measured size decides how many more fit.
+   * Each holds its engine's lock while it builds, so a capture that arrives meanwhile waits for the
+   * build in progress rather than starting one of its own.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  void prewarm() {
+    if (!warmEngineEnabled || !prewarm) return;
+    IoThreads.start(
+        "suricata-prewarm",
+        () -> {
+          List<Engine> pool = engines();
+          for (int i = 0; i < pool.size() && i < capacity(pool); i++) {
+            if (!pool.get(i).prewarm()) return;
+          }
+        });
+  }
+
+  /** Created on first use rather than at construction, which runs before the @Values are set. */
+  List<Engine> engines() {
+    poolLock.lock();
     try {
-      if (!lock.tryLock(lockWaitSeconds, TimeUnit.SECONDS)) return false;
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
-      return false;
+      if (engines == null) {
+        Path base = Path.of(socketPath);
+        List<Engine> pool = new ArrayList<>();
+        for (int i = 0; i < Math.max(1, poolSize); i++) {
+          // The first engine keeps the configured socket, so a pool of one is the engine as
+          // before.
+          Path socket =
+              i == 0
+                  ? base
+                  : base.getParent().resolve("engine-" + i).resolve(base.getFileName());
+          pool.add(new Engine(i, socket.toString()));
+        }
+        engines = List.copyOf(pool);
+      }
+      return engines;
+    } finally {
+      poolLock.unlock();
     }
+  }
+
+  /** Pool occupancy, for whoever is scraping: how many engines are warm, busy, and waited on. */
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    Gauge.builder("tracepcap.suricata.engines.size", () -> engines().size())
+        .description("Warm Suricata engines the pool may run")
+        .register(registry);
+    Gauge.builder("tracepcap.suricata.engines.warm", () -> count(Engine::isWarm))
+        .description("Warm Suricata engines with a built ruleset")
+        .register(registry);
+    Gauge.builder("tracepcap.suricata.engines.busy", () -> count(e -> e.load.get() > 0))
+        .description("Warm Suricata engines running or queued a capture")
+        .register(registry);
+    Gauge.builder(
+            "tracepcap.suricata.engines.captures",
+            () -> engines().stream().mapToInt(e -> e.load.get()).sum())
+        .description("Captures running on or waiting for a warm Suricata engine")
+        .register(registry);
+    Gauge.builder(
+            "tracepcap.suricata.engines.resident",
+            () -> engines().stream().mapToLong(Engine::residentMb).sum())
+        .description("Resident memory of the warm Suricata engines")
+        .baseUnit("megabytes")
+        .register(registry);
+  }
+
+  private long count(Predicate<Engine> p) {
+    return engines().stream().filter(p).count();
+  }
+
+  @PreDestroy
+  void stop() {
+    List<Engine> pool;
+    poolLock.lock();
     try {
-      if (!ensureStarted()) return false;
+      pool = engines;
+    } finally {
+      poolLock.unlock();
+    }
+    if (pool != null) pool.forEach(Engine::stop);
+  }
+
+  /**
+   * One Suricata daemon in the pool, with its own socket, log directory and lock. Everything that
+   * can go wrong with it — a failed start, a wedge, a lost socket — is dealt with here, without
+   * touching its peers.
+   */
+  final class Engine {
+
+    private final int index;
+    private final String socketPath;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Captures routed here and not yet done, running or waiting for the lock. */
+    final AtomicInteger load = new AtomicInteger();
+
+    private volatile Process daemon;
+
+    /**
+     * Whether the engine has finished building its ruleset.
+     *
+     * <p>A plain flag rather than a probe: callers ask this to size a progress bar, and shelling
+     * out to suricatasc to answer would cost more than the question is worth.
+     */
+    private volatile boolean warm;
+
+    Engine(int index, String socketPath) {
+      this.index = index;
+      this.socketPath = socketPath;
+    }
+
+    boolean isWarm() {
+      return warm && isRunning();
+    }
+
+    boolean isRunning() {
+      Process p = daemon;
+      return p != null && p.isAlive();
+    }
+
+    /** Holding memory, or about to: running, or routed a capture that will start it. */
+    boolean inUse() {
+      return isRunning() || load.get() > 0;
+    }
+
+    /** The daemon's resident set in MB, or 0 when it is not running or cannot be read. */
+    long residentMb() {
+      Process p = daemon;
+      if (p == null || !p.isAlive()) return 0;
+      try {
+        Path status = Path.of("/proc", Long.toString(p.pid()), "status");
+        for (String line : Files.readAllLines(status)) {
+          if (line.startsWith("VmRSS:")) {
+            return Long.parseLong(line.replaceAll("[^0-9]", "")) / 1024;
+          }
+        }
+      } catch (IOException | RuntimeException e) {
+        // Not Linux, or the process exited between the check and the read.
+      }
+      return 0;
+    }
+
+    private void discardDaemon() {
+      warm = false;
+      Process p = daemon;
+      daemon = null;
+      if (p != null && p.isAlive()) p.destroyForcibly();
+    }
+
+    /**
+     * Starts the engine if it is not already running, and waits for it to accept commands.
+     *
+     * <p>Lazy in itself: an application that never analyses a capture need not hold a Suricata
+     * process, and a 45 s startup must not delay readiness. {@code prewarm} (the default) calls it
+     * once the application is ready, so the build runs after readiness rather than before; with it
+     * off, the first capture does.
+     */
+    private boolean ensureStarted() {
+      if (!warmEngineEnabled) return false;
+      if (isResponsive()) return true;
 
-      // Its own directory. If a warm run is abandoned on timeout it may still be writing, and the
-      // caller's fallback starts a cold Suricata immediately — pointed at the same directory,
-      // two processes would append to one eve.json and produce mixed or partial alerts.
-      Path warmDir = warmDir(outDir);
       try {
-        Files.createDirectories(warmDir);
+        // A daemon can be alive but unresponsive — wedged, or its socket gone. Starting a
+        // replacement without stopping it first would orphan a process holding a built rule
+        // engine (hundreds of MB) that nothing can reach afterwards. Same defect the
+        // startup-timeout path had; this is the restart path.
+        discardDaemon();
+
+        Path socket = Path.of(socketPath);
+        Files.createDirectories(socket.getParent());
+        Files.deleteIfExists(socket);
+
+        // Socket mode rejects -l, so the log directory has to come from config instead. The
+        // packaged default (/var/log/suricata) is root-owned and the runtime user is not root,
+        // so without this the engine exits immediately with SC_ERR_LOGDIR_CONFIG. Each engine's
+        // sits beside its own socket.
+        Path engineLogDir = socket.getParent().resolve("log");
+        Files.createDirectories(engineLogDir);
+
+        log.info(
+            "Starting warm Suricata engine {} on {} (first run builds the ruleset)",
+            index,
+            socketPath);
+        daemon =
+            new ProcessBuilder(
+                    SURICATA,
+                    "--unix-socket=" + socketPath,
+                    // Same reason the per-file path sets it: Suricata otherwise starts one
+                    // worker per core, each pre-allocating large stream/flow pools. On a
+                    // 112-core host that fails thread init ("pool grow failed") and the engine
+                    // limps — measured 165s for a capture the per-file path did in 46s, i.e.
+                    // worse than the bug being fixed. One packet thread is right for a one-shot
+                    // offline read either way.
+                    "--runmode",
+                    "single",
+                    "--set",
+                    "default-log-dir=" + engineLogDir.toAbsolutePath())
+                // Kept, not discarded: a warm engine that fails silently is worse than no warm
+                // engine, because the fallback hides it and only the timings show anything is
+                // wrong.
+                .redirectErrorStream(true)
+                .redirectOutput(engineLogDir.resolve("engine.log").toFile())
+                .start();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(startupTimeoutSeconds);
+        while (System.nanoTime() < deadline) {
+          if (!daemon.isAlive()) {
+            log.warn(
+                "Warm Suricata engine {} exited during startup — falling back to per-file runs",
+                index);
+            discardDaemon();
+            return false;
+          }
+          if (isResponsive()) {
+            log.info("Warm Suricata engine {} ready", index);
+            warm = true;
+            return true;
+          }
+          Thread.sleep(1000);
+        }
+        log.warn(
+            "Warm Suricata engine {} did not become ready in {}s", index, startupTimeoutSeconds);
+        // Alive but unresponsive: without this the next attempt starts a second daemon and this
+        // one becomes unreachable, so stop() could never terminate it.
+        discardDaemon();
+        return false;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
       } catch (IOException e) {
+        log.warn("Could not start warm Suricata engine {}: {}", index, e.getMessage());
         return false;
       }
+    }
 
-      String submitted =
-          runCommand("pcap-file " + pcapFile.getAbsolutePath() + " " + warmDir.toAbsolutePath());
-      if (submitted == null || !submitted.contains("OK")) {
-        log.warn("Warm Suricata engine rejected the capture ({}) — falling back", submitted);
+    /** Builds this engine now, if nothing else is using it; true if it is warm afterwards. */
+    boolean prewarm() {
+      if (!lock.tryLock()) return false;
+      load.incrementAndGet();
+      try {
+        return ensureStarted();
+      } finally {
+        load.decrementAndGet();
+        lock.unlock();
+      }
+    }
+
+    /** As {@link SuricataEngine#process}, on this engine. */
+    boolean process(File pcapFile, Path outDir) {
+      // Bounded: while the engine builds its ruleset (~45s) other analyses should fall back to
+      // the per-file path rather than queue behind it.
+      try {
+        if (!lock.tryLock(lockWaitSeconds, TimeUnit.SECONDS)) return false;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
         return false;
       }
+      try {
+        if (!ensureStarted()) return false;
 
-      // pcap-current reports the capture being processed, or "None" when the queue has drained —
-      // including in the window after the submission is accepted but before the engine dequeues
-      // it. Waiting for eve.json as well distinguishes "not started yet" from "finished".
-      Path eve = warmDir.resolve(EVE_JSON);
-      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(runTimeoutSeconds);
-      while (System.nanoTime() < deadline) {
-        String current = runCommand("pcap-current");
-        if (current == null) {
-          log.warn("Lost contact with the warm Suricata engine — falling back");
-          discardDaemon();
+        // Its own directory. If a warm run is abandoned on timeout it may still be writing, and
+        // the caller's fallback starts a cold Suricata immediately — pointed at the same
+        // directory, two processes would append to one eve.json and produce mixed or partial
+        // alerts.
+        Path warmDir = warmDir(outDir);
+        try {
+          Files.createDirectories(warmDir);
+        } catch (IOException e) {
           return false;
         }
-        if (current.contains("None") && Files.exists(eve)) return true;
-        Thread.sleep(100);
-      }
-      log.warn("Warm Suricata engine did not finish within {}s — falling back", runTimeoutSeconds);
-      return false;
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
-      return false;
-    } finally {
-      lock.unlock();
-    }
-  }
 
-  private boolean isResponsive() {
-    String v = runCommand("version");
-    return v != null && v.contains("OK");
-  }
+        String submitted =
+            runCommand(
+                "pcap-file " + pcapFile.getAbsolutePath() + " " + warmDir.toAbsolutePath());
+        if (submitted == null || !submitted.contains("OK")) {
+          log.warn(
+              "Warm Suricata engine {} rejected the capture ({}) — falling back",
+              index,
+              submitted);
+          return false;
+        }
 
-  /** Returns the raw suricatasc reply, or null if the command could not be run. */
-  private String runCommand(String command) {
-    try {
-      Process p =
-          new ProcessBuilder(List.of(SURICATASC, "-c", command, socketPath))
-              .redirectErrorStream(true)
-              .start();
-      // waitFor first: readAllBytes blocks until EOF, so a stalled socket command would hold the
-      // lock indefinitely and the caller could never fall back. suricatasc replies with a single
-      // short JSON line, well inside the pipe buffer, so nothing is lost by draining afterwards.
-      if (!p.waitFor(commandTimeoutSeconds, TimeUnit.SECONDS)) {
-        p.destroyForcibly();
-        return null;
+        // pcap-current reports the capture being processed, or "None" when the queue has drained
+        // — including in the window after the submission is accepted but before the engine
+        // dequeues it. Waiting for eve.json as well distinguishes "not started yet" from
+        // "finished".
+        Path eve = warmDir.resolve(EVE_JSON);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(runTimeoutSeconds);
+        while (System.nanoTime() < deadline) {
+          String current = runCommand("pcap-current");
+          if (current == null) {
+            log.warn("Lost contact with warm Suricata engine {} — falling back", index);
+            discardDaemon();
+            return false;
+          }
+          if (current.contains("None") && Files.exists(eve)) return true;
+          Thread.sleep(100);
+        }
+        log.warn(
+            "Warm Suricata engine {} did not finish within {}s — restarting it, falling back",
+            index,
+            runTimeoutSeconds);
+        // Wedged, or still grinding through this capture: either way the next capture routed
+        // here would wait on it. Stopped now, it is rebuilt on its next use; its peers are not
+        // touched.
+        discardDaemon();
+        return false;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      } finally {
+        lock.unlock();
       }
-      String out = new String(p.getInputStream().readAllBytes());
-      return p.exitValue() == 0 ? out : null;
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
-      return null;
-    } catch (IOException e) {
-      return null;
     }
-  }
 
-  @PreDestroy
-  void stop() {
-    Process p = daemon;
-    if (p != null && p.isAlive()) {
-      p.destroy();
+    private boolean isResponsive() {
+      String v = runCommand("version");
+      return v != null && v.contains("OK");
+    }
+
+    /** Returns the raw suricatasc reply, or null if the command could not be run. */
+    private String runCommand(String command) {
       try {
-        if (!p.waitFor(10, TimeUnit.SECONDS)) p.destroyForcibly();
+        Process p =
+            new ProcessBuilder(List.of(SURICATASC, "-c", command, socketPath))
+                .redirectErrorStream(true)
+                .start();
+        // waitFor first: readAllBytes blocks until EOF, so a stalled socket command would hold
+        // the lock indefinitely and the caller could never fall back. suricatasc replies with a
+        // single short JSON line, well inside the pipe buffer, so nothing is lost by draining
+        // afterwards.
+        if (!p.waitFor(commandTimeoutSeconds, TimeUnit.SECONDS)) {
+          p.destroyForcibly();
+          return null;
+        }
+        String out = new String(p.getInputStream().readAllBytes());
+        return p.exitValue() == 0 ? out : null;
       } catch (InterruptedException e) {
         Thread.currentThread().interrupt();
-        p.destroyForcibly();
+        return null;
+      } catch (IOException e) {
+        return null;
+      }
+    }
+
+    void stop() {
+      Process p = daemon;
+      if (p != null && p.isAlive()) {
+        p.destroy();
+        try {
+          if (!p.waitFor(10, TimeUnit.SECONDS)) p.destroyForcibly();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          p.destroyForcibly();
+        }
       }
     }
   }
@@ -3,15 +3,19 @@ package com.tracepcap.analysis.service;
 import com.tracepcap.analysis.spi.ExtractionManifest;
 import com.tracepcap.analysis.spi.ExtractionTarget;
 import com.tracepcap.analysis.spi.Extractor;
+import com.tracepcap.common.concurrent.IoThreads;
+import com.tracepcap.common.process.SubprocessGovernor;
+import com.tracepcap.common.process.SubprocessGovernor.Budget;
+import com.tracepcap.common.process.SubprocessGovernor.Tool;
 import com.tracepcap.common.stage.Tier;
 import org.springframework.beans.factory.annotation.Value;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.tracepcap.analysis.entity.ConversationEntity;
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -60,8 +64,11 @@ public class SuricataService implements Extractor {
   /** Warm engine (#569). Falls back to the per-file subprocess below when unavailable. */
   private final SuricataEngine engine;
 
-  public SuricataService(SuricataEngine engine) {
+  private final SubprocessGovernor governor;
+
+  public SuricataService(SuricataEngine engine, SubprocessGovernor governor) {
     this.engine = engine;
+    this.governor = governor;
   }
 
   @Override
@@ -101,7 +108,10 @@ public class SuricataService implements Extractor {
   /** Suricata writes its JSON event log here, relative to the {@code -l} output directory. */
   private static final String EVE_JSON = "eve.json";
 
-  private final ObjectMapper objectMapper = new ObjectMapper();
+  /** Marks an alert event in a compact eve line; see {@link #parseEveJson}. */
+  private static final String ALERT_EVENT = "\"event_type\":\"alert\"";
+
+  private final JsonFactory jsonFactory = new JsonFactory();
 
   // ---------------------------------------------------------------------------
   // Public API
@@ -171,12 +181,10 @@ public class SuricataService implements Extractor {
               "--set",
               "unix-command.enabled=no");
 
-      Process process = pb.start();
+      Process process = governor.start(Tool.SURICATA, Budget.BATCH, pb);
       try {
-        Thread stdoutDrainer = drainAsync(process.getInputStream(), "stdout");
-        Thread stderrDrainer = drainAsync(process.getErrorStream(), "stderr");
-        stdoutDrainer.start();
-        stderrDrainer.start();
+        Thread stdoutDrainer = drain(process.getInputStream(), "stdout");
+        Thread stderrDrainer = drain(process.getErrorStream(), "stderr");
 
         int exitCode = process.waitFor();
         stdoutDrainer.join();
@@ -216,42 +224,86 @@ public class SuricataService implements Extractor {
    * Parse {@code eve.json} (one JSON object per line), collecting {@code alert} events into the
    * result map keyed by 5-tuple flow key (indexed in both directions for direction-independent
    * lookup).
+   *
+   * <p>The image configures eve for alerts only, but an engine started on a stock
+   * {@code suricata.yaml} still writes flow, stats and protocol events — hundreds of MB on a noisy
+   * capture. Those lines are rejected on a substring match, without being parsed at all.
    */
-  private void parseEveJson(Path eveJson, Map<String, Set<String>> result) {
+  void parseEveJson(Path eveJson, Map<String, Set<String>> result) {
     if (!Files.isReadable(eveJson)) {
       log.warn("Suricata eve.json not found at {} — no alerts parsed", eveJson);
       return;
     }
 
-    try (Stream<String> lines = Files.lines(eveJson)) {
-      lines.forEach(line -> parseEveLine(line, result));
+    try (BufferedReader reader = Files.newBufferedReader(eveJson, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        // Suricata writes eve compactly, so an alert always carries this exact text.
+        if (!line.contains(ALERT_EVENT)) continue;
+        parseEveLine(line, result);
+      }
     } catch (Exception e) {
       log.warn("Failed to read Suricata eve.json: {}", e.getMessage());
     }
   }
 
-  /** Parse a single eve.json line; only {@code event_type == "alert"} objects contribute. */
+  /**
+   * Parse a single eve.json line; only {@code event_type == "alert"} objects contribute.
+   *
+   * <p>Streams the tokens rather than building a tree: an alert line is mostly rule metadata and
+   * payload fields this service never reads, and they are skipped without being materialised.
+   * Fields are taken in whatever order Suricata writes them.
+   */
   private void parseEveLine(String line, Map<String, Set<String>> result) {
     if (line == null || line.isBlank()) return;
-    try {
-      JsonNode root = objectMapper.readTree(line);
-      if (!"alert".equals(root.path("event_type").asText())) return;
-
-      JsonNode alert = root.path("alert");
-      if (alert.isMissingNode()) return;
-
-      String signature = alert.path("signature").asText("").trim();
-      if (signature.isEmpty()) return;
-      long sid = alert.path("signature_id").asLong(0);
-      int severity = alert.path("severity").asInt(0);
-      String formatted = formatAlert(signature, sid, severity);
+    try (JsonParser parser = jsonFactory.createParser(line)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) return;
+
+      String eventType = null;
+      String srcIp = null;
+      String dstIp = null;
+      Integer srcPort = null;
+      Integer dstPort = null;
+      String proto = null;
+      String signature = "";
+      long sid = 0;
+      int severity = 0;
+      boolean hasAlert = false;
+
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.currentName();
+        JsonToken value = parser.nextToken();
+        switch (field) {
+          case "event_type" -> eventType = parser.getValueAsString();
+          case "src_ip" -> srcIp = parser.getValueAsString();
+          case "dest_ip" -> dstIp = parser.getValueAsString();
+          case "src_port" -> srcPort = parser.getValueAsInt();
+          case "dest_port" -> dstPort = parser.getValueAsInt();
+          case "proto" -> proto = parser.getValueAsString();
+          case "alert" -> {
+            if (value != JsonToken.START_OBJECT) {
+              parser.skipChildren();
+              break;
+            }
+            hasAlert = true;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+              String alertField = parser.currentName();
+              parser.nextToken();
+              switch (alertField) {
+                case "signature" -> signature = parser.getValueAsString("").trim();
+                case "signature_id" -> sid = parser.getValueAsLong(0);
+                case "severity" -> severity = parser.getValueAsInt(0);
+                default -> parser.skipChildren();
+              }
+            }
+          }
+          default -> parser.skipChildren();
+        }
+      }
 
-      String srcIp = root.path("src_ip").asText(null);
-      String dstIp = root.path("dest_ip").asText(null);
+      if (!"alert".equals(eventType) || !hasAlert || signature.isEmpty()) return;
       if (srcIp == null || dstIp == null) return;
-      Integer srcPort = root.has("src_port") ? root.get("src_port").asInt() : null;
-      Integer dstPort = root.has("dest_port") ? root.get("dest_port").asInt() : null;
-      String proto = root.path("proto").asText(null);
+      String formatted = formatAlert(signature, sid, severity);
 
       String key = flowKey(srcIp, srcPort, dstIp, dstPort, proto);
       result.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(formatted);
@@ -319,22 +371,10 @@ public class SuricataService implements Extractor {
     return ip + ":" + port + "->" + ip2 + ":" + port2;
   }
 
-  /** Drains a process stream on a daemon thread so the subprocess never blocks on a full pipe. */
-  private Thread drainAsync(java.io.InputStream stream, String label) {
-    Thread t =
-        new Thread(
-            () -> {
-              try (BufferedReader reader =
-                  new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                  log.debug("suricata {}: {}", label, line);
-                }
-              } catch (Exception ignored) {
-              }
-            });
-    t.setDaemon(true);
-    return t;
+  /** Drains a process stream so the subprocess never blocks on a full pipe. */
+  private Thread drain(java.io.InputStream stream, String label) {
+    return IoThreads.drainLines(
+        stream, "suricata-" + label, line -> log.debug("suricata {}: {}", label, line));
   }
 
   /** Recursively delete the per-run Suricata output directory; best-effort. */
@@ -0,0 +1,154 @@
+package com.tracepcap.analysis.service;
+
+import com.tracepcap.common.concurrent.IoThreads;
+import com.tracepcap.common.exception.SubprocessBusyException;
+import com.tracepcap.common.process.SubprocessGovernor;
+import com.tracepcap.common.process.SubprocessGovernor.Budget;
+import com.tracepcap.common.process.SubprocessGovernor.Tool;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The one tshark pass the native parser still needs: the Protocol and Info columns.
+ *
+ * <p>Those two are the product of tshark's full dissector stack and heuristics, and no header
+ * decoder reproduces them. Everything else the old 23-field pass emitted is read from the capture
+ * directly by {@link PcapFileReader}/{@link PacketHeaderDecoder}, so this pass prints three fields
+ * per frame instead of 23 and the JVM parses one number per line instead of twenty.
+ *
+ * <p>Runs concurrently with the native read and is consumed in lockstep by frame number, so the two
+ * never hold more than one line of each other in memory.
+ *
+ * <p><b>Degrades rather than fails.</b> If tshark cannot be started, or stops early, {@link
+ * #columns(long)} returns null from then on and the caller labels the remaining frames from their
+ * decoded headers. A capture is never failed for want of an Info string.
+ */
+@Slf4j
+final class TsharkColumnPass implements Closeable {
+
+  private final Process process;
+  private final BufferedReader reader;
+  private final Thread stderrThread;
+  private final StringBuffer stderrBuf = new StringBuffer();
+
+  private boolean exhausted;
+  private long pendingFrame = -1;
+  private String[] pending;
+
+  private TsharkColumnPass(Process process) {
+    this.process = process;
+    if (process == null) {
+      reader = null;
+      stderrThread = null;
+      exhausted = true;
+      return;
+    }
+    reader =
+        new BufferedReader(
+            new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8), 1 << 16);
+    stderrThread =
+        IoThreads.drainLines(
+            process.getErrorStream(),
+            "tshark-columns-stderr",
+            l -> {
+              if (stderrBuf.length() < 10_000) stderrBuf.append(l).append('\n');
+            });
+  }
+
+  static TsharkColumnPass start(File pcapFile, SubprocessGovernor governor) {
+    // Info is deliberately the LAST field: it is free text that may contain the separator, and
+    // with nothing after it a limited split keeps it whole (the problem #550 solved the hard way).
+    ProcessBuilder pb =
+        new ProcessBuilder(
+            "tshark",
+            "-r",
+            pcapFile.getAbsolutePath(),
+            "-T",
+            "fields",
+            "-E",
+            "separator=|",
+            "-e",
+            "frame.number",
+            "-e",
+            "_ws.col.Protocol",
+            "-e",
+            "_ws.col.Info");
+    pb.redirectErrorStream(false);
+    try {
+      return new TsharkColumnPass(governor.start(Tool.TSHARK, Budget.BATCH, pb));
+    } catch (IOException | SubprocessBusyException e) {
+      log.warn(
+          "tshark unavailable for the Protocol/Info columns ({}); labelling {} from packet headers",
+          e.getMessage(),
+          pcapFile.getName());
+      return new TsharkColumnPass(null);
+    }
+  }
+
+  /**
+   * {@code [protocol, info]} for the given frame, or null when tshark produced no row for it. Frame
+   * numbers must be requested in ascending order.
+   */
+  String[] columns(long frameNumber) {
+    while (!exhausted && (pending == null || pendingFrame < frameNumber)) {
+      readRow();
+    }
+    return pending != null && pendingFrame == frameNumber ? pending : null;
+  }
+
+  private void readRow() {
+    String line;
+    try {
+      line = reader.readLine();
+    } catch (IOException e) {
+      log.warn("Reading tshark column output failed; remaining frames use decoded labels", e);
+      line = null;
+    }
+    if (line == null) {
+      exhausted = true;
+      pending = null;
+      return;
+    }
+    String[] f = line.split("\\|", 3);
+    if (f.length < 2) return;
+    try {
+      pendingFrame = Long.parseLong(f[0].trim());
+    } catch (NumberFormatException e) {
+      return;
+    }
+    pending = new String[] {f[1], f.length > 2 ? f[2] : ""};
+  }
+
+  @Override
+  public void close() {
+    if (process == null) return;
+    try {
+      reader.close();
+    } catch (IOException ignored) {
+    }
+    try {
+      if (!process.waitFor(5, TimeUnit.SECONDS)) {
+        // The native read finished first (e.g. it stopped at a corrupt record); tshark's output is
+        // no longer wanted.
+        process.destroyForcibly();
+        process.waitFor(5, TimeUnit.SECONDS);
+      }
+      stderrThread.join(5000);
+    } catch (InterruptedException e) {
+      process.destroyForcibly();
+      Thread.currentThread().interrupt();
+    }
+    if (!process.isAlive() && process.exitValue() != 0) {
+      log.warn(
+          "tshark column pass exited with code {}: {}",
+          process.exitValue(),
+          stderrBuf.toString().trim());
+    }
+  }
+}
@@ -1,12 +1,13 @@
 package com.tracepcap.analysis.service;
 
+import com.tracepcap.analysis.spi.DissectedFrame;
 import com.tracepcap.analysis.spi.ExtractionManifest;
 import com.tracepcap.analysis.spi.ExtractionTarget;
 import com.tracepcap.analysis.spi.Extractor;
+import com.tracepcap.analysis.spi.FrameSubscriber;
 import com.tracepcap.common.stage.Tier;
-
+import com.tracepcap.file.entity.FileEntity;
 import java.io.BufferedReader;
-import java.io.File;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
@@ -20,11 +21,11 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 /**
- * Runs tshark as a subprocess to obtain Wireshark's dissector-based protocol label and HTTP
- * User-Agent strings for each conversation in a single pass.
+ * Uses tshark to obtain Wireshark's dissector-based protocol label and HTTP User-Agent strings for
+ * each conversation.
  *
- * <p>Uses: {@code tshark -r <file> -T fields -e ip.src -e ip.dst ... -e _ws.col.Protocol -e
- * http.user_agent}
+ * <p>Reads {@code ip.src}, {@code ip.dst} ... {@code frame.protocols}, {@code http.user_agent} from
+ * the capture's shared tshark pass ({@link FrameSubscriber}) rather than running one of its own.
  *
  * <p>Responsibility split:
  *
@@ -42,7 +43,8 @@ import org.springframework.stereotype.Service;
  */
 @Slf4j
 @Service
-public class TsharkEnrichmentService implements Extractor {
+public class TsharkEnrichmentService
+    implements Extractor, FrameSubscriber<TsharkEnrichmentService.Observed> {
 
   @Override
   public String name() {
@@ -59,13 +61,10 @@ public class TsharkEnrichmentService implements Extractor {
     return ExtractionManifest.TSHARK_ENRICHMENT;
   }
 
-  /**
-   * Runs after nDPI (order 10): this reads fields nDPI populates. See Extractor#order() for why an
-   * integer is a poor way to say that.
-   */
+  /** Reads fields nDPI populates, so it waits for nDPI; Suricata runs alongside either. */
   @Override
-  public int order() {
-    return 20;
+  public Set<String> dependsOn() {
+    return Set.of(ExtractionManifest.NDPI);
   }
 
   /**
@@ -75,16 +74,65 @@ public class TsharkEnrichmentService implements Extractor {
    */
   @Override
   public boolean enabledFor(ExtractionTarget target) {
-    return target.file().isEnableNdpi();
+    return enabledFor(target.file());
+  }
+
+  /** The same gate decides whether its fields are in the shared pass at all. */
+  @Override
+  public boolean enabledFor(FileEntity file) {
+    return file.isEnableNdpi();
   }
 
   @Override
   public Outcome extract(ExtractionTarget target) {
-    enrich(target.capture(), target.conversations());
+    enrich(target.conversations(), target.dissection().consumer(this));
     return Outcome.completed("tshark enrichment ran");
   }
 
-  private static final String TSHARK_BINARY = "tshark";
+  /**
+   * Field order (0-indexed): 0=ip.src, 1=ip.dst, 2=ipv6.src, 3=ipv6.dst, 4=tcp.srcport,
+   * 5=tcp.dstport, 6=udp.srcport, 7=udp.dstport, 8=ip.proto, 9=ipv6.nxt, 10=frame.protocols,
+   * 11=http.user_agent
+   */
+  private static final List<String> FIELDS =
+      List.of(
+          "ip.src",
+          "ip.dst",
+          "ipv6.src",
+          "ipv6.dst",
+          "tcp.srcport",
+          "tcp.dstport",
+          "udp.srcport",
+          "udp.dstport",
+          "ip.proto",
+          "ipv6.nxt",
+          "frame.protocols",
+          "http.user_agent");
+
+  @Override
+  public Set<String> fields() {
+    return Set.copyOf(FIELDS);
+  }
+
+  @Override
+  public Observed open() {
+    return new Observed();
+  }
+
+  /** Protocol frequencies and user agents seen in one capture, per flow. */
+  public static final class Observed implements FrameSubscriber.FrameConsumer {
+    final Map<String, Map<String, Integer>> flowFreq = new HashMap<>();
+    final Map<String, Map<String, Integer>> ipPairFreq = new HashMap<>();
+    final Map<String, Set<String>> userAgentMap = new HashMap<>();
+
+    @Override
+    public void accept(DissectedFrame frame) {
+      // Each field as the old -T fields pass printed it: every occurrence, comma-joined.
+      String[] f = new String[FIELDS.size()];
+      for (int i = 0; i < f.length; i++) f[i] = frame.all(FIELDS.get(i));
+      parseLine(f, flowFreq, ipPairFreq, userAgentMap);
+    }
+  }
 
   /** Normalise IANA keyword names to match what tshark/nDPI emit. */
   private static final Map<String, String> KEYWORD_OVERRIDES =
@@ -124,17 +172,16 @@ public class TsharkEnrichmentService implements Extractor {
 
   /**
    * Enriches each conversation with Wireshark's dissector-based protocol label ({@code
-   * tsharkProtocol}) and any HTTP User-Agent strings ({@code httpUserAgents}). Both are extracted
-   * in a single tshark pass. Does not modify {@code appName} — that is owned by nDPI.
+   * tsharkProtocol}) and any HTTP User-Agent strings ({@code httpUserAgents}), from what the shared
+   * pass {@code observed}. Does not modify {@code appName} — that is owned by nDPI.
    */
-  public void enrich(File pcapFile, List<PcapParserService.ConversationInfo> conversations) {
+  public void enrich(List<PcapParserService.ConversationInfo> conversations, Observed observed) {
     if (conversations.isEmpty()) return;
 
-    Map<String, Map<String, Integer>> flowFreq = new HashMap<>();
-    Map<String, Map<String, Integer>> ipPairFreq = new HashMap<>();
-    Map<String, Set<String>> userAgentMap = new HashMap<>();
-
-    runTshark(pcapFile, flowFreq, ipPairFreq, userAgentMap);
+    Map<String, Map<String, Integer>> flowFreq = observed.flowFreq;
+    Map<String, Map<String, Integer>> ipPairFreq = observed.ipPairFreq;
+    Map<String, Set<String>> userAgentMap = observed.userAgentMap;
+    log.debug("tshark scan complete: {} distinct flow keys", flowFreq.size());
 
     int protoEnriched = 0;
     int uaEnriched = 0;
@@ -174,104 +221,13 @@ public class TsharkEnrichmentService implements Extractor {
   // ---------------------------------------------------------------------------
 
   /**
-   * Runs a single tshark pass that collects both protocol-frequency data and HTTP User-Agent values
-   * for every packet in the file.
-   *
-   * <p>Field order (0-indexed): 0=ip.src, 1=ip.dst, 2=ipv6.src, 3=ipv6.dst, 4=tcp.srcport,
-   * 5=tcp.dstport, 6=udp.srcport, 7=udp.dstport, 8=ip.proto, 9=ipv6.nxt, 10=frame.protocols,
-   * 11=http.user_agent
-   */
-  private void runTshark(
-      File pcapFile,
-      Map<String, Map<String, Integer>> flowFreq,
-      Map<String, Map<String, Integer>> ipPairFreq,
-      Map<String, Set<String>> userAgentMap) {
-    ProcessBuilder pb =
-        new ProcessBuilder(
-            TSHARK_BINARY,
-            "-r",
-            pcapFile.getAbsolutePath(),
-            "-T",
-            "fields",
-            "-E",
-            "separator=\t",
-            "-e",
-            "ip.src",
-            "-e",
-            "ip.dst",
-            "-e",
-            "ipv6.src",
-            "-e",
-            "ipv6.dst",
-            "-e",
-            "tcp.srcport",
-            "-e",
-            "tcp.dstport",
-            "-e",
-            "udp.srcport",
-            "-e",
-            "udp.dstport",
-            "-e",
-            "ip.proto",
-            "-e",
-            "ipv6.nxt",
-            "-e",
-            "frame.protocols",
-            "-e",
-            "http.user_agent");
-    pb.redirectErrorStream(false);
-
-    try {
-      Process process = pb.start();
-
-      // Drain stderr in background to prevent blocking
-      Thread errDrainer =
-          new Thread(
-              () -> {
-                try (BufferedReader err =
-                    new BufferedReader(new InputStreamReader(process.getErrorStream()))) {
-                  String line;
-                  while ((line = err.readLine()) != null) log.debug("tshark stderr: {}", line);
-                } catch (Exception e) {
-                  log.debug("Error draining tshark stderr", e);
-                }
-              });
-      errDrainer.setDaemon(true);
-      errDrainer.start();
-
-      try (BufferedReader reader =
-          new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-        String line;
-        while ((line = reader.readLine()) != null) {
-          parseLine(line, flowFreq, ipPairFreq, userAgentMap);
-        }
-      }
-      process.waitFor();
-      log.debug("tshark scan complete: {} distinct flow keys", flowFreq.size());
-
-    } catch (Exception e) {
-      if (isNotFound(e)) {
-        log.warn("tshark not found — skipping Wireshark protocol enrichment.");
-      } else {
-        log.warn("tshark enrichment failed: {}", e.getMessage());
-      }
-    }
-  }
-
-  /**
-   * Parse one tshark tab-separated output line into the frequency and user-agent maps.
-   *
-   * <p>Field order matches the {@code -e} arguments above (0-indexed): 0=ip.src, 1=ip.dst,
-   * 2=ipv6.src, 3=ipv6.dst, 4=tcp.srcport, 5=tcp.dstport, 6=udp.srcport, 7=udp.dstport, 8=ip.proto,
-   * 9=ipv6.nxt, 10=frame.protocols, 11=http.user_agent
+   * Folds one frame's fields, in {@link #FIELDS} order, into the frequency and user-agent maps.
    */
-  private void parseLine(
-      String line,
+  private static void parseLine(
+      String[] f,
       Map<String, Map<String, Integer>> flowFreq,
       Map<String, Map<String, Integer>> ipPairFreq,
       Map<String, Set<String>> userAgentMap) {
-    String[] f = line.split("\t", -1);
-    if (f.length < 11) return;
 
     // Resolve IP (prefer v4, fall back to v6)
     String srcIp = !f[0].isEmpty() ? f[0] : (!f[2].isEmpty() ? f[2] : null);
@@ -383,7 +339,8 @@ public class TsharkEnrichmentService implements Extractor {
    * Direction-independent flow key: the endpoint with the lexicographically smaller IP goes first;
    * ties are broken by port number. This merges A→B and B→A packets into a single bucket.
    */
-  private String canonicalKey(String ip1, Integer port1, String ip2, Integer port2, String proto) {
+  private static String canonicalKey(
+      String ip1, Integer port1, String ip2, Integer port2, String proto) {
     int cmp = ip1.compareTo(ip2);
     if (cmp == 0) {
       // Null-safe port comparison: treat null as smaller than any valid port number.
@@ -393,16 +350,16 @@ public class TsharkEnrichmentService implements Extractor {
     return swap ? flowKey(ip2, port2, ip1, port1, proto) : flowKey(ip1, port1, ip2, port2, proto);
   }
 
-  private String flowKey(String ip, Integer port, String ip2, Integer port2, String proto) {
+  private static String flowKey(String ip, Integer port, String ip2, Integer port2, String proto) {
     return String.format(
         "%s:%s->%s:%s/%s", ip, port, ip2, port2, proto != null ? proto.toUpperCase() : "");
   }
 
-  private String ipPairKey(String ip1, String ip2) {
+  private static String ipPairKey(String ip1, String ip2) {
     return ip1.compareTo(ip2) <= 0 ? "IPPAIR:" + ip1 + "<->" + ip2 : "IPPAIR:" + ip2 + "<->" + ip1;
   }
 
-  private Integer parsePort(String s) {
+  private static Integer parsePort(String s) {
     if (s == null || s.isEmpty()) return null;
     try {
       return Integer.parseInt(s);
@@ -410,9 +367,4 @@ public class TsharkEnrichmentService implements Extractor {
       return null;
     }
   }
-
-  private boolean isNotFound(Exception e) {
-    String msg = e.getMessage();
-    return msg != null && (msg.contains("No such file") || msg.contains("error=2"));
-  }
 }
@@ -51,6 +51,10 @@ public interface ConversationLookup {
    * a capture can begin mid-flow and miss the SYN. Null never means "nobody initiated", and it must
    * not be backfilled by guessing from port numbers: a server on :4434 is still a server, and
    * treating the lower port as the listener is exactly the bug this field replaces.
+   *
+   * <p>{@code tcpStream}/{@code udpStream} are tshark's stream numbers for the conversation, the
+   * argument to {@code -z follow}. At most one is set, and both are null for streamless protocols
+   * and for files analysed before ingest recorded them.
    */
   record FlowIdentity(
       String srcIp,
@@ -63,7 +67,9 @@ public interface ConversationLookup {
       long packetCount,
       long totalBytes,
       LocalDateTime startTime,
-      LocalDateTime endTime) {}
+      LocalDateTime endTime,
+      Integer tcpStream,
+      Integer udpStream) {}
 
   /**
    * What a party claimed on the wire — testimony, not measurement. Every field is nullable: absent
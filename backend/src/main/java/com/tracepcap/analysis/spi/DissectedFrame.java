@@ -0,0 +1,63 @@
+package com.tracepcap.analysis.spi;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One frame of the shared tshark pass, as a {@link FrameSubscriber} sees it: every field any
+ * subscriber asked for that the frame carries, each with all its occurrences in dissection order.
+ *
+ * <p>A field the frame does not carry is absent, never an empty list. The accessors return what
+ * {@code tshark -T fields} would have printed for it, so a consumer ported from its own pass keeps
+ * its row parsing: {@link #all} is the default comma-joined output, {@link #first} is {@code -E
+ * occurrence=f}, and both are {@code ""} for an absent field.
+ *
+ * <p>Values are tshark's field text, not typed. Booleans in particular print as {@code 1}/{@code 0}
+ * on tshark 3 and {@code True}/{@code False} on tshark 4; read them with {@link #isTrue}.
+ */
+public record DissectedFrame(Map<String, List<String>> fields) {
+
+  /** Always requested, so {@link #carries} works whatever the subscribers asked for. */
+  public static final String PROTOCOLS = "frame.protocols";
+
+  /** Every occurrence of {@code field}, or an empty list. */
+  public List<String> values(String field) {
+    return fields.getOrDefault(field, List.of());
+  }
+
+  public boolean has(String field) {
+    return fields.containsKey(field);
+  }
+
+  /** The first occurrence, or {@code ""}. */
+  public String first(String field) {
+    List<String> v = fields.get(field);
+    return v == null || v.isEmpty() ? "" : v.get(0);
+  }
+
+  /** Every occurrence joined with {@code ','}, or {@code ""}. */
+  public String all(String field) {
+    List<String> v = fields.get(field);
+    return v == null ? "" : String.join(",", v);
+  }
+
+  /** Whether any occurrence of the boolean {@code field} is set. */
+  public boolean isTrue(String field) {
+    for (String v : values(field)) {
+      if (v.equals("1") || v.equalsIgnoreCase("true")) return true;
+    }
+    return false;
+  }
+
+  /**
+   * Whether the frame's protocol stack includes {@code protocol} (lower case, as in {@code
+   * frame.protocols}: {@code "http"}, {@code "mdns"}). The equivalent of a bare protocol display
+   * filter such as {@code -Y http}.
+   */
+  public boolean carries(String protocol) {
+    for (String layer : first(PROTOCOLS).split(":")) {
+      if (layer.equals(protocol)) return true;
+    }
+    return false;
+  }
+}
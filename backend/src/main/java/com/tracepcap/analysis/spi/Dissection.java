@@ -0,0 +1,23 @@
+package com.tracepcap.analysis.spi;
+
+import com.tracepcap.analysis.spi.FrameSubscriber.FrameConsumer;
+
+/**
+ * The shared tshark pass over one capture, running or finished (see {@link FrameSubscriber}).
+ *
+ * <p>Started once per analysis, before the parse, so it runs alongside the stages ahead of its
+ * first reader. A stage reads its subscriber's consumer when it needs it; the first such call waits
+ * for the pass to end.
+ *
+ * <p><b>Degrades rather than fails.</b> If tshark cannot be started, exits early, or runs past the
+ * configured timeout, the consumers hold what they were given up to that point — possibly
+ * nothing — and each stage carries on with it, as it did when its own pass failed.
+ */
+public interface Dissection {
+
+  /**
+   * {@code subscriber}'s consumer for this capture, once the pass is over. Never null: a subscriber
+   * that was not enabled for the capture gets a fresh, empty consumer.
+   */
+  <C extends FrameConsumer> C consumer(FrameSubscriber<C> subscriber);
+}
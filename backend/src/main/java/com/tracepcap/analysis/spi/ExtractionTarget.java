@@ -15,8 +15,10 @@ import java.util.UUID;
  * That is the opposite of Scan, where the facts are immutable records and a scanner that could
  * mutate them would be corrupting the evidence it reasons about.
  *
- * <p>The list is shared: each extractor sees what earlier ones wrote. That is deliberate — tshark
- * enrichment reads what nDPI populated — but it means an extractor that <em>overwrites</em> a peer's
+ * <p>Each extractor gets its own copy, holding the parse plus what its {@link Extractor#dependsOn()
+ * dependencies} wrote — tshark enrichment reads what nDPI populated — and the runner merges the
+ * copies back in a fixed order. A list entry a peer added survives the merge; a field two unrelated
+ * extractors both set keeps whichever merges last. An extractor that <em>overwrites</em> a peer's
  * field rather than adding its own destroys a fact nobody can recover. Add; do not overwrite.
  */
 public interface ExtractionTarget {
@@ -34,9 +36,15 @@ public interface ExtractionTarget {
   File capture();
 
   /**
-   * The conversations parsed from the capture, <b>mutable and shared</b> — the working set to write
-   * facts onto. Never null; empty for a capture with no conversations, in which case most extractors
-   * have nothing to do.
+   * The capture's shared tshark pass. An extractor that reads tshark fields subscribes to it
+   * ({@link FrameSubscriber}) and takes its consumer from here instead of running tshark itself.
+   */
+  Dissection dissection();
+
+  /**
+   * The conversations parsed from the capture, <b>mutable</b> — this extractor's working set to
+   * write facts onto. Never null; empty for a capture with no conversations, in which case most
+   * extractors have nothing to do.
    */
   List<PcapParserService.ConversationInfo> conversations();
 
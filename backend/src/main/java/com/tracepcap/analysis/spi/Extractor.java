@@ -1,6 +1,7 @@
 package com.tracepcap.analysis.spi;
 
 import com.tracepcap.common.stage.Tier;
+import java.util.Set;
 
 /**
  * An Extract-stage module: digs facts out of the capture (#512).
@@ -63,23 +64,30 @@ public interface Extractor {
   }
 
   /**
-   * When this extractor runs, relative to its peers. Lower goes first; the default is the middle of
-   * the range, which is where an extractor with no opinion belongs.
+   * The {@link #name() names} of the extractors whose facts this one reads. It runs once they have
+   * finished, on a working set that holds what they wrote; everything it does not depend on may run
+   * alongside it and is invisible to it. Empty, the default, is the common case.
    *
-   * <p><b>The weak point of this design, stated plainly.</b> Extractors are not all independent —
-   * tshark enrichment reads fields nDPI populates, so it must follow it. A global integer expresses
-   * that badly: it is invisible from either module, and two extractors that both "want to be late"
-   * have no way to say why. A declared dependency ({@code dependsOn(NDPI)}) would say what is
-   * actually meant. That is a bigger change than this slice, and the {@link Extractor} contract is
-   * what matters — ordering can become explicit later without touching any extractor's logic.
+   * <p>Declare what is read, not what should "go first". tshark enrichment reads fields nDPI
+   * populates, so it depends on {@code ndpi}; Suricata reads nothing of anyone's, so it runs next
+   * to both. This replaced a global {@code order()} integer, which could only say "before" and left
+   * every extractor waiting on every other.
+   *
+   * <p>A dependency that is not installed, or not enabled for this file, is not waited for — the
+   * dependent runs without its facts, as it would have before. A cycle fails at the first run.
    */
-  default int order() {
-    return 100;
+  default Set<String> dependsOn() {
+    return Set.of();
   }
 
   /**
    * Digs facts out of the capture and writes them onto the target's conversations.
    *
+   * <p>Called on a pool thread, possibly while other extractors run, and outside the analysis's
+   * transaction. The target's conversations are this call's own copy, merged into the capture's
+   * once every extractor has finished, so writing to them needs no locking; anything else the
+   * extractor shares between calls does.
+   *
    * <p>Never null. The returned {@link Outcome} lands in the manifest as this extractor's provenance
    * for the file.
    */
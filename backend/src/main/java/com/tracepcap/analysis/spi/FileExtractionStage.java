@@ -21,7 +21,9 @@ public interface FileExtractionStage {
    *
    * @param file the file record being analysed
    * @param pcapFile the downloaded PCAP on local disk
+   * @param dissection the capture's shared tshark pass, for the stage's field reads
    * @param conversationIds ids of the conversations persisted for this file, in capture order
    */
-  void extractFiles(FileEntity file, File pcapFile, List<UUID> conversationIds);
+  void extractFiles(
+      FileEntity file, File pcapFile, Dissection dissection, List<UUID> conversationIds);
 }
@@ -0,0 +1,50 @@
+package com.tracepcap.analysis.spi;
+
+import com.tracepcap.file.entity.FileEntity;
+import java.util.Set;
+
+/**
+ * A stage that reads tshark fields frame by frame, and so rides the capture's one shared tshark
+ * pass instead of running its own.
+ *
+ * <p>Every implementation is discovered, like {@link Extractor}s are. Before the pass starts each
+ * enabled subscriber {@link #open() opens} a fresh consumer, the pass asks tshark for the union of
+ * everyone's {@link #fields()}, and each frame is handed to every consumer in capture order. The
+ * subscriber reads its consumer back from the {@link Dissection} when its stage runs.
+ *
+ * <p>Dissection is what costs — tshark re-runs every dissector for every frame, whatever it is
+ * asked to print — so N passes over a capture cost roughly N times one. Tools that are not field
+ * extraction ({@code --export-objects}, {@code -z follow}) cannot share the pass and keep their
+ * own.
+ *
+ * <p><b>There is no display filter.</b> Every consumer sees every frame, and one that used to run
+ * with {@code -Y} applies the same test itself, from fields it requests for the purpose ({@link
+ * DissectedFrame#carries} covers the bare-protocol filters).
+ *
+ * @param <C> the per-capture consumer, which holds whatever the subscriber accumulates
+ */
+public interface FrameSubscriber<C extends FrameSubscriber.FrameConsumer> {
+
+  /** tshark field names this subscriber reads, e.g. {@code "dns.qry.name"}. */
+  Set<String> fields();
+
+  /**
+   * Whether this capture needs the subscriber at all. A disabled one opens no consumer and adds no
+   * fields to the pass; its stage should not run either. Defaults to always.
+   */
+  default boolean enabledFor(FileEntity file) {
+    return true;
+  }
+
+  /** A fresh consumer for one capture. */
+  C open();
+
+  /**
+   * Accumulates one capture's frames. Called on the pass's reader thread, one frame at a time and
+   * never concurrently; read only once {@link Dissection#consumer} has returned it, which happens
+   * after the last call.
+   */
+  interface FrameConsumer {
+    void accept(DissectedFrame frame);
+  }
+}
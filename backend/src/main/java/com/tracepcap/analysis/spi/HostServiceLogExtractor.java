@@ -1,7 +1,6 @@
 package com.tracepcap.analysis.spi;
 
 import com.tracepcap.file.entity.FileEntity;
-import java.io.File;
 
 /**
  * Extracts a per-host "service activity log" for hosts acting in a particular server role.
@@ -11,10 +10,10 @@ import java.io.File;
  * and which fail); future roles — e.g. an HTTP/API endpoint log for web servers — implement this
  * same contract and are picked up automatically.
  *
- * <p>Each implementation owns its own table, entity, repository and tshark pass — protocols have
- * genuinely different schemas, so there is no shared polymorphic table. The shared contract is
- * simply: run one read-only tshark pass over the capture, persist your rows, and report which
- * server IPs look suspicious.
+ * <p>Each implementation owns its own table, entity and repository — protocols have genuinely
+ * different schemas, so there is no shared polymorphic table. What they do share is the capture's
+ * one tshark pass: an implementation is also a {@link FrameSubscriber}, reads its consumer from the
+ * {@link Dissection}, persists its rows, and reports which server IPs look suspicious.
  *
  * <p>{@code AnalysisService} injects {@code List<HostServiceLogExtractor>} (Spring collects every
  * bean) and runs them all during analysis, so adding a new role requires no change to the pipeline.
@@ -27,8 +26,8 @@ public interface HostServiceLogExtractor {
   String role();
 
   /**
-   * Runs the extraction over {@code pcap}, persists the resulting rows linked to {@code file}, and
-   * returns which hosts served this role plus any that behaved anomalously.
+   * Reads this extractor's frames from {@code dissection}, persists the resulting rows linked to
+   * {@code file}, and returns which hosts served this role plus any that behaved anomalously.
    */
-  HostServiceLogResult extractAndPersist(FileEntity file, File pcap);
+  HostServiceLogResult extractAndPersist(FileEntity file, Dissection dissection);
 }
@@ -29,6 +29,10 @@ public interface PacketLookup {
    * packetSize} — all {@code NOT NULL} columns. Nullable: the ports (absent for ICMP/ARP), {@code
    * timestamp}, {@code protocol}, {@code info}, {@code payload} (only captured when payload
    * retention is on), and {@code detectedFileType} (only set when a carver matched).
+   *
+   * <p>{@code payload} is the raw bytes, not hex: rendering them is the caller's business, and one
+   * that only searches or excerpts them should not decode a string first. Being an array, it is
+   * compared by reference in this record's {@code equals}.
    */
   record PacketFacts(
       UUID id,
@@ -41,7 +45,7 @@ public interface PacketLookup {
       String protocol,
       int packetSize,
       String info,
-      String payload,
+      byte[] payload,
       String detectedFileType) {}
 
   /**
@@ -29,6 +29,61 @@ public interface PacketPartitions {
    */
   void ensurePartition(UUID fileId);
 
+  /** Writes a file's packets into the table it is given; returns how many it wrote. */
+  @FunctionalInterface
+  interface PacketLoad {
+    long into(String table);
+  }
+
+  /**
+   * Creates {@code fileId}'s partition and fills it through {@code load}, in whatever way is
+   * cheapest for a partition written all at once. Returns what {@code load} returned.
+   *
+   * <p>{@code load} may be asked to write twice — a second time, into another table, if the first
+   * attempt is abandoned — so it must be able to produce its rows again. Only the last attempt's
+   * rows are kept.
+   *
+   * <p>The default is {@link #ensurePartition} and then a load through the parent table, where
+   * every row is routed to the partition and its indexes are maintained row by row.
+   */
+  default long loadPartition(UUID fileId, PacketLoad load) {
+    ensurePartition(fileId);
+    return load.into("packets");
+  }
+
+  /** A partition being filled before it is attached; see {@link #stagePartition}. */
+  interface StagedPartition {
+
+    /** The table to write the file's packets into. */
+    String table();
+
+    /** Makes what was written to {@link #table} the file's partition of {@code packets}. */
+    void attach();
+  }
+
+  /**
+   * {@link #loadPartition} for a load that cannot be run again — one fed by a parse as it goes,
+   * which hands rows over as they come rather than on request. The caller writes into {@link
+   * StagedPartition#table} for as long as it likes and calls {@link StagedPartition#attach} once
+   * the last row is in; if attaching the staged table fails, its rows are carried over rather than
+   * produced again.
+   *
+   * <p>The default is {@link #ensurePartition} and a table of {@code packets}, with nothing left to
+   * do on attach.
+   */
+  default StagedPartition stagePartition(UUID fileId) {
+    ensurePartition(fileId);
+    return new StagedPartition() {
+      @Override
+      public String table() {
+        return "packets";
+      }
+
+      @Override
+      public void attach() {}
+    };
+  }
+
   /**
    * Drops the partition holding {@code fileId}'s packets, discarding every frame for that file in
    * one O(1) unlink — no per-row deletes, no index maintenance, nothing left for autovacuum.
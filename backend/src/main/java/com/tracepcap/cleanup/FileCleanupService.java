@@ -1,6 +1,7 @@
 package com.tracepcap.cleanup;
 
 import com.tracepcap.analysis.spi.PacketPartitions;
+import com.tracepcap.common.scheduling.SchedulerLeases;
 import com.tracepcap.config.CleanupProperties;
 import com.tracepcap.file.entity.FileEntity;
 import com.tracepcap.file.entity.FileEntity.FileSource;
@@ -15,7 +16,11 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-/** Service to handle scheduled cleanup of expired files */
+/**
+ * Service to handle scheduled cleanup of expired files. Runs on one node at a time: both tasks take
+ * the same {@link SchedulerLeases} lease, so the node that deletes expired files is also the one
+ * pruning packets.
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
@@ -26,10 +31,13 @@ import org.springframework.stereotype.Service;
     matchIfMissing = true)
 public class FileCleanupService {
 
+  private static final String LEASE = "file-cleanup";
+
   private final FileRepository fileRepository;
   private final FileService fileService;
   private final CleanupProperties cleanupProperties;
   private final PacketPartitions packetPartitions;
+  private final SchedulerLeases schedulerLeases;
 
   /**
    * Scheduled task to clean up expired files Runs according to the cron expression configured in
@@ -41,6 +49,7 @@ public class FileCleanupService {
       log.debug("File cleanup is disabled");
       return;
     }
+    if (!schedulerLeases.acquire(LEASE)) return;
 
     log.info("Starting scheduled file cleanup task");
 
@@ -115,6 +124,7 @@ public class FileCleanupService {
     if (!cleanupProperties.isEnabled() || cleanupProperties.getPacketRetentionHours() <= 0) {
       return;
     }
+    if (!schedulerLeases.acquire(LEASE)) return;
 
     LocalDateTime packetExpiry =
         LocalDateTime.now().minusHours(cleanupProperties.getPacketRetentionHours());
@@ -1,47 +1,53 @@
 package com.tracepcap.common;
 
+import java.util.Arrays;
+
 /** Utility methods for handling hex strings produced by tshark field output. */
 public final class TsharkHexUtil {
 
+  /** tshark's separator between occurrences of a field that appears more than once. */
+  private static final char OCCURRENCE_SEPARATOR = ',';
+
   private TsharkHexUtil() {}
 
   /**
-   * Strip colon separators from a tshark hex field (e.g. {@code "48:54:54:50"} → {@code
-   * "485454550"}), lowercase the result, and truncate to {@code maxBytes} bytes. Returns {@code
-   * null} if the input is null or empty.
+   * Decode a tshark hex field (e.g. {@code "48:54:54:50"}; colons optional, either case) to at most
+   * {@code maxBytes} bytes, straight from the field — no intermediate hex string. Returns {@code
+   * null} if the input is null or empty. An incomplete trailing nibble is silently dropped.
+   *
+   * <p>A field that occurs more than once in a packet (two {@code udp.payload}s under GTP-U or
+   * VXLAN) arrives comma-joined; only the first occurrence is decoded.
    */
-  public static String toHex(String tsharkHex, int maxBytes) {
+  public static byte[] toBytes(String tsharkHex, int maxBytes) {
     if (tsharkHex == null || tsharkHex.isEmpty()) return null;
-    String plain = tsharkHex.replace(":", "").toLowerCase();
-    int maxChars = maxBytes * 2;
-    return plain.length() > maxChars ? plain.substring(0, maxChars) : plain;
-  }
-
-  /**
-   * Decode a plain lowercase hex string (no colons) to a byte array. Returns {@code null} if the
-   * input is null or empty. An incomplete trailing nibble is silently dropped.
-   */
-  public static byte[] toBytes(String hex) {
-    if (hex == null || hex.isEmpty()) return null;
-    int len = hex.length();
-    if (len % 2 != 0) len--; // drop incomplete trailing nibble
-    byte[] data = new byte[len / 2];
-    for (int i = 0; i < len; i += 2) {
-      data[i / 2] =
-          (byte)
-              ((Character.digit(hex.charAt(i), 16) << 4) | Character.digit(hex.charAt(i + 1), 16));
+    byte[] data = new byte[Math.min(tsharkHex.length() / 2, maxBytes)];
+    int n = 0;
+    int high = -1;
+    for (int i = 0; i < tsharkHex.length() && n < data.length; i++) {
+      char c = tsharkHex.charAt(i);
+      if (c == OCCURRENCE_SEPARATOR) break;
+      if (c == ':') continue;
+      int digit = Character.digit(c, 16);
+      if (high < 0) {
+        high = digit;
+      } else {
+        data[n++] = (byte) ((high << 4) | digit);
+        high = -1;
+      }
     }
-    return data;
+    return n == data.length ? data : Arrays.copyOf(data, n);
   }
 
   /**
    * Convert a tshark colon-separated hex field to a printable ASCII string, replacing non-printable
    * bytes with {@code '.'}, limited to {@code maxBytes} bytes. Returns an empty string if the input
-   * is null or empty.
+   * is null or empty. As with {@link #toBytes}, only the first occurrence of a comma-joined field
+   * is converted.
    */
   public static String toAscii(String tsharkHex, int maxBytes) {
     if (tsharkHex == null || tsharkHex.isEmpty()) return "";
-    String plain = tsharkHex.replace(":", "");
+    int end = tsharkHex.indexOf(OCCURRENCE_SEPARATOR);
+    String plain = (end < 0 ? tsharkHex : tsharkHex.substring(0, end)).replace(":", "");
     int len = plain.length();
     if (len % 2 != 0) len--; // drop incomplete trailing nibble
     int byteCount = Math.min(len / 2, maxBytes);
@@ -0,0 +1,61 @@
+package com.tracepcap.common.concurrent;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Threads for work that spends its life waiting: pumping a subprocess's pipes, moving bytes to and
+ * from object storage. They are virtual threads.
+ *
+ * <p>Every tshark launch used to start a platform thread whose only job was to empty stderr so
+ * the process never blocked on a full pipe — a megabyte of reserved stack and a kernel thread,
+ * per launch, to copy a few lines. A virtual thread costs a small heap object and is gone when
+ * the pipe closes. Reading a pipe still occupies a carrier while it blocks (the JDK adds carriers
+ * to compensate), so what this saves is the thread, not the wait.
+ *
+ * <p>CPU-bound work — parse workers, extractors, dissection — stays on the bounded platform
+ * pools it has; a virtual thread there buys nothing and loses the bound.
+ */
+public final class IoThreads {
+
+  private IoThreads() {}
+
+  /** Runs {@code task} on a new virtual thread named {@code name}. */
+  public static Thread start(String name, Runnable task) {
+    return Thread.ofVirtual().name(name).start(task);
+  }
+
+  /**
+   * A thread per task, each virtual and named {@code name-0}, {@code name-1}, ... Close it (it is
+   * {@link AutoCloseable}) to wait for everything submitted.
+   */
+  public static ExecutorService executor(String name) {
+    return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory());
+  }
+
+  /**
+   * Reads {@code stream} as UTF-8 until it closes, handing each line to {@code sink}, on a new
+   * virtual thread. A read that fails ends the drain quietly: the stream is a killed process's pipe
+   * far more often than anything worth reporting, and the caller has the exit code for that.
+   */
+  public static Thread drainLines(InputStream stream, String name, Consumer<String> sink) {
+    return start(
+        name,
+        () -> {
+          try (BufferedReader reader =
+              new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+              sink.accept(line);
+            }
+          } catch (Exception ignored) {
+            // see above
+          }
+        });
+  }
+}
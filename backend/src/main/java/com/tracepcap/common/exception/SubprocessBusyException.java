@@ -0,0 +1,20 @@
+package com.tracepcap.common.exception;
+
+/**
+ * Thrown when every slot for an external tool stayed busy for as long as the caller may wait.
+ * Mapped to 503 with a {@code Retry-After} by {@link GlobalExceptionHandler}: the request was fine,
+ * the node is just full.
+ */
+public class SubprocessBusyException extends RuntimeException {
+
+  private final int retryAfterSeconds;
+
+  public SubprocessBusyException(String message, int retryAfterSeconds) {
+    super(message);
+    this.retryAfterSeconds = retryAfterSeconds;
+  }
+
+  public int getRetryAfterSeconds() {
+    return retryAfterSeconds;
+  }
+}
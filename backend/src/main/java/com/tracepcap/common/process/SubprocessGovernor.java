@@ -0,0 +1,354 @@
+package com.tracepcap.common.process;
+
+import com.tracepcap.common.exception.SubprocessBusyException;
+import com.tracepcap.config.SubprocessProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+/**
+ * The one place the backend launches tshark, capinfos, mergecap, ndpiReader and Suricata.
+ *
+ * <p>Request paths used to spawn tshark freely — follow-stream, display filters, PCAP exports,
+ * merges — and each is a full pass over a capture that can take a core for minutes. A handful of
+ * users following streams on a large capture took the CPU the analysis pipeline was admitted
+ * against. Every launch now goes through {@link #start}, which holds one of a fixed number of
+ * slots per tool for as long as the process runs:
+ *
+ * <ul>
+ *   <li><b>Two budgets.</b> {@link Budget#INTERACTIVE} slots are for requests and {@link
+ *       Budget#BATCH} slots for analyses, as separate pools, so neither can take the other's.
+ *   <li><b>Bounded waiting.</b> A request waits up to {@code interactive-queue-timeout-seconds}
+ *       for a slot and is then answered 503 with a {@code Retry-After}, not left hanging.
+ *   <li><b>Coalescing.</b> Identical requests arriving together share one run ({@link #coalesce}):
+ *       three people opening the same stream cost one tshark.
+ *   <li><b>Accounting.</b> Each process's CPU time and peak RSS are read from {@code /proc} while
+ *       it runs and exported per tool and budget, so the limits can be set from what the tools
+ *       actually cost here.
+ * </ul>
+ *
+ * <p>Long-lived helpers are not launched through here: the warm Suricata engine is one daemon per
+ * node whose lifetime is the application's, and holding a slot for it would only shrink the pool.
+ */
+@Slf4j
+@Component
+public class SubprocessGovernor implements MeterBinder {
+
+  /** The tools the backend runs, by their key under {@code tracepcap.subprocess.limits}. */
+  public enum Tool {
+    TSHARK("tshark"),
+    CAPINFOS("capinfos"),
+    MERGECAP("mergecap"),
+    NDPI_READER("ndpi-reader"),
+    SURICATA("suricata");
+
+    private final String key;
+
+    Tool(String key) {
+      this.key = key;
+    }
+
+    public String key() {
+      return key;
+    }
+  }
+
+  /** Whose work a launch is; each has its own slots. */
+  public enum Budget {
+    INTERACTIVE,
+    BATCH
+  }
+
+  /** Work that may be shared by identical concurrent callers. */
+  @FunctionalInterface
+  public interface Work<T> {
+    T run() throws Exception;
+  }
+
+  private static final long SAMPLE_MILLIS = 250;
+
+  /** {@code USER_HZ}: the unit of the CPU times in {@code /proc/<pid>/stat}, 100 on Linux. */
+  private static final long CLOCK_TICKS_PER_SECOND = 100;
+
+  /** Null where the tool is unlimited in that budget. */
+  private final Map<Tool, Map<Budget, Semaphore>> slots = new EnumMap<>(Tool.class);
+
+  private final long interactiveTimeoutMillis;
+  private final long batchTimeoutMillis;
+
+  private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+  private final Set<Invocation> running = ConcurrentHashMap.newKeySet();
+
+  private ScheduledExecutorService sampler;
+  private MeterRegistry registry;
+
+  public SubprocessGovernor(SubprocessProperties properties) {
+    for (Tool tool : Tool.values()) {
+      SubprocessProperties.Limit limit = properties.getLimits().get(tool.key());
+      Map<Budget, Semaphore> byBudget = new EnumMap<>(Budget.class);
+      if (limit != null && limit.getInteractive() > 0) {
+        byBudget.put(Budget.INTERACTIVE, new Semaphore(limit.getInteractive(), true));
+      }
+      if (limit != null && limit.getBatch() > 0) {
+        byBudget.put(Budget.BATCH, new Semaphore(limit.getBatch(), true));
+      }
+      slots.put(tool, byBudget);
+    }
+    this.interactiveTimeoutMillis =
+        TimeUnit.SECONDS.toMillis(properties.getInteractiveQueueTimeoutSeconds());
+    this.batchTimeoutMillis = TimeUnit.SECONDS.toMillis(properties.getBatchQueueTimeoutSeconds());
+  }
+
+  /**
+   * Starts {@code builder}'s process once a {@code tool} slot in {@code budget} is free. The slot
+   * is held until the process exits, whoever ends up waiting for it.
+   *
+   * @throws SubprocessBusyException if no slot came free within the budget's queue timeout
+   * @throws InterruptedIOException if the caller was interrupted while queued
+   */
+  public Process start(Tool tool, Budget budget, ProcessBuilder builder) throws IOException {
+    Semaphore slot = slots.get(tool).get(budget);
+    acquire(tool, budget, slot);
+    Process process;
+    try {
+      process = builder.start();
+    } catch (IOException | RuntimeException e) {
+      if (slot != null) slot.release();
+      throw e;
+    }
+    Invocation invocation = new Invocation(tool, budget, process.pid(), System.nanoTime());
+    running.add(invocation);
+    startSampling();
+    process
+        .onExit()
+        .whenComplete(
+            (p, e) -> {
+              if (slot != null) slot.release();
+              running.remove(invocation);
+              finished(invocation, p);
+            });
+    return process;
+  }
+
+  private void acquire(Tool tool, Budget budget, Semaphore slot) throws IOException {
+    if (slot == null) return;
+    long timeout = budget == Budget.INTERACTIVE ? interactiveTimeoutMillis : batchTimeoutMillis;
+    long start = System.nanoTime();
+    try {
+      if (timeout <= 0) {
+        slot.acquire();
+      } else if (!slot.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+        if (registry != null) {
+          Counter.builder("tracepcap.subprocess.rejected")
+              .description("Launches given up after waiting the whole queue timeout for a slot")
+              .tags("tool", tool.key(), "budget", tag(budget))
+              .register(registry)
+              .increment();
+        }
+        throw new SubprocessBusyException(
+            "The server is busy running " + tool.key() + " for others; please retry shortly",
+            (int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(timeout) / 2));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted waiting to run " + tool.key());
+    }
+    if (registry != null) {
+      Timer.builder("tracepcap.subprocess.wait")
+          .description("Time a launch waited for a free slot")
+          .tags("tool", tool.key(), "budget", tag(budget))
+          .register(registry)
+          .record(Duration.ofNanos(System.nanoTime() - start));
+    }
+  }
+
+  /**
+   * Runs {@code work}, unless a call with the same {@code key} is already running — then waits for
+   * that one and returns its result (or throws its exception). The key must identify the result
+   * completely, and the result must be safe to share: callers must not modify it.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T coalesce(String key, Work<T> work) throws Exception {
+    CompletableFuture<Object> mine = new CompletableFuture<>();
+    CompletableFuture<Object> leader = inFlight.putIfAbsent(key, mine);
+    if (leader != null) {
+      if (registry != null) {
+        Counter.builder("tracepcap.subprocess.coalesced")
+            .description("Requests answered by an identical request's run")
+            .register(registry)
+            .increment();
+      }
+      try {
+        return (T) leader.get();
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof Exception cause) throw cause;
+        throw (Error) e.getCause();
+      }
+    }
+    try {
+      T result = work.run();
+      mine.complete(result);
+      return result;
+    } catch (Exception | Error e) {
+      mine.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(key, mine);
+    }
+  }
+
+  // ---------------------------------------------------------------------------
+  // Accounting
+  // ---------------------------------------------------------------------------
+
+  /** One launched process. CPU and RSS are the last sample's; -1 until the first. */
+  private static final class Invocation {
+    final Tool tool;
+    final Budget budget;
+    final long pid;
+    final long startedAt;
+    volatile long cpuTicks = -1;
+    volatile long peakRssKb = -1;
+
+    Invocation(Tool tool, Budget budget, long pid, long startedAt) {
+      this.tool = tool;
+      this.budget = budget;
+      this.pid = pid;
+      this.startedAt = startedAt;
+    }
+  }
+
+  private synchronized void startSampling() {
+    if (sampler != null) return;
+    sampler =
+        Executors.newSingleThreadScheduledExecutor(
+            r -> {
+              Thread t = new Thread(r, "subprocess-sampler");
+              t.setDaemon(true);
+              return t;
+            });
+    sampler.scheduleWithFixedDelay(this::sampleAll, 0, SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  private void sampleAll() {
+    for (Invocation invocation : running) sample(invocation);
+  }
+
+  /**
+   * Reads the process's CPU time and peak RSS from {@code /proc}. Both only grow, so the last
+   * reading before exit is the closest to the total — a process shorter than one interval may
+   * exit unread. Skipped quietly where there is no {@code /proc}.
+   */
+  private static void sample(Invocation invocation) {
+    try {
+      long[] cpu = cpuTicks(Files.readString(Path.of("/proc", invocation.pid + "", "stat")));
+      if (cpu != null) invocation.cpuTicks = cpu[0] + cpu[1];
+      for (String line : Files.readAllLines(Path.of("/proc", invocation.pid + "", "status"))) {
+        if (line.startsWith("VmHWM:")) {
+          invocation.peakRssKb = Long.parseLong(line.replaceAll("\\D", ""));
+          break;
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      // Exited between samples, or not Linux.
+    }
+  }
+
+  /**
+   * {@code [utime, stime]} from a {@code /proc/<pid>/stat} line, or null if it is malformed. The
+   * command name in parentheses may itself contain spaces and parentheses, so fields are counted
+   * from the last {@code ')'}.
+   */
+  static long[] cpuTicks(String stat) {
+    int close = stat.lastIndexOf(')');
+    if (close < 0) return null;
+    String[] fields = stat.substring(close + 1).trim().split("\\s+");
+    // After the name: state is field 3, utime 14, stime 15.
+    if (fields.length < 13) return null;
+    return new long[] {Long.parseLong(fields[11]), Long.parseLong(fields[12])};
+  }
+
+  private void finished(Invocation invocation, Process process) {
+    long wallMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - invocation.startedAt);
+    long cpuMillis =
+        invocation.cpuTicks < 0 ? -1 : invocation.cpuTicks * 1000 / CLOCK_TICKS_PER_SECOND;
+    log.debug(
+        "{} ({}) pid {} exited {} after {}ms: cpu {}ms, peak RSS {}kB",
+        invocation.tool.key(),
+        tag(invocation.budget),
+        invocation.pid,
+        process != null ? process.exitValue() : "?",
+        wallMillis,
+        cpuMillis < 0 ? "?" : cpuMillis,
+        invocation.peakRssKb < 0 ? "?" : invocation.peakRssKb);
+    if (registry == null) return;
+    String tool = invocation.tool.key();
+    String budget = tag(invocation.budget);
+    Timer.builder("tracepcap.subprocess.duration")
+        .description("Wall-clock time of each external tool run")
+        .tags("tool", tool, "budget", budget)
+        .register(registry)
+        .record(Duration.ofMillis(wallMillis));
+    if (cpuMillis >= 0) {
+      Timer.builder("tracepcap.subprocess.cpu")
+          .description("CPU time (user + system) of each external tool run, from /proc")
+          .tags("tool", tool, "budget", budget)
+          .register(registry)
+          .record(Duration.ofMillis(cpuMillis));
+    }
+    if (invocation.peakRssKb >= 0) {
+      DistributionSummary.builder("tracepcap.subprocess.rss")
+          .description("Peak resident memory of each external tool run, from /proc")
+          .baseUnit("bytes")
+          .tags("tool", tool, "budget", budget)
+          .register(registry)
+          .record(invocation.peakRssKb * 1024.0);
+    }
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    this.registry = registry;
+    for (Tool tool : Tool.values()) {
+      for (Budget budget : Budget.values()) {
+        Gauge.builder(
+                "tracepcap.subprocess.running",
+                running,
+                r -> r.stream().filter(i -> i.tool == tool && i.budget == budget).count())
+            .description("External tool processes running now")
+            .tags("tool", tool.key(), "budget", tag(budget))
+            .register(registry);
+      }
+    }
+  }
+
+  @PreDestroy
+  synchronized void stop() {
+    if (sampler != null) sampler.shutdownNow();
+  }
+
+  private static String tag(Budget budget) {
+    return budget.name().toLowerCase();
+  }
+}
@@ -0,0 +1,68 @@
+package com.tracepcap.common.scheduling;
+
+import java.lang.management.ManagementFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * Elects the one node that runs a cluster-wide scheduled task.
+ *
+ * <p>Every backend node registers the same {@code @Scheduled} methods, and some of them must not
+ * run twice at once: two reconcilers would both resubmit a stuck file, two cleanups would race to
+ * delete the same captures. A task that is one of those asks {@link #acquire} first and returns if
+ * another node holds it.
+ *
+ * <p>The lease is a row in {@code scheduler_leases}, taken or renewed in a single upsert that only
+ * succeeds for the current holder or once the lease has lapsed, so two nodes firing on the same
+ * cron tick cannot both win. The holder renews on every run and keeps the task while it stays up; a
+ * node that dies hands it over when {@code lease-minutes} pass without a renewal.
+ *
+ * <p>In {@code common} because the tasks that need it live in several modules (reconciliation,
+ * cleanup) that do not otherwise share anything.
+ */
+@Slf4j
+@Service
+public class SchedulerLeases {
+
+  /** This node in leases and progress rows: {@code pid@host}, unique among running backends. */
+  public static final String NODE = ManagementFactory.getRuntimeMXBean().getName();
+
+  private final JdbcTemplate jdbc;
+
+  /** How long a lease outlives its last renewal. Should exceed the longest task interval. */
+  @Value("${tracepcap.scheduling.lease-minutes:15}")
+  private int leaseMinutes;
+
+  public SchedulerLeases(JdbcTemplate jdbc) {
+    this.jdbc = jdbc;
+  }
+
+  /**
+   * Takes or renews the lease on {@code task} for this node.
+   *
+   * @return whether this node holds it and should run the task now
+   */
+  public boolean acquire(String task) {
+    try {
+      int won =
+          jdbc.update(
+              "INSERT INTO scheduler_leases (name, holder, expires_at)"
+                  + " VALUES (?, ?, now() + ? * INTERVAL '1 minute')"
+                  + " ON CONFLICT (name) DO UPDATE"
+                  + " SET holder = EXCLUDED.holder, expires_at = EXCLUDED.expires_at"
+                  + " WHERE scheduler_leases.holder = EXCLUDED.holder"
+                  + " OR scheduler_leases.expires_at < now()",
+              task,
+              NODE,
+              leaseMinutes);
+      if (won == 0) log.debug("Skipping {}: another node holds its lease", task);
+      return won > 0;
+    } catch (RuntimeException e) {
+      // Without the database the task could not do its work anyway.
+      log.warn("Could not take the lease on {}: {}", task, e.getMessage());
+      return false;
+    }
+  }
+}
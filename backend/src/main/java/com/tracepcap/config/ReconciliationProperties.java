@@ -17,8 +17,14 @@ public class ReconciliationProperties {
   private boolean enabled = true;
 
   /**
-   * Minutes a file may stay in PROCESSING before it is considered stuck and flipped to FAILED. Must
-   * exceed the longest expected analysis time so healthy in-flight jobs are never killed.
+   * Minutes a file may stay in PROCESSING, with no analysis job queued or running, before it is
+   * considered stuck and flipped to FAILED. A running job is judged by its lease, never by this.
    */
   private int timeoutMinutes = 30;
+
+  /**
+   * Times a stuck analysis that has committed a checkpoint is resumed from it before it is flipped
+   * to FAILED instead. Bounded so that a capture which kills the worker is not retried forever.
+   */
+  private int maxResumes = 2;
 }
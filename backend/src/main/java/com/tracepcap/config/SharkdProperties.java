@@ -0,0 +1,52 @@
+package com.tracepcap.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * The warm sharkd sessions behind the interactive views; see {@link
+ * com.tracepcap.file.service.SharkdPool}.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "tracepcap.sharkd")
+@Data
+public class SharkdProperties {
+
+  /** With this off, or sharkd missing, every view runs tshark as before. */
+  private boolean enabled = true;
+
+  /** The sharkd binary, run as {@code <command> -} to talk on its stdin and stdout. */
+  private String command = "sharkd";
+
+  /**
+   * {@code json-rpc} for sharkd 4.0 and later, {@code legacy} for the line protocol before it
+   * (the runtime image's Ubuntu 22.04 Wireshark is 3.6), or {@code auto} to go by the major
+   * version {@code tshark --version} reports.
+   */
+  private Protocol protocol = Protocol.AUTO;
+
+  /** Sessions running at once. Each holds its capture's dissection in memory for its lifetime. */
+  private int maxSessions = 4;
+
+  /** A session nobody has asked anything for this long is stopped. */
+  private int idleTimeoutSeconds = 300;
+
+  /**
+   * A session whose resident set has grown past this is stopped after the request that found it
+   * there; the next request for its capture starts afresh. 0 = no cap.
+   */
+  private long maxRssMb = 1024;
+
+  /** A filter, follow or frame request taking longer than this kills its session. */
+  private int requestTimeoutSeconds = 30;
+
+  /** Loading is a full pass over the capture, so it gets longer than an ordinary request. */
+  private int loadTimeoutSeconds = 120;
+
+  public enum Protocol {
+    AUTO,
+    JSON_RPC,
+    LEGACY
+  }
+}
@@ -0,0 +1,47 @@
+package com.tracepcap.config;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Limits on the external tools the backend launches, per tool and per budget; see {@link
+ * com.tracepcap.common.process.SubprocessGovernor}.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "tracepcap.subprocess")
+@Data
+public class SubprocessProperties {
+
+  /**
+   * How long a request waits for a free slot before it is answered 503. Someone is watching the
+   * spinner, so this is kept short; a busy node says so rather than leaving them to guess.
+   */
+  private int interactiveQueueTimeoutSeconds = 30;
+
+  /** How long analysis work waits for a free slot; 0 = as long as it takes. */
+  private int batchQueueTimeoutSeconds = 0;
+
+  /**
+   * Processes of each tool that may run at once, keyed by tool ({@code tshark}, {@code capinfos},
+   * {@code mergecap}, {@code ndpi-reader}, {@code suricata}). 0 = no limit.
+   */
+  private Map<String, Limit> limits = new LinkedHashMap<>();
+
+  /** Slots for one tool. The two budgets are separate pools: neither can use the other's. */
+  @Data
+  public static class Limit {
+
+    /** Launched while serving a request: follow-stream, filters, exports, merges, uploads. */
+    private int interactive;
+
+    /**
+     * Launched by the analysis pipeline. Unlimited by default, because analyses are already
+     * admitted against a CPU budget and a pipeline stage waiting here holds its other tools open; a
+     * cap must allow for every process the running analyses start at once.
+     */
+    private int batch;
+  }
+}
@@ -4,8 +4,10 @@ import com.tracepcap.analysis.dto.ConversationDetailResponse;
 import com.tracepcap.analysis.dto.ConversationFilterParams;
 import com.tracepcap.analysis.dto.ConversationResponse;
 import com.tracepcap.analysis.dto.EntityStatsResponse;
+import com.tracepcap.analysis.dto.FrameDetailResponse;
 import com.tracepcap.analysis.dto.SessionResponse;
 import com.tracepcap.conversation.service.ConversationQueryService;
+import com.tracepcap.conversation.service.FrameDetailService;
 import com.tracepcap.analysis.service.SessionReconstructionService;
 import com.tracepcap.common.dto.PagedResponse;
 import io.swagger.v3.oas.annotations.Operation;
@@ -31,11 +33,14 @@ import org.springframework.web.bind.annotation.*;
 @RequiredArgsConstructor
 @Tag(
     name = "Conversations",
-    description = "Per-file conversation listing, facets, export, and session reconstruction")
+    description =
+        "Per-file conversation listing, facets, export, session reconstruction and frame"
+            + " dissection")
 public class ConversationsController {
 
   private final ConversationQueryService conversationQueryService;
   private final SessionReconstructionService sessionReconstructionService;
+  private final FrameDetailService frameDetailService;
 
   private static final DateTimeFormatter CSV_DT = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
 
@@ -364,6 +369,15 @@ public class ConversationsController {
     }
   }
 
+  /** One frame's protocol tree and bytes, as Wireshark's packet details show them. */
+  @GetMapping("/{fileId}/frames/{frameNumber}")
+  @Operation(summary = "Dissect a single frame of the capture")
+  public ResponseEntity<FrameDetailResponse> getFrameDetail(
+      @PathVariable UUID fileId, @PathVariable long frameNumber) {
+    log.info("GET /api/conversations/{}/frames/{}", fileId, frameNumber);
+    return ResponseEntity.ok(frameDetailService.getFrame(fileId, frameNumber));
+  }
+
   /** Reconstruct the full TCP/UDP session for a conversation and decode the application payload. */
   @GetMapping("/detail/{conversationId}/session")
   @Operation(summary = "Reconstruct TCP/UDP session with application-layer payload decoding")
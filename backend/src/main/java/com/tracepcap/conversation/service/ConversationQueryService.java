@@ -14,9 +14,13 @@ import com.tracepcap.analysis.spi.PacketLookup;
 import com.tracepcap.analysis.spi.PacketLookup.PacketFacts;
 import com.tracepcap.common.dto.PagedResponse;
 import com.tracepcap.common.exception.ResourceNotFoundException;
+import com.tracepcap.common.process.SubprocessGovernor;
+import com.tracepcap.common.process.SubprocessGovernor.Budget;
+import com.tracepcap.common.process.SubprocessGovernor.Tool;
 import com.tracepcap.file.entity.FileEntity;
 import com.tracepcap.file.repository.FileRepository;
-import com.tracepcap.file.service.StorageService;
+import com.tracepcap.file.service.CaptureCache;
+import com.tracepcap.file.service.FrameSlicer;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -25,6 +29,7 @@ import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -57,7 +62,9 @@ public class ConversationQueryService {
 
   private final FileRepository fileRepository;
   private final GeoIpService geoIpService;
-  private final StorageService storageService;
+  private final CaptureCache captureCache;
+  private final FrameSlicer frameSlicer;
+  private final SubprocessGovernor governor;
 
   private static final java.time.format.DateTimeFormatter PCAP_FILENAME_TS =
       java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss")
@@ -208,6 +215,10 @@ public class ConversationQueryService {
    * Exports a single conversation as a PCAP file. Uses the exact frame numbers stored in the
    * database to filter packets, which is reliable regardless of capture format or tunnelling.
    * Streams the result into the given OutputStream.
+   *
+   * <p>The frames are copied straight out of the capture through its frame index ({@link
+   * FrameSlicer}); tshark filters the whole capture only for files analysed before the index
+   * existed or in a format it does not cover.
    */
   @Transactional(readOnly = true)
   public void exportConversationAsPcap(UUID conversationId, java.io.OutputStream out)
@@ -219,10 +230,9 @@ public class ConversationQueryService {
             .orElseThrow(
                 () -> new ResourceNotFoundException("Conversation not found: " + conversationId));
 
-    // minioPath belongs to the file record, not the conversation — ask the file module for it.
-    String minioPath =
-        fileRepository.findById(conv.fileId()).map(FileEntity::getMinioPath).orElse(null);
-    if (minioPath == null) {
+    // The capture belongs to the file record, not the conversation — ask the file module for it.
+    FileEntity file = fileRepository.findById(conv.fileId()).orElse(null);
+    if (file == null || file.getMinioPath() == null) {
       throw new IOException("PCAP file path not found for conversation: " + conversationId);
     }
 
@@ -236,33 +246,32 @@ public class ConversationQueryService {
           "No packets found for conversation " + conversationId + "; cannot export PCAP");
     }
 
-    File tempInput = null;
+    log.info(
+        "Exporting PCAP for conversationId={}, {} frames", conversationId, frameNumbers.size());
+    if (frameSlicer.writeFrames(file, frameNumbers, out)) return;
+
     File tempOutput = null;
-    try {
-      tempInput = File.createTempFile("pcap-in-", ".pcap");
+    try (CaptureCache.Lease capture = captureCache.acquire(file)) {
+      File input = capture.path().toFile();
       tempOutput = File.createTempFile("pcap-out-", ".pcap");
 
-      storageService.downloadFileToLocal(minioPath, tempInput);
-
       // Use compact set syntax to avoid exceeding OS arg-length limits on large conversations
       String filter =
           "frame.number in {"
               + frameNumbers.stream().map(Object::toString).collect(Collectors.joining(","))
               + "}";
 
-      log.info(
-          "Exporting PCAP for conversationId={}, {} frames", conversationId, frameNumbers.size());
       ProcessBuilder pb =
           new ProcessBuilder(
               "tshark",
               "-r",
-              tempInput.getAbsolutePath(),
+              input.getAbsolutePath(),
               "-Y",
               filter,
               "-w",
               tempOutput.getAbsolutePath());
       pb.redirectError(ProcessBuilder.Redirect.DISCARD);
-      Process proc = pb.start();
+      Process proc = governor.start(Tool.TSHARK, Budget.INTERACTIVE, pb);
       try {
         int exitCode = proc.waitFor();
         if (exitCode != 0) {
@@ -282,7 +291,6 @@ public class ConversationQueryService {
         is.transferTo(out);
       }
     } finally {
-      if (tempInput != null && !tempInput.delete()) tempInput.deleteOnExit();
       if (tempOutput != null && !tempOutput.delete()) tempOutput.deleteOnExit();
     }
   }
@@ -296,9 +304,10 @@ public class ConversationQueryService {
   }
 
   /**
-   * Exports filtered conversations as a PCAP file. Downloads the original PCAP from storage,
-   * applies a tshark display filter derived from the matched conversations, and streams the result
-   * into the given OutputStream.
+   * Exports filtered conversations as a PCAP file. Copies the matched conversations' frames out of
+   * the original PCAP through its frame index, or, for a capture without one, reads it through the
+   * capture cache and applies a tshark display filter derived from the matched conversations.
+   * Either way the result is streamed into the given OutputStream.
    *
    * @param fileId the file whose conversations should be exported
    * @param params filter parameters (same as the listing endpoint)
@@ -322,14 +331,18 @@ public class ConversationQueryService {
 
     List<Long> frameNumbers = packetLookup.frameNumbersInConversations(conversationIds);
 
-    File tempInput = null;
+    log.info(
+        "Exporting PCAP for fileId={} with {} conversations ({} frames)",
+        fileId,
+        conversations.size(),
+        frameNumbers.size());
+    if (frameSlicer.writeFrames(file, frameNumbers, out)) return;
+
     File tempOutput = null;
-    try {
-      tempInput = File.createTempFile("pcap-in-", ".pcap");
+    try (CaptureCache.Lease capture = captureCache.acquire(file)) {
+      File input = capture.path().toFile();
       tempOutput = File.createTempFile("pcap-out-", ".pcap");
 
-      storageService.downloadFileToLocal(file.getMinioPath(), tempInput);
-
       // Always apply a display filter so we never accidentally export the full PCAP.
       // When no conversations match, frame.number == 0 produces a valid 0-packet output
       // (real frame numbers start at 1).
@@ -347,20 +360,15 @@ public class ConversationQueryService {
               Arrays.asList(
                   "tshark",
                   "-r",
-                  tempInput.getAbsolutePath(),
+                  input.getAbsolutePath(),
                   "-Y",
                   filter,
                   "-w",
                   tempOutput.getAbsolutePath()));
 
-      log.info(
-          "Exporting PCAP for fileId={} with {} conversations ({} frames)",
-          fileId,
-          conversations.size(),
-          frameNumbers.size());
       ProcessBuilder pb = new ProcessBuilder(cmd);
       pb.redirectError(ProcessBuilder.Redirect.DISCARD);
-      Process proc = pb.start();
+      Process proc = governor.start(Tool.TSHARK, Budget.INTERACTIVE, pb);
       try {
         int exitCode = proc.waitFor();
         if (exitCode != 0) {
@@ -377,7 +385,6 @@ public class ConversationQueryService {
         is.transferTo(out);
       }
     } finally {
-      if (tempInput != null && !tempInput.delete()) tempInput.deleteOnExit();
       if (tempOutput != null && !tempOutput.delete()) tempOutput.deleteOnExit();
     }
   }
@@ -552,7 +559,7 @@ public class ConversationQueryService {
         .protocol(p.protocol())
         .packetSize(p.packetSize())
         .info(p.info())
-        .payload(p.payload())
+        .payload(p.payload() != null ? HexFormat.of().formatHex(p.payload()) : null)
         .detectedFileType(p.detectedFileType())
         .build();
   }
@@ -0,0 +1,214 @@
+package com.tracepcap.conversation.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.tracepcap.analysis.dto.FrameDetailResponse;
+import com.tracepcap.common.exception.ResourceNotFoundException;
+import com.tracepcap.common.exception.SubprocessBusyException;
+import com.tracepcap.common.process.SubprocessGovernor;
+import com.tracepcap.common.process.SubprocessGovernor.Budget;
+import com.tracepcap.common.process.SubprocessGovernor.Tool;
+import com.tracepcap.file.entity.FileEntity;
+import com.tracepcap.file.repository.FileRepository;
+import com.tracepcap.file.service.CaptureCache;
+import com.tracepcap.file.service.SharkdPool;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+/**
+ * One frame's full dissection — the protocol tree of Wireshark's details pane — for the packet
+ * views, which otherwise have only the summary columns stored at ingest.
+ *
+ * <p>Asked of the capture's sharkd session ({@link SharkdPool}), which holds the capture dissected
+ * and answers from memory, with the frame's bytes. Without one, tshark dissects the capture as far
+ * as the frame and prints its tree as PDML; that answer has no bytes.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FrameDetailService {
+
+  private final FileRepository fileRepository;
+  private final CaptureCache captureCache;
+  private final SharkdPool sharkd;
+  private final SubprocessGovernor governor;
+
+  public FrameDetailResponse getFrame(UUID fileId, long frameNumber) {
+    FileEntity file =
+        fileRepository
+            .findById(fileId)
+            .orElseThrow(() -> new ResourceNotFoundException("File not found: " + fileId));
+    if (frameNumber < 1) {
+      throw new ResourceNotFoundException("No frame " + frameNumber + " in file " + fileId);
+    }
+
+    SharkdPool.Reply reply =
+        sharkd.request(file, "frame", Map.of("frame", frameNumber, "proto", true, "bytes", true));
+    if (reply != null && reply.ok()) return fromSharkd(frameNumber, reply.result());
+
+    try {
+      List<FrameDetailResponse.Node> tree =
+          governor.coalesce(
+              "frame:" + fileId + ":" + frameNumber, () -> dissectWithTshark(file, frameNumber));
+      if (tree == null) {
+        throw new ResourceNotFoundException("No frame " + frameNumber + " in file " + fileId);
+      }
+      return FrameDetailResponse.builder().frameNumber(frameNumber).tree(tree).build();
+    } catch (ResourceNotFoundException | SubprocessBusyException e) {
+      throw e;
+    } catch (Exception e) {
+      log.error("Dissecting frame {} of file {} failed: {}", frameNumber, fileId, e.getMessage());
+      throw new RuntimeException(
+          "Failed to dissect frame " + frameNumber + ": " + e.getMessage(), e);
+    }
+  }
+
+  // -------------------------------------------------------------------------
+  // sharkd
+  // -------------------------------------------------------------------------
+
+  static FrameDetailResponse fromSharkd(long frameNumber, JsonNode result) {
+    String bytes = result.path("bytes").asText("");
+    return FrameDetailResponse.builder()
+        .frameNumber(frameNumber)
+        .tree(sharkdNodes(result.path("tree")))
+        .bytes(bytes.isEmpty() ? null : Base64.getDecoder().decode(bytes))
+        .build();
+  }
+
+  /**
+   * sharkd's tree: {@code l} is the label, {@code f} a filter for the item ({@code "ip.ttl == 64"},
+   * or just the protocol), {@code h} its {@code [offset, length]} and {@code n} its children.
+   */
+  private static List<FrameDetailResponse.Node> sharkdNodes(JsonNode items) {
+    if (!items.isArray() || items.isEmpty()) return null;
+    List<FrameDetailResponse.Node> nodes = new ArrayList<>();
+    for (JsonNode item : items) {
+      String filter = item.path("f").asText("");
+      JsonNode bytes = item.path("h");
+      nodes.add(
+          FrameDetailResponse.Node.builder()
+              .label(item.path("l").asText(""))
+              .field(filter.isEmpty() ? null : filter.split(" ", 2)[0])
+              .offset(bytes.size() == 2 ? bytes.get(0).asInt() : null)
+              .length(bytes.size() == 2 ? bytes.get(1).asInt() : null)
+              .children(sharkdNodes(item.path("n")))
+              .build());
+    }
+    return nodes;
+  }
+
+  // -------------------------------------------------------------------------
+  // tshark
+  // -------------------------------------------------------------------------
+
+  /** The frame's tree from tshark's PDML, or null if the capture has no such frame. */
+  private List<FrameDetailResponse.Node> dissectWithTshark(FileEntity file, long frameNumber)
+      throws Exception {
+    try (CaptureCache.Lease capture = captureCache.acquire(file)) {
+      ProcessBuilder pb =
+          new ProcessBuilder(
+              "tshark",
+              "-r",
+              capture.path().toAbsolutePath().toString(),
+              "-Y",
+              "frame.number == " + frameNumber,
+              "-T",
+              "pdml");
+      pb.redirectError(ProcessBuilder.Redirect.DISCARD);
+      Process process = governor.start(Tool.TSHARK, Budget.INTERACTIVE, pb);
+      try (InputStream in = process.getInputStream()) {
+        return parsePdml(in);
+      } finally {
+        // Everything after the frame is of no interest.
+        process.destroy();
+      }
+    }
+  }
+
+  /**
+   * The first packet's tree in a PDML document, or null if there is none. Reads no further than
+   * that packet. tshark's {@code geninfo} pseudo-protocol and hidden fields are left out, as
+   * Wireshark's details pane leaves them out.
+   */
+  static List<FrameDetailResponse.Node> parsePdml(InputStream in) throws XMLStreamException {
+    XMLInputFactory factory = XMLInputFactory.newFactory();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    XMLStreamReader reader = factory.createXMLStreamReader(in);
+    try {
+      List<FrameDetailResponse.Node> roots = new ArrayList<>();
+      Deque<FrameDetailResponse.Node> open = new ArrayDeque<>();
+      boolean inPacket = false;
+      int skipped = 0;
+      while (reader.hasNext()) {
+        int event = reader.next();
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          if ("packet".equals(reader.getLocalName())) {
+            inPacket = true;
+          } else if (inPacket) {
+            if (skipped > 0
+                || "geninfo".equals(reader.getAttributeValue(null, "name"))
+                || "yes".equals(reader.getAttributeValue(null, "hide"))) {
+              skipped++;
+              continue;
+            }
+            FrameDetailResponse.Node node = pdmlNode(reader);
+            FrameDetailResponse.Node parent = open.peek();
+            if (parent == null) {
+              roots.add(node);
+            } else {
+              if (parent.getChildren() == null) parent.setChildren(new ArrayList<>());
+              parent.getChildren().add(node);
+            }
+            open.push(node);
+          }
+        } else if (event == XMLStreamConstants.END_ELEMENT && inPacket) {
+          if ("packet".equals(reader.getLocalName())) return roots;
+          if (skipped > 0) {
+            skipped--;
+          } else {
+            open.pop();
+          }
+        }
+      }
+      return null;
+    } finally {
+      reader.close();
+    }
+  }
+
+  private static FrameDetailResponse.Node pdmlNode(XMLStreamReader reader) {
+    String name = reader.getAttributeValue(null, "name");
+    String showname = reader.getAttributeValue(null, "showname");
+    String show = reader.getAttributeValue(null, "show");
+    Integer size = integer(reader.getAttributeValue(null, "size"));
+    return FrameDetailResponse.Node.builder()
+        .label(showname != null && !showname.isEmpty() ? showname : show)
+        .field(name == null || name.isEmpty() ? null : name)
+        .offset(size == null ? null : integer(reader.getAttributeValue(null, "pos")))
+        .length(size)
+        .build();
+  }
+
+  private static Integer integer(String value) {
+    if (value == null || value.isEmpty()) return null;
+    try {
+      return Integer.valueOf(value);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+}
@@ -3,8 +3,14 @@ package com.tracepcap.extraction.service;
 import com.tracepcap.analysis.entity.ConversationEntity;
 import com.tracepcap.analysis.spi.ConversationLookup;
 import com.tracepcap.analysis.spi.ConversationLookup.ConversationFacts;
+import com.tracepcap.analysis.spi.DissectedFrame;
+import com.tracepcap.analysis.spi.Dissection;
+import com.tracepcap.analysis.spi.FrameSubscriber;
 import com.tracepcap.analysis.spi.PacketLookup;
 import com.tracepcap.analysis.spi.FileExtractionStage;
+import com.tracepcap.common.process.SubprocessGovernor;
+import com.tracepcap.common.process.SubprocessGovernor.Budget;
+import com.tracepcap.common.process.SubprocessGovernor.Tool;
 import com.tracepcap.extraction.entity.ExtractedFileEntity;
 import com.tracepcap.extraction.repository.ExtractedFileRepository;
 import com.tracepcap.file.entity.FileEntity;
@@ -40,7 +46,8 @@ import org.springframework.stereotype.Service;
 @Slf4j
 @Service
 @RequiredArgsConstructor
-public class FileExtractionService implements FileExtractionStage {
+public class FileExtractionService
+    implements FileExtractionStage, FrameSubscriber<FileExtractionService.Frames> {
 
   /**
    * Maximum bytes buffered per raw stream during reassembly (200 MB). This is intentionally larger
@@ -157,6 +164,10 @@ public class FileExtractionService implements FileExtractionStage {
   /** Associates a tshark stream index with its transport protocol ("tcp" or "udp"). */
   private record StreamInfo(String transport, int index) {}
 
+  /** One HTTP request seen on the shared pass; src = client, dst = server. */
+  private record HttpRequest(
+      String uri, String srcIp, Integer srcPort, String dstIp, Integer dstPort) {}
+
   @PersistenceContext private EntityManager entityManager;
 
   private final ExtractedFileRepository extractedFileRepository;
@@ -164,6 +175,7 @@ public class FileExtractionService implements FileExtractionStage {
   private final PacketLookup packetLookup;
   private final StorageService storageService;
   private final ExtractionLimits limits;
+  private final SubprocessGovernor governor;
 
   // -------------------------------------------------------------------------
   // Public entry point
@@ -185,10 +197,12 @@ public class FileExtractionService implements FileExtractionStage {
    *
    * @param file the persisted FileEntity
    * @param tempPcapFile the PCAP on local disk (will not be deleted here)
+   * @param dissection the capture's shared tshark pass
    * @param savedConversationIds IDs of conversations already persisted to DB for this file
    */
   @Override
-  public void extractFiles(FileEntity file, File tempPcapFile, List<UUID> savedConversationIds) {
+  public void extractFiles(
+      FileEntity file, File tempPcapFile, Dissection dissection, List<UUID> savedConversationIds) {
 
     log.info("Starting file extraction for PCAP {}", file.getId());
 
@@ -200,9 +214,10 @@ public class FileExtractionService implements FileExtractionStage {
 
     // Load all conversations once — shared by both extraction strategies
     List<ConversationFacts> allConvs = conversationLookup.conversationFactsByIds(savedConversationIds);
+    Frames frames = dissection.consumer(this);
 
     try {
-      extractHttpObjects(file, tempPcapFile, allConvs);
+      extractHttpObjects(file, tempPcapFile, frames, allConvs);
     } catch (Exception e) {
       log.warn("HTTP object extraction failed for {}: {}", file.getId(), e.getMessage());
     }
@@ -221,7 +236,8 @@ public class FileExtractionService implements FileExtractionStage {
   // -------------------------------------------------------------------------
 
   private void extractHttpObjects(
-      FileEntity file, File tempPcapFile, List<ConversationFacts> convs) throws Exception {
+      FileEntity file, File tempPcapFile, Frames frames, List<ConversationFacts> convs)
+      throws Exception {
     File tmpDir = Files.createTempDirectory("tshark-http-").toFile();
     try {
       ProcessBuilder pb =
@@ -232,7 +248,7 @@ public class FileExtractionService implements FileExtractionStage {
               "--export-objects",
               "http," + tmpDir.getAbsolutePath());
       pb.redirectError(ProcessBuilder.Redirect.DISCARD);
-      Process proc = pb.start();
+      Process proc = governor.start(Tool.TSHARK, Budget.BATCH, pb);
       proc.getInputStream().transferTo(OutputStream.nullOutputStream());
       proc.waitFor(60, java.util.concurrent.TimeUnit.SECONDS);
 
@@ -244,9 +260,9 @@ public class FileExtractionService implements FileExtractionStage {
 
       log.info("tshark exported {} HTTP object(s) from PCAP {}", files.length, file.getId());
 
-      // Build filename → conversationId map via a second tshark pass
+      // Build filename → conversationId map from the requests seen on the shared pass
       Map<String, UUID> filenameToConvId =
-          convs.isEmpty() ? new HashMap<>() : buildHttpFilenameConvMap(tempPcapFile, convs);
+          convs.isEmpty() ? new HashMap<>() : buildHttpFilenameConvMap(frames.requests, convs);
 
       // Fallback: numbered variants like "xcms(1).asp" share the same TCP stream as "xcms.asp"
       // (tshark exports both POST request body and response body under the same basename).
@@ -278,7 +294,8 @@ public class FileExtractionService implements FileExtractionStage {
   }
 
   /**
-   * Runs a secondary tshark pass to correlate exported HTTP filenames with conversation IDs.
+   * Correlates exported HTTP filenames with conversation IDs, from the requests seen on the shared
+   * pass.
    *
    * <p>tshark names exported HTTP objects after the last path segment of the response URI,
    * appending {@code (N)} before the extension when the same basename appears multiple times (e.g.
@@ -287,71 +304,25 @@ public class FileExtractionService implements FileExtractionStage {
    *
    * @return map from tshark-exported filename → conversation UUID
    */
-  private Map<String, UUID> buildHttpFilenameConvMap(
-      File pcapFile, List<ConversationFacts> convs) {
+  private static Map<String, UUID> buildHttpFilenameConvMap(
+      List<HttpRequest> requests, List<ConversationFacts> convs) {
     Map<String, UUID> result = new HashMap<>();
     // Must track counts in pcap order — LinkedHashMap preserves insertion order
     Map<String, Integer> basenameCount = new LinkedHashMap<>();
-    try {
-      // Use http.request (one entry per HTTP request) instead of http.response_for.uri
-      // (which returns both request AND response packets, causing double-counting of basenames).
-      // src = client, dst = server — bidirectional matching handles storage order.
-      ProcessBuilder pb =
-          new ProcessBuilder(
-              "tshark",
-              "-r",
-              pcapFile.getAbsolutePath(),
-              "-Y",
-              "http.request",
-              "-T",
-              "fields",
-              "-e",
-              "http.request.uri",
-              "-e",
-              "ip.src",
-              "-e",
-              "ipv6.src",
-              "-e",
-              "tcp.srcport",
-              "-e",
-              "ip.dst",
-              "-e",
-              "ipv6.dst",
-              "-e",
-              "tcp.dstport");
-      pb.redirectError(ProcessBuilder.Redirect.DISCARD);
-      Process proc = pb.start();
-
-      try (BufferedReader br = new BufferedReader(new InputStreamReader(proc.getInputStream()))) {
-        String line;
-        while ((line = br.readLine()) != null) {
-          String[] cols = line.split("\t", -1);
-          if (cols.length < 7) continue;
-          String uri = cols[0].trim();
-          String srcIp = firstNonEmpty(cols[1], cols[2]);
-          String srcPort = cols[3].trim();
-          String dstIp = firstNonEmpty(cols[4], cols[5]);
-          String dstPort = cols[6].trim();
-          if (uri.isEmpty()) continue;
-
-          // Derive basename and replicate tshark's (N) duplicate-numbering scheme
-          String basename = uriToBasename(uri);
-          int count = basenameCount.getOrDefault(basename, 0);
-          basenameCount.put(basename, count + 1);
-          String filename = count == 0 ? basename : addDuplicateSuffix(basename, count);
-
-          if (srcIp == null || dstIp == null) continue;
-          Integer sp = parsePort(srcPort);
-          Integer dp = parsePort(dstPort);
-          ConversationFacts conv = findConvByEndpoints(convs, srcIp, sp, dstIp, dp);
-          if (conv != null) {
-            result.put(filename, conv.id());
-          }
-        }
+    for (HttpRequest request : requests) {
+      // Derive basename and replicate tshark's (N) duplicate-numbering scheme
+      String basename = uriToBasename(request.uri());
+      int count = basenameCount.getOrDefault(basename, 0);
+      basenameCount.put(basename, count + 1);
+      String filename = count == 0 ? basename : addDuplicateSuffix(basename, count);
+
+      if (request.srcIp() == null || request.dstIp() == null) continue;
+      ConversationFacts conv =
+          findConvByEndpoints(
+              convs, request.srcIp(), request.srcPort(), request.dstIp(), request.dstPort());
+      if (conv != null) {
+        result.put(filename, conv.id());
       }
-      proc.waitFor(60, java.util.concurrent.TimeUnit.SECONDS);
-    } catch (Exception e) {
-      log.debug("HTTP filename→conv map build failed: {}", e.getMessage());
     }
     return result;
   }
@@ -509,22 +480,14 @@ public class FileExtractionService implements FileExtractionStage {
 
     if (candidates.isEmpty()) return;
 
-    // Single tshark pass to resolve stream indices for all candidate conversations at once.
-    Map<String, StreamInfo> streamIndexMap = buildStreamIndexMap(tempPcapFile);
-
+    // Stream indices were recorded on the conversations at ingest (StreamIndexService).
     Map<ConversationFacts, StreamInfo> convStreamMap = new LinkedHashMap<>();
     for (ConversationFacts conv : candidates) {
-      StreamInfo info =
-          streamIndexMap.get(
-              streamKey(conv.flow().srcIp(), conv.flow().srcPort(), conv.flow().dstIp(), conv.flow().dstPort()));
-      if (info == null) {
-        info =
-            streamIndexMap.get(
-                streamKey(
-                    conv.flow().dstIp(), conv.flow().dstPort(),
-                    conv.flow().srcIp(), conv.flow().srcPort()));
+      if (conv.flow().tcpStream() != null) {
+        convStreamMap.put(conv, new StreamInfo("tcp", conv.flow().tcpStream()));
+      } else if (conv.flow().udpStream() != null) {
+        convStreamMap.put(conv, new StreamInfo("udp", conv.flow().udpStream()));
       }
-      if (info != null) convStreamMap.put(conv, info);
     }
 
     if (convStreamMap.isEmpty()) return;
@@ -607,101 +570,57 @@ public class FileExtractionService implements FileExtractionStage {
   }
 
   // -------------------------------------------------------------------------
-  // Batched stream index lookup — single tshark pass for all conversations
+  // Shared tshark pass — HTTP requests
   // -------------------------------------------------------------------------
 
-  /**
-   * Reads the pcap once and builds a map from conversation-endpoint key to (transport,
-   * streamIndex). Replaces the old per-conversation findStreamIndex calls.
-   */
-  private Map<String, StreamInfo> buildStreamIndexMap(File pcapFile) {
-    Map<String, StreamInfo> map = new HashMap<>();
-    try {
-      ProcessBuilder pb =
-          new ProcessBuilder(
-              "tshark",
-              "-r",
-              pcapFile.getAbsolutePath(),
-              "-T",
-              "fields",
-              "-E",
-              "separator=|",
-              "-e",
-              "ip.src",
-              "-e",
-              "ip.dst",
-              "-e",
-              "ipv6.src",
-              "-e",
-              "ipv6.dst",
-              "-e",
-              "tcp.srcport",
-              "-e",
-              "tcp.dstport",
-              "-e",
-              "tcp.stream",
-              "-e",
-              "udp.srcport",
-              "-e",
-              "udp.dstport",
-              "-e",
-              "udp.stream");
-      pb.redirectError(ProcessBuilder.Redirect.DISCARD);
-      Process proc = pb.start();
+  private static final List<String> FIELDS =
+      List.of(
+          "http.request.uri",
+          "ip.src",
+          "ip.dst",
+          "ipv6.src",
+          "ipv6.dst",
+          "tcp.srcport",
+          "tcp.dstport");
 
-      try (BufferedReader br = new BufferedReader(new InputStreamReader(proc.getInputStream()))) {
-        String line;
-        while ((line = br.readLine()) != null) {
-          String[] f = line.split("\\|", -1);
-          if (f.length < 10) continue;
-
-          String srcIp = firstNonEmpty(f[0], f[2]);
-          String dstIp = firstNonEmpty(f[1], f[3]);
-          if (srcIp == null || dstIp == null) continue;
-
-          // TCP
-          if (!f[6].isEmpty()) {
-            try {
-              int idx = Integer.parseInt(f[6].split(",")[0].trim());
-              putBoth(
-                  map, srcIp, parsePort(f[4]), dstIp, parsePort(f[5]), new StreamInfo("tcp", idx));
-            } catch (NumberFormatException ignored) {
-            }
-          }
+  @Override
+  public Set<String> fields() {
+    return Set.copyOf(FIELDS);
+  }
 
-          // UDP
-          if (!f[9].isEmpty()) {
-            try {
-              int idx = Integer.parseInt(f[9].split(",")[0].trim());
-              putBoth(
-                  map, srcIp, parsePort(f[7]), dstIp, parsePort(f[8]), new StreamInfo("udp", idx));
-            } catch (NumberFormatException ignored) {
-            }
-          }
-        }
-      }
-      if (!proc.waitFor(120, java.util.concurrent.TimeUnit.SECONDS)) {
-        proc.destroyForcibly();
-      }
-    } catch (Exception e) {
-      log.warn("buildStreamIndexMap failed: {}", e.getMessage());
-    }
-    return map;
+  /** Nothing to carve, so nothing to read. */
+  @Override
+  public boolean enabledFor(FileEntity file) {
+    return file.isEnableFileExtraction();
   }
 
-  private static void putBoth(
-      Map<String, StreamInfo> map,
-      String srcIp,
-      Integer srcPort,
-      String dstIp,
-      Integer dstPort,
-      StreamInfo info) {
-    map.putIfAbsent(streamKey(srcIp, srcPort, dstIp, dstPort), info);
-    map.putIfAbsent(streamKey(dstIp, dstPort, srcIp, srcPort), info);
+  @Override
+  public Frames open() {
+    return new Frames();
   }
 
-  private static String streamKey(String ip1, Integer p1, String ip2, Integer p2) {
-    return ip1 + ":" + p1 + "\u2192" + ip2 + ":" + p2;
+  /** One capture's HTTP requests, in pcap order, read off the shared pass. */
+  public static final class Frames implements FrameSubscriber.FrameConsumer {
+    private final List<HttpRequest> requests = new ArrayList<>();
+
+    @Override
+    public void accept(DissectedFrame frame) {
+      String srcIp = firstNonEmpty(frame.first("ip.src"), frame.first("ipv6.src"));
+      String dstIp = firstNonEmpty(frame.first("ip.dst"), frame.first("ipv6.dst"));
+
+      // One entry per HTTP request (the old pass's -Y http.request) rather than per response,
+      // which would double-count basenames.
+      for (String uri : frame.values("http.request.uri")) {
+        if (uri.isBlank()) continue;
+        requests.add(
+            new HttpRequest(
+                uri.trim(),
+                srcIp,
+                parsePort(frame.first("tcp.srcport")),
+                dstIp,
+                parsePort(frame.first("tcp.dstport"))));
+      }
+    }
   }
 
   // -------------------------------------------------------------------------
@@ -735,7 +654,7 @@ public class FileExtractionService implements FileExtractionStage {
     try {
       ProcessBuilder pb = new ProcessBuilder(cmd);
       pb.redirectError(ProcessBuilder.Redirect.DISCARD);
-      Process proc = pb.start();
+      Process proc = governor.start(Tool.TSHARK, Budget.BATCH, pb);
 
       String currentKey = null;
       ByteArrayOutputStream currentBuf = null;
@@ -0,0 +1,401 @@
+package com.tracepcap.file.service;
+
+import com.tracepcap.common.exception.StorageException;
+import com.tracepcap.file.entity.FileEntity;
+import com.tracepcap.file.event.FileDeletedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Captures pulled from MinIO, kept on this node's disk for the next request that needs them.
+ *
+ * <p>Following a stream, running a display filter, exporting conversations and merging all hand
+ * tshark or mergecap a local file, and each used to download the whole capture into a temp file
+ * and delete it afterwards — an analyst following ten streams in one 400 MB capture pulled 4 GB.
+ * They now {@link #acquire} a lease on a cached copy instead.
+ *
+ * <ul>
+ *   <li><b>Bounded.</b> Once the cache holds more than {@code max-size-mb}, the least recently
+ *       used entries go. A leased entry is never evicted (something is reading it), so with
+ *       everything leased the cache can run over its cap until a lease ends. A capture larger
+ *       than the whole cap is downloaded privately, as before, rather than emptying the cache.
+ *   <li><b>Verified.</b> A download is checked against the SHA-256 recorded at upload before
+ *       anyone reads it, and a mismatch is discarded rather than cached: a truncated transfer
+ *       would otherwise be served to every later request for that capture.
+ *   <li><b>Shared.</b> Whoever asks for a capture while it is downloading waits for that download
+ *       instead of starting another.
+ * </ul>
+ *
+ * <p>Node-local and not kept across restarts: the directory is emptied at startup, because nothing
+ * records which of the files in it were complete and verified.
+ */
+@Slf4j
+@Component
+public class CaptureCache implements MeterBinder {
+
+  private final StorageService storageService;
+  private final boolean enabled;
+  private final Path directory;
+  private final long maxBytes;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Map<UUID, Entry> entries = new HashMap<>();
+
+  /** Sum of the entries' sizes — the recorded size until a download completes, then the real. */
+  private long cachedBytes;
+
+  /** Logical clock for recency; cheaper and steadier than wall time for ordering. */
+  private long clock;
+
+  private MeterRegistry registry;
+
+  public CaptureCache(
+      StorageService storageService,
+      @Value("${tracepcap.capture-cache.enabled:true}") boolean enabled,
+      @Value("${tracepcap.capture-cache.dir:${java.io.tmpdir}/tracepcap-capture-cache}")
+          String directory,
+      @Value("${tracepcap.capture-cache.max-size-mb:4096}") long maxSizeMb) {
+    this.storageService = storageService;
+    this.enabled = enabled;
+    this.directory = Path.of(directory);
+    this.maxBytes = maxSizeMb * 1024 * 1024;
+    if (enabled) clear();
+  }
+
+  /** A capture as a local file, valid until {@link #close}. */
+  public final class Lease implements AutoCloseable {
+
+    private final Entry entry;
+    private final Path path;
+    private boolean closed;
+
+    private Lease(Entry entry, Path path) {
+      this.entry = entry;
+      this.path = path;
+    }
+
+    public Path path() {
+      return path;
+    }
+
+    @Override
+    public void close() {
+      if (closed) return;
+      closed = true;
+      if (entry == null) {
+        deleteQuietly(path);
+      } else {
+        release(entry);
+      }
+    }
+  }
+
+  private static final class Entry {
+    final UUID fileId;
+    final Path path;
+    final CompletableFuture<Void> ready = new CompletableFuture<>();
+    long size;
+    long lastUsed;
+    int leases;
+
+    /** Dropped from the map while leased (the capture was deleted); the last lease removes it. */
+    boolean discarded;
+
+    Entry(UUID fileId, Path path, long size) {
+      this.fileId = fileId;
+      this.path = path;
+      this.size = size;
+    }
+  }
+
+  /**
+   * A local copy of {@code file}'s capture, downloading it first if this node does not have one.
+   * The caller must close the lease when done; until then the file stays put.
+   *
+   * @throws StorageException if the download fails or does not match the recorded hash
+   */
+  public Lease acquire(FileEntity file) {
+    if (!enabled || file.getFileSize() == null || file.getFileSize() > maxBytes) {
+      count("bypass");
+      return new Lease(null, downloadPrivately(file));
+    }
+
+    Entry entry;
+    boolean download;
+    lock.lock();
+    try {
+      entry = entries.get(file.getId());
+      download = entry == null;
+      if (download) {
+        entry =
+            new Entry(
+                file.getId(), directory.resolve(file.getId() + ".pcap"), file.getFileSize());
+        entries.put(file.getId(), entry);
+        cachedBytes += entry.size;
+      }
+      entry.leases++;
+      entry.lastUsed = ++clock;
+      // After the lease, so the room is never made by evicting the entry it is being made for.
+      evictUntilWithinCap();
+    } finally {
+      lock.unlock();
+    }
+
+    if (download) {
+      count("miss");
+      try {
+        long size = download(file, entry.path);
+        resize(entry, size);
+        entry.ready.complete(null);
+      } catch (RuntimeException e) {
+        entry.ready.completeExceptionally(e);
+        forget(entry);
+        throw e;
+      }
+    } else {
+      count(entry.ready.isDone() ? "hit" : "shared");
+      try {
+        entry.ready.get();
+        if (!Files.exists(entry.path)) {
+          // Removed behind our back (a tmp reaper, an operator): start over with a fresh copy.
+          drop(entry);
+          release(entry);
+          return acquire(file);
+        }
+      } catch (ExecutionException e) {
+        release(entry);
+        throw e.getCause() instanceof StorageException s
+            ? s
+            : new StorageException("Failed to download file to local storage", e.getCause());
+      } catch (InterruptedException e) {
+        release(entry);
+        Thread.currentThread().interrupt();
+        throw new StorageException("Interrupted waiting for a capture download", e);
+      }
+    }
+    return new Lease(entry, entry.path);
+  }
+
+  /**
+   * A lease on {@code file}'s capture if this node already holds a complete copy, or null — for
+   * callers that can read what they need from MinIO directly and would rather not download the
+   * whole capture to do it.
+   */
+  public Lease acquireIfCached(FileEntity file) {
+    if (!enabled) return null;
+    lock.lock();
+    try {
+      Entry entry = entries.get(file.getId());
+      if (entry == null
+          || !entry.ready.isDone()
+          || entry.ready.isCompletedExceptionally()
+          || !Files.exists(entry.path)) {
+        return null;
+      }
+      entry.leases++;
+      entry.lastUsed = ++clock;
+      count("hit");
+      return new Lease(entry, entry.path);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** A deleted capture's bytes should not outlive it on this node. */
+  @EventListener
+  public void onFileDeleted(FileDeletedEvent event) {
+    lock.lock();
+    try {
+      Entry entry = entries.remove(event.getFileId());
+      if (entry == null) return;
+      cachedBytes -= entry.size;
+      if (entry.leases > 0) {
+        entry.discarded = true;
+      } else {
+        deleteQuietly(entry.path);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Streams the object into {@code target}, hashing it on the way, and checks the hash. */
+  private long download(FileEntity file, Path target) {
+    Path partial = target.resolveSibling(target.getFileName() + ".part");
+    try {
+      Files.createDirectories(directory);
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      long size;
+      try (InputStream in =
+              new DigestInputStream(storageService.downloadFile(file.getMinioPath()), digest);
+          OutputStream out = Files.newOutputStream(partial)) {
+        size = in.transferTo(out);
+      }
+      String actual = HexFormat.of().formatHex(digest.digest());
+      if (file.getFileHash() != null && !file.getFileHash().equalsIgnoreCase(actual)) {
+        count("corrupt");
+        throw new StorageException(
+            "Downloaded capture "
+                + file.getId()
+                + " does not match its recorded SHA-256 (got "
+                + actual
+                + ")");
+      }
+      Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING);
+      log.debug("Cached capture {} ({} bytes)", file.getId(), size);
+      return size;
+    } catch (IOException | NoSuchAlgorithmException e) {
+      throw new StorageException("Failed to download file to local storage", e);
+    } finally {
+      deleteQuietly(partial);
+    }
+  }
+
+  /** The uncached path: a temp file only this caller knows about, deleted when the lease ends. */
+  private Path downloadPrivately(FileEntity file) {
+    try {
+      Path tmp = Files.createTempFile("capture-", ".pcap");
+      storageService.downloadFileToLocal(file.getMinioPath(), tmp.toFile());
+      return tmp;
+    } catch (IOException e) {
+      throw new StorageException("Failed to download file to local storage", e);
+    }
+  }
+
+  /** Swaps the size the entry was reserved at for the size that actually arrived. */
+  private void resize(Entry entry, long size) {
+    lock.lock();
+    try {
+      if (entries.get(entry.fileId) == entry) cachedBytes += size - entry.size;
+      entry.size = size;
+      evictUntilWithinCap();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void release(Entry entry) {
+    lock.lock();
+    try {
+      entry.leases--;
+      if (entry.leases == 0 && entry.discarded) {
+        deleteQuietly(entry.path);
+      } else {
+        evictUntilWithinCap();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void drop(Entry entry) {
+    lock.lock();
+    try {
+      if (entries.remove(entry.fileId, entry)) cachedBytes -= entry.size;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** A failed download: its waiters have been told, and the next caller starts afresh. */
+  private void forget(Entry entry) {
+    lock.lock();
+    try {
+      entry.leases--;
+      if (entries.remove(entry.fileId, entry)) cachedBytes -= entry.size;
+      deleteQuietly(entry.path);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Least recently used first, skipping anything leased. Called with the lock held. */
+  private void evictUntilWithinCap() {
+    while (cachedBytes > maxBytes) {
+      Entry oldest = null;
+      for (Entry e : entries.values()) {
+        if (e.leases == 0 && (oldest == null || e.lastUsed < oldest.lastUsed)) oldest = e;
+      }
+      if (oldest == null) return;
+      entries.remove(oldest.fileId);
+      cachedBytes -= oldest.size;
+      deleteQuietly(oldest.path);
+      if (registry != null) {
+        Counter.builder("tracepcap.capture.cache.evictions")
+            .description("Captures evicted from this node's capture cache to stay within its cap")
+            .register(registry)
+            .increment();
+      }
+    }
+  }
+
+  /** Only what this class writes, in case the directory is pointed somewhere shared. */
+  private void clear() {
+    if (!Files.isDirectory(directory)) return;
+    try (Stream<Path> files = Files.list(directory)) {
+      files
+          .filter(p -> p.toString().endsWith(".pcap") || p.toString().endsWith(".pcap.part"))
+          .forEach(CaptureCache::deleteQuietly);
+    } catch (IOException e) {
+      log.warn("Could not empty the capture cache at {}: {}", directory, e.getMessage());
+    }
+  }
+
+  private static void deleteQuietly(Path path) {
+    try {
+      Files.deleteIfExists(path);
+    } catch (IOException e) {
+      log.debug("Could not delete {}: {}", path, e.getMessage());
+    }
+  }
+
+  long cachedBytes() {
+    lock.lock();
+    try {
+      return cachedBytes;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void count(String result) {
+    if (registry == null) return;
+    Counter.builder("tracepcap.capture.cache.requests")
+        .description("Capture requests by outcome: hit, shared, miss, bypass, corrupt")
+        .tag("result", result)
+        .register(registry)
+        .increment();
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    this.registry = registry;
+    Gauge.builder("tracepcap.capture.cache.size", this::cachedBytes)
+        .description("Bytes of captures held in this node's capture cache")
+        .baseUnit("bytes")
+        .register(registry);
+  }
+}
@@ -1,8 +1,13 @@
 package com.tracepcap.file.service;
 
+import com.tracepcap.common.concurrent.IoThreads;
 import com.tracepcap.common.exception.DuplicateFileException;
 import com.tracepcap.common.exception.InvalidFileException;
 import com.tracepcap.common.exception.ResourceNotFoundException;
+import com.tracepcap.common.exception.SubprocessBusyException;
+import com.tracepcap.common.process.SubprocessGovernor;
+import com.tracepcap.common.process.SubprocessGovernor.Budget;
+import com.tracepcap.common.process.SubprocessGovernor.Tool;
 import com.tracepcap.file.dto.FileMetadataDto;
 import com.tracepcap.file.dto.FileUploadResponse;
 import com.tracepcap.file.entity.FileEntity;
@@ -28,6 +33,9 @@ import java.util.HexFormat;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -49,6 +57,8 @@ public class FileServiceImpl implements FileService {
   private final StorageService storageService;
   private final FileMapper fileMapper;
   private final ApplicationEventPublisher eventPublisher;
+  private final SubprocessGovernor governor;
+  private final CaptureCache captureCache;
 
   private static final List<String> ALLOWED_EXTENSIONS = Arrays.asList(".pcap", ".pcapng", ".cap");
   /**
@@ -66,11 +76,15 @@ public class FileServiceImpl implements FileService {
       StorageService storageService,
       FileMapper fileMapper,
       ApplicationEventPublisher eventPublisher,
+      SubprocessGovernor governor,
+      CaptureCache captureCache,
       @Value("${app.max-file-size:536870912}") long maxFileSize) {
     this.fileRepository = fileRepository;
     this.storageService = storageService;
     this.fileMapper = fileMapper;
     this.eventPublisher = eventPublisher;
+    this.governor = governor;
+    this.captureCache = captureCache;
     this.maxFileSize = maxFileSize;
   }
 
@@ -107,13 +121,17 @@ public class FileServiceImpl implements FileService {
     log.info("DEBUG: Generated fileId: {}, fileName: {}", fileId, fileName);
 
     try {
-      // Upload to MinIO
-      String minioPath = storageService.uploadFile(file, fileName);
-      log.info("DEBUG: Returned minioPath: {}", minioPath);
-
       // Count packets up front (best-effort) so the loading view can show a packet-based time
       // estimate immediately, before analysis has run. Overwritten with the exact count on completion.
-      Integer packetCount = countPackets(file);
+      // Both only read the upload, so capinfos runs while the bytes go to MinIO rather than after.
+      String minioPath;
+      Integer packetCount;
+      try (ExecutorService io = IoThreads.executor("upload-" + fileId)) {
+        Future<Integer> counting = io.submit(() -> countPackets(file));
+        minioPath = storageService.uploadFile(file, fileName);
+        packetCount = counting.get();
+      }
+      log.info("DEBUG: Returned minioPath: {}", minioPath);
 
       // Save metadata to database
       FileEntity fileEntity =
@@ -191,8 +209,10 @@ public class FileServiceImpl implements FileService {
             .findById(fileId)
             .orElseThrow(() -> new ResourceNotFoundException("File", "id", fileId));
 
-    // Delete from MinIO
+    // Delete from MinIO, with the frame index stored beside it (absent for older files, which
+    // MinIO treats as already deleted)
     storageService.deleteFile(fileEntity.getMinioPath());
+    storageService.deleteFile(FrameIndex.objectName(fileEntity.getMinioPath()));
 
     // Delete from database
     fileRepository.delete(fileEntity);
@@ -282,16 +302,27 @@ public class FileServiceImpl implements FileService {
 
     log.info("Starting PCAP merge for {} files: {}", fileIds.size(), fileIds);
 
-    List<File> tempInputs = new ArrayList<>();
+    CaptureCache.Lease[] inputs = new CaptureCache.Lease[fileIds.size()];
     File tempOutput = null;
 
     try {
-      // Download each source file to a local temp file
-      for (UUID fileId : fileIds) {
-        FileEntity entity = getFileById(fileId);
-        File tmp = File.createTempFile("merge-input-" + fileId, ".pcap");
-        storageService.downloadFileToLocal(entity.getMinioPath(), tmp);
-        tempInputs.add(tmp);
+      // Fetch every source capture at once: each fetch that misses the cache spends its time
+      // waiting on MinIO, and one after another the merge waited for the sum of them.
+      try (ExecutorService io = IoThreads.executor("merge-download")) {
+        List<Future<?>> downloads = new ArrayList<>();
+        for (int i = 0; i < inputs.length; i++) {
+          FileEntity entity = getFileById(fileIds.get(i));
+          int slot = i;
+          downloads.add(io.submit(() -> inputs[slot] = captureCache.acquire(entity)));
+        }
+        for (Future<?> download : downloads) {
+          try {
+            download.get();
+          } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw e;
+          }
+        }
       }
 
       // Build mergecap command
@@ -300,25 +331,18 @@ public class FileServiceImpl implements FileService {
       cmd.add("mergecap");
       cmd.add("-w");
       cmd.add(tempOutput.getAbsolutePath());
-      for (File f : tempInputs) {
-        cmd.add(f.getAbsolutePath());
+      for (CaptureCache.Lease input : inputs) {
+        cmd.add(input.path().toAbsolutePath().toString());
       }
 
       log.info("Running mergecap: {}", cmd);
-      Process process = new ProcessBuilder(cmd).redirectErrorStream(true).start();
+      Process process =
+          governor.start(
+              Tool.MERGECAP, Budget.INTERACTIVE, new ProcessBuilder(cmd).redirectErrorStream(true));
 
-      // Drain stdout/stderr in a background thread to prevent blocking
+      // Drain stdout/stderr in the background to prevent blocking
       final StringBuilder processOutput = new StringBuilder();
-      Thread drainThread =
-          new Thread(
-              () -> {
-                try {
-                  processOutput.append(new String(process.getInputStream().readAllBytes()));
-                } catch (IOException ignored) {
-                }
-              });
-      drainThread.setDaemon(true);
-      drainThread.start();
+      Thread drainThread = drainStdout(process, processOutput);
 
       boolean finished = process.waitFor(5, TimeUnit.MINUTES);
       drainThread.join(5000);
@@ -346,10 +370,17 @@ public class FileServiceImpl implements FileService {
               ? sanitizeMergedFileName(mergedFileName)
               : buildAutoMergedName(fileIds);
 
-      // Stream-upload the merged file to MinIO (avoids loading it fully into memory)
+      // Stream-upload the merged file to MinIO (avoids loading it fully into memory), counting its
+      // packets meanwhile
       UUID newFileId = UUID.randomUUID();
       String storedName = newFileId + ".pcap";
-      storageService.uploadFile(tempOutput, storedName, "application/vnd.tcpdump.pcap");
+      Integer packetCount;
+      try (ExecutorService io = IoThreads.executor("upload-" + newFileId)) {
+        File merged = tempOutput;
+        Future<Integer> counting = io.submit(() -> countPackets(merged));
+        storageService.uploadFile(tempOutput, storedName, "application/vnd.tcpdump.pcap");
+        packetCount = counting.get();
+      }
 
       // Persist metadata
       FileEntity fileEntity =
@@ -357,7 +388,7 @@ public class FileServiceImpl implements FileService {
               .id(newFileId)
               .fileName(mergedName)
               .fileSize(tempOutput.length())
-              .packetCount(countPackets(tempOutput))
+              .packetCount(packetCount)
               .minioPath(storedName)
               .uploadedAt(LocalDateTime.now())
               .status(FileEntity.FileStatus.PROCESSING)
@@ -375,17 +406,15 @@ public class FileServiceImpl implements FileService {
 
       return fileMapper.toUploadResponse(fileEntity);
 
-    } catch (InvalidFileException | DuplicateFileException e) {
+    } catch (InvalidFileException | DuplicateFileException | SubprocessBusyException e) {
       throw e;
     } catch (Exception e) {
       log.error("Failed to merge PCAP files", e);
       throw new InvalidFileException("Failed to merge files: " + e.getMessage(), e);
     } finally {
-      for (File f : tempInputs) {
-        try {
-          Files.deleteIfExists(f.toPath());
-        } catch (IOException ignored) {
-        }
+      // Closing the executor above waited for every fetch, so whatever was leased is here.
+      for (CaptureCache.Lease input : inputs) {
+        if (input != null) input.close();
       }
       if (tempOutput != null) {
         try {
@@ -463,16 +492,20 @@ public class FileServiceImpl implements FileService {
     Process process = null;
     try {
       process =
-          new ProcessBuilder("capinfos", "-M", "-c", "-").redirectErrorStream(false).start();
+          governor.start(
+              Tool.CAPINFOS,
+              Budget.INTERACTIVE,
+              new ProcessBuilder("capinfos", "-M", "-c", "-").redirectErrorStream(false));
       final Process p = process;
-      // Drain stdout on a daemon thread so waitFor's timeout is honoured even if capinfos hangs
+      // Drain stdout on its own thread so waitFor's timeout is honoured even if capinfos hangs
       // without closing stdout (a blocking readAllBytes here would bypass the timeout entirely).
       StringBuilder output = new StringBuilder();
       Thread reader = drainStdout(p, output);
-      // Feed the capture into capinfos stdin on a daemon thread so we can read stdout concurrently
+      // Feed the capture into capinfos stdin on its own thread so we can read stdout concurrently
       // (avoids a pipe-buffer deadlock). A broken pipe (capinfos closing stdin early) is expected.
       Thread feeder =
-          new Thread(
+          IoThreads.start(
+              "capinfos-stdin",
               () -> {
                 try (InputStream in = file.getInputStream();
                     OutputStream out = p.getOutputStream()) {
@@ -481,8 +514,6 @@ public class FileServiceImpl implements FileService {
                   // capinfos may close stdin before consuming everything — not an error for -c
                 }
               });
-      feeder.setDaemon(true);
-      feeder.start();
 
       if (!process.waitFor(CAPINFOS_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
         process.destroyForcibly();
@@ -505,10 +536,12 @@ public class FileServiceImpl implements FileService {
     Process process = null;
     try {
       process =
-          new ProcessBuilder("capinfos", "-M", "-c", file.getAbsolutePath())
-              .redirectErrorStream(false)
-              .start();
-      // Drain stdout on a daemon thread so a hung capinfos can't block past waitFor's timeout.
+          governor.start(
+              Tool.CAPINFOS,
+              Budget.INTERACTIVE,
+              new ProcessBuilder("capinfos", "-M", "-c", file.getAbsolutePath())
+                  .redirectErrorStream(false));
+      // Drain stdout on its own thread so a hung capinfos can't block past waitFor's timeout.
       StringBuilder output = new StringBuilder();
       Thread reader = drainStdout(process, output);
       if (!process.waitFor(CAPINFOS_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
@@ -526,20 +559,17 @@ public class FileServiceImpl implements FileService {
     }
   }
 
-  /** Reads a process's stdout into {@code sink} on a started daemon thread (UTF-8). */
+  /** Reads a process's stdout into {@code sink} on a started thread (UTF-8). */
   private Thread drainStdout(Process process, StringBuilder sink) {
-    Thread reader =
-        new Thread(
-            () -> {
-              try (InputStream in = process.getInputStream()) {
-                sink.append(new String(in.readAllBytes(), StandardCharsets.UTF_8));
-              } catch (IOException ignored) {
-                // best-effort: caller treats missing output as an unparseable count → null
-              }
-            });
-    reader.setDaemon(true);
-    reader.start();
-    return reader;
+    return IoThreads.start(
+        "drain-" + process.pid(),
+        () -> {
+          try (InputStream in = process.getInputStream()) {
+            sink.append(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+          } catch (IOException ignored) {
+            // best-effort: callers treat missing output as a failure or an unparseable count
+          }
+        });
   }
 
   /** Compute SHA-256 hex digest of the uploaded file using a streaming approach */
@@ -0,0 +1,141 @@
+package com.tracepcap.file.service;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Where every frame of a stored capture starts and how long it is, so that a handful of packets
+ * can be copied out of it without reading (or dissecting) the rest.
+ *
+ * <p>Built by analysis while it has the capture on disk and stored beside it in MinIO as {@link
+ * #objectName}. Read in ranges by {@link FrameSlicer}, which is why the layout is fixed-width and
+ * big-endian:
+ *
+ * <pre>
+ *   header       magic "TPFX", version, capture size, frame count,
+ *                offset and length of the preamble table              40 bytes
+ *   entries      per frame, from frame 1: record offset (8), length (4) 12 bytes each
+ *   preambles    per header generation: first frame (8), length (4), bytes
+ * </pre>
+ *
+ * <p>A preamble is what has to precede a record for it to read as a capture of its own — the
+ * classic file header, or a pcapng section header and its interface descriptions — and a new one
+ * starts wherever a pcapng file opens a section or describes another interface.
+ */
+public final class FrameIndex {
+
+  static final int MAGIC = 0x54504658; // "TPFX"
+  static final int VERSION = 1;
+  static final int HEADER_BYTES = 40;
+  static final int ENTRY_BYTES = 12;
+
+  private FrameIndex() {}
+
+  /** The MinIO object holding the index of the capture stored at {@code minioPath}. */
+  public static String objectName(String minioPath) {
+    return minioPath + ".frames";
+  }
+
+  /** Starts an index of a capture of {@code captureSize} bytes, written to {@code target}. */
+  public static Writer writer(Path target, long captureSize) throws IOException {
+    return new Writer(target, captureSize);
+  }
+
+  /**
+   * Takes the capture's frames in order. Call {@link #preamble} before the first frame and again
+   * whenever the bytes that must precede the next frame change; the header is filled in on close.
+   */
+  public static final class Writer implements Closeable {
+
+    private final Path target;
+    private final long captureSize;
+    private final DataOutputStream entries;
+    private final ByteArrayOutputStream preambles = new ByteArrayOutputStream();
+    private long frames;
+
+    private Writer(Path target, long captureSize) throws IOException {
+      this.target = target;
+      this.captureSize = captureSize;
+      this.entries = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(target)));
+      entries.write(new byte[HEADER_BYTES]);
+    }
+
+    public void preamble(byte[] bytes) throws IOException {
+      DataOutputStream out = new DataOutputStream(preambles);
+      out.writeLong(frames + 1);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+
+    public void frame(long offset, long length) throws IOException {
+      if (frames == 0 && preambles.size() == 0) {
+        throw new IllegalStateException("A frame needs a preamble before it");
+      }
+      entries.writeLong(offset);
+      entries.writeInt(Math.toIntExact(length));
+      frames++;
+    }
+
+    public long frames() {
+      return frames;
+    }
+
+    @Override
+    public void close() throws IOException {
+      long preamblesAt = HEADER_BYTES + frames * ENTRY_BYTES;
+      preambles.writeTo(entries);
+      entries.close();
+      try (RandomAccessFile file = new RandomAccessFile(target.toFile(), "rw")) {
+        file.writeInt(MAGIC);
+        file.writeInt(VERSION);
+        file.writeLong(captureSize);
+        file.writeLong(frames);
+        file.writeLong(preamblesAt);
+        file.writeLong(preambles.size());
+      }
+    }
+  }
+
+  /** The decoded header. */
+  record Header(long captureSize, long frameCount, long preamblesAt, long preamblesLength) {
+
+    static Header parse(byte[] bytes) throws IOException {
+      ByteBuffer buf = ByteBuffer.wrap(bytes);
+      if (bytes.length < HEADER_BYTES || buf.getInt() != MAGIC) {
+        throw new IOException("Not a frame index");
+      }
+      int version = buf.getInt();
+      if (version != VERSION) throw new IOException("Unsupported frame index version " + version);
+      return new Header(buf.getLong(), buf.getLong(), buf.getLong(), buf.getLong());
+    }
+
+    long entryOffset(long frame) {
+      return HEADER_BYTES + (frame - 1) * ENTRY_BYTES;
+    }
+  }
+
+  /** One run of frames sharing a preamble, starting at {@code firstFrame}. */
+  record Preamble(long firstFrame, byte[] bytes) {
+
+    static List<Preamble> parseAll(byte[] table) {
+      List<Preamble> all = new ArrayList<>();
+      ByteBuffer buf = ByteBuffer.wrap(table);
+      while (buf.remaining() >= 12) {
+        long first = buf.getLong();
+        byte[] bytes = new byte[buf.getInt()];
+        buf.get(bytes);
+        all.add(new Preamble(first, bytes));
+      }
+      return all;
+    }
+  }
+}
@@ -0,0 +1,184 @@
+package com.tracepcap.file.service;
+
+import com.tracepcap.common.exception.StorageException;
+import com.tracepcap.file.entity.FileEntity;
+import com.tracepcap.file.service.FrameIndex.Header;
+import com.tracepcap.file.service.FrameIndex.Preamble;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.IntToLongFunction;
+import java.util.function.IntUnaryOperator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+/**
+ * Copies chosen frames out of a stored capture by seeking to them through its {@link FrameIndex},
+ * instead of having tshark read and dissect the whole capture to find them.
+ *
+ * <p>The records come from this node's {@link CaptureCache} copy when there is one, and otherwise
+ * straight from MinIO in range requests — so exporting one conversation from a 2 GB capture moves
+ * roughly that conversation's bytes, not 2 GB. Reads of neighbouring records are merged while the
+ * gap between them is under {@value #MERGE_GAP} bytes, which keeps a busy conversation to a few
+ * requests without reading much it does not need.
+ *
+ * <p>Records are copied byte for byte behind the preamble they were captured under, so the output
+ * is in the capture's own format (pcap or pcapng) and each packet is exactly as stored.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FrameSlicer {
+
+  /** Records closer together than this are fetched in one read. */
+  static final int MERGE_GAP = 64 * 1024;
+
+  /** Cap on one merged read, so a long run of frames is streamed in pieces, not buffered whole. */
+  static final int MAX_READ = 4 * 1024 * 1024;
+
+  private final StorageService storageService;
+  private final CaptureCache captureCache;
+
+  /** Random access to some bytes, local or remote. */
+  @FunctionalInterface
+  private interface Source {
+    byte[] read(long offset, int length) throws IOException;
+  }
+
+  @FunctionalInterface
+  private interface Slices {
+    void accept(int item, byte[] bytes, int at) throws IOException;
+  }
+
+  /**
+   * Writes a capture holding {@code frameNumbers} (tshark's {@code frame.number}, in any order) to
+   * {@code out}, in file order. An empty list writes a capture with no packets.
+   *
+   * @return false, having written nothing, if the capture has no usable index (it predates the
+   *     index, is not pcap or pcapng, or the index does not cover these frames); the caller should
+   *     fall back to filtering the capture with tshark
+   * @throws IOException if reading the capture fails once output has started
+   */
+  public boolean writeFrames(FileEntity file, Collection<Long> frameNumbers, OutputStream out)
+      throws IOException {
+    long[] frames = frameNumbers.stream().mapToLong(Long::longValue).sorted().distinct().toArray();
+    int n = frames.length;
+
+    Source index = remote(FrameIndex.objectName(file.getMinioPath()));
+    Header header;
+    List<Preamble> preambles;
+    long[] offsets = new long[n];
+    int[] lengths = new int[n];
+    try {
+      header = Header.parse(index.read(0, FrameIndex.HEADER_BYTES));
+      if (file.getFileSize() != null && header.captureSize() != file.getFileSize()) {
+        log.warn("Frame index of file {} does not match its capture; ignoring it", file.getId());
+        return false;
+      }
+      if (n > 0 && (frames[0] < 1 || frames[n - 1] > header.frameCount())) return false;
+      preambles =
+          Preamble.parseAll(
+              index.read(header.preamblesAt(), Math.toIntExact(header.preamblesLength())));
+      if (preambles.isEmpty()) return false;
+      readMerged(
+          index,
+          n,
+          i -> header.entryOffset(frames[i]),
+          i -> FrameIndex.ENTRY_BYTES,
+          (i, bytes, at) -> {
+            ByteBuffer entry = ByteBuffer.wrap(bytes, at, FrameIndex.ENTRY_BYTES);
+            offsets[i] = entry.getLong();
+            lengths[i] = entry.getInt();
+          });
+    } catch (IOException | StorageException e) {
+      log.debug("No usable frame index for file {}: {}", file.getId(), e.getMessage());
+      return false;
+    }
+
+    try (CaptureCache.Lease cached = captureCache.acquireIfCached(file);
+        FileChannel channel =
+            cached == null ? null : FileChannel.open(cached.path(), StandardOpenOption.READ)) {
+      Source capture = channel == null ? remote(file.getMinioPath()) : local(channel);
+      int[] preamble = {-1};
+      if (n == 0) out.write(preambles.get(0).bytes());
+      readMerged(
+          capture,
+          n,
+          i -> offsets[i],
+          i -> lengths[i],
+          (i, bytes, at) -> {
+            int p = preamble[0] < 0 ? 0 : preamble[0];
+            while (p + 1 < preambles.size() && preambles.get(p + 1).firstFrame() <= frames[i]) p++;
+            if (p != preamble[0]) {
+              out.write(preambles.get(p).bytes());
+              preamble[0] = p;
+            }
+            out.write(bytes, at, lengths[i]);
+          });
+      log.debug(
+          "Copied {} frames of file {} from {}",
+          n,
+          file.getId(),
+          channel == null ? "MinIO" : "the capture cache");
+    } catch (StorageException e) {
+      throw new IOException("Failed to read frames from capture " + file.getId(), e);
+    }
+    return true;
+  }
+
+  /**
+   * Reads {@code count} ranges, given in ascending order, merging neighbours into one read, and
+   * hands each range's bytes to {@code sink} in order.
+   */
+  private static void readMerged(
+      Source source, int count, IntToLongFunction start, IntUnaryOperator length, Slices sink)
+      throws IOException {
+    int i = 0;
+    while (i < count) {
+      long from = start.applyAsLong(i);
+      long to = from + length.applyAsInt(i);
+      int j = i + 1;
+      while (j < count) {
+        long s = start.applyAsLong(j);
+        long e = s + length.applyAsInt(j);
+        if (s - to > MERGE_GAP || e - from > MAX_READ) break;
+        to = Math.max(to, e);
+        j++;
+      }
+      byte[] bytes = source.read(from, Math.toIntExact(to - from));
+      for (int k = i; k < j; k++) sink.accept(k, bytes, (int) (start.applyAsLong(k) - from));
+      i = j;
+    }
+  }
+
+  private Source remote(String object) {
+    return (offset, length) -> {
+      try (InputStream in = storageService.downloadRange(object, offset, length)) {
+        byte[] bytes = in.readNBytes(length);
+        if (bytes.length != length) {
+          throw new EOFException(object + " ended at " + (offset + bytes.length));
+        }
+        return bytes;
+      }
+    };
+  }
+
+  private static Source local(FileChannel channel) {
+    return (offset, length) -> {
+      ByteBuffer buf = ByteBuffer.allocate(length);
+      while (buf.hasRemaining()) {
+        if (channel.read(buf, offset + buf.position()) < 0) {
+          throw new EOFException("Capture ended at " + (offset + buf.position()));
+        }
+      }
+      return buf.array();
+    };
+  }
+}
@@ -0,0 +1,570 @@
+package com.tracepcap.file.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.tracepcap.common.concurrent.IoThreads;
+import com.tracepcap.config.SharkdProperties;
+import com.tracepcap.config.SharkdProperties.Protocol;
+import com.tracepcap.file.entity.FileEntity;
+import com.tracepcap.file.event.FileDeletedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Warm {@code sharkd} sessions, one per capture, for the views that used to start a cold tshark
+ * per request.
+ *
+ * <p>Validating a display filter, running it, following a stream and opening a frame's dissection
+ * each had tshark read the whole capture again, so the tenth click on a 300 MB capture cost the
+ * same seconds as the first. sharkd — Wireshark's daemon, the engine behind its web front end —
+ * loads a capture once and answers filter, follow and frame requests from the dissection it
+ * already holds. A session starts with the first request for a capture and is kept while people
+ * keep asking:
+ *
+ * <ul>
+ *   <li><b>One exchange at a time.</b> A session answers in order on one pipe; its lock keeps two
+ *       callers' requests from interleaving, so concurrent users of one capture queue for it.
+ *   <li><b>Bounded.</b> At most {@code max-sessions} run at once, each holding a {@link
+ *       CaptureCache} lease on its capture. The least recently used idle session makes room for a
+ *       new one; one idle past {@code idle-timeout-seconds}, or grown past {@code max-rss-mb}, is
+ *       stopped.
+ *   <li><b>Deadlines.</b> A request that is not answered in time kills its session.
+ *   <li><b>Degrades rather than fails.</b> {@link #request} returns null whenever no session can
+ *       answer — disabled, not installed, every session busy, a crash, a timeout — and the caller
+ *       runs tshark as it did before.
+ * </ul>
+ *
+ * <p>sharkd 4.0 changed its protocol to JSON-RPC; the Wireshark the runtime image installs (Ubuntu
+ * 22.04's 3.6) speaks the one before it. A session speaks whichever {@code protocol} says, by
+ * default the one matching the major version {@code tshark --version} reports, and hands callers
+ * the same {@link Reply} either way.
+ *
+ * <p>Not launched through {@link com.tracepcap.common.process.SubprocessGovernor}: a session lives
+ * for minutes between requests and would hold an interactive tshark slot all that time. {@code
+ * max-sessions} is its bound instead.
+ */
+@Slf4j
+@Component
+public class SharkdPool implements MeterBinder {
+
+  /** sharkd's answer to one request: its {@code result}, or the {@code error} it reported. */
+  public record Reply(JsonNode result, int errorCode, String errorMessage) {
+
+    public boolean ok() {
+      return errorMessage == null;
+    }
+  }
+
+  /**
+   * The code sharkd 4.0 gives a filter that does not compile; a 3.6 {@code check} reply naming the
+   * error is reported with it too, so callers need not know which protocol was spoken.
+   */
+  public static final int FILTER_INVALID = -5001;
+
+  /** A 3.6 request that printed no reply, as it does for an unknown frame among others. */
+  static final int NO_REPLY = -1;
+
+  private static final Pattern VERSION = Pattern.compile("(\\d+)\\.\\d+\\.\\d+");
+
+  /** After sharkd fails to start, new sessions are not tried again for this long. */
+  private static final long RELAUNCH_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+  private final CaptureCache captureCache;
+  private final ObjectMapper objectMapper;
+  private final SharkdProperties properties;
+
+  /**
+   * Guards the sessions and their bookkeeping. A lock rather than {@code synchronized}: requests
+   * arrive on virtual threads, which a monitor would pin to their carrier.
+   */
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final Map<UUID, Session> sessions = new HashMap<>();
+
+  /** Wall-clock time before which a failed launch is not retried. */
+  private long launchBlockedUntil;
+
+  /** The protocol {@code auto} settled on, once the installed version has been asked. */
+  private volatile Protocol detected;
+
+  private ScheduledExecutorService timer;
+  private MeterRegistry registry;
+
+  public SharkdPool(
+      CaptureCache captureCache, ObjectMapper objectMapper, SharkdProperties properties) {
+    this.captureCache = captureCache;
+    this.objectMapper = objectMapper;
+    this.properties = properties;
+  }
+
+  /**
+   * Sends {@code method} with {@code params} to the session for {@code file}'s capture, starting
+   * one if there is none, and returns sharkd's reply — or null if no session could answer, in
+   * which case the caller should do the work with tshark.
+   */
+  public Reply request(FileEntity file, String method, Map<String, ?> params) {
+    if (!properties.isEnabled()) return null;
+    Session session = checkOut(file.getId());
+    if (session == null) {
+      count("fallback");
+      return null;
+    }
+    try {
+      if (!session.lock.tryLock(properties.getRequestTimeoutSeconds(), TimeUnit.SECONDS)) {
+        count("fallback");
+        return null;
+      }
+      try {
+        session.ensureLoaded(file);
+        Reply reply = session.call(method, params, properties.getRequestTimeoutSeconds());
+        count("answered");
+        long rssMb = session.residentMb();
+        if (properties.getMaxRssMb() > 0 && rssMb > properties.getMaxRssMb()) {
+          log.info("[{}] sharkd session at {} MB, over its cap; stopping it", file.getId(), rssMb);
+          retire(session, "memory");
+        }
+        return reply;
+      } finally {
+        session.lock.unlock();
+      }
+    } catch (IOException | RuntimeException e) {
+      log.warn("[{}] sharkd could not answer {}: {}", file.getId(), method, e.getMessage());
+      retire(session, "failed");
+      count("fallback");
+      return null;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    } finally {
+      checkIn(session);
+    }
+  }
+
+  /**
+   * The session for {@code fileId}, marked in use; a new, not yet loaded one if there is none and
+   * there is room. Null if every session is in use or sharkd recently failed to start.
+   */
+  private Session checkOut(UUID fileId) {
+    lock.lock();
+    try {
+      Session session = sessions.get(fileId);
+      if (session == null) {
+        if (System.currentTimeMillis() < launchBlockedUntil) return null;
+        if (sessions.size() >= Math.max(1, properties.getMaxSessions()) && !evictOldestIdle()) {
+          return null;
+        }
+        session = new Session(fileId);
+        sessions.put(fileId, session);
+        startTimer();
+      }
+      session.users++;
+      return session;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void checkIn(Session session) {
+    lock.lock();
+    try {
+      session.users--;
+      session.lastUsed = System.nanoTime();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Stops the least recently used session nobody is using. Called with the lock held. */
+  private boolean evictOldestIdle() {
+    Session oldest = null;
+    for (Session s : sessions.values()) {
+      if (s.users == 0 && (oldest == null || s.lastUsed - oldest.lastUsed < 0)) oldest = s;
+    }
+    if (oldest == null) return false;
+    sessions.remove(oldest.fileId);
+    stopped(oldest, "lru");
+    return true;
+  }
+
+  /** Stops every session idle past the timeout. Run periodically. */
+  void reapIdle() {
+    long idleNanos = TimeUnit.SECONDS.toNanos(properties.getIdleTimeoutSeconds());
+    long now = System.nanoTime();
+    List<Session> idle = new ArrayList<>();
+    lock.lock();
+    try {
+      sessions
+          .values()
+          .removeIf(
+              s -> {
+                boolean expired = s.users == 0 && now - s.lastUsed >= idleNanos;
+                if (expired) idle.add(s);
+                return expired;
+              });
+    } finally {
+      lock.unlock();
+    }
+    idle.forEach(s -> stopped(s, "idle"));
+  }
+
+  private void retire(Session session, String reason) {
+    lock.lock();
+    try {
+      if (!sessions.remove(session.fileId, session)) return;
+    } finally {
+      lock.unlock();
+    }
+    stopped(session, reason);
+  }
+
+  private void stopped(Session session, String reason) {
+    if (!session.close()) return;
+    log.debug("[{}] sharkd session stopped: {}", session.fileId, reason);
+    if (registry != null) {
+      Counter.builder("tracepcap.sharkd.sessions.stopped")
+          .description("sharkd sessions stopped, by reason: idle, lru, memory, deleted, failed")
+          .tag("reason", reason)
+          .register(registry)
+          .increment();
+    }
+  }
+
+  /** A deleted capture's session goes with it, and with the session its cache lease. */
+  @EventListener
+  public void onFileDeleted(FileDeletedEvent event) {
+    Session session;
+    lock.lock();
+    try {
+      session = sessions.get(event.getFileId());
+    } finally {
+      lock.unlock();
+    }
+    if (session != null) retire(session, "deleted");
+  }
+
+  int sessionCount() {
+    lock.lock();
+    try {
+      return sessions.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void startTimer() {
+    if (timer != null) return;
+    timer =
+        Executors.newSingleThreadScheduledExecutor(
+            r -> {
+              Thread t = new Thread(r, "sharkd-timer");
+              t.setDaemon(true);
+              return t;
+            });
+    long period = Math.max(1, properties.getIdleTimeoutSeconds() / 4);
+    timer.scheduleWithFixedDelay(this::reapIdle, period, period, TimeUnit.SECONDS);
+  }
+
+  /** The protocol to speak: as configured, or the one the installed Wireshark's version implies. */
+  private Protocol protocol() throws IOException {
+    if (properties.getProtocol() != Protocol.AUTO) return properties.getProtocol();
+    Protocol found = detected;
+    if (found == null) {
+      Process p = new ProcessBuilder("tshark", "--version").redirectErrorStream(true).start();
+      try (BufferedReader out = p.inputReader(StandardCharsets.UTF_8)) {
+        String first = out.readLine();
+        found = protocolOf(first);
+        if (found == null) throw new IOException("no Wireshark version in: " + first);
+      } finally {
+        p.destroy();
+      }
+      log.info("sharkd sessions speak the {} protocol", found);
+      detected = found;
+    }
+    return found;
+  }
+
+  /**
+   * The protocol of the Wireshark whose {@code --version} begins with {@code versionLine} ({@code
+   * TShark (Wireshark) 3.6.2 (Git v3.6.2 packaged as 3.6.2-2)}); null if it names no version.
+   */
+  static Protocol protocolOf(String versionLine) {
+    Matcher m = VERSION.matcher(versionLine == null ? "" : versionLine);
+    if (!m.find()) return null;
+    return Integer.parseInt(m.group(1)) >= 4 ? Protocol.JSON_RPC : Protocol.LEGACY;
+  }
+
+  private ScheduledExecutorService timer() {
+    lock.lock();
+    try {
+      startTimer();
+      return timer;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void count(String result) {
+    if (registry == null) return;
+    Counter.builder("tracepcap.sharkd.requests")
+        .description("Interactive requests offered to sharkd, by outcome: answered, fallback")
+        .tag("result", result)
+        .register(registry)
+        .increment();
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    this.registry = registry;
+    Gauge.builder("tracepcap.sharkd.sessions", this::sessionCount)
+        .description("sharkd sessions holding a capture on this node")
+        .register(registry);
+  }
+
+  @PreDestroy
+  void stop() {
+    List<Session> all;
+    lock.lock();
+    try {
+      all = new ArrayList<>(sessions.values());
+      sessions.clear();
+      if (timer != null) timer.shutdownNow();
+    } finally {
+      lock.unlock();
+    }
+    all.forEach(Session::close);
+  }
+
+  /**
+   * One sharkd process with one capture loaded. Started by the first request that holds its lock,
+   * so a capture's download and load are paid once however many requests arrive together.
+   */
+  private final class Session {
+
+    final UUID fileId;
+    final ReentrantLock lock = new ReentrantLock();
+    final AtomicBoolean closed = new AtomicBoolean();
+
+    /** Requests holding or waiting for this session. Guarded by the pool's lock. */
+    int users;
+
+    /** {@link System#nanoTime} of the last request's end. Guarded by the pool's lock. */
+    long lastUsed = System.nanoTime();
+
+    private CaptureCache.Lease capture;
+    private volatile Process process;
+    private BufferedWriter requests;
+    private BufferedReader replies;
+    private Protocol protocol;
+    private long nextId;
+
+    Session(UUID fileId) {
+      this.fileId = fileId;
+    }
+
+    /** Downloads the capture and has sharkd load it, unless that is already done. */
+    void ensureLoaded(FileEntity file) throws IOException {
+      if (closed.get()) throw new IOException("session stopped");
+      if (process != null) return;
+
+      long t = System.currentTimeMillis();
+      capture = captureCache.acquire(file);
+      try {
+        protocol = protocol();
+        process = new ProcessBuilder(properties.getCommand(), "-").start();
+      } catch (IOException e) {
+        lockOutLaunches(e);
+        throw e;
+      }
+      IoThreads.drainLines(
+          process.getErrorStream(), "sharkd-stderr", line -> log.debug("sharkd: {}", line));
+      requests =
+          new BufferedWriter(
+              new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+      replies =
+          new BufferedReader(
+              new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+      if (closed.get()) {
+        // Deleted while starting, before there was a process or a lease for close() to end.
+        process.destroyForcibly();
+        capture.close();
+        throw new IOException("session stopped");
+      }
+
+      Reply loaded =
+          call(
+              "load",
+              Map.of("file", capture.path().toAbsolutePath().toString()),
+              properties.getLoadTimeoutSeconds());
+      if (!loaded.ok()) throw new IOException("load failed: " + loaded.errorMessage());
+      log.info(
+          "[{}] sharkd session loaded its capture in {}ms",
+          fileId,
+          System.currentTimeMillis() - t);
+    }
+
+    /**
+     * One exchange, in the session's protocol. The process is killed if no reply comes within
+     * {@code timeoutSeconds}, which ends the read with an exception; the session is no use after
+     * that.
+     */
+    Reply call(String method, Map<String, ?> params, int timeoutSeconds) throws IOException {
+      Process p = process;
+      ScheduledFuture<?> deadline =
+          timer().schedule(p::destroyForcibly, timeoutSeconds, TimeUnit.SECONDS);
+      try {
+        Reply reply =
+            protocol == Protocol.LEGACY
+                ? exchangeLegacy(method, params)
+                : exchangeJsonRpc(method, params);
+        if (reply != null) return reply;
+        throw new IOException(
+            deadline.isDone()
+                ? "no reply to " + method + " within " + timeoutSeconds + "s"
+                : "sharkd exited");
+      } finally {
+        deadline.cancel(false);
+      }
+    }
+
+    /** sharkd 4.0 and later: the reply carrying the request's id; null if the output ended. */
+    private Reply exchangeJsonRpc(String method, Map<String, ?> params) throws IOException {
+      long id = ++nextId;
+      ObjectNode request = objectMapper.createObjectNode();
+      request.put("jsonrpc", "2.0");
+      request.put("id", id);
+      request.put("method", method);
+      if (params != null && !params.isEmpty()) {
+        request.set("params", objectMapper.valueToTree(params));
+      }
+      send(request);
+      JsonNode reply;
+      while ((reply = next()) != null) {
+        // Anything not answering this request (a notification) is not for us.
+        if (reply.path("id").asLong(-1) != id) continue;
+        JsonNode error = reply.get("error");
+        if (error != null) {
+          return new Reply(null, error.path("code").asInt(), error.path("message").asText(""));
+        }
+        return new Reply(reply.path("result"), 0, null);
+      }
+      return null;
+    }
+
+    /**
+     * sharkd before 4.0: the request is one flat object naming itself in {@code req}, the reply a
+     * bare line with no id — and some failures print nothing. So a {@code status}, which always
+     * answers, follows each request: when its reply comes first, the request had none. Null if the
+     * output ended.
+     */
+    private Reply exchangeLegacy(String method, Map<String, ?> params) throws IOException {
+      ObjectNode request = objectMapper.createObjectNode();
+      request.put("req", method);
+      if (params != null) {
+        params.forEach((name, value) -> request.set(name, objectMapper.valueToTree(value)));
+      }
+      send(request);
+      send(objectMapper.createObjectNode().put("req", "status"));
+
+      JsonNode reply = next();
+      if (reply == null) return null;
+      if (!method.equals("status") && isStatus(reply)) {
+        return new Reply(null, NO_REPLY, "no reply to " + method);
+      }
+      if (next() == null) return null;
+
+      int err = reply.path("err").asInt(0);
+      if (err != 0) return new Reply(null, err, method + " failed with error " + err);
+      String verdict = reply.path("filter").asText("ok");
+      if (method.equals("check") && !verdict.equals("ok") && !verdict.equals("warn")) {
+        return new Reply(null, FILTER_INVALID, verdict);
+      }
+      return new Reply(reply, 0, null);
+    }
+
+    private static boolean isStatus(JsonNode reply) {
+      return reply.isObject() && reply.has("frames") && reply.has("duration");
+    }
+
+    private void send(ObjectNode request) throws IOException {
+      requests.write(objectMapper.writeValueAsString(request));
+      requests.newLine();
+      requests.flush();
+    }
+
+    /** The next reply line, or null when the output has ended. */
+    private JsonNode next() throws IOException {
+      String line;
+      while ((line = replies.readLine()) != null) {
+        if (!line.isBlank()) return objectMapper.readTree(line);
+      }
+      return null;
+    }
+
+    /** The process's resident set in MB, or 0 when it is not running or cannot be read. */
+    long residentMb() {
+      Process p = process;
+      if (p == null || !p.isAlive()) return 0;
+      try {
+        Path status = Path.of("/proc", Long.toString(p.pid()), "status");
+        for (String line : Files.readAllLines(status)) {
+          if (line.startsWith("VmRSS:")) {
+            return Long.parseLong(line.replaceAll("[^0-9]", "")) / 1024;
+          }
+        }
+      } catch (IOException | RuntimeException e) {
+        // Not Linux, or the process exited between the check and the read.
+      }
+      return 0;
+    }
+
+    /** Stops the process and gives up the capture; true for the call that did it. */
+    boolean close() {
+      if (!closed.compareAndSet(false, true)) return false;
+      Process p = process;
+      if (p != null) p.destroyForcibly();
+      if (capture != null) capture.close();
+      return true;
+    }
+  }
+
+  private void lockOutLaunches(IOException e) {
+    lock.lock();
+    try {
+      launchBlockedUntil = System.currentTimeMillis() + RELAUNCH_BACKOFF_MILLIS;
+    } finally {
+      lock.unlock();
+    }
+    log.warn(
+        "Could not start sharkd ({}); interactive views use tshark for the next {} minutes",
+        e.getMessage(),
+        TimeUnit.MILLISECONDS.toMinutes(RELAUNCH_BACKOFF_MILLIS));
+  }
+}
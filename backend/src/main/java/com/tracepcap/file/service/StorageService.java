@@ -23,6 +23,16 @@ public interface StorageService {
    */
   InputStream downloadFile(String fileName);
 
+  /**
+   * Download part of a file from storage
+   *
+   * @param fileName the name of the file
+   * @param offset the first byte to read
+   * @param length how many bytes to read from {@code offset}
+   * @return input stream of that part of the file
+   */
+  InputStream downloadRange(String fileName, long offset, long length);
+
   /**
    * Delete a file from storage
    *
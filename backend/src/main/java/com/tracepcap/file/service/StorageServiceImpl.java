@@ -64,6 +64,22 @@ public class StorageServiceImpl implements StorageService {
     }
   }
 
+  @Override
+  public InputStream downloadRange(String fileName, long offset, long length) {
+    try {
+      return minioClient.getObject(
+          GetObjectArgs.builder()
+              .bucket(minioConfig.getBucket())
+              .object(fileName)
+              .offset(offset)
+              .length(length)
+              .build());
+    } catch (Exception e) {
+      log.debug("Failed to download {}+{} of {}: {}", offset, length, fileName, e.getMessage());
+      throw new StorageException("Failed to download file from storage", e);
+    }
+  }
+
   @Override
   public void deleteFile(String fileName) {
     try {
@@ -70,4 +70,27 @@ public class FilterController {
 
     return ResponseEntity.ok(response);
   }
+
+  @GetMapping("/{fileId}/results/{cursor}")
+  @Operation(
+      summary = "Page through a filter result",
+      description =
+          "Returns another page of a result /execute returned the cursor of, without running the"
+              + " filter again; 404 once the result has expired")
+  public ResponseEntity<FilterExecutionResponse> resultPage(
+      @PathVariable String fileId,
+      @PathVariable String cursor,
+      @RequestParam(defaultValue = "1") int page,
+      @RequestParam(defaultValue = "25") int pageSize) {
+
+    if (page < 1) {
+      page = 1;
+    }
+    if (pageSize < 1 || pageSize > 100) {
+      pageSize = 25;
+    }
+
+    return ResponseEntity.ok(
+        filterService.resultPage(UUID.fromString(fileId), cursor, page, pageSize));
+  }
 }
@@ -21,4 +21,13 @@ public class FilterExecutionResponse {
   private Integer pageSize;
 
   private Integer totalPages;
+
+  /** Names the stored result, so later pages can be read from it without running the filter. */
+  private String cursor;
+
+  /** False while matches are still being collected; the totals are then the count so far. */
+  private Boolean complete;
+
+  /** The result outgrew the filter-result store and stops at totalMatches. */
+  private Boolean truncated;
 }
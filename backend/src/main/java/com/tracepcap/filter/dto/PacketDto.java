@@ -11,6 +11,9 @@ public class PacketDto {
 
   private String id;
 
+  /** tshark's {@code frame.number}, which the frame-detail view takes. */
+  private Long frameNumber;
+
   private Long timestamp;
 
   private NetworkEndpoint source;
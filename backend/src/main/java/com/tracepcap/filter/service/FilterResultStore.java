@@ -0,0 +1,421 @@
+package com.tracepcap.filter.service;
+
+import com.tracepcap.common.concurrent.IoThreads;
+import com.tracepcap.file.event.FileDeletedEvent;
+import com.tracepcap.filter.dto.PacketDto;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * The matches of display filters already run, per capture and filter, so that paging through them
+ * reads memory instead of running tshark over the whole capture for every page.
+ *
+ * <p>A result is filled in the background: the request that starts it waits only for the rows of
+ * its own page, and later requests page through whatever has arrived, counting it as they go.
+ *
+ * <ul>
+ *   <li><b>Compact.</b> A match is held as a {@link Row} — a dozen fields, no nested objects — and
+ *       becomes a {@link PacketDto} only when a page is served.
+ *   <li><b>Bounded.</b> All results together are kept under {@code max-size-mb}; the least recently
+ *       read finished ones make room. A result that would need more than is left stops growing and
+ *       is marked truncated, which takes the place of the fixed 10,000-packet ceiling.
+ *   <li><b>Short-lived.</b> A result nobody has read for {@code ttl-minutes} is dropped, and a fill
+ *       nobody is reading any more is stopped with it — checked every minute, so an abandoned fill
+ *       does not hold its tshark slot and capture lease until the next filter comes along.
+ * </ul>
+ *
+ * <p>Node-local, like the capture cache: another node runs the filter again.
+ */
+@Slf4j
+@Component
+public class FilterResultStore implements MeterBinder {
+
+  /** Collects a result's matches, handing each to the sink, until they run out or it says stop. */
+  @FunctionalInterface
+  interface Fill {
+    void run(Sink sink) throws Exception;
+  }
+
+  interface Sink {
+    /** Adds a match; false once the result wants no more, and the fill should stop. */
+    boolean add(PacketDto packet);
+  }
+
+  /** One page of a result, and how much of the result there was when it was read. */
+  record Page(
+      String cursor, List<PacketDto> packets, int total, boolean complete, boolean truncated) {}
+
+  private final long ttlNanos;
+  private final long maxBytes;
+  private final long pageWaitNanos;
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  /** Signalled whenever a result gains the rows someone is waiting for, or finishes. */
+  private final Condition grown = lock.newCondition();
+
+  private final Map<String, Result> byKey = new HashMap<>();
+  private final Map<String, Result> byCursor = new HashMap<>();
+
+  private long heldBytes;
+
+  private MeterRegistry registry;
+
+  public FilterResultStore(
+      @Value("${tracepcap.filter-results.ttl-minutes:15}") long ttlMinutes,
+      @Value("${tracepcap.filter-results.max-size-mb:256}") long maxSizeMb,
+      @Value("${tracepcap.filter-results.page-wait-seconds:30}") long pageWaitSeconds) {
+    this.ttlNanos = TimeUnit.MINUTES.toNanos(ttlMinutes);
+    this.maxBytes = maxSizeMb * 1024 * 1024;
+    this.pageWaitNanos = TimeUnit.SECONDS.toNanos(pageWaitSeconds);
+  }
+
+  /**
+   * A match as stored: the packet's summary columns with the endpoints flattened and the flags as
+   * bits. {@code protocol} and {@code layer} are shared strings; only the addresses and payload are
+   * per row.
+   */
+  record Row(
+      int number,
+      long frameNumber,
+      long timestamp,
+      String srcIp,
+      int srcPort,
+      String dstIp,
+      int dstPort,
+      String protocol,
+      String layer,
+      int size,
+      String payload,
+      int flags) {
+
+    private static final String[] FLAG_NAMES = {"SYN", "ACK", "FIN", "RST", "PSH", "URG"};
+
+    /** Object headers, the fields and the three per-row strings' fixed cost, roughly. */
+    private static final int OVERHEAD_BYTES = 200;
+
+    static Row of(PacketDto p) {
+      int flags = 0;
+      if (p.getFlags() != null) {
+        for (int i = 0; i < FLAG_NAMES.length; i++) {
+          if (p.getFlags().contains(FLAG_NAMES[i])) flags |= 1 << i;
+        }
+      }
+      return new Row(
+          Integer.parseInt(p.getId()),
+          p.getFrameNumber() == null ? -1 : p.getFrameNumber(),
+          p.getTimestamp(),
+          p.getSource().getIp(),
+          port(p.getSource().getPort()),
+          p.getDestination().getIp(),
+          port(p.getDestination().getPort()),
+          p.getProtocol().getName().intern(),
+          p.getProtocol().getLayer().intern(),
+          p.getSize(),
+          p.getPayload(),
+          flags);
+    }
+
+    PacketDto toDto() {
+      List<String> names = new ArrayList<>();
+      for (int i = 0; i < FLAG_NAMES.length; i++) {
+        if ((flags & 1 << i) != 0) names.add(FLAG_NAMES[i]);
+      }
+      return PacketDto.builder()
+          .id(String.valueOf(number))
+          .frameNumber(frameNumber < 0 ? null : frameNumber)
+          .timestamp(timestamp)
+          .source(PacketDto.NetworkEndpoint.builder().ip(srcIp).port(port(srcPort)).build())
+          .destination(PacketDto.NetworkEndpoint.builder().ip(dstIp).port(port(dstPort)).build())
+          .protocol(PacketDto.Protocol.builder().layer(layer).name(protocol).build())
+          .size(size)
+          .payload(payload)
+          .flags(names.isEmpty() ? null : names)
+          .build();
+    }
+
+    long bytes() {
+      return OVERHEAD_BYTES
+          + srcIp.length()
+          + dstIp.length()
+          + (payload == null ? 0 : payload.length());
+    }
+
+    private static int port(Integer port) {
+      return port == null ? -1 : port;
+    }
+
+    private static Integer port(int port) {
+      return port < 0 ? null : port;
+    }
+  }
+
+  private static final class Result {
+    final String key;
+    final String cursor = UUID.randomUUID().toString();
+    final UUID fileId;
+    final List<Row> rows = new ArrayList<>();
+    long bytes;
+    long lastRead = System.nanoTime();
+
+    /** The fewest rows any waiter is waiting for, or 0; the fill signals once it gets there. */
+    int wanted;
+
+    boolean complete;
+    boolean truncated;
+    Exception failure;
+
+    /** Dropped from the store; its fill stops at the next match. */
+    boolean dropped;
+
+    Result(String key, UUID fileId) {
+      this.key = key;
+      this.fileId = fileId;
+    }
+  }
+
+  /**
+   * Rows {@code [offset, offset + limit)} of the filter's result, starting the fill if there is no
+   * result yet. Waits until those rows have arrived, the result is finished, or {@code
+   * page-wait-seconds} have passed — in which case the page is whatever has arrived.
+   *
+   * @throws IllegalArgumentException or whatever else the fill failed with
+   */
+  Page page(UUID fileId, String filter, int offset, int limit, Fill fill) {
+    Result result;
+    boolean start = false;
+    lock.lock();
+    try {
+      expire();
+      String key = fileId + "\n" + filter;
+      result = byKey.get(key);
+      if (result == null) {
+        result = new Result(key, fileId);
+        byKey.put(key, result);
+        byCursor.put(result.cursor, result);
+        start = true;
+      }
+    } finally {
+      lock.unlock();
+    }
+    count(start ? "miss" : "hit");
+    if (start) startFill(result, fill);
+    return read(result, offset, limit);
+  }
+
+  /** A page of the result {@code cursor} names, or null if it has expired or never existed. */
+  Page page(UUID fileId, String cursor, int offset, int limit) {
+    Result result;
+    lock.lock();
+    try {
+      expire();
+      result = byCursor.get(cursor);
+    } finally {
+      lock.unlock();
+    }
+    if (result == null || !result.fileId.equals(fileId)) return null;
+    return read(result, offset, limit);
+  }
+
+  private void startFill(Result result, Fill fill) {
+    IoThreads.start(
+        "filter-fill",
+        () -> {
+          try {
+            fill.run(packet -> add(result, packet));
+            finish(result, null);
+          } catch (Exception e) {
+            finish(result, e);
+          }
+        });
+  }
+
+  private boolean add(Result result, PacketDto packet) {
+    Row row = Row.of(packet);
+    long bytes = row.bytes();
+    lock.lock();
+    try {
+      if (result.dropped) return false;
+      if (heldBytes + bytes > maxBytes) evictFor(result, bytes);
+      if (heldBytes + bytes > maxBytes) {
+        log.info(
+            "Filter result for file {} stopped at {} matches: the store is full",
+            result.fileId,
+            result.rows.size());
+        result.truncated = true;
+        return false;
+      }
+      result.rows.add(row);
+      result.bytes += bytes;
+      heldBytes += bytes;
+      if (result.wanted > 0 && result.rows.size() >= result.wanted) {
+        // The waiters wake, and whoever still needs more says so again.
+        result.wanted = 0;
+        grown.signalAll();
+      }
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void finish(Result result, Exception failure) {
+    lock.lock();
+    try {
+      result.complete = true;
+      if (failure != null) {
+        // Its waiters are told; the next request for this filter starts over.
+        result.failure = failure;
+        drop(result);
+      }
+      grown.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private Page read(Result result, int offset, int limit) {
+    long deadline = System.nanoTime() + pageWaitNanos;
+    lock.lock();
+    try {
+      int end = offset + limit;
+      while (!result.complete && result.rows.size() < end) {
+        long left = deadline - System.nanoTime();
+        if (left <= 0) break;
+        result.wanted = result.wanted == 0 ? end : Math.min(result.wanted, end);
+        grown.awaitNanos(left);
+      }
+      if (result.failure != null) throw failure(result.failure);
+      result.lastRead = System.nanoTime();
+
+      int total = result.rows.size();
+      List<PacketDto> packets = new ArrayList<>();
+      for (int i = offset; i < Math.min(end, total); i++) packets.add(result.rows.get(i).toDto());
+      return new Page(result.cursor, packets, total, result.complete, result.truncated);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted waiting for filter results", e);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static RuntimeException failure(Exception e) {
+    return e instanceof RuntimeException r
+        ? r
+        : new RuntimeException("Failed to filter packets: " + e.getMessage(), e);
+  }
+
+  /** A deleted capture's results go with it, and any fill over it stops. */
+  @EventListener
+  public void onFileDeleted(FileDeletedEvent event) {
+    lock.lock();
+    try {
+      for (Result result : List.copyOf(byKey.values())) {
+        if (result.fileId.equals(event.getFileId())) drop(result);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Drops results unread for the TTL, whether or not anyone is paging through the store. */
+  @Scheduled(fixedDelay = 1, timeUnit = TimeUnit.MINUTES)
+  public void expireUnread() {
+    lock.lock();
+    try {
+      expire();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Drops results unread for the TTL. Called with the lock held. */
+  private void expire() {
+    long now = System.nanoTime();
+    for (Result result : List.copyOf(byKey.values())) {
+      if (now - result.lastRead > ttlNanos) {
+        drop(result);
+        count("expired");
+      }
+    }
+  }
+
+  /**
+   * Drops finished results, least recently read first, until {@code bytes} more fit. Results still
+   * filling are left alone: someone is paging through each. Called with the lock held.
+   */
+  private void evictFor(Result growing, long bytes) {
+    while (heldBytes + bytes > maxBytes) {
+      Result oldest = null;
+      for (Result r : byKey.values()) {
+        if (r != growing && r.complete && (oldest == null || r.lastRead < oldest.lastRead)) {
+          oldest = r;
+        }
+      }
+      if (oldest == null) return;
+      drop(oldest);
+      count("evicted");
+    }
+  }
+
+  /** Called with the lock held. */
+  private void drop(Result result) {
+    result.dropped = true;
+    if (byKey.remove(result.key, result)) {
+      byCursor.remove(result.cursor);
+      heldBytes -= result.bytes;
+    }
+  }
+
+  long heldBytes() {
+    lock.lock();
+    try {
+      return heldBytes;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  int resultCount() {
+    lock.lock();
+    try {
+      return byKey.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void count(String outcome) {
+    if (registry == null) return;
+    Counter.builder("tracepcap.filter.results")
+        .description("Filter result lookups and removals: hit, miss, expired, evicted")
+        .tag("outcome", outcome)
+        .register(registry)
+        .increment();
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    this.registry = registry;
+    Gauge.builder("tracepcap.filter.results.size", this::heldBytes)
+        .description("Estimated bytes of filter results held on this node")
+        .baseUnit("bytes")
+        .register(registry);
+  }
+}
@@ -5,16 +5,23 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.tracepcap.common.TsharkHexUtil;
 import com.tracepcap.common.exception.LlmException;
+import com.tracepcap.common.exception.ResourceNotFoundException;
+import com.tracepcap.common.exception.SubprocessBusyException;
+import com.tracepcap.common.process.SubprocessGovernor;
+import com.tracepcap.common.process.SubprocessGovernor.Budget;
+import com.tracepcap.common.process.SubprocessGovernor.Tool;
 import com.tracepcap.file.entity.FileEntity;
 import com.tracepcap.file.service.FileService;
-import com.tracepcap.file.service.StorageService;
+import com.tracepcap.file.service.CaptureCache;
+import com.tracepcap.file.service.SharkdPool;
 import com.tracepcap.filter.dto.*;
 import com.tracepcap.story.service.LlmClient;
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStreamReader;
-import java.nio.file.Files;
 import java.util.*;
+import java.util.stream.Stream;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -27,12 +34,68 @@ public class FilterService {
 
   private final LlmClient llmClient;
   private final FileService fileService;
-  private final StorageService storageService;
+  private final CaptureCache captureCache;
   private final ObjectMapper objectMapper;
+  private final SubprocessGovernor governor;
+  private final SharkdPool sharkd;
+  private final FilterResultStore resultStore;
 
-  private static final int MAX_PACKETS = 10000;
   private static final int MAX_GENERATION_RETRIES = 3;
 
+  /** Matches asked of sharkd per {@code frames} request, so the first page is not kept waiting. */
+  private static final int SHARKD_BATCH = 5000;
+
+  /** {@link #framesFromSharkd}: every match was handed over and there is nothing left to do. */
+  private static final int SHARKD_DONE = -1;
+
+  /**
+   * What each matching packet is read as, in order: tshark's {@code -e} fields, and the custom
+   * columns sharkd is asked for. {@link #parsePacketLine} reads them by position.
+   */
+  private static final List<String> PACKET_FIELDS =
+      List.of(
+          "frame.time_epoch",
+          "frame.len",
+          "ip.src",
+          "ip.dst",
+          "tcp.srcport",
+          "tcp.dstport",
+          "udp.srcport",
+          "udp.dstport",
+          "_ws.col.Protocol",
+          "_ws.col.Info",
+          "tcp.flags.syn",
+          "tcp.flags.ack",
+          "tcp.flags.fin",
+          "tcp.flags.reset",
+          "tcp.flags.push",
+          "tcp.flags.urg",
+          "tcp.payload",
+          "udp.payload",
+          "frame.number");
+
+  /**
+   * Validates a filter with the capture's sharkd session, which compiles it without reading the
+   * capture again; with tshark when there is no session to ask.
+   */
+  private ValidationResult validate(FileEntity file, String displayFilter, File pcapFile) {
+    ValidationResult checked = checkWithSharkd(file, displayFilter);
+    return checked != null ? checked : validateDisplayFilter(displayFilter, pcapFile);
+  }
+
+  /** sharkd's verdict on the filter, or null if it gave none. */
+  private ValidationResult checkWithSharkd(FileEntity file, String displayFilter) {
+    if (displayFilter == null || displayFilter.trim().isEmpty()) {
+      return new ValidationResult(false, "Filter cannot be empty");
+    }
+    SharkdPool.Reply reply = sharkd.request(file, "check", Map.of("filter", displayFilter.trim()));
+    if (reply == null) return null;
+    if (reply.ok()) return new ValidationResult(true, null);
+    if (reply.errorCode() != SharkdPool.FILTER_INVALID) return null;
+    log.warn("Display filter validation failed for '{}': {}", displayFilter, reply.errorMessage());
+    return new ValidationResult(false, "Invalid filter syntax: " + reply.errorMessage());
+  }
+
   /**
    * Validate a Wireshark display filter by running tshark against the PCAP file. tshark exits
    * non-zero and prints to stderr when the filter expression is invalid.
@@ -54,7 +117,7 @@ public class FilterService {
               "-c",
               "1");
       pb.redirectErrorStream(true);
-      Process process = pb.start();
+      Process process = governor.start(Tool.TSHARK, Budget.INTERACTIVE, pb);
 
       StringBuilder output = new StringBuilder();
       try (BufferedReader reader =
@@ -77,6 +140,8 @@ public class FilterService {
       log.warn("Display filter validation failed for '{}': {}", displayFilter, firstLine);
       return new ValidationResult(false, "Invalid filter syntax: " + firstLine);
 
+    } catch (SubprocessBusyException e) {
+      throw e;
     } catch (Exception e) {
       log.error("Error validating display filter", e);
       return new ValidationResult(false, "Unable to validate filter: " + e.getMessage());
@@ -90,11 +155,9 @@ public class FilterService {
     log.info("Generating filter for file {} with query: {}", fileId, naturalLanguageQuery);
 
     FileEntity fileEntity = fileService.getFileById(fileId);
-    File pcapFile = null;
 
-    try {
-      pcapFile = Files.createTempFile("pcap-validation-", ".pcap").toFile();
-      storageService.downloadFileToLocal(fileEntity.getMinioPath(), pcapFile);
+    try (CaptureCache.Lease capture = captureCache.acquire(fileEntity)) {
+      File pcapFile = capture.path().toFile();
 
       String systemPrompt =
           """
@@ -149,7 +212,7 @@ public class FilterService {
           String generatedFilter = jsonNode.get("filter").asText();
           log.info("Generated filter (attempt {}): {}", attempt, generatedFilter);
 
-          ValidationResult validation = validateDisplayFilter(generatedFilter, pcapFile);
+          ValidationResult validation = validate(fileEntity, generatedFilter, pcapFile);
 
           if (validation.isValid()) {
             log.info("Filter validation successful on attempt {}", attempt);
@@ -187,7 +250,7 @@ public class FilterService {
                         + "Please respond with ONLY valid JSON in the exact format specified.",
                     naturalLanguageQuery);
           }
-        } catch (LlmException e) {
+        } catch (LlmException | SubprocessBusyException e) {
           throw e;
         } catch (Exception e) {
           log.error("Error processing LLM response on attempt {}", attempt, e);
@@ -209,20 +272,21 @@ public class FilterService {
                 MAX_GENERATION_RETRIES, lastValidationError));
       }
 
-    } catch (LlmException e) {
+    } catch (LlmException | SubprocessBusyException e) {
       throw e;
     } catch (Exception e) {
       log.error("Error generating filter", e);
       throw new RuntimeException("Failed to generate filter: " + e.getMessage(), e);
-    } finally {
-      if (pcapFile != null && pcapFile.exists()) {
-        pcapFile.delete();
-      }
     }
   }
 
   /**
-   * Execute a Wireshark display filter on a PCAP file and return matching packets with pagination
+   * Execute a Wireshark display filter on a PCAP file and return one page of the matching packets.
+   *
+   * <p>The first request for a filter starts collecting its matches into the {@link
+   * FilterResultStore} and returns as soon as its page has arrived; collection carries on in the
+   * background, and later pages, by filter or by cursor, are read from the store. Until the result
+   * is complete, totalMatches and totalPages count what has been found so far.
    */
   public FilterExecutionResponse executeFilter(
       UUID fileId, String filterExpression, int page, int pageSize) {
@@ -236,149 +300,201 @@ public class FilterService {
     long startTime = System.currentTimeMillis();
     FileEntity fileEntity = fileService.getFileById(fileId);
 
-    File tempFile = null;
     try {
-      tempFile = Files.createTempFile("pcap-filter-", ".pcap").toFile();
-      storageService.downloadFileToLocal(fileEntity.getMinioPath(), tempFile);
-
-      ValidationResult validation = validateDisplayFilter(filterExpression, tempFile);
-      if (!validation.isValid()) {
-        log.error("Invalid display filter provided for execution: {}", filterExpression);
-        throw new IllegalArgumentException(
-            String.format(
-                "Invalid filter syntax. %s\n\n"
-                    + "The filter '%s' cannot be executed. "
-                    + "Please check the Wireshark display filter syntax and try again. "
-                    + "Common valid filters: 'tcp', 'udp port 53', 'ip.addr == 192.168.1.1', 'http', 'dns'",
-                validation.getErrorMessage(), filterExpression));
-      }
-
-      List<PacketDto> allPackets = filterPackets(tempFile, filterExpression, MAX_PACKETS);
-      int totalMatches = allPackets.size();
-
-      int totalPages = (int) Math.ceil((double) totalMatches / pageSize);
-      int startIndex = (page - 1) * pageSize;
-      int endIndex = Math.min(startIndex + pageSize, totalMatches);
-
-      List<PacketDto> pagePackets =
-          startIndex < totalMatches ? allPackets.subList(startIndex, endIndex) : List.of();
-
-      long executionTime = System.currentTimeMillis() - startTime;
-
-      log.info(
-          "Filter execution completed: {} total matches, returning {} for page {}/{}",
-          totalMatches,
-          pagePackets.size(),
-          page,
-          totalPages);
-
-      return FilterExecutionResponse.builder()
-          .packets(pagePackets)
-          .totalMatches(totalMatches)
-          .executionTime(executionTime)
-          .page(page)
-          .pageSize(pageSize)
-          .totalPages(totalPages)
-          .build();
-
-    } catch (IllegalArgumentException e) {
+      // Several people often filter the same capture the same way; they share one result.
+      FilterResultStore.Page result =
+          resultStore.page(
+              fileId,
+              filterExpression,
+              offset(page, pageSize),
+              pageSize,
+              sink -> collectMatches(fileEntity, filterExpression, sink));
+      return response(result, page, pageSize, startTime);
+
+    } catch (IllegalArgumentException | SubprocessBusyException e) {
       throw e;
     } catch (Exception e) {
       log.error("Error executing filter", e);
       throw new RuntimeException("Failed to execute filter: " + e.getMessage(), e);
-    } finally {
-      if (tempFile != null && tempFile.exists()) {
-        tempFile.delete();
-      }
     }
   }
 
-  /** Run tshark with a display filter and collect matching packets up to maxPackets. */
-  private List<PacketDto> filterPackets(File pcapFile, String displayFilter, int maxPackets) {
-    List<PacketDto> matchedPackets = new ArrayList<>();
-
-    // Fields: epoch | len | ip.src | ip.dst | tcp.sport | tcp.dport | udp.sport | udp.dport |
-    //         protocol | info | tcp.flags.syn | tcp.flags.ack | tcp.flags.fin |
-    //         tcp.flags.rst | tcp.flags.psh | tcp.flags.urg | tcp.payload | udp.payload
-    ProcessBuilder pb =
-        new ProcessBuilder(
-            "tshark",
-            "-r",
-            pcapFile.getAbsolutePath(),
-            "-2",
-            "-R",
-            displayFilter,
-            "-T",
-            "fields",
-            "-E",
-            "separator=|",
-            "-e",
-            "frame.time_epoch",
-            "-e",
-            "frame.len",
-            "-e",
-            "ip.src",
-            "-e",
-            "ip.dst",
-            "-e",
-            "tcp.srcport",
-            "-e",
-            "tcp.dstport",
-            "-e",
-            "udp.srcport",
-            "-e",
-            "udp.dstport",
-            "-e",
-            "_ws.col.Protocol",
-            "-e",
-            "_ws.col.Info",
-            "-e",
-            "tcp.flags.syn",
-            "-e",
-            "tcp.flags.ack",
-            "-e",
-            "tcp.flags.fin",
-            "-e",
-            "tcp.flags.reset",
-            "-e",
-            "tcp.flags.push",
-            "-e",
-            "tcp.flags.urg",
-            "-e",
-            "tcp.payload",
-            "-e",
-            "udp.payload");
-    pb.redirectError(ProcessBuilder.Redirect.DISCARD);
+  /**
+   * Another page of a result {@link #executeFilter} returned the cursor of, without running the
+   * filter again.
+   *
+   * @throws ResourceNotFoundException if the result has expired, and the filter must be re-run
+   */
+  public FilterExecutionResponse resultPage(UUID fileId, String cursor, int page, int pageSize) {
+    long startTime = System.currentTimeMillis();
+    FilterResultStore.Page result =
+        resultStore.page(fileId, cursor, offset(page, pageSize), pageSize);
+    if (result == null) {
+      throw new ResourceNotFoundException(
+          "Filter results " + cursor + " have expired; run the filter again");
+    }
+    return response(result, page, pageSize, startTime);
+  }
 
-    try {
-      Process process = pb.start();
-      int packetNumber = 0;
+  /** Where the page starts; a page number past any real result just reads empty. */
+  private static int offset(int page, int pageSize) {
+    return (int) Math.min((long) (page - 1) * pageSize, Integer.MAX_VALUE / 2);
+  }
 
-      try (BufferedReader reader =
-          new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-        String line;
-        while ((line = reader.readLine()) != null && packetNumber < maxPackets) {
-          if (line.isEmpty()) continue;
-          String[] f = line.split("\\|", -1);
-          if (f.length < 10) continue;
-
-          packetNumber++;
-          PacketDto dto = parsePacketLine(f, packetNumber);
-          if (dto != null) matchedPackets.add(dto);
+  private static FilterExecutionResponse response(
+      FilterResultStore.Page result, int page, int pageSize, long startTime) {
+    int totalPages = (int) Math.ceil((double) result.total() / pageSize);
+    log.info(
+        "Filter page {}/{}: {} packets of {} matches{}",
+        page,
+        totalPages,
+        result.packets().size(),
+        result.total(),
+        result.complete() ? "" : " so far");
+
+    return FilterExecutionResponse.builder()
+        .packets(result.packets())
+        .totalMatches(result.total())
+        .executionTime(System.currentTimeMillis() - startTime)
+        .page(page)
+        .pageSize(pageSize)
+        .totalPages(totalPages)
+        .cursor(result.cursor())
+        .complete(result.complete())
+        .truncated(result.truncated())
+        .build();
+  }
+
+  /**
+   * Validates the filter against the capture and hands every match to {@code sink} — from the
+   * capture's sharkd session when it has one, which answers without reading the capture again;
+   * otherwise from tshark on a local copy.
+   */
+  private void collectMatches(
+      FileEntity fileEntity, String filterExpression, FilterResultStore.Sink sink)
+      throws Exception {
+    int fromSharkd = framesFromSharkd(fileEntity, filterExpression, sink);
+    if (fromSharkd == SHARKD_DONE) return;
+
+    try (CaptureCache.Lease capture = captureCache.acquire(fileEntity)) {
+      File pcapFile = capture.path().toFile();
+
+      if (fromSharkd == 0) {
+        ValidationResult validation = validateDisplayFilter(filterExpression, pcapFile);
+        if (!validation.isValid()) throw invalidFilter(filterExpression, validation);
+      }
+
+      try (Stream<PacketDto> matches =
+          filterPackets(pcapFile, filterExpression, Integer.MAX_VALUE)) {
+        Iterator<PacketDto> it = matches.iterator();
+        while (it.hasNext()) {
+          PacketDto dto = it.next();
+          // sharkd stopped answering part way: carry on from where it left off.
+          if (Integer.parseInt(dto.getId()) <= fromSharkd) continue;
+          if (!sink.add(dto)) break;
         }
       }
+    }
+  }
 
-      process.waitFor();
-      if (packetNumber >= maxPackets) {
-        log.info("Reached maximum packet limit of {}", maxPackets);
+  /**
+   * Hands the matches to {@code sink} as sharkd lists them, a batch at a time. Returns {@link
+   * #SHARKD_DONE} when it got through them all (or the sink wanted no more), otherwise how many
+   * matching frames it got through before sharkd stopped answering — 0 if it never did.
+   */
+  private int framesFromSharkd(
+      FileEntity fileEntity, String filterExpression, FilterResultStore.Sink sink) {
+    ValidationResult validation = checkWithSharkd(fileEntity, filterExpression);
+    if (validation == null) return 0;
+    if (!validation.isValid()) throw invalidFilter(filterExpression, validation);
+
+    Map<String, Object> params = new LinkedHashMap<>();
+    params.put("filter", filterExpression);
+    params.put("limit", SHARKD_BATCH);
+    for (int i = 0; i < PACKET_FIELDS.size(); i++) {
+      // Occurrence 0 is every occurrence, comma-separated, as tshark -e prints them.
+      params.put("column" + i, PACKET_FIELDS.get(i) + ":0");
+    }
+
+    int packetNumber = 0;
+    while (true) {
+      params.put("skip", packetNumber);
+      SharkdPool.Reply reply = sharkd.request(fileEntity, "frames", params);
+      if (reply == null || !reply.ok() || !reply.result().isArray()) return packetNumber;
+
+      for (JsonNode frame : reply.result()) {
+        JsonNode columns = frame.path("c");
+        String[] f = new String[columns.size()];
+        for (int i = 0; i < f.length; i++) f[i] = columns.get(i).asText("");
+
+        packetNumber++;
+        if (f.length < 10) continue;
+        PacketDto dto = parsePacketLine(f, packetNumber);
+        if (dto != null && !sink.add(dto)) return SHARKD_DONE;
       }
+      if (reply.result().size() < SHARKD_BATCH) return SHARKD_DONE;
+    }
+  }
 
-    } catch (Exception e) {
-      log.error("Error filtering packets with tshark", e);
-      throw new RuntimeException("Failed to filter packets: " + e.getMessage(), e);
+  private static IllegalArgumentException invalidFilter(
+      String filterExpression, ValidationResult validation) {
+    log.error("Invalid display filter provided for execution: {}", filterExpression);
+    return new IllegalArgumentException(
+        String.format(
+            "Invalid filter syntax. %s\n\n"
+                + "The filter '%s' cannot be executed. "
+                + "Please check the Wireshark display filter syntax and try again. "
+                + "Common valid filters: 'tcp', 'udp port 53', 'ip.addr == 192.168.1.1', "
+                + "'http', 'dns'",
+            validation.getErrorMessage(), filterExpression));
+  }
+
+  /**
+   * Runs tshark with a display filter and streams its matches, up to maxPackets, as it prints
+   * them. Closing the stream stops tshark, however far it has got.
+   */
+  private Stream<PacketDto> filterPackets(File pcapFile, String displayFilter, int maxPackets)
+      throws IOException {
+    List<String> command =
+        new ArrayList<>(
+            List.of(
+                "tshark",
+                "-r",
+                pcapFile.getAbsolutePath(),
+                "-2",
+                "-R",
+                displayFilter,
+                "-T",
+                "fields",
+                "-E",
+                "separator=|"));
+    for (String field : PACKET_FIELDS) {
+      command.add("-e");
+      command.add(field);
     }
+    ProcessBuilder pb = new ProcessBuilder(command.toArray(String[]::new));
+    pb.redirectError(ProcessBuilder.Redirect.DISCARD);
 
-    return matchedPackets;
+    Process process = governor.start(Tool.TSHARK, Budget.INTERACTIVE, pb);
+    BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+    int[] packetNumber = {0};
+    return reader
+        .lines()
+        .filter(line -> !line.isEmpty())
+        .map(line -> line.split("\\|", -1))
+        .filter(f -> f.length >= 10)
+        .limit(maxPackets)
+        .map(f -> parsePacketLine(f, ++packetNumber[0]))
+        .filter(Objects::nonNull)
+        .onClose(
+            () -> {
+              process.destroy();
+              try {
+                reader.close();
+              } catch (IOException e) {
+                log.debug("Could not close tshark's output: {}", e.getMessage());
+              }
+            });
   }
 
   private PacketDto parsePacketLine(String[] f, int packetNumber) {
@@ -407,7 +523,7 @@ public class FilterService {
       List<String> flags = new ArrayList<>();
       String[] flagNames = {"SYN", "ACK", "FIN", "RST", "PSH", "URG"}; // display names only
       for (int i = 0; i < flagNames.length; i++) {
-        if (f.length > 10 + i && "1".equals(f[10 + i])) flags.add(flagNames[i]);
+        if (f.length > 10 + i && isSet(f[10 + i])) flags.add(flagNames[i]);
       }
 
       // Payload as printable ASCII (indices 16 = tcp.payload, 17 = udp.payload)
@@ -417,6 +533,8 @@ public class FilterService {
 
       String payloadAscii = TsharkHexUtil.toAscii(payloadHex, 200);
 
+      Long frameNumber = f.length > 18 && !f[18].isEmpty() ? Long.valueOf(f[18]) : null;
+
       // Derive layer from protocol
       String proto = protocolRaw;
       String layer;
@@ -438,6 +556,7 @@ public class FilterService {
 
       return PacketDto.builder()
           .id(String.valueOf(packetNumber))
+          .frameNumber(frameNumber)
           .timestamp(timestampMs)
           .source(PacketDto.NetworkEndpoint.builder().ip(srcIp).port(srcPort).build())
           .destination(PacketDto.NetworkEndpoint.builder().ip(dstIp).port(dstPort).build())
@@ -453,6 +572,17 @@ public class FilterService {
     }
   }
 
+  /**
+   * Whether a boolean field is set, however it was printed: tshark's {@code -e} gives "1" (or
+   * "True" from 4.2), a sharkd column its display string, "Set" or "Not set". Of several
+   * occurrences, the first counts.
+   */
+  private static boolean isSet(String value) {
+    int comma = value.indexOf(',');
+    String first = (comma < 0 ? value : value.substring(0, comma)).trim();
+    return first.equals("1") || first.equalsIgnoreCase("True") || first.equalsIgnoreCase("Set");
+  }
+
   /** Parse suggestions from JSON response */
   private List<String> parseSuggestions(JsonNode jsonNode) {
     List<String> suggestions = new ArrayList<>();
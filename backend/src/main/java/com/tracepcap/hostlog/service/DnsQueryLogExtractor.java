@@ -1,5 +1,8 @@
 package com.tracepcap.hostlog.service;
 
+import com.tracepcap.analysis.spi.DissectedFrame;
+import com.tracepcap.analysis.spi.Dissection;
+import com.tracepcap.analysis.spi.FrameSubscriber;
 import com.tracepcap.analysis.spi.HostServiceLogExtractor;
 import com.tracepcap.analysis.spi.HostServiceLogResult;
 import com.tracepcap.analysis.spi.HostServiceSuspicion;
@@ -7,21 +10,12 @@ import com.tracepcap.analysis.spi.ServiceLogRoles;
 import com.tracepcap.hostlog.entity.DnsQueryLogEntity;
 import com.tracepcap.hostlog.repository.DnsQueryLogRepository;
 import com.tracepcap.file.entity.FileEntity;
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -30,10 +24,10 @@ import org.springframework.stereotype.Service;
  * Extracts the DNS query log for hosts acting as DNS servers (#362) — the first implementation of
  * {@link com.tracepcap.analysis.spi.HostServiceLogExtractor}.
  *
- * <p>Runs a single read-only tshark pass over the capture, selecting DNS <em>responses</em>, and
- * aggregates them per {@code (serverIp, queryName, queryType)} into {@link DnsQueryLogEntity} rows:
- * how many times each domain was queried, the response code, the resolved IPs, and whether it
- * resolved. It also tracks each server's share of NXDOMAIN responses and flags servers whose ratio
+ * <p>Reads DNS <em>responses</em> from the capture's shared tshark pass and aggregates them per
+ * {@code (serverIp, queryName, queryType)} into {@link DnsQueryLogEntity} rows: how many times
+ * each domain was queried, the response code, the resolved IPs, and whether it resolved. It also
+ * tracks each server's share of NXDOMAIN responses and flags servers whose ratio
  * exceeds {@code tracepcap.dns.nxdomain-suspicious-ratio} (over at least
  * {@code tracepcap.dns.nxdomain-min-queries} queries) as suspicious — a signal of DNS tunnelling or
  * a domain-generation algorithm.
@@ -43,7 +37,8 @@ import org.springframework.stereotype.Service;
  */
 @Slf4j
 @Service
-public class DnsQueryLogExtractor implements HostServiceLogExtractor {
+public class DnsQueryLogExtractor
+    implements HostServiceLogExtractor, FrameSubscriber<DnsQueryLogExtractor.Responses> {
 
   private static final String ROLE = ServiceLogRoles.DNS;
 
@@ -116,11 +111,10 @@ public class DnsQueryLogExtractor implements HostServiceLogExtractor {
   }
 
   @Override
-  public HostServiceLogResult extractAndPersist(FileEntity file, File pcap) {
-    Map<QueryKey, QueryAgg> groups = new LinkedHashMap<>();
-    Map<String, ServerStats> serverStats = new LinkedHashMap<>();
-
-    runTshark(pcap, groups, serverStats);
+  public HostServiceLogResult extractAndPersist(FileEntity file, Dissection dissection) {
+    Responses responses = dissection.consumer(this);
+    Map<QueryKey, QueryAgg> groups = responses.groups;
+    Map<String, ServerStats> serverStats = responses.serverStats;
 
     // Persist aggregated rows.
     List<DnsQueryLogEntity> rows = new ArrayList<>(groups.size());
@@ -173,126 +167,82 @@ public class DnsQueryLogExtractor implements HostServiceLogExtractor {
     return new HostServiceLogResult(roleByServerIp, suspicions);
   }
 
-  // ── tshark pass ───────────────────────────────────────────────────────────
-
-  private void runTshark(
-      File pcap, Map<QueryKey, QueryAgg> groups, Map<String, ServerStats> serverStats) {
-    // Fields (pipe-separated): 0 frame.number  1 ip.src  2 dns.qry.name  3 dns.qry.type
-    //   4 dns.flags.rcode  5 dns.a  6 dns.aaaa  7 dns.count.answers
-    // frame.number leads (numeric, no '|') and the five answer-related fields trail, so a '|' in the
-    // query name still parses via right-anchoring. dns.count.answers (ANCOUNT) lets us treat any
-    // successfully-answered query as resolved — including non-address types (MX/TXT/CNAME/PTR/SRV).
-    ProcessBuilder pb =
-        new ProcessBuilder(
-            "tshark",
-            "-r",
-            pcap.getAbsolutePath(),
-            "-Y",
-            "dns.flags.response==1",
-            "-T",
-            "fields",
-            "-E",
-            "separator=|",
-            "-e",
-            "frame.number",
-            "-e",
-            "ip.src",
-            "-e",
-            "dns.qry.name",
-            "-e",
-            "dns.qry.type",
-            "-e",
-            "dns.flags.rcode",
-            "-e",
-            "dns.a",
-            "-e",
-            "dns.aaaa",
-            "-e",
-            "dns.count.answers");
-    // Discard stderr natively (no drain thread needed); we only consume stdout.
-    pb.redirectError(ProcessBuilder.Redirect.DISCARD);
-
-    Process process = null;
-    ExecutorService ioExecutor = null;
-    try {
-      process = pb.start();
-      final Process proc = process;
-
-      ioExecutor = Executors.newSingleThreadExecutor();
-      Future<?> stdoutTask =
-          ioExecutor.submit(
-              () -> {
-                try (BufferedReader reader =
-                    new BufferedReader(
-                        new InputStreamReader(proc.getInputStream(), StandardCharsets.UTF_8))) {
-                  String line;
-                  while ((line = reader.readLine()) != null) {
-                    if (!line.isEmpty()) parseRow(line, groups, serverStats);
-                  }
-                } catch (Exception ignored) {
-                  // best-effort
-                }
-              });
-
-      boolean finished = process.waitFor(2, TimeUnit.MINUTES);
-      if (!finished) {
-        log.warn("DNS query log extraction timed out; using partial results");
-      } else {
-        int exit = process.exitValue();
-        if (exit != 0) {
-          log.warn("DNS query log: tshark exited with code {}; results may be partial", exit);
-        }
-        try {
-          // tshark has exited; give the reader a generous window to drain any buffered output so a
-          // large query log isn't silently truncated. Match the overall extraction budget.
-          stdoutTask.get(2, TimeUnit.MINUTES);
-        } catch (Exception e) {
-          log.warn("DNS query log: stdout drain did not complete; results may be partial");
-        }
-      }
-    } catch (InterruptedException e) {
-      log.warn("DNS query log extraction interrupted");
-      Thread.currentThread().interrupt();
-    } catch (Exception e) {
-      log.warn("DNS query log extraction failed: {}", e.getMessage());
-    } finally {
-      if (process != null) process.destroyForcibly();
-      if (ioExecutor != null) ioExecutor.shutdownNow();
+  // ── Shared tshark pass ───────────────────────────────────────────────────
+
+  /** Fields 0-7 of a row, in {@link #parseRow} order; plus {@code dns.flags.response} to filter. */
+  static final List<String> FIELDS =
+      List.of(
+          "frame.number",
+          "ip.src",
+          "dns.qry.name",
+          "dns.qry.type",
+          "dns.flags.rcode",
+          "dns.a",
+          "dns.aaaa",
+          "dns.count.answers");
+
+  private static final String RESPONSE_FLAG = "dns.flags.response";
+
+  @Override
+  public Set<String> fields() {
+    Set<String> fields = new LinkedHashSet<>(FIELDS);
+    fields.add(RESPONSE_FLAG);
+    return fields;
+  }
+
+  @Override
+  public Responses open() {
+    return new Responses();
+  }
+
+  /** One capture's DNS responses, aggregated as they arrive. */
+  public static final class Responses implements FrameSubscriber.FrameConsumer {
+    final Map<QueryKey, QueryAgg> groups = new LinkedHashMap<>();
+    final Map<String, ServerStats> serverStats = new LinkedHashMap<>();
+
+    @Override
+    public void accept(DissectedFrame frame) {
+      if (!frame.isTrue(RESPONSE_FLAG)) return; // was -Y dns.flags.response==1
+      String[] f = new String[FIELDS.size()];
+      for (int i = 0; i < f.length; i++) f[i] = frame.all(FIELDS.get(i));
+      // The name is free text and may hold a comma; take the first occurrence whole.
+      f[2] = frame.first("dns.qry.name");
+      parseRow(f, groups, serverStats);
     }
   }
 
   // ── Row parsing ─────────────────────────────────────────────────────────────
 
+  /**
+   * Aggregates one response. {@code f} holds the eight {@link #FIELDS}, each as tshark prints it
+   * (occurrences comma-joined) except the query name, which is its first occurrence verbatim — the
+   * shared pass keeps fields apart, so a separator in tunnelled or malformed names cannot shift the
+   * others.
+   */
   static void parseRow(
-      String line, Map<QueryKey, QueryAgg> groups, Map<String, ServerStats> serverStats) {
-    String[] f = line.split("\\|", -1);
+      String[] f, Map<QueryKey, QueryAgg> groups, Map<String, ServerStats> serverStats) {
     if (f.length < 8) return;
-    // Fields are fixed except the query name (field 2), which — in tunnelled/malformed DNS — may
-    // itself contain the '|' separator. frame.number + ip.src lead and the five answer fields trail,
-    // so re-join everything in between to recover the full query name.
     Long frame = parseFrame(f[0]);
     String serverIp = trimToNull(f[1]);
-    String rawQueryName =
-        (f.length == 8) ? f[2] : String.join("|", Arrays.copyOfRange(f, 2, f.length - 5));
-    String queryName = stripTrailingDot(firstValue(rawQueryName));
+    String queryName = stripTrailingDot(f[2]);
     if (serverIp == null || queryName == null) return;
     if (queryName.length() > QUERY_NAME_MAX_LENGTH) {
       queryName = queryName.substring(0, QUERY_NAME_MAX_LENGTH);
     }
 
-    String queryType = qtypeName(firstValue(f[f.length - 5]));
-    String rawRcode = firstValue(f[f.length - 4]);
+    String queryType = qtypeName(firstValue(f[3]));
+    String rawRcode = firstValue(f[4]);
     String responseCode = rcodeName(rawRcode);
     boolean isNoError = "0".equals(rawRcode);
     boolean isNxdomain = "3".equals(rawRcode);
 
     Set<String> answers = new LinkedHashSet<>();
-    addValues(answers, f[f.length - 3]);
-    addValues(answers, f[f.length - 2]);
+    addValues(answers, f[5]);
+    addValues(answers, f[6]);
     // A query is "resolved" when it was answered successfully (NOERROR with at least one answer
     // record), regardless of record type — an MX/TXT/CNAME/PTR lookup with no A/AAAA still counts.
     // NOERROR with zero answers (NODATA) and NXDOMAIN are both unresolved.
-    boolean resolvable = isNoError && parseAnswerCount(f[f.length - 1]) > 0;
+    boolean resolvable = isNoError && parseAnswerCount(f[7]) > 0;
 
     // Per-server NXDOMAIN scoring (packet-level).
     ServerStats stats = serverStats.computeIfAbsent(serverIp, k -> new ServerStats());
@@ -1,15 +1,14 @@
 package com.tracepcap.hostlog.service;
 
+import com.tracepcap.analysis.spi.DissectedFrame;
+import com.tracepcap.analysis.spi.Dissection;
+import com.tracepcap.analysis.spi.FrameSubscriber;
 import com.tracepcap.analysis.spi.HostServiceLogExtractor;
 import com.tracepcap.analysis.spi.HostServiceLogResult;
 import com.tracepcap.analysis.spi.ServiceLogRoles;
 import com.tracepcap.hostlog.entity.HttpEndpointLogEntity;
 import com.tracepcap.hostlog.repository.HttpEndpointLogRepository;
 import com.tracepcap.file.entity.FileEntity;
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Deque;
@@ -19,11 +18,6 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.function.Consumer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
@@ -31,7 +25,7 @@ import org.springframework.stereotype.Service;
  * Detects web/API-server hosts and logs the cleartext HTTP endpoints they served (#362 follow-up) —
  * the web/API counterpart of {@code DnsQueryLogExtractor}.
  *
- * <p>Two read-only tshark passes:
+ * <p>Two views of the capture's shared tshark pass:
  *
  * <ul>
  *   <li><b>HTTP</b> ({@code http.response}): aggregates per {@code (serverIp, method, path)} into
@@ -51,7 +45,8 @@ import org.springframework.stereotype.Service;
  */
 @Slf4j
 @Service
-public class WebServerLogExtractor implements HostServiceLogExtractor {
+public class WebServerLogExtractor
+    implements HostServiceLogExtractor, FrameSubscriber<WebServerLogExtractor.Traffic> {
 
   private static final String ROLE_WEB = ServiceLogRoles.WEB;
   private static final String ROLE_API = ServiceLogRoles.API;
@@ -99,39 +94,70 @@ public class WebServerLogExtractor implements HostServiceLogExtractor {
     boolean hasWriteVerb;
   }
 
+  /** An HTTP frame's row, in {@link #parseHttpFrame} order. */
+  static final List<String> HTTP_FIELDS =
+      List.of(
+          "tcp.stream",
+          "ip.src",
+          "ip.dst",
+          "http.request.method",
+          "http.request.uri",
+          "http.response.code",
+          "http.content_type",
+          "http.server",
+          "frame.number");
+
+  private static final String HANDSHAKE_TYPE = "tls.handshake.type";
+  private static final String SERVER_HELLO = "2";
+
   @Override
-  public HostServiceLogResult extractAndPersist(FileEntity file, File pcap) {
-    Map<String, EndpointAgg> endpoints = new LinkedHashMap<>(); // key: serverIp|method|path
-    Map<String, WebServerStats> serverStats = new LinkedHashMap<>();
-    Set<String> tlsServers = new LinkedHashSet<>();
-
-    // HTTP pass — requests carry the method, responses carry the status/content-type/Server header;
-    // tshark surfaces the request URI on the response but not the method, so we correlate request →
-    // response per TCP stream (FIFO, valid for HTTP/1.x ordering).
-    // Fields: 0 tcp.stream 1 ip.src 2 ip.dst 3 method 4 uri 5 status 6 content_type 7 server
-    //   8 frame.number
-    Map<String, Deque<String[]>> pendingByStream = new HashMap<>();
-    runPass(
-        pcap,
-        "http",
-        new String[] {
-          "tcp.stream", "ip.src", "ip.dst", "http.request.method", "http.request.uri",
-          "http.response.code", "http.content_type", "http.server", "frame.number"
-        },
-        f -> parseHttpFrame(f, endpoints, serverStats, pendingByStream));
-
-    // TLS pass — ServerHello source IP:port is the TLS server. Port-qualified: only ServerHellos on
-    // web-facing ports (WEB_TLS_PORTS) count as web evidence; TLS on other ports is a different
-    // service and is ignored here (#496 AC #3).
-    runPass(
-        pcap,
-        "tls.handshake.type==2",
-        new String[] {"ip.src", "tcp.srcport"},
-        f -> {
-          String ip = trimToNull(f[0]);
-          Integer port = f.length > 1 ? parseIntOrNull(firstValue(f[1])) : null;
-          if (ip != null && isWebFacingTlsPort(port)) tlsServers.add(ip);
-        });
+  public Set<String> fields() {
+    Set<String> fields = new LinkedHashSet<>(HTTP_FIELDS);
+    fields.add(HANDSHAKE_TYPE);
+    fields.add("tcp.srcport");
+    return fields;
+  }
+
+  @Override
+  public Traffic open() {
+    return new Traffic();
+  }
+
+  /** One capture's HTTP endpoints and TLS servers, accumulated as frames arrive. */
+  public static final class Traffic implements FrameSubscriber.FrameConsumer {
+    final Map<String, EndpointAgg> endpoints = new LinkedHashMap<>(); // key: serverIp|method|path
+    final Map<String, WebServerStats> serverStats = new LinkedHashMap<>();
+    final Set<String> tlsServers = new LinkedHashSet<>();
+    private final Map<String, Deque<String[]>> pendingByStream = new HashMap<>();
+
+    @Override
+    public void accept(DissectedFrame frame) {
+      // HTTP (was -Y http) — requests carry the method, responses carry the status/content-type/
+      // Server header; tshark surfaces the request URI on the response but not the method, so we
+      // correlate request → response per TCP stream (FIFO, valid for HTTP/1.x ordering).
+      if (frame.carries("http")) {
+        String[] f = new String[HTTP_FIELDS.size()];
+        for (int i = 0; i < f.length; i++) f[i] = frame.all(HTTP_FIELDS.get(i));
+        f[4] = frame.first("http.request.uri"); // free text; may hold a ','
+        parseHttpFrame(f, endpoints, serverStats, pendingByStream);
+      }
+      // TLS (was -Y tls.handshake.type==2) — ServerHello source IP:port is the TLS server.
+      // Port-qualified: only ServerHellos on web-facing ports (WEB_TLS_PORTS) count as web
+      // evidence; TLS on other ports is a different service and is ignored here (#496 AC #3).
+      if (frame.values(HANDSHAKE_TYPE).contains(SERVER_HELLO)) {
+        String ip = trimToNull(frame.all("ip.src"));
+        Integer port = parseIntOrNull(firstValue(frame.all("tcp.srcport")));
+        if (ip != null && isWebFacingTlsPort(port)) tlsServers.add(ip);
+      }
+    }
+  }
+
+  @Override
+  public HostServiceLogResult extractAndPersist(FileEntity file, Dissection dissection) {
+    Traffic traffic = dissection.consumer(this);
+    Map<String, EndpointAgg> endpoints = traffic.endpoints;
+    Map<String, WebServerStats> serverStats = traffic.serverStats;
+    Set<String> tlsServers = traffic.tlsServers;
 
     persist(file, endpoints);
 
@@ -282,74 +308,6 @@ public class WebServerLogExtractor implements HostServiceLogExtractor {
     return jsonDominant || s.hasApiPath || s.hasWriteVerb;
   }
 
-  // ── tshark pass plumbing ─────────────────────────────────────────────────────
-
-  /** Runs one read-only tshark pass and feeds each non-empty output row (split on '|') to {@code rowConsumer}. */
-  private void runPass(
-      File pcap, String displayFilter, String[] fields, Consumer<String[]> rowConsumer) {
-    List<String> cmd = new ArrayList<>();
-    cmd.add("tshark");
-    cmd.add("-r");
-    cmd.add(pcap.getAbsolutePath());
-    cmd.add("-Y");
-    cmd.add(displayFilter);
-    cmd.add("-T");
-    cmd.add("fields");
-    cmd.add("-E");
-    cmd.add("separator=|");
-    for (String field : fields) {
-      cmd.add("-e");
-      cmd.add(field);
-    }
-    ProcessBuilder pb = new ProcessBuilder(cmd);
-    pb.redirectError(ProcessBuilder.Redirect.DISCARD);
-
-    Process process = null;
-    ExecutorService ioExecutor = null;
-    try {
-      process = pb.start();
-      final Process proc = process;
-      ioExecutor = Executors.newSingleThreadExecutor();
-      Future<?> stdoutTask =
-          ioExecutor.submit(
-              () -> {
-                try (BufferedReader reader =
-                    new BufferedReader(
-                        new InputStreamReader(proc.getInputStream(), StandardCharsets.UTF_8))) {
-                  String line;
-                  while ((line = reader.readLine()) != null) {
-                    if (!line.isEmpty()) rowConsumer.accept(line.split("\\|", -1));
-                  }
-                } catch (Exception ignored) {
-                  // best-effort
-                }
-              });
-
-      boolean finished = process.waitFor(2, TimeUnit.MINUTES);
-      if (!finished) {
-        log.warn("Web server extraction ({}) timed out; using partial results", displayFilter);
-      } else {
-        int exit = process.exitValue();
-        if (exit != 0) {
-          log.warn("Web server extraction: tshark exited with code {} for filter {}", exit, displayFilter);
-        }
-        try {
-          stdoutTask.get(2, TimeUnit.MINUTES);
-        } catch (Exception e) {
-          log.warn("Web server extraction: stdout drain incomplete; results may be partial");
-        }
-      }
-    } catch (InterruptedException e) {
-      log.warn("Web server extraction interrupted");
-      Thread.currentThread().interrupt();
-    } catch (Exception e) {
-      log.warn("Web server extraction failed: {}", e.getMessage());
-    } finally {
-      if (process != null) process.destroyForcibly();
-      if (ioExecutor != null) ioExecutor.shutdownNow();
-    }
-  }
-
   // ── Field helpers ────────────────────────────────────────────────────────────
 
   private static boolean isApiPath(String path) {
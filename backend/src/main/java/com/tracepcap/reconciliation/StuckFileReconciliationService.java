@@ -1,7 +1,12 @@
 package com.tracepcap.reconciliation;
 
+import com.tracepcap.analysis.service.AnalysisJobQueue;
+import com.tracepcap.analysis.service.AnalysisJobQueue.JobState;
 import com.tracepcap.analysis.service.AnalysisRecordService;
+import com.tracepcap.analysis.service.AnalysisService;
+import com.tracepcap.common.scheduling.SchedulerLeases;
 import com.tracepcap.config.ReconciliationProperties;
+import com.tracepcap.config.security.CurrentActor;
 import com.tracepcap.file.entity.FileEntity;
 import com.tracepcap.file.entity.FileEntity.FileStatus;
 import com.tracepcap.file.repository.FileRepository;
@@ -14,11 +19,24 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 /**
- * Recovers files that are stuck in {@link FileStatus#PROCESSING} — analysis that was never
- * submitted (rejected during shutdown), or a worker lost to a crash/restart (the async queue is
- * in-memory and does not survive a restart). Any such file whose upload predates a configurable
- * timeout is flipped to FAILED so it surfaces in the UI and can be retried instead of showing
- * "processing" forever (see #451).
+ * Recovers files that are stuck in {@link FileStatus#PROCESSING} with nothing left to finish them —
+ * typically an analysis that was never queued (the backend stopped between the upload's commit and
+ * the job insert). Any such file whose upload predates a configurable timeout is flipped to FAILED
+ * so it surfaces in the UI and can be retried instead of showing "processing" forever (see #451).
+ *
+ * <p>Unless its analysis got far enough to be worth continuing. One that committed a checkpoint is
+ * resubmitted, and picks up after it rather than starting over; one that is still committing them
+ * is left alone. Resumes are counted and capped ({@code max-resumes}), after which the file fails
+ * as before.
+ *
+ * <p>A file with a job in the {@link AnalysisJobQueue} is not stuck, and is left alone however
+ * long it waits or runs. A running job is judged by its lease, not its age: while its worker
+ * renews the heartbeat it is making progress, and a large capture may take well over the timeout.
+ * Jobs lost with their worker are the queue's own business: it requeues or fails them when their
+ * lease lapses.
+ *
+ * <p>Runs on one node at a time: every node schedules it, and the one holding the {@link
+ * SchedulerLeases} lease does the work.
  */
 @Slf4j
 @Service
@@ -32,7 +50,10 @@ public class StuckFileReconciliationService {
 
   private final FileRepository fileRepository;
   private final AnalysisRecordService analysisRecordService;
+  private final AnalysisService analysisService;
+  private final AnalysisJobQueue analysisJobQueue;
   private final ReconciliationProperties properties;
+  private final SchedulerLeases schedulerLeases;
 
   /** Scheduled task that flips files stuck in PROCESSING past the timeout to FAILED. */
   @Scheduled(cron = "${tracepcap.reconciliation.cron}")
@@ -41,6 +62,8 @@ public class StuckFileReconciliationService {
       log.debug("Stuck-file reconciliation is disabled");
       return;
     }
+    // One node reconciles for the cluster; two would resubmit the same file.
+    if (!schedulerLeases.acquire("stuck-file-reconciliation")) return;
 
     LocalDateTime cutoff = LocalDateTime.now().minusMinutes(properties.getTimeoutMinutes());
     List<FileEntity> stuck =
@@ -51,18 +74,46 @@ public class StuckFileReconciliationService {
       return;
     }
 
-    log.warn("Found {} file(s) stuck in PROCESSING before {}; marking FAILED", stuck.size(), cutoff);
+    log.warn("Found {} file(s) stuck in PROCESSING before {}", stuck.size(), cutoff);
 
     String message =
-        "Analysis did not complete within "
+        "Analysis was not queued or running "
             + properties.getTimeoutMinutes()
-            + " minutes (queue overflow, worker crash, or restart). Re-upload to retry.";
+            + " minutes after upload, and had nothing to resume from. Re-upload to retry.";
 
     int recovered = 0;
+    int resumed = 0;
     for (FileEntity file : stuck) {
       try {
-        analysisRecordService.markStuckFileFailed(file.getId(), message);
-        recovered++;
+        JobState job = analysisJobQueue.jobState(file.getId());
+        if (job == JobState.QUEUED || job == JobState.RUNNING) {
+          log.debug("File {} has a job {}; waiting", file.getId(), job);
+          continue;
+        }
+        if (job == JobState.LEASE_EXPIRED) {
+          // Resubmitting would be refused while the row is RUNNING; the queue's maintenance
+          // requeues it, or fails it after its last attempt.
+          log.debug("File {} lost its worker; left to the queue", file.getId());
+          continue;
+        }
+        if (analysisService.isAnalyzing(file.getId())) {
+          log.debug("File {} is being analysed on this instance; waiting", file.getId());
+          continue;
+        }
+        switch (analysisRecordService.claimStuckFile(
+            file.getId(), cutoff, properties.getMaxResumes())) {
+          case RESUME -> {
+            analysisJobQueue.submit(
+                file.getId(), CurrentActor.SYSTEM, AnalysisJobQueue.PRIORITY_RESUME);
+            resumed++;
+            recovered++;
+          }
+          case WAIT -> log.debug("File {} committed a checkpoint recently; waiting", file.getId());
+          case FAIL -> {
+            analysisRecordService.markStuckFileFailed(file.getId(), message);
+            recovered++;
+          }
+        }
       } catch (Exception e) {
         log.error(
             "Failed to reconcile stuck file {} (ID: {}): {}",
@@ -72,6 +123,10 @@ public class StuckFileReconciliationService {
       }
     }
 
-    log.warn("Stuck-file reconciliation completed. Recovered {}/{}", recovered, stuck.size());
+    log.warn(
+        "Stuck-file reconciliation completed. Recovered {}/{} ({} resumed from a checkpoint)",
+        recovered,
+        stuck.size(),
+        resumed);
   }
 }
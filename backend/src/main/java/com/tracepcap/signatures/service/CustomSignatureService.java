@@ -10,6 +10,7 @@ import java.net.UnknownHostException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -122,11 +123,11 @@ public class CustomSignatureService implements SignatureApplier {
         boolean matchAll = Boolean.TRUE.equals(rule.get("match_all"));
 
         if (hasPayload) {
-          if (!payloadContainsMatch(conv.getPackets(), payloadContains, matchAll)) continue;
+          if (!payloadContainsMatch(conv.iteratePackets(), payloadContains, matchAll)) continue;
         }
 
         if (hasRegex) {
-          if (!payloadRegexMatch(conv.getPackets(), payloadRegex, matchAll)) continue;
+          if (!payloadRegexMatch(conv.iteratePackets(), payloadRegex, matchAll)) continue;
         }
 
         if (!conv.getCustomSignatures().contains(name)) {
@@ -334,54 +335,77 @@ public class CustomSignatureService implements SignatureApplier {
    * patterns are found in the raw payload bytes of any packet in the conversation.
    *
    * <p>Each pattern entry is a map with one key: {@code ascii} (plain text) or {@code hex} (hex
-   * string, with optional {@code 0x} prefix and space/colon separators). Patterns are matched
-   * against the packet's lowercase hex payload string.
+   * string, with optional {@code 0x} prefix and space/colon separators). Both become byte needles,
+   * searched for in the packet's payload bytes; hex that does not decode never matches.
+   *
+   * <p>One pass over the packets, testing every pattern against each: under streaming ingest the
+   * packets are read back from disk, so a pass per pattern would re-read the conversation each time.
    */
   private boolean payloadContainsMatch(
-      List<PcapParserService.PacketInfo> packets,
+      Iterable<? extends PcapParserService.PacketRecord> packets,
       List<Map<String, Object>> patterns,
       boolean matchAll) {
+    List<byte[]> needles = new ArrayList<>(patterns.size());
     for (Map<String, Object> pattern : patterns) {
-      String hexNeedle = null;
+      byte[] needle = null;
       if (pattern.containsKey("ascii")) {
-        hexNeedle = asciiToHex(String.valueOf(pattern.get("ascii")));
+        needle = asciiToBytes(String.valueOf(pattern.get("ascii")));
       } else if (pattern.containsKey("hex")) {
-        hexNeedle = normalizeHex(String.valueOf(pattern.get("hex")));
+        needle = hexToBytes(String.valueOf(pattern.get("hex")));
       }
-      if (hexNeedle == null || hexNeedle.isEmpty()) {
+      if (needle == null || needle.length == 0) {
         if (matchAll) return false; // empty/invalid pattern counts as unmatched in AND mode
         continue;
       }
-
-      final String needle = hexNeedle;
-      boolean found =
-          packets.stream().anyMatch(p -> p.getPayload() != null && p.getPayload().contains(needle));
-
-      if (matchAll && !found) return false;
-      if (!matchAll && found) return true;
+      needles.add(needle);
+    }
+    if (needles.isEmpty()) return matchAll;
+
+    boolean[] found = new boolean[needles.size()];
+    int remaining = needles.size();
+    for (PcapParserService.PacketRecord p : packets) {
+      byte[] payload = p.getPayload();
+      if (payload == null) continue;
+      for (int i = 0; i < found.length; i++) {
+        if (found[i] || indexOf(payload, needles.get(i)) < 0) continue;
+        if (!matchAll) return true;
+        found[i] = true;
+        if (--remaining == 0) return true;
+      }
     }
-    // matchAll: all patterns passed. OR: none matched.
-    return matchAll;
+    // matchAll: some pattern never matched. OR: none matched.
+    return false;
   }
 
-  /** Converts an ASCII string to its lowercase hex representation (e.g. "GET" → "474554"). */
-  private String asciiToHex(String ascii) {
-    if (ascii == null) return "";
-    StringBuilder sb = new StringBuilder(ascii.length() * 2);
-    for (char c : ascii.toCharArray()) {
-      sb.append(String.format("%02x", (int) c));
-    }
-    return sb.toString();
+  /** The string's UTF-8 bytes (e.g. "GET" → {@code 47 45 54}), as the rules docs specify. */
+  private byte[] asciiToBytes(String ascii) {
+    return ascii != null ? ascii.getBytes(StandardCharsets.UTF_8) : null;
   }
 
   /**
-   * Strips hex formatting ({@code 0x} prefix, spaces, colons, hyphens) and lowercases the result.
+   * Strips hex formatting ({@code 0x} prefixes, spaces, colons, hyphens) and decodes the rest; null
+   * when it is not whole hex bytes. Prefixes go per byte too, so {@code "0xDE 0xAD"} is {@code
+   * "dead"}, as the rules docs promise.
    */
-  private String normalizeHex(String hex) {
-    if (hex == null) return "";
-    String s = hex.toLowerCase();
-    if (s.startsWith("0x")) s = s.substring(2);
-    return s.replaceAll("[\\s:\\-]", "");
+  private byte[] hexToBytes(String hex) {
+    if (hex == null) return null;
+    try {
+      return HexFormat.of().parseHex(hex.toLowerCase().replaceAll("0x|[\\s:\\-]", ""));
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  /** First index of {@code needle} in {@code haystack}, or -1. Payloads are 64 bytes at most. */
+  private static int indexOf(byte[] haystack, byte[] needle) {
+    outer:
+    for (int i = 0; i <= haystack.length - needle.length; i++) {
+      for (int j = 0; j < needle.length; j++) {
+        if (haystack[i + j] != needle[j]) continue outer;
+      }
+      return i;
+    }
+    return -1;
   }
 
   /**
@@ -389,7 +413,7 @@ public class CustomSignatureService implements SignatureApplier {
    * patterns match any packet payload in the conversation.
    *
    * <p>Each entry is a map with a required {@code pattern} key (standard Java regex) and an
-   * optional {@code case_insensitive: true} flag. Payloads are decoded from hex to ASCII/UTF-8 and
+   * optional {@code case_insensitive: true} flag. Payload bytes are decoded as UTF-8 and
    * capped at {@value #MAX_REGEX_PAYLOAD_BYTES} bytes per packet.
    *
    * <p>The cap bounds how much input any one match sees; it is <em>not</em> a guard against
@@ -401,11 +425,10 @@ public class CustomSignatureService implements SignatureApplier {
    * ceases to hold, the fix is an interruptible {@code CharSequence}, not a smaller cap.
    */
   private boolean payloadRegexMatch(
-      List<PcapParserService.PacketInfo> packets,
+      Iterable<? extends PcapParserService.PacketRecord> packets,
       List<Map<String, Object>> patterns,
       boolean matchAll) {
-    // Lazily decoded payloads — populated on first access for each packet index
-    String[] decoded = new String[packets.size()];
+    List<Pattern> compiledPatterns = new ArrayList<>(patterns.size());
     for (Map<String, Object> entry : patterns) {
       Object patternObj = entry.get("pattern");
       if (patternObj == null) {
@@ -436,35 +459,26 @@ public class CustomSignatureService implements SignatureApplier {
         if (matchAll) return false;
         continue;
       }
-
-      boolean found = false;
-      for (int i = 0; i < packets.size(); i++) {
-        String payloadHex = packets.get(i).getPayload();
-        if (payloadHex == null || payloadHex.isEmpty()) continue;
-        if (decoded[i] == null) decoded[i] = hexToAscii(payloadHex);
-        if (compiled.matcher(decoded[i]).find()) {
-          found = true;
-          break;
-        }
-      }
-
-      if (matchAll && !found) return false;
-      if (!matchAll && found) return true;
+      compiledPatterns.add(compiled);
     }
-    return matchAll;
-  }
-
-  /** Decodes a hex-encoded payload to a UTF-8 string, capped at {@value #MAX_REGEX_PAYLOAD_BYTES} bytes. */
-  private String hexToAscii(String hex) {
-    if (hex == null) return "";
-    int hexLen = Math.min(hex.length() & ~1, MAX_REGEX_PAYLOAD_BYTES * 2);
-    byte[] bytes = new byte[hexLen / 2];
-    int out = 0;
-    for (int i = 0; i < hexLen; i += 2) {
-      int h1 = Character.digit(hex.charAt(i), 16);
-      int h2 = Character.digit(hex.charAt(i + 1), 16);
-      bytes[out++] = (h1 == -1 || h2 == -1) ? (byte) '?' : (byte) ((h1 << 4) | h2);
+    if (compiledPatterns.isEmpty()) return matchAll;
+
+    // One pass, each payload decoded once and tried against every pattern still unmatched — the
+    // same single read of the conversation payloadContainsMatch makes.
+    boolean[] found = new boolean[compiledPatterns.size()];
+    int remaining = found.length;
+    for (PcapParserService.PacketRecord p : packets) {
+      byte[] payload = p.getPayload();
+      if (payload == null || payload.length == 0) continue;
+      int length = Math.min(payload.length, MAX_REGEX_PAYLOAD_BYTES);
+      String decoded = new String(payload, 0, length, StandardCharsets.UTF_8);
+      for (int i = 0; i < found.length; i++) {
+        if (found[i] || !compiledPatterns.get(i).matcher(decoded).find()) continue;
+        if (!matchAll) return true;
+        found[i] = true;
+        if (--remaining == 0) return true;
+      }
     }
-    return new String(bytes, 0, out, StandardCharsets.UTF_8);
+    return false;
   }
 }
@@ -55,7 +55,7 @@ public class ConversationTracerService {
           .protocol(p.protocol())
           .size(p.packetSize())
           .info(p.info())
-          .payloadHex(p.payload())
+          .payloadHex(p.payload() != null ? HexFormat.of().formatHex(p.payload()) : null)
           .build());
     }
 
@@ -219,18 +219,16 @@ public class ConversationTracerService {
   }
 
   /**
-   * Converts up to the first 64 bytes of a hex payload string to a printable ASCII excerpt.
-   * Non-printable bytes are replaced with '.'. Returns empty string if payload is null/blank.
+   * Converts up to the first 64 payload bytes to a printable ASCII excerpt. Non-printable bytes are
+   * replaced with '.'. Returns empty string if payload is null/empty.
    */
-  private String extractAsciiPayload(String hexPayload) {
-    if (hexPayload == null || hexPayload.isBlank()) return "";
-    // Strip any whitespace
-    String hex = hexPayload.replaceAll("\\s", "");
-    int byteLen = Math.min(hex.length() / 2, 64);
+  private String extractAsciiPayload(byte[] payload) {
+    if (payload == null) return "";
+    int byteLen = Math.min(payload.length, 64);
     if (byteLen == 0) return "";
     StringBuilder ascii = new StringBuilder(byteLen);
     for (int i = 0; i < byteLen; i++) {
-      int b = Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+      int b = payload[i] & 0xff;
       ascii.append((b >= 0x20 && b < 0x7f) ? (char) b : '.');
     }
     // Only return if there's meaningful printable content (at least 4 consecutive printable chars)
@@ -0,0 +1,29 @@
+-- ── Store packet payloads as bytes ────────────────────────────────────────────
+-- `packets.payload` held the first 64 payload bytes as a lowercase hex string: two characters per
+-- byte, up to 128 per row, plus a text-length header — and every write encoded it, every reader
+-- decoded it again. As BYTEA the column holds the bytes themselves; hex is now only an API format.
+--
+-- ALTER on the partitioned parent recurses into every partition, so this backfills all existing
+-- files in one statement. Each partition is rewritten under an ACCESS EXCLUSIVE lock, which is
+-- acceptable for the same reason V41's copy was: packets are short-lived (12h default retention)
+-- and the set is normally small.
+--
+-- The stored strings are not always clean hex. The writer only removed tshark's colons, so a packet
+-- with more than one occurrence of the payload field (two `udp.payload`s in GTP-U or VXLAN traffic)
+-- kept tshark's comma between them, and `decode(..., 'hex')` aborts on the first such row — taking
+-- the migration, and with it application startup, down. Every non-hex character is stripped first,
+-- then an odd trailing nibble is dropped rather than failing, as TsharkHexUtil.toBytes did.
+ALTER TABLE packets
+    ALTER COLUMN payload TYPE BYTEA
+    USING decode(
+        left(regexp_replace(payload, '[^0-9a-fA-F]', '', 'g'),
+             length(regexp_replace(payload, '[^0-9a-fA-F]', '', 'g'))
+                 - length(regexp_replace(payload, '[^0-9a-fA-F]', '', 'g')) % 2),
+        'hex');
+
+-- Substring test for the payloadContains filter. Postgres spells it `position(needle IN haystack)`,
+-- which JPA criteria cannot express for BYTEA; wrapped here it is an ordinary function call.
+-- Inlined by the planner, so it costs nothing over writing the expression out.
+CREATE OR REPLACE FUNCTION bytea_contains(haystack BYTEA, needle BYTEA) RETURNS BOOLEAN AS $$
+    SELECT position(needle IN haystack) > 0
+$$ LANGUAGE SQL IMMUTABLE STRICT;
@@ -0,0 +1,16 @@
+-- ── Stage checkpoints on the analysis record ──────────────────────────────────
+-- Analysis was one transaction: a failure in its last stage, or a restart forty minutes into a
+-- large capture, rolled back the parse, nDPI and Suricata along with every row they produced.
+-- It now commits stage by stage, and each commit records here how far it got, in the same
+-- transaction as the stage's output — so `checkpoint` never claims rows that are not there.
+--
+--   checkpoint     PARSED, EXTRACTED or CLASSIFIED; NULL until the first stage commits.
+--   parse_facts    What the parse learned that no table holds (per-host TTLs and MACs), kept so a
+--                  resumed run can classify hosts without parsing again. Cleared on completion.
+--   resume_count   How often reconciliation has restarted this analysis from its checkpoint; it
+--                  stops at tracepcap.reconciliation.max-resumes, so a capture that kills the
+--                  worker every time is failed rather than retried forever.
+ALTER TABLE analysis_results
+    ADD COLUMN checkpoint   VARCHAR(32),
+    ADD COLUMN parse_facts  JSONB,
+    ADD COLUMN resume_count INTEGER NOT NULL DEFAULT 0;
@@ -0,0 +1,44 @@
+-- ── Analysis job queue ───────────────────────────────────────────────────────
+-- Analyses were handed to an in-memory thread pool: a restart lost every queued one, and when the
+-- pool overflowed the upload request ran the analysis itself. Jobs are now rows here, claimed by
+-- workers with SELECT … FOR UPDATE SKIP LOCKED, so they survive restarts and any backend instance
+-- can take them.
+--
+--   lane          FAST for captures at or below tracepcap.analysis.queue.fast-lane-max-mb, else
+--                 BULK. Some workers take FAST jobs only, so a small capture never waits behind
+--                 a large one.
+--   priority      Higher first; within a priority, the submitter with the fewest running jobs
+--                 goes first, then the oldest job.
+--   submitted_by  Who uploaded the capture ("system" with auth off, or for internal resubmits).
+--   status        QUEUED → RUNNING → DONE or FAILED; a failed attempt with attempts left goes
+--                 back to QUEUED with available_at pushed out by the retry backoff.
+--   heartbeat_at  Touched by the worker holding a RUNNING job. One left untouched past the lease
+--                 (a worker lost to a crash or restart) is queued again.
+CREATE TABLE analysis_jobs (
+    id            UUID          PRIMARY KEY DEFAULT gen_random_uuid(),
+    file_id       UUID          NOT NULL REFERENCES files(id) ON DELETE CASCADE,
+    lane          VARCHAR(8)    NOT NULL,
+    priority      INTEGER       NOT NULL DEFAULT 0,
+    submitted_by  VARCHAR(255)  NOT NULL,
+    status        VARCHAR(16)   NOT NULL,
+    attempts      INTEGER       NOT NULL DEFAULT 0,
+    enqueued_at   TIMESTAMP     NOT NULL DEFAULT now(),
+    available_at  TIMESTAMP     NOT NULL DEFAULT now(),
+    started_at    TIMESTAMP,
+    heartbeat_at  TIMESTAMP,
+    finished_at   TIMESTAMP,
+    worker        VARCHAR(128),
+    last_error    TEXT
+);
+
+-- At most one live job per file: a second submit while one is queued or running is a no-op.
+CREATE UNIQUE INDEX uq_analysis_jobs_live_file
+    ON analysis_jobs (file_id) WHERE status IN ('QUEUED', 'RUNNING');
+
+-- The claim scan: queued jobs by lane, in the order they are taken.
+CREATE INDEX idx_analysis_jobs_queued
+    ON analysis_jobs (lane, priority DESC, enqueued_at) WHERE status = 'QUEUED';
+
+-- Fairness and lease checks read the running set by submitter and by heartbeat.
+CREATE INDEX idx_analysis_jobs_running
+    ON analysis_jobs (submitted_by, heartbeat_at) WHERE status = 'RUNNING';
@@ -0,0 +1,43 @@
+-- ── Multi-node coordination ──────────────────────────────────────────────────
+-- Analysis workers on every backend node already share the analysis_jobs queue. Two things were
+-- still per-JVM and pinned the deployment to one node: live progress, held in a map on the node
+-- running the job, so a poll answered by any other node saw none; and the cron jobs, which every
+-- node would run at once.
+
+-- Live progress of a running analysis, written by whichever node runs it and read by whichever
+-- node answers the poll. One row per file while its analysis runs; deleted when it finishes, and
+-- swept by the queue maintenance if its node dies first.
+CREATE TABLE analysis_progress (
+    file_id       UUID          PRIMARY KEY REFERENCES files(id) ON DELETE CASCADE,
+    stage_index   INTEGER       NOT NULL,
+    total_stages  INTEGER       NOT NULL,
+    stage         VARCHAR(128)  NOT NULL,
+    percent       INTEGER       NOT NULL,
+    node          VARCHAR(128)  NOT NULL,
+    updated_at    TIMESTAMP     NOT NULL DEFAULT now()
+);
+
+-- One row per singleton scheduled task (stuck-file reconciliation, file cleanup). The node named in
+-- holder runs the task until expires_at; it renews the lease each run, and any node may take it
+-- over once it has lapsed.
+CREATE TABLE scheduler_leases (
+    name        VARCHAR(64)   PRIMARY KEY,
+    holder      VARCHAR(128)  NOT NULL,
+    expires_at  TIMESTAMP     NOT NULL
+);
+
+-- A job becoming claimable is announced on the analysis_jobs channel, so idle workers on every node
+-- wake at once instead of on their next poll. In a trigger so that every path that queues a job —
+-- a submit, a retry, a requeued lease — announces it, on whichever node it ran. The notification
+-- is delivered when the transaction commits, never before the row is visible.
+CREATE FUNCTION notify_analysis_job_queued() RETURNS trigger AS $$
+BEGIN
+    PERFORM pg_notify('analysis_jobs', NEW.lane);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_analysis_jobs_queued
+    AFTER INSERT OR UPDATE OF status ON analysis_jobs
+    FOR EACH ROW WHEN (NEW.status = 'QUEUED')
+    EXECUTE FUNCTION notify_analysis_job_queued();
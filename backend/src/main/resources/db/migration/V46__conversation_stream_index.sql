@@ -0,0 +1,17 @@
+-- ── Conversation stream index ────────────────────────────────────────────────
+-- Following a conversation's stream (`tshark -z follow,tcp,raw,N`) needs N, tshark's own number for
+-- the connection. Session reconstruction used to find it with a tshark pass per click — up to four,
+-- one per transport and direction — before it could run the follow. The shared dissection pass
+-- already reads every frame at ingest, so the index is taken from there and kept here.
+--
+-- At most one of the two is set. Both NULL for protocols without streams (ICMP, ARP), and for rows
+-- analysed before this column existed; readers go back to looking the index up in that case.
+ALTER TABLE conversations
+    ADD COLUMN tcp_stream INTEGER,
+    ADD COLUMN udp_stream INTEGER;
+
+COMMENT ON COLUMN conversations.tcp_stream IS
+    'tshark tcp.stream of the conversation''s first frame. NULL when not TCP or not recorded.';
+
+COMMENT ON COLUMN conversations.udp_stream IS
+    'tshark udp.stream of the conversation''s first frame. NULL when not UDP or not recorded.';
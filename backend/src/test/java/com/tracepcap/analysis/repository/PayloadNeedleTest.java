@@ -0,0 +1,34 @@
+package com.tracepcap.analysis.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * What the {@code payloadContains} filter searches stored payloads for. Since V42 those are bytes,
+ * so the needle is too — a hex needle no longer has to line up on a byte boundary of a hex string.
+ */
+class PayloadNeedleTest {
+
+  @Test
+  void textIsSearchedForAsItsBytes() {
+    assertThat(ConversationRepository.toPayloadNeedle("  GET /admin "))
+        .isEqualTo("GET /admin".getBytes());
+  }
+
+  @Test
+  void hexIsDecodedWhetherPrefixedOrSeparated() {
+    byte[] get = {0x47, 0x45, 0x54};
+    assertThat(ConversationRepository.toPayloadNeedle("0x474554")).isEqualTo(get);
+    assertThat(ConversationRepository.toPayloadNeedle("0x47 45:54")).isEqualTo(get);
+    assertThat(ConversationRepository.toPayloadNeedle("47 45 54")).isEqualTo(get);
+    assertThat(ConversationRepository.toPayloadNeedle("47:45:54")).isEqualTo(get);
+  }
+
+  @Test
+  void hexThatDoesNotDecodeSearchesForNothing() {
+    assertThat(ConversationRepository.toPayloadNeedle("0x474")).isNull();
+    assertThat(ConversationRepository.toPayloadNeedle("0xzz")).isNull();
+    assertThat(ConversationRepository.toPayloadNeedle("   ")).isNull();
+  }
+}
@@ -0,0 +1,132 @@
+package com.tracepcap.analysis.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.tracepcap.file.entity.FileEntity;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * What one analysis is predicted to cost, and who starts when the predictions do not all fit. The
+ * heap budget is a share of whatever heap the test JVM has, so the admission cases are driven by
+ * the CPU budget instead — the rule is the same for both.
+ */
+class AnalysisAdmissionTest {
+
+  private static final long MB = 1024 * 1024;
+
+  private final AnalysisAdmission admission = new AnalysisAdmission();
+
+  AnalysisAdmissionTest() {
+    ReflectionTestUtils.setField(admission, "heapBudgetPercent", 100);
+    ReflectionTestUtils.setField(admission, "cpuBudget", 4.0);
+    ReflectionTestUtils.setField(admission, "parseWorkers", 2);
+  }
+
+  @AfterEach
+  void stopSampler() {
+    admission.stop();
+  }
+
+  /** From 20,000 packets up, a capture is predicted to keep {@code parseWorkers} cores busy. */
+  private static FileEntity capture(int packets) {
+    FileEntity f = new FileEntity();
+    f.setId(UUID.randomUUID());
+    f.setFileSize(packets * 100L);
+    f.setPacketCount(packets);
+    return f;
+  }
+
+  @Test
+  void streamingIngestPredictsLessHeapThanMemoryIngest() {
+    FileEntity file = capture(2_000_000);
+    file.setFileSize(400 * MB);
+
+    double memory = AnalysisAdmission.predict(file, false, 2).heapMb();
+    double streaming = AnalysisAdmission.predict(file, true, 2).heapMb();
+
+    assertThat(memory).isGreaterThan(400);
+    assertThat(streaming).isLessThan(memory / 4);
+  }
+
+  @Test
+  void smallCapturesArePredictedToUseLittleCpu() {
+    assertThat(AnalysisAdmission.predict(capture(500), false, 4).cpu())
+        .isEqualTo(AnalysisAdmission.CPU_MIN);
+    assertThat(AnalysisAdmission.predict(capture(1_000_000), false, 4).cpu()).isEqualTo(4);
+  }
+
+  @Test
+  void withoutAPacketCountTheSizeDecides() {
+    FileEntity file = new FileEntity();
+    file.setFileSize(100 * MB);
+
+    AnalysisAdmission.Demand demand = AnalysisAdmission.predict(file, false, 3);
+
+    // The upload cap's rule: a capture needs three times its size in heap.
+    assertThat(demand.heapMb()).isEqualTo(AnalysisAdmission.HEAP_FIXED_MB + 300);
+    assertThat(demand.cpu()).isEqualTo(3);
+  }
+
+  @Test
+  void aJobWaitsUntilTheRunningOnesLeaveRoom() throws Exception {
+    AnalysisAdmission.Ticket first = admission.admit(capture(100_000));
+    AnalysisAdmission.Ticket second = admission.admit(capture(100_000));
+
+    CompletableFuture<AnalysisAdmission.Ticket> third = admitAsync(capture(100_000));
+    assertStillWaiting(third);
+
+    first.close();
+    third.get(5, TimeUnit.SECONDS).close();
+    second.close();
+  }
+
+  @Test
+  void aJobLargerThanTheBudgetRunsAlone() throws Exception {
+    ReflectionTestUtils.setField(admission, "cpuBudget", 1.0);
+
+    AnalysisAdmission.Ticket large = admission.admit(capture(100_000));
+    CompletableFuture<AnalysisAdmission.Ticket> next = admitAsync(capture(100_000));
+    assertStillWaiting(next);
+
+    large.close();
+    next.get(5, TimeUnit.SECONDS).close();
+  }
+
+  @Test
+  void laterSmallJobsDoNotOvertakeAWaitingLargeOne() throws Exception {
+    AnalysisAdmission.Ticket running = admission.admit(capture(100_000));
+    // 2 of 4 cores in use; the large job needs 3, so it waits.
+    ReflectionTestUtils.setField(admission, "parseWorkers", 3);
+    CompletableFuture<AnalysisAdmission.Ticket> large = admitAsync(capture(100_000));
+    assertStillWaiting(large);
+
+    // The small one would fit beside the running job, but not beside both, so it waits its turn.
+    CompletableFuture<AnalysisAdmission.Ticket> small = admitAsync(capture(4_000));
+    assertStillWaiting(small);
+
+    running.close();
+    large.get(5, TimeUnit.SECONDS).close();
+    small.get(5, TimeUnit.SECONDS).close();
+  }
+
+  private CompletableFuture<AnalysisAdmission.Ticket> admitAsync(FileEntity file) {
+    return CompletableFuture.supplyAsync(
+        () -> {
+          try {
+            return admission.admit(file);
+          } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+          }
+        });
+  }
+
+  private static void assertStillWaiting(CompletableFuture<?> admitted) throws Exception {
+    Thread.sleep(200);
+    assertThat(admitted).isNotDone();
+  }
+}
@@ -0,0 +1,102 @@
+package com.tracepcap.analysis.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tracepcap.analysis.entity.AnalysisResultEntity;
+import com.tracepcap.analysis.entity.ConversationEntity;
+import com.tracepcap.analysis.repository.ConversationRepository;
+import com.tracepcap.analysis.service.PcapParserService.ConversationInfo;
+import com.tracepcap.analysis.service.PcapParserService.PcapAnalysisResult;
+import java.time.LocalDateTime;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * A resumed analysis classifies hosts from what the parse checkpoint stored, not from a parse. The
+ * facts go through a jsonb column on the way, which turns sets into lists and every number into
+ * whatever Jackson picks, so the round trip is what is worth checking.
+ */
+class AnalysisCheckpointsTest {
+
+  private final ConversationRepository conversations = mock(ConversationRepository.class);
+  private final AnalysisCheckpoints checkpoints =
+      new AnalysisCheckpoints(conversations, mock(JdbcTemplate.class));
+  private final UUID fileId = UUID.randomUUID();
+
+  /** What Hibernate's JSON mapping does to the map between the write and the read. */
+  private static Map<String, Object> throughJsonb(Map<String, Object> facts) throws Exception {
+    ObjectMapper json = new ObjectMapper();
+    return json.readValue(json.writeValueAsString(facts), new TypeReference<>() {});
+  }
+
+  @Test
+  void hostFactsSurviveTheParseCheckpoint() throws Exception {
+    PcapAnalysisResult parse = new PcapAnalysisResult();
+    parse.getHostTtls().put("10.0.0.1", 64);
+    parse.getHostMacs().put("10.0.0.1", "aa:bb:cc:dd:ee:01");
+    parse
+        .getHostMacObservations()
+        .put("10.0.0.1", new LinkedHashSet<>(List.of("aa:bb:cc:dd:ee:01", "aa:bb:cc:dd:ee:02")));
+    AnalysisResultEntity analysis =
+        AnalysisResultEntity.builder()
+            .packetCount(10L)
+            .parseFacts(throughJsonb(AnalysisCheckpoints.parseFacts(parse)))
+            .protocolStats(
+                throughJsonb(
+                    Map.of("TCP", Map.of("packetCount", 10, "bytes", 1500, "percentage", 100.0))))
+            .build();
+    when(conversations.findByFileId(fileId)).thenReturn(List.of());
+
+    PcapAnalysisResult restored = checkpoints.restore(fileId, analysis).parseResult();
+
+    assertThat(restored.getHostTtls()).isEqualTo(parse.getHostTtls());
+    assertThat(restored.getHostMacs()).isEqualTo(parse.getHostMacs());
+    assertThat(restored.getHostMacObservations()).isEqualTo(parse.getHostMacObservations());
+    assertThat(restored.getProtocolCounts()).containsEntry("TCP", 10L);
+    assertThat(restored.getProtocolBytes()).containsEntry("TCP", 1500L);
+    assertThat(restored.getPacketCount()).isEqualTo(10L);
+  }
+
+  @Test
+  void conversationsComeBackWithTheirIdsAndWithListsNeverNull() {
+    UUID id = UUID.randomUUID();
+    LocalDateTime start = LocalDateTime.of(2024, 1, 1, 12, 0);
+    ConversationEntity row =
+        ConversationEntity.builder()
+            .id(id)
+            .srcIp("10.0.0.1")
+            .srcPort(51000)
+            .dstIp("10.0.0.2")
+            .dstPort(443)
+            .protocol("TCP")
+            .appName("TLS")
+            .suricataAlerts(new String[] {"ET POLICY"})
+            .packetCount(3L)
+            .totalBytes(180L)
+            .startTime(start)
+            .endTime(start.plusSeconds(1))
+            .build();
+    when(conversations.findByFileId(fileId)).thenReturn(List.of(row));
+
+    AnalysisCheckpoints.Restored restored =
+        checkpoints.restore(fileId, AnalysisResultEntity.builder().build());
+
+    assertThat(restored.conversationIds()).containsExactly(id);
+    ConversationInfo c = restored.parseResult().getConversations().get(0);
+    assertThat(c.getDstPort()).isEqualTo(443);
+    assertThat(c.getAppName()).isEqualTo("TLS");
+    assertThat(c.getSuricataAlerts()).containsExactly("ET POLICY");
+    // Written as NULL when empty; the stages after the checkpoint add to these lists.
+    assertThat(c.getFlowRisks()).isEmpty();
+    c.getCustomSignatures().add("rule");
+    assertThat(c.getPacketCount()).isEqualTo(3L);
+  }
+}
@@ -0,0 +1,125 @@
+package com.tracepcap.analysis.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.tracepcap.analysis.entity.AnalysisJobEntity;
+import com.tracepcap.analysis.entity.AnalysisJobEntity.Lane;
+import com.tracepcap.analysis.repository.AnalysisJobRepository;
+import com.tracepcap.common.exception.ResourceNotFoundException;
+import com.tracepcap.file.entity.FileEntity;
+import com.tracepcap.file.repository.FileRepository;
+import java.util.Optional;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * The queue's decisions that do not need a database: which lane a capture joins, and what a failed
+ * attempt turns into. The claim itself is SQL ({@code FOR UPDATE SKIP LOCKED}) and is exercised
+ * only against Postgres.
+ */
+class AnalysisJobQueueTest {
+
+  private static final long MB = 1024 * 1024;
+
+  private final AnalysisJobRepository jobs = mock(AnalysisJobRepository.class);
+  private final FileRepository files = mock(FileRepository.class);
+  private final AnalysisJobQueue queue = new AnalysisJobQueue(jobs, files);
+
+  AnalysisJobQueueTest() {
+    ReflectionTestUtils.setField(queue, "fastLaneMaxMb", 50L);
+    ReflectionTestUtils.setField(queue, "maxAttempts", 3);
+    ReflectionTestUtils.setField(queue, "retryBackoffSeconds", 30L);
+  }
+
+  private static FileEntity capture(Long sizeBytes) {
+    FileEntity f = new FileEntity();
+    f.setId(UUID.randomUUID());
+    f.setFileSize(sizeBytes);
+    return f;
+  }
+
+  private static AnalysisJobEntity runningJob(int attempts) {
+    return AnalysisJobEntity.builder()
+        .id(UUID.randomUUID())
+        .fileId(UUID.randomUUID())
+        .lane(Lane.BULK)
+        .attempts(attempts)
+        .build();
+  }
+
+  @Test
+  void smallCapturesTakeTheFastLane() {
+    assertThat(queue.laneFor(capture(9_000L))).isEqualTo(Lane.FAST);
+    assertThat(queue.laneFor(capture(50 * MB))).isEqualTo(Lane.FAST);
+    assertThat(queue.laneFor(capture(50 * MB + 1))).isEqualTo(Lane.BULK);
+    // Size unknown: not assumed small.
+    assertThat(queue.laneFor(capture(null))).isEqualTo(Lane.BULK);
+  }
+
+  @Test
+  void submitQueuesInTheCapturesLaneAsItsUploader() {
+    FileEntity file = capture(2 * MB);
+    when(files.findById(file.getId())).thenReturn(Optional.of(file));
+    when(jobs.enqueue(any(), anyString(), eq(0), anyString())).thenReturn(1);
+
+    assertThat(queue.submit(file.getId(), "alice", AnalysisJobQueue.PRIORITY_UPLOAD)).isTrue();
+    verify(jobs).enqueue(file.getId(), "FAST", AnalysisJobQueue.PRIORITY_UPLOAD, "alice");
+  }
+
+  @Test
+  void aSecondSubmitForALiveJobIsANoOp() {
+    FileEntity file = capture(2 * MB);
+    when(files.findById(file.getId())).thenReturn(Optional.of(file));
+    when(jobs.enqueue(any(), anyString(), eq(0), anyString())).thenReturn(0);
+
+    assertThat(queue.submit(file.getId(), "alice", AnalysisJobQueue.PRIORITY_UPLOAD)).isFalse();
+  }
+
+  @Test
+  void aFailedAttemptIsRetriedWithADoublingBackoff() {
+    AnalysisJobEntity first = runningJob(1);
+    assertThat(queue.fail(first, new RuntimeException("tshark exited 2"))).isFalse();
+    verify(jobs).markRetry(eq(first.getId()), eq(30L), anyString());
+
+    AnalysisJobEntity second = runningJob(2);
+    assertThat(queue.fail(second, new RuntimeException("tshark exited 2"))).isFalse();
+    verify(jobs).markRetry(eq(second.getId()), eq(60L), anyString());
+    verify(jobs, never()).markFailed(any(), anyString());
+  }
+
+  @Test
+  void theLastAttemptFailsForGood() {
+    AnalysisJobEntity last = runningJob(3);
+
+    assertThat(queue.fail(last, new RuntimeException("Failed to analyze file"))).isTrue();
+    verify(jobs).markFailed(eq(last.getId()), anyString());
+    verify(jobs, never()).markRetry(any(), anyLong(), anyString());
+  }
+
+  @Test
+  void aMissingFileIsNotRetried() {
+    AnalysisJobEntity job = runningJob(1);
+
+    assertThat(queue.fail(job, new ResourceNotFoundException("File not found"))).isTrue();
+    verify(jobs).markFailed(eq(job.getId()), anyString());
+    verify(jobs, never()).markRetry(any(), anyLong(), anyString());
+  }
+
+  @Test
+  void theErrorRecordedNamesTheRootCause() {
+    AnalysisJobEntity job = runningJob(3);
+
+    queue.fail(
+        job, new RuntimeException("Failed to analyze file", new IllegalStateException("OOM")));
+    verify(jobs).markFailed(job.getId(), "Failed to analyze file: OOM");
+  }
+}
@@ -0,0 +1,135 @@
+package com.tracepcap.analysis.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.tracepcap.analysis.entity.AnalysisJobEntity;
+import com.tracepcap.analysis.entity.AnalysisJobEntity.Lane;
+import com.tracepcap.analysis.entity.AnalysisResultEntity;
+import com.tracepcap.analysis.entity.AnalysisResultEntity.AnalysisStatus;
+import com.tracepcap.analysis.repository.AnalysisJobRepository;
+import com.tracepcap.analysis.repository.AnalysisResultRepository;
+import com.tracepcap.file.entity.FileEntity;
+import com.tracepcap.file.repository.FileRepository;
+import java.util.Optional;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * A failed attempt the queue will retry leaves the analysis IN_PROGRESS and the file PROCESSING —
+ * the progress poller keeps answering 202 — and only the last attempt's failure is final.
+ */
+class AnalysisJobWorkersTest {
+
+  private final AnalysisJobRepository jobs = mock(AnalysisJobRepository.class);
+  private final FileRepository files = mock(FileRepository.class);
+  private final AnalysisResultRepository results = mock(AnalysisResultRepository.class);
+  private final AnalysisService analysisService = mock(AnalysisService.class);
+  private final AnalysisJobQueue queue = new AnalysisJobQueue(jobs, files);
+  private final AnalysisRecordService records = new AnalysisRecordService(results, files);
+  private final AnalysisJobWorkers workers =
+      new AnalysisJobWorkers(
+          queue,
+          analysisService,
+          records,
+          results,
+          mock(AnalysisProgressService.class),
+          mock(AnalysisAdmission.class),
+          files);
+
+  private final FileEntity file = new FileEntity();
+  private final AnalysisResultEntity analysis =
+      AnalysisResultEntity.builder()
+          .id(UUID.randomUUID())
+          .status(AnalysisStatus.IN_PROGRESS)
+          .build();
+
+  AnalysisJobWorkersTest() {
+    ReflectionTestUtils.setField(queue, "maxAttempts", 3);
+    ReflectionTestUtils.setField(queue, "retryBackoffSeconds", 30L);
+    file.setId(UUID.randomUUID());
+    file.setStatus(FileEntity.FileStatus.PROCESSING);
+    when(files.findById(file.getId())).thenReturn(Optional.of(file));
+    when(results.findById(analysis.getId())).thenReturn(Optional.of(analysis));
+    when(results.findByFileId(file.getId())).thenReturn(Optional.of(analysis));
+  }
+
+  private AnalysisJobEntity attempt(int n) {
+    return AnalysisJobEntity.builder()
+        .id(UUID.randomUUID())
+        .fileId(file.getId())
+        .lane(Lane.BULK)
+        .attempts(n)
+        .build();
+  }
+
+  /** What {@code analyzeFile} does when a stage throws: record the error, then rethrow. */
+  private void failingAttempt() {
+    doAnswer(
+            inv -> {
+              records.recordFailedAttempt(analysis.getId(), "tshark exited 2");
+              throw new RuntimeException("Failed to analyze file");
+            })
+        .when(analysisService)
+        .analyzeFile(file.getId());
+  }
+
+  @Test
+  void aFailedAttemptThatWillBeRetriedIsNotReportedAsAFailure() throws Exception {
+    failingAttempt();
+    workers.run(attempt(1));
+
+    verify(jobs).markRetry(any(), anyLong(), anyString());
+    assertThat(analysis.getStatus()).isEqualTo(AnalysisStatus.IN_PROGRESS);
+    assertThat(file.getStatus()).isEqualTo(FileEntity.FileStatus.PROCESSING);
+
+    doNothing().when(analysisService).analyzeFile(file.getId());
+    AnalysisJobEntity retry = attempt(2);
+    workers.run(retry);
+
+    verify(jobs).markDone(retry.getId());
+    verify(jobs, never()).markFailed(any(), anyString());
+    assertThat(analysis.getStatus()).isNotEqualTo(AnalysisStatus.FAILED);
+    assertThat(file.getStatus()).isNotEqualTo(FileEntity.FileStatus.FAILED);
+  }
+
+  @Test
+  void theLastAttemptsFailureIsFinalAndKeepsItsCause() throws Exception {
+    failingAttempt();
+    AnalysisJobEntity last = attempt(3);
+    workers.run(last);
+
+    verify(jobs).markFailed(any(), anyString());
+    assertThat(analysis.getStatus()).isEqualTo(AnalysisStatus.FAILED);
+    assertThat(analysis.getErrorMessage()).isEqualTo("tshark exited 2");
+    assertThat(file.getStatus()).isEqualTo(FileEntity.FileStatus.FAILED);
+  }
+
+  @Test
+  void anAttemptThatFindsTheFileAlreadyRunningIsReleasedNotCompleted() throws Exception {
+    // Nothing ran, so the job is neither DONE nor a failed attempt: it goes back to the queue.
+    doThrow(new AnalysisAlreadyRunningException(file.getId()))
+        .when(analysisService)
+        .analyzeFile(file.getId());
+    AnalysisJobEntity job = attempt(3);
+
+    workers.run(job);
+
+    verify(jobs).markReleased(job.getId(), 30L);
+    verify(jobs, never()).markDone(any());
+    verify(jobs, never()).markRetry(any(), anyLong(), anyString());
+    verify(jobs, never()).markFailed(any(), anyString());
+    assertThat(analysis.getStatus()).isEqualTo(AnalysisStatus.IN_PROGRESS);
+    assertThat(file.getStatus()).isEqualTo(FileEntity.FileStatus.PROCESSING);
+  }
+}
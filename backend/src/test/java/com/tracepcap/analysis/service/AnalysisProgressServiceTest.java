@@ -0,0 +1,56 @@
+package com.tracepcap.analysis.service;
+
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.tracepcap.analysis.dto.AnalysisProgressResponse;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+
+/**
+ * Progress is now a database write from inside the analysis. It is still only there for the loading
+ * bar, so losing the database for a moment must cost the bar and not the analysis.
+ */
+class AnalysisProgressServiceTest {
+
+  private final JdbcTemplate jdbc = mock(JdbcTemplate.class);
+  private final PlatformTransactionManager transactions = mock(PlatformTransactionManager.class);
+  private final AnalysisProgressService progress = new AnalysisProgressService(jdbc, transactions);
+
+  @Test
+  void aFailedWriteDoesNotReachTheAnalysis() {
+    when(transactions.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+    when(jdbc.update(anyString(), any(Object[].class)))
+        .thenThrow(new DataAccessResourceFailureException("connection refused"));
+
+    UUID fileId = UUID.randomUUID();
+    assertThatCode(
+            () -> progress.update(fileId, new AnalysisProgressResponse(2, 7, "Running nDPI", 18)))
+        .doesNotThrowAnyException();
+    assertThatCode(() -> progress.clear(fileId)).doesNotThrowAnyException();
+  }
+
+  @Test
+  void writesCommitOutsideTheStageTransaction() {
+    when(transactions.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+
+    progress.update(UUID.randomUUID(), new AnalysisProgressResponse(1, 7, "Parsing", 0));
+
+    verify(transactions)
+        .getTransaction(
+            argThat(
+                (TransactionDefinition d) ->
+                    d.getPropagationBehavior()
+                        == TransactionDefinition.PROPAGATION_REQUIRES_NEW));
+  }
+}
@@ -1,51 +1,129 @@
 package com.tracepcap.analysis.service;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
+import com.tracepcap.analysis.entity.AnalysisResultEntity;
+import com.tracepcap.analysis.entity.AnalysisResultEntity.AnalysisCheckpoint;
+import com.tracepcap.file.entity.FileEntity;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.List;
+import java.util.UUID;
 import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 /**
- * {@code analyzeFile} must run in a transaction.
+ * Where {@code analyzeFile}'s transactions begin and end.
  *
- * <p>#750 removed the annotation while restructuring the method, and nothing noticed. It compiles,
- * every unit test passes, and small captures analyse fine — JPA autocommits each save on its own.
- * The failure needs more than {@code JPA_FLUSH_INTERVAL} (50) conversations in one capture, because
- * only then does the batch flush run, and {@code EntityManager.flush()} outside a transaction
- * throws {@code TransactionRequiredException}. Every fixture used to verify that change was smaller
- * than that, so the pipeline reported success on small files and failed on real ones.
+ * <p>#750 removed the method's {@code @Transactional} while restructuring it, and nothing noticed.
+ * It compiled, every unit test passed, and small captures analysed fine — JPA autocommits each save
+ * on its own. Only a capture large enough to reach a batch flush failed, with {@code
+ * TransactionRequiredException}, and every fixture used to verify that change was smaller.
  *
- * <p>An annotation assertion is a blunt test, and the right one here: the defect was not bad logic,
- * it was a silently deleted line that no behavioural test in reach could see.
+ * <p>The method now has no transaction of its own on purpose: each step of the pipeline runs in one
+ * and commits with its checkpoint. So the hazard runs both ways. Without a transaction around a
+ * step, its writes fail or autocommit piecemeal; with one around the whole method, every step would
+ * join it and nothing would commit until the end — the all-or-nothing pipeline the checkpoints
+ * replaced, still writing checkpoints that mean nothing. Neither shows on a small capture.
  */
 class AnalysisTransactionBoundaryTest {
 
+  private final PlatformTransactionManager txManager = mock(PlatformTransactionManager.class);
+  private final TransactionStatus tx = mock(TransactionStatus.class);
+  private final AnalysisRecordService records = mock(AnalysisRecordService.class);
+  private final AnalysisResultEntity analysis = new AnalysisResultEntity();
+
+  @Test
+  void analyzeFileIsNotOneTransaction() throws Exception {
+    Method analyze = AnalysisService.class.getMethod("analyzeFile", UUID.class);
+
+    assertThat(analyze.getAnnotation(Transactional.class))
+        .as("every checkpoint would join this transaction and commit only when it did")
+        .isNull();
+    assertThat(AnalysisService.class.getAnnotation(Transactional.class))
+        .as("a class-level annotation would wrap analyzeFile just the same")
+        .isNull();
+  }
+
   @Test
-  void analyzeFileIsTransactional() throws Exception {
-    Method analyze = AnalysisService.class.getMethod("analyzeFile", java.util.UUID.class);
-
-    Transactional tx = analyze.getAnnotation(Transactional.class);
-
-    assertThat(tx)
-        .as(
-            "analyzeFile writes conversations and packets in a batch and calls "
-                + "EntityManager.flush() every %d conversations; without a transaction that throws "
-                + "on any capture large enough to reach the flush",
-            50)
-        .isNotNull();
-
-    // Presence alone is not the property. readOnly = true is a plausible copy-paste from the four
-    // read-only methods below this one, and NOT_SUPPORTED suspends the transaction outright —
-    // both would satisfy isAnnotationPresent while reproducing the bug exactly.
-    assertThat(tx.readOnly()).as("a read-only transaction cannot flush writes").isFalse();
-    assertThat(tx.propagation())
-        .as("the pipeline must run inside a real transaction, not with one suspended")
-        .isIn(Propagation.REQUIRED, Propagation.REQUIRES_NEW);
-
-    // AdjudicatorRunner listens for AnalysisCompletedEvent on AFTER_COMMIT. With no transaction
-    // there is no commit, so identity adjudication was skipped for every file — including the
-    // small ones that appeared to analyse fine.
+  void aCheckpointCanOnlyBeSavedInTheTransactionOfTheStageItVouchesFor() throws Exception {
+    Method save =
+        AnalysisRecordService.class.getMethod(
+            "saveCheckpoint", AnalysisResultEntity.class, AnalysisCheckpoint.class);
+
+    Transactional annotation = save.getAnnotation(Transactional.class);
+
+    // REQUIRES_NEW would commit the checkpoint ahead of the rows; REQUIRED would quietly open a
+    // transaction of its own for a caller that had none.
+    assertThat(annotation).isNotNull();
+    assertThat(annotation.propagation()).isEqualTo(Propagation.MANDATORY);
+  }
+
+  @Test
+  void aStageRunsInATransactionThatCommitsWithItsCheckpoint() throws Exception {
+    when(txManager.getTransaction(any())).thenReturn(tx);
+    Runnable stage = mock(Runnable.class);
+
+    commitStage(AnalysisCheckpoint.EXTRACTED, stage);
+
+    InOrder order = inOrder(txManager, stage, records);
+    order.verify(txManager).getTransaction(any());
+    order.verify(stage).run();
+    order.verify(records).saveCheckpoint(analysis, AnalysisCheckpoint.EXTRACTED);
+    order.verify(txManager).commit(tx);
+  }
+
+  @Test
+  void aFailedStageRollsBackWithoutReachingItsCheckpoint() throws Exception {
+    when(txManager.getTransaction(any())).thenReturn(tx);
+    Runnable stage =
+        () -> {
+          throw new IllegalStateException("suricata died");
+        };
+
+    assertThatThrownBy(() -> commitStage(AnalysisCheckpoint.EXTRACTED, stage))
+        .hasMessage("suricata died");
+
+    verify(records, never()).saveCheckpoint(any(), any());
+    verify(txManager).rollback(tx);
+    verify(txManager, never()).commit(any());
+  }
+
+  private void commitStage(AnalysisCheckpoint reached, Runnable stage) throws Exception {
+    Constructor<?> ctor = AnalysisService.class.getDeclaredConstructors()[0];
+    ctor.setAccessible(true);
+    AnalysisService service =
+        (AnalysisService) ctor.newInstance(new Object[ctor.getParameterCount()]);
+    ReflectionTestUtils.setField(service, "transactionManager", txManager);
+    ReflectionTestUtils.setField(service, "analysisRecordService", records);
+
+    Class<?> runClass = Class.forName(AnalysisService.class.getName() + "$Run");
+    Constructor<?> runCtor = runClass.getDeclaredConstructors()[0];
+    runCtor.setAccessible(true);
+    Object run = runCtor.newInstance(UUID.randomUUID(), new FileEntity(), List.of(), analysis);
+
+    Method commit =
+        AnalysisService.class.getDeclaredMethod(
+            "commitStage", runClass, AnalysisCheckpoint.class, Runnable.class);
+    commit.setAccessible(true);
+    try {
+      commit.invoke(service, run, reached, stage);
+    } catch (InvocationTargetException e) {
+      if (e.getCause() instanceof RuntimeException r) throw r;
+      throw e;
+    }
   }
 }
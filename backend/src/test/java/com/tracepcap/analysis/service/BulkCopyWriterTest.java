@@ -0,0 +1,152 @@
+package com.tracepcap.analysis.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.tracepcap.analysis.service.BulkCopyWriter.BinaryRows;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The binary COPY encoding, byte for byte.
+ *
+ * <p>The server rejects a malformed stream as a whole, so an encoding slip fails every analysis
+ * rather than one column — but only against a real database, which the unit suite does not have.
+ * These pin the layouts from the PostgreSQL protocol docs so a slip fails here first.
+ */
+class BulkCopyWriterTest {
+
+  @Test
+  void streamIsFramedBySignatureAndTrailer() throws IOException {
+    ByteBuffer b = encode(out -> {});
+
+    byte[] signature = new byte[11];
+    b.get(signature);
+    assertThat(signature)
+        .containsExactly('P', 'G', 'C', 'O', 'P', 'Y', '\n', 0xFF, '\r', '\n', 0);
+    assertThat(b.getInt()).as("flags").isZero();
+    assertThat(b.getInt()).as("header extension").isZero();
+    assertThat(b.getShort()).as("trailer").isEqualTo((short) -1);
+    assertThat(b.hasRemaining()).isFalse();
+  }
+
+  @Test
+  void scalarsAreLengthPrefixedAndNullIsMinusOne() throws IOException {
+    UUID id = UUID.fromString("0f1e2d3c-4b5a-4968-8776-655443322110");
+    ByteBuffer b =
+        body(
+            out -> {
+              out.row(6);
+              out.uuid(id);
+              out.int4(443);
+              out.int8(1L << 40);
+              out.text("héllo");
+              out.int4(null);
+              out.bytea(new byte[] {0x17, 0x03});
+            });
+
+    assertThat(b.getShort()).isEqualTo((short) 6);
+    assertThat(b.getInt()).isEqualTo(16);
+    assertThat(new UUID(b.getLong(), b.getLong())).isEqualTo(id);
+    assertThat(b.getInt()).isEqualTo(4);
+    assertThat(b.getInt()).isEqualTo(443);
+    assertThat(b.getInt()).isEqualTo(8);
+    assertThat(b.getLong()).isEqualTo(1L << 40);
+    byte[] utf8 = "héllo".getBytes(StandardCharsets.UTF_8);
+    assertThat(b.getInt()).isEqualTo(utf8.length);
+    byte[] text = new byte[utf8.length];
+    b.get(text);
+    assertThat(text).isEqualTo(utf8);
+    assertThat(b.getInt()).isEqualTo(-1);
+    assertThat(b.getInt()).isEqualTo(2);
+    assertThat(b.get()).isEqualTo((byte) 0x17);
+    assertThat(b.get()).isEqualTo((byte) 0x03);
+  }
+
+  @Test
+  void timestampCountsMicrosecondsFromTheYear2000() throws IOException {
+    ByteBuffer b =
+        body(
+            out -> {
+              out.timestamp(LocalDateTime.of(2000, 1, 1, 0, 0, 0, 1_000));
+              out.timestamp(LocalDateTime.of(1999, 12, 31, 23, 59, 59));
+              out.timestamp(LocalDateTime.of(2024, 3, 1, 12, 30, 15, 123_456_789));
+            });
+
+    assertThat(b.getInt()).isEqualTo(8);
+    assertThat(b.getLong()).isEqualTo(1);
+    assertThat(b.getInt()).isEqualTo(8);
+    assertThat(b.getLong()).isEqualTo(-1_000_000);
+    assertThat(b.getInt()).isEqualTo(8);
+    // extract(epoch FROM '2024-03-01 12:30:15.123456'::timestamp - '2000-01-01') * 1e6
+    assertThat(b.getLong()).isEqualTo(762_611_415_123_456L);
+  }
+
+  @Test
+  void textArrayIsOneDimensionalAndEmptyIsNull() throws IOException {
+    ByteBuffer b =
+        body(
+            out -> {
+              out.textArray(List.of("a", "bc"));
+              out.textArray(List.of());
+              out.textArray(Arrays.asList("x", null));
+            });
+
+    assertThat(b.getInt()).as("length").isEqualTo(20 + 4 + 1 + 4 + 2);
+    assertThat(b.getInt()).as("ndim").isEqualTo(1);
+    assertThat(b.getInt()).as("has nulls").isZero();
+    assertThat(b.getInt()).as("element oid").isEqualTo(25);
+    assertThat(b.getInt()).as("dimension").isEqualTo(2);
+    assertThat(b.getInt()).as("lower bound").isEqualTo(1);
+    assertThat(b.getInt()).isEqualTo(1);
+    assertThat(b.get()).isEqualTo((byte) 'a');
+    assertThat(b.getInt()).isEqualTo(2);
+    assertThat(b.get()).isEqualTo((byte) 'b');
+    assertThat(b.get()).isEqualTo((byte) 'c');
+
+    assertThat(b.getInt()).as("empty list").isEqualTo(-1);
+
+    assertThat(b.getInt()).isEqualTo(20 + 4 + 1 + 4);
+    assertThat(b.getInt()).isEqualTo(1);
+    assertThat(b.getInt()).as("has nulls").isEqualTo(1);
+    b.position(b.position() + 12);
+    assertThat(b.getInt()).isEqualTo(1);
+    assertThat(b.get()).isEqualTo((byte) 'x');
+    assertThat(b.getInt()).as("null element").isEqualTo(-1);
+  }
+
+  @Test
+  void newIdsAreVersionFourAndDistinct() {
+    UUID a = BulkCopyWriter.newId();
+    UUID b = BulkCopyWriter.newId();
+    assertThat(a.version()).isEqualTo(4);
+    assertThat(a.variant()).isEqualTo(2);
+    assertThat(a).isNotEqualTo(b);
+  }
+
+  private interface Rows {
+    void write(BinaryRows out) throws IOException;
+  }
+
+  private static ByteBuffer encode(Rows rows) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    BinaryRows out = new BinaryRows(bytes);
+    out.header();
+    rows.write(out);
+    out.trailer();
+    return ByteBuffer.wrap(bytes.toByteArray());
+  }
+
+  /** The rows alone: past the 19-byte header, with the trailer still at the end. */
+  private static ByteBuffer body(Rows rows) throws IOException {
+    ByteBuffer b = encode(rows);
+    b.position(19);
+    return b;
+  }
+}
@@ -0,0 +1,115 @@
+package com.tracepcap.analysis.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assumptions.assumeThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Chunks must be captures in their own right whose records, minus the warm-up, put back together
+ * are the original capture record for record. Anything less and the parallel parse is reading
+ * packets that were never captured.
+ */
+class CaptureSplitterTest {
+
+  private static final Path SAMPLES = Path.of("..", "sample-files");
+
+  @TempDir Path dir;
+
+  @Test
+  void classicPcapChunksReassembleToTheOriginalRecords() throws IOException {
+    Path capture = dir.resolve("ftp.pcap");
+    try (InputStream in = getClass().getResourceAsStream("/fixtures/ftp.pcap")) {
+      Files.copy(in, capture);
+    }
+    assertReassembles(capture, 2_000, 5);
+  }
+
+  @Test
+  void pcapngChunksCarryTheirSectionAndInterfaceHeaders() throws IOException {
+    Path capture = SAMPLES.resolve("telegram_voice.pcapng");
+    assumeThat(Files.exists(capture)).as("sample capture %s", capture).isTrue();
+
+    List<CaptureSplitter.Chunk> chunks = assertReassembles(capture, 20_000, 50);
+
+    byte[] second = Files.readAllBytes(chunks.get(1).file());
+    assertThat(ByteBuffer.wrap(second, 0, 4).getInt())
+        .as("starts with an SHB")
+        .isEqualTo(0x0a0d0d0a);
+    assertThat(ByteBuffer.wrap(second, 16, 8).order(ByteOrder.LITTLE_ENDIAN).getLong())
+        .as("section length no longer describes the copy, so it is unspecified")
+        .isEqualTo(-1L);
+  }
+
+  @Test
+  void warmUpIsBoundedAndTheFirstChunkHasNone() throws IOException {
+    Path capture = dir.resolve("ftp.pcap");
+    try (InputStream in = getClass().getResourceAsStream("/fixtures/ftp.pcap")) {
+      Files.copy(in, capture);
+    }
+    List<CaptureSplitter.Chunk> chunks = new ArrayList<>();
+    Files.createDirectories(dir.resolve("chunks"));
+    CaptureSplitter.split(capture, dir.resolve("chunks"), 1_000, 3, chunks::add);
+
+    assertThat(chunks).hasSizeGreaterThan(2);
+    assertThat(chunks.get(0).warmup()).isZero();
+    assertThat(chunks.get(0).firstFrame()).isEqualTo(1);
+    assertThat(chunks.subList(1, chunks.size()))
+        .allSatisfy(c -> assertThat(c.warmup()).isEqualTo(3));
+  }
+
+  /** Splits, re-reads every chunk, and checks its own records against the original's, in order. */
+  private List<CaptureSplitter.Chunk> assertReassembles(Path capture, long chunkBytes, int warmup)
+      throws IOException {
+    List<byte[]> original = records(capture, 0);
+    Path out = Files.createDirectories(dir.resolve("chunks-" + capture.getFileName()));
+    List<CaptureSplitter.Chunk> chunks = new ArrayList<>();
+    int written = CaptureSplitter.split(capture, out, chunkBytes, warmup, chunks::add);
+
+    assertThat(written).isEqualTo(chunks.size()).isGreaterThan(1);
+    List<byte[]> reassembled = new ArrayList<>();
+    for (CaptureSplitter.Chunk c : chunks) {
+      assertThat(c.firstFrame()).isEqualTo(reassembled.size() + 1);
+      List<byte[]> own = records(c.file(), c.warmup());
+      List<byte[]> warm = records(c.file(), 0).subList(0, c.warmup());
+      int from = (int) c.firstFrame() - 1 - c.warmup();
+      for (int i = 0; i < warm.size(); i++) {
+        assertThat(warm.get(i))
+            .as("warm-up record %d", from + i + 1)
+            .isEqualTo(original.get(from + i));
+      }
+      reassembled.addAll(own);
+    }
+    assertThat(reassembled).hasSameSizeAs(original);
+    for (int i = 0; i < original.size(); i++) {
+      assertThat(reassembled.get(i)).as("frame %d", i + 1).isEqualTo(original.get(i));
+    }
+    return chunks;
+  }
+
+  /** Timestamp, lengths, link type and bytes of every record after the first {@code skip}. */
+  private static List<byte[]> records(Path capture, int skip) throws IOException {
+    List<byte[]> out = new ArrayList<>();
+    try (PcapFileReader r = PcapFileReader.open(capture)) {
+      while (r.next()) {
+        if (r.frameNumber() <= skip) continue;
+        ByteBuffer data = r.data();
+        ByteBuffer rec = ByteBuffer.allocate(20 + data.remaining());
+        rec.putLong(r.epochNanos()).putInt(r.originalLength()).putInt(r.linkType());
+        rec.putInt(r.capturedLength()).put(data.duplicate());
+        out.add(Arrays.copyOf(rec.array(), rec.position()));
+      }
+    }
+    return out;
+  }
+}
@@ -0,0 +1,129 @@
+package com.tracepcap.analysis.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.tracepcap.analysis.spi.DissectedFrame;
+import com.tracepcap.analysis.spi.FrameSubscriber;
+import com.tracepcap.analysis.spi.FrameSubscriber.FrameConsumer;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The shared pass's reading of {@code tshark -T json -e ...} output, and its fan-out. Every
+ * field-based stage now sees the capture only through this, so a frame lost or mangled here is lost
+ * to all of them at once.
+ */
+class DissectionBusTest {
+
+  /** Records every frame it is given. */
+  private static final class Recorder implements FrameConsumer {
+    final List<DissectedFrame> frames = new ArrayList<>();
+
+    @Override
+    public void accept(DissectedFrame frame) {
+      frames.add(frame);
+    }
+  }
+
+  private static FrameSubscriber<Recorder> subscriber() {
+    return new FrameSubscriber<>() {
+      @Override
+      public Set<String> fields() {
+        return Set.of();
+      }
+
+      @Override
+      public Recorder open() {
+        return new Recorder();
+      }
+    };
+  }
+
+  private static void read(Map<FrameSubscriber<?>, FrameConsumer> consumers, String json)
+      throws IOException {
+    new DissectionBus.Pass(consumers, 0)
+        .read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  void eachPacketBecomesOneFrameWithEveryOccurrenceOfEachField() throws IOException {
+    Recorder recorder = new Recorder();
+    read(
+        Map.of(subscriber(), recorder),
+        """
+        [
+          {
+            "_index": "packets-2024-01-01",
+            "_type": "doc",
+            "_score": null,
+            "_source": {
+              "layers": {
+                "frame.protocols": ["eth:ethertype:ip:udp:dns"],
+                "ip.src": ["10.0.0.53"],
+                "dns.a": ["1.1.1.1", "1.0.0.1"],
+                "dns.qry.name": ["a,b|c.example"]
+              }
+            }
+          },
+          {"_source": {"layers": {"frame.protocols": "eth:ethertype:arp"}}}
+        ]
+        """);
+
+    assertThat(recorder.frames).hasSize(2);
+    DissectedFrame dns = recorder.frames.get(0);
+    assertThat(dns.values("dns.a")).containsExactly("1.1.1.1", "1.0.0.1");
+    assertThat(dns.all("dns.a")).isEqualTo("1.1.1.1,1.0.0.1");
+    assertThat(dns.first("dns.qry.name")).isEqualTo("a,b|c.example");
+    assertThat(dns.carries("dns")).isTrue();
+    assertThat(dns.carries("ip.src")).isFalse();
+    // A bare scalar is read as a single occurrence.
+    assertThat(recorder.frames.get(1).carries("arp")).isTrue();
+    assertThat(recorder.frames.get(1).first("ip.src")).isEmpty();
+  }
+
+  @Test
+  void aConsumerThatThrowsIsDroppedAndCostsNoOneElse() throws IOException {
+    Recorder healthy = new Recorder();
+    List<DissectedFrame> seenByFaulty = new ArrayList<>();
+    FrameConsumer faulty =
+        frame -> {
+          seenByFaulty.add(frame);
+          throw new IllegalStateException("boom");
+        };
+    Map<FrameSubscriber<?>, FrameConsumer> consumers = new LinkedHashMap<>();
+    consumers.put(subscriber(), faulty);
+    consumers.put(subscriber(), healthy);
+
+    read(
+        consumers,
+        """
+        [{"_source": {"layers": {"frame.protocols": ["eth"]}}},
+         {"_source": {"layers": {"frame.protocols": ["eth"]}}},
+         {"_source": {"layers": {"frame.protocols": ["eth"]}}}]
+        """);
+
+    assertThat(seenByFaulty).hasSize(1);
+    assertThat(healthy.frames).hasSize(3);
+  }
+
+  @Test
+  void tsharkBooleansReadTheSameAcrossVersions() {
+    // tshark 3 prints 1/0, tshark 4 True/False.
+    assertThat(response("1").isTrue("dns.flags.response")).isTrue();
+    assertThat(response("True").isTrue("dns.flags.response")).isTrue();
+    assertThat(response("0").isTrue("dns.flags.response")).isFalse();
+    assertThat(response("False").isTrue("dns.flags.response")).isFalse();
+    assertThat(new DissectedFrame(Map.of()).isTrue("dns.flags.response")).isFalse();
+  }
+
+  private static DissectedFrame response(String flag) {
+    return new DissectedFrame(Map.of("dns.flags.response", List.of(flag)));
+  }
+}
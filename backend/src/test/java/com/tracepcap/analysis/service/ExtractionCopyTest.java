@@ -0,0 +1,84 @@
+package com.tracepcap.analysis.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.tracepcap.analysis.service.PcapParserService.ConversationInfo;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Extractors write to copies of the conversations, and only what {@code extractionCopy} and {@code
+ * mergeFrom} carry reaches the capture. Both list every field by hand, so a field added to {@link
+ * ConversationInfo} and not to them is an extractor's write that vanishes without an error — which
+ * is what the first test is for.
+ */
+class ExtractionCopyTest {
+
+  /** Packet sources: shared by the copy, never written by an extractor. */
+  private static final Set<String> NOT_FACTS = Set.of("stored", "spilled", "persisted");
+
+  @Test
+  void everyFieldAnExtractorWritesReachesTheCapture() throws Exception {
+    ConversationInfo original = new ConversationInfo();
+    ConversationInfo before = original.extractionCopy();
+    ConversationInfo after = original.extractionCopy();
+
+    List<Field> facts = new ArrayList<>();
+    for (Field f : ConversationInfo.class.getDeclaredFields()) {
+      if (Modifier.isStatic(f.getModifiers()) || NOT_FACTS.contains(f.getName())) continue;
+      f.setAccessible(true);
+      f.set(after, valueFor(f));
+      facts.add(f);
+    }
+    original.mergeFrom(before, after);
+
+    assertThat(facts).isNotEmpty();
+    for (Field f : facts) {
+      assertThat(f.get(original)).as(f.getName()).isEqualTo(f.get(after));
+      // And the copy carries it too: a dependent's view is built from copies.
+      assertThat(f.get(original.extractionCopy())).as(f.getName()).isEqualTo(f.get(after));
+    }
+  }
+
+  @Test
+  void aCopysListsAreItsOwn() {
+    ConversationInfo original = new ConversationInfo();
+
+    original.extractionCopy().getSuricataAlerts().add("ET POLICY");
+
+    assertThat(original.getSuricataAlerts()).isEmpty();
+  }
+
+  @Test
+  void fieldsTheExtractorLeftAloneKeepWhatAnotherWrote() {
+    ConversationInfo conversation = new ConversationInfo();
+    ConversationInfo before = conversation.extractionCopy();
+    ConversationInfo after = conversation.extractionCopy();
+    after.setTsharkProtocol("TLS");
+    // Merged first, as nDPI's copy would be.
+    conversation.setAppName("YouTube");
+    conversation.getFlowRisks().add("Known Proto on Non Std Port");
+
+    conversation.mergeFrom(before, after);
+
+    assertThat(conversation.getAppName()).isEqualTo("YouTube");
+    assertThat(conversation.getFlowRisks()).containsExactly("Known Proto on Non Std Port");
+    assertThat(conversation.getTsharkProtocol()).isEqualTo("TLS");
+  }
+
+  private static Object valueFor(Field f) {
+    Class<?> type = f.getType();
+    if (type == String.class) return "value of " + f.getName();
+    if (type == Integer.class) return f.getName().length();
+    if (type == Long.class) return (long) f.getName().hashCode();
+    if (type == LocalDateTime.class) return LocalDateTime.of(2024, 1, 1, 0, f.getName().length());
+    if (type == List.class) return new ArrayList<>(List.of("entry of " + f.getName()));
+    throw new AssertionError(
+        "No test value for " + f.getName() + " (" + type.getSimpleName() + "); add one here");
+  }
+}
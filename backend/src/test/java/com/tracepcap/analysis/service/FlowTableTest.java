@@ -0,0 +1,81 @@
+package com.tracepcap.analysis.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The binary key must group packets exactly as the string key it replaced: same buckets, A→B and
+ * B→A together, nothing else merged.
+ */
+class FlowTableTest {
+
+  @Test
+  void bothDirectionsOfAFlowAreOneEntry() {
+    FlowTable flows = new FlowTable();
+    long a = FlowTable.endpoint(1, 40000);
+    long b = FlowTable.endpoint(2, 443);
+
+    assertThat(flows.findOrAdd(a, b, 7)).isEqualTo(-1);
+    assertThat(flows.findOrAdd(b, a, 7)).isZero();
+    assertThat(flows.findOrAdd(a, b, 8)).as("another protocol").isEqualTo(-2);
+    assertThat(flows.findOrAdd(a, FlowTable.endpoint(2, 444), 7)).as("another port").isEqualTo(-3);
+    assertThat(flows.size()).isEqualTo(3);
+  }
+
+  @Test
+  void noPortIsItsOwnValueNotPortZero() {
+    FlowTable flows = new FlowTable();
+    int none = FlowTable.NO_PORT;
+
+    flows.findOrAdd(FlowTable.endpoint(1, none), FlowTable.endpoint(2, none), 3);
+
+    assertThat(flows.findOrAdd(FlowTable.endpoint(1, 0), FlowTable.endpoint(2, 0), 3)).isNegative();
+    assertThat(flows.findOrAdd(FlowTable.endpoint(2, none), FlowTable.endpoint(1, none), 3))
+        .isZero();
+  }
+
+  @Test
+  void groupsLikeTheStringKeyOverRandomTraffic() {
+    // Few hosts and ports so that flows repeat in both directions, including a host talking to
+    // itself; enough of them to force several rehashes.
+    Random random = new Random(779);
+    FlowTable flows = new FlowTable();
+    Map<String, Integer> byString = new HashMap<>();
+    for (int i = 0; i < 200_000; i++) {
+      int src = random.nextInt(300);
+      int dst = random.nextInt(300);
+      boolean ported = random.nextInt(10) > 0;
+      int sport = ported ? random.nextInt(40) : FlowTable.NO_PORT;
+      int dport = ported ? random.nextInt(40) : FlowTable.NO_PORT;
+      int protocol = random.nextInt(3);
+
+      int found =
+          flows.findOrAdd(
+              FlowTable.endpoint(src, sport), FlowTable.endpoint(dst, dport), protocol);
+      int index = found >= 0 ? found : -found - 1;
+      Integer expected =
+          byString.putIfAbsent(stringKey(src, sport, dst, dport, protocol), byString.size());
+
+      assertThat(index).as("packet %d", i).isEqualTo(expected != null ? expected : index);
+      assertThat(found < 0).as("packet %d is new", i).isEqualTo(expected == null);
+    }
+    assertThat(flows.size()).isEqualTo(byString.size()).isGreaterThan(10_000);
+  }
+
+  /** The key the parser used to build per packet, addresses spelled as strings. */
+  private static String stringKey(int src, int sport, int dst, int dport, int protocol) {
+    String srcIp = "10.0." + src / 256 + "." + src % 256;
+    String dstIp = "10.0." + dst / 256 + "." + dst % 256;
+    Integer srcPort = sport == FlowTable.NO_PORT ? null : sport;
+    Integer dstPort = dport == FlowTable.NO_PORT ? null : dport;
+    int cmp = srcIp.compareTo(dstIp);
+    if (cmp < 0 || (cmp == 0 && srcPort != null && dstPort != null && srcPort < dstPort)) {
+      return String.format("%s:%s-%s:%s-%s", srcIp, srcPort, dstIp, dstPort, protocol);
+    }
+    return String.format("%s:%s-%s:%s-%s", dstIp, dstPort, srcIp, srcPort, protocol);
+  }
+}
@@ -0,0 +1,168 @@
+package com.tracepcap.analysis.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assumptions.assumeThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.tracepcap.common.exception.StorageException;
+import com.tracepcap.file.entity.FileEntity;
+import com.tracepcap.file.service.CaptureCache;
+import com.tracepcap.file.service.FrameIndex;
+import com.tracepcap.file.service.FrameSlicer;
+import com.tracepcap.file.service.StorageService;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.LongStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * An export cut through the frame index must hold exactly the frames asked for, as the capture
+ * stored them — the same packets tshark's {@code frame.number} filter picks — while reading little
+ * more of the capture than those frames.
+ */
+class FrameIndexerTest {
+
+  private static final Path SAMPLES = Path.of("..", "sample-files");
+
+  private final StorageService storage = mock(StorageService.class);
+  private final CaptureCache cache = mock(CaptureCache.class);
+  private final FrameSlicer slicer = new FrameSlicer(storage, cache);
+
+  @TempDir Path dir;
+
+  @Test
+  void chosenFramesOfAClassicPcapComeOutInFileOrder() throws IOException {
+    Path capture = fixture();
+    FileEntity file = indexed(capture);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    assertThat(slicer.writeFrames(file, List.of(7L, 1L, 3L, 7L), out)).isTrue();
+
+    Path exported = Files.write(dir.resolve("out.pcap"), out.toByteArray());
+    List<byte[]> original = records(capture);
+    assertThat(records(exported))
+        .containsExactly(original.get(0), original.get(2), original.get(6));
+  }
+
+  @Test
+  void pcapngFramesKeepTheirSectionAndInterfaces() throws IOException {
+    Path capture = SAMPLES.resolve("telegram_voice.pcapng");
+    assumeThat(Files.exists(capture)).as("sample capture %s", capture).isTrue();
+    FileEntity file = indexed(capture);
+    List<byte[]> original = records(capture);
+    List<Long> wanted = List.of(2L, 50L, (long) original.size());
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    assertThat(slicer.writeFrames(file, wanted, out)).isTrue();
+
+    Path exported = Files.write(dir.resolve("out.pcapng"), out.toByteArray());
+    assertThat(records(exported))
+        .containsExactly(
+            original.get(1), original.get(49), original.get(original.size() - 1));
+  }
+
+  @Test
+  void neighbouringFramesAreFetchedInOneRead() throws IOException {
+    Path capture = fixture();
+    FileEntity file = indexed(capture);
+    List<Long> wanted = LongStream.rangeClosed(1, 20).boxed().toList();
+
+    assertThat(slicer.writeFrames(file, wanted, new ByteArrayOutputStream())).isTrue();
+
+    verify(storage, atMost(1)).downloadRange(eq(file.getMinioPath()), anyLong(), anyLong());
+    verify(storage, never()).downloadFile(any());
+  }
+
+  @Test
+  void aCaptureWithoutAnIndexIsLeftToTshark() throws IOException {
+    FileEntity file = stored(fixture());
+    String index = FrameIndex.objectName(file.getMinioPath());
+    when(storage.downloadRange(eq(index), anyLong(), anyLong()))
+        .thenThrow(new StorageException("The specified key does not exist"));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    assertThat(slicer.writeFrames(file, List.of(1L), out)).isFalse();
+    assertThat(out.size()).isZero();
+  }
+
+  @Test
+  void framesBeyondTheIndexAreLeftToTshark() throws IOException {
+    Path capture = fixture();
+    FileEntity file = indexed(capture);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    assertThat(slicer.writeFrames(file, List.of(records(capture).size() + 1L), out)).isFalse();
+    assertThat(out.size()).isZero();
+  }
+
+  private Path fixture() throws IOException {
+    Path capture = dir.resolve("ftp.pcap");
+    if (Files.exists(capture)) return capture;
+    try (InputStream in = getClass().getResourceAsStream("/fixtures/ftp.pcap")) {
+      Files.copy(in, capture);
+    }
+    return capture;
+  }
+
+  /** A file whose capture MinIO serves, in ranges, from {@code capture}. */
+  private FileEntity stored(Path capture) throws IOException {
+    FileEntity file = new FileEntity();
+    file.setId(UUID.randomUUID());
+    file.setMinioPath(file.getId() + ".pcap");
+    file.setFileSize(Files.size(capture));
+    serve(file.getMinioPath(), capture);
+    return file;
+  }
+
+  /** {@link #stored}, with the index analysis would have built for it. */
+  private FileEntity indexed(Path capture) throws IOException {
+    FileEntity file = stored(capture);
+    Path index = dir.resolve(file.getId() + ".frames");
+    FrameIndexer.write(capture, index);
+    serve(FrameIndex.objectName(file.getMinioPath()), index);
+    return file;
+  }
+
+  private void serve(String object, Path local) throws IOException {
+    byte[] bytes = Files.readAllBytes(local);
+    when(storage.downloadRange(eq(object), anyLong(), anyLong()))
+        .thenAnswer(
+            inv -> {
+              int from = Math.toIntExact(inv.getArgument(1, Long.class));
+              int to = Math.toIntExact(from + inv.getArgument(2, Long.class));
+              return new ByteArrayInputStream(Arrays.copyOfRange(bytes, from, to));
+            });
+  }
+
+  /** Timestamp, lengths, link type and bytes of every record. */
+  private static List<byte[]> records(Path capture) throws IOException {
+    List<byte[]> out = new ArrayList<>();
+    try (PcapFileReader r = PcapFileReader.open(capture)) {
+      while (r.next()) {
+        ByteBuffer data = r.data();
+        ByteBuffer rec = ByteBuffer.allocate(20 + data.remaining());
+        rec.putLong(r.epochNanos()).putInt(r.originalLength()).putInt(r.linkType());
+        rec.putInt(r.capturedLength()).put(data.duplicate());
+        out.add(Arrays.copyOf(rec.array(), rec.position()));
+      }
+    }
+    return out;
+  }
+}
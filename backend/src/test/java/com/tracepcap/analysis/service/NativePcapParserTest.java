@@ -0,0 +1,404 @@
+package com.tracepcap.analysis.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.tracepcap.analysis.service.PcapParserService.ConversationInfo;
+import com.tracepcap.analysis.service.PcapParserService.PacketInfo;
+import com.tracepcap.analysis.service.PcapParserService.PcapAnalysisResult;
+import com.tracepcap.common.process.SubprocessGovernor;
+import com.tracepcap.config.SubprocessProperties;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * The native header pass against hand-built captures, where every expected value is known.
+ *
+ * <p>The parity test compares native output with tshark's over real captures; this pins the
+ * decoding rules themselves — padding excluded from payload, first-seen TTL/MAC, the SYN-without-ACK
+ * initiator, ARP claims — without needing tshark at all. When tshark is absent the Protocol column
+ * falls back to the transport name, so the ports below are deliberately ones no tshark dissector
+ * claims and the labels agree either way.
+ */
+class NativePcapParserTest {
+
+  @TempDir Path dir;
+
+  private static final byte[] MAC_A = mac(0x02, 0, 0, 0, 0, 0x0a);
+  private static final byte[] MAC_B = mac(0x02, 0, 0, 0, 0, 0x0b);
+  private static final byte[] IP_A = {10, 0, 0, 1};
+  private static final byte[] IP_B = {10, 0, 0, 2};
+  private static final long T0 = 1_700_000_000L;
+
+  private static PcapParserService parser() {
+    return new PcapParserService(new SubprocessGovernor(new SubprocessProperties()));
+  }
+
+  @Test
+  void tcpHandshakeBecomesOneConversationWithItsInitiator() throws IOException {
+    File pcap =
+        classicPcap(
+            ByteOrder.LITTLE_ENDIAN,
+            frame(T0, 0, eth(MAC_A, MAC_B, 0x0800, ipv4(IP_A, IP_B, 64, 6, tcp(40000, 5555, 0x02)))),
+            frame(
+                T0, 1_000, eth(MAC_B, MAC_A, 0x0800, ipv4(IP_B, IP_A, 128, 6, tcp(5555, 40000, 0x12)))),
+            frame(
+                T0,
+                2_500,
+                eth(
+                    MAC_A,
+                    MAC_B,
+                    0x0800,
+                    ipv4(IP_A, IP_B, 64, 6, tcp(40000, 5555, 0x18, new byte[] {1, 2, 3})))));
+
+    PcapAnalysisResult result = nativeParse(pcap);
+
+    assertThat(result.getPacketCount()).isEqualTo(3);
+    assertThat(result.getConversations()).hasSize(1);
+    ConversationInfo conv = result.getConversations().get(0);
+    assertThat(conv.getSrcIp()).isEqualTo("10.0.0.1");
+    assertThat(conv.getSrcPort()).isEqualTo(40000);
+    assertThat(conv.getDstPort()).isEqualTo(5555);
+    assertThat(conv.getInitiatorIp()).isEqualTo("10.0.0.1");
+    assertThat(conv.getInitiatorPort()).isEqualTo(40000);
+    assertThat(packets(conv))
+        .extracting(PacketInfo::getPacketNumber)
+        .containsExactly(1L, 2L, 3L);
+    assertThat(conv.getStartTime()).isEqualTo(local(T0 * 1000));
+    assertThat(conv.getEndTime()).isEqualTo(local(T0 * 1000 + 2));
+
+    assertThat(result.getHostTtls()).containsEntry("10.0.0.1", 64).containsEntry("10.0.0.2", 128);
+    assertThat(result.getHostMacs()).containsEntry("10.0.0.1", "02:00:00:00:00:0a");
+  }
+
+  @Test
+  void ethernetPaddingNeverReachesThePayload() throws IOException {
+    // A 3-byte TCP payload makes a 57-byte frame, which the wire pads to 60. The pad bytes are
+    // past the IP total length and are not payload — tshark's tcp.payload excludes them too.
+    byte[] frame =
+        eth(MAC_A, MAC_B, 0x0800, ipv4(IP_A, IP_B, 64, 6, tcp(40000, 5555, 0x18, new byte[] {1, 2, 3})));
+    byte[] padded = new byte[60];
+    System.arraycopy(frame, 0, padded, 0, frame.length);
+    padded[59] = (byte) 0xee;
+
+    PcapAnalysisResult result = nativeParse(classicPcap(ByteOrder.BIG_ENDIAN, frame(T0, 0, padded)));
+
+    PacketInfo pkt = packets(result.getConversations().get(0)).get(0);
+    assertThat(pkt.getPayload()).containsExactly(1, 2, 3);
+    assertThat(pkt.getPacketSize()).isEqualTo(60);
+  }
+
+  @Test
+  void vlanTaggedUdpIsDecodedThroughTheTag() throws IOException {
+    byte[] udp = udp(53000, 6000, "hi".getBytes());
+    byte[] tagged = vlan(MAC_A, MAC_B, 100, 0x0800, ipv4(IP_A, IP_B, 63, 17, udp));
+
+    PcapAnalysisResult result = nativeParse(classicPcap(ByteOrder.LITTLE_ENDIAN, frame(T0, 0, tagged)));
+
+    ConversationInfo conv = result.getConversations().get(0);
+    assertThat(conv.getSrcPort()).isEqualTo(53000);
+    assertThat(conv.getDstPort()).isEqualTo(6000);
+    assertThat(conv.getInitiatorIp()).as("UDP has no handshake, so no initiator").isNull();
+    assertThat(packets(conv).get(0).getPayload()).isEqualTo("hi".getBytes());
+  }
+
+  @Test
+  void arpRecordsTheOwnershipClaimAndKeysOnTheEmbeddedAddresses() throws IOException {
+    byte[] arp = arp(MAC_A, IP_A, IP_B);
+
+    PcapAnalysisResult result =
+        nativeParse(classicPcap(ByteOrder.LITTLE_ENDIAN, frame(T0, 0, eth(MAC_A, bcast(), 0x0806, arp))));
+
+    assertThat(result.getHostMacObservations().get("10.0.0.1"))
+        .containsExactly("02:00:00:00:00:0a");
+    ConversationInfo conv = result.getConversations().get(0);
+    assertThat(List.of(conv.getSrcIp(), conv.getDstIp()))
+        .containsExactlyInAnyOrder("10.0.0.1", "10.0.0.2");
+    assertThat(conv.getSrcPort()).isNull();
+  }
+
+  @Test
+  void ipv6AddressesAreSpelledTheWayTsharkSpellsThem() throws IOException {
+    byte[] src = new byte[16];
+    byte[] dst = new byte[16];
+    src[0] = (byte) 0xfe;
+    src[1] = (byte) 0x80;
+    src[15] = 1;
+    dst[0] = 0x20;
+    dst[1] = 0x01;
+    dst[2] = 0x0d;
+    dst[3] = (byte) 0xb8;
+    dst[15] = 2;
+
+    PcapAnalysisResult result =
+        nativeParse(
+            classicPcap(
+                ByteOrder.LITTLE_ENDIAN,
+                frame(T0, 0, eth(MAC_A, MAC_B, 0x86dd, ipv6(src, dst, 6, tcp(40000, 5555, 0x02))))));
+
+    ConversationInfo conv = result.getConversations().get(0);
+    assertThat(List.of(conv.getSrcIp(), conv.getDstIp()))
+        .containsExactlyInAnyOrder("fe80::1", "2001:db8::2");
+    assertThat(result.getHostTtls()).as("ip.ttl is IPv4-only").isEmpty();
+  }
+
+  @Test
+  void rfc5952CompressionPicksTheFirstLongestZeroRun() {
+    assertThat(PacketHeaderDecoder.formatIpv6(words(0x2001, 0xdb8, 0, 0, 1, 0, 0, 1)))
+        .isEqualTo("2001:db8::1:0:0:1");
+    assertThat(PacketHeaderDecoder.formatIpv6(words(0x2001, 0xdb8, 0, 1, 1, 1, 1, 1)))
+        .as("a single zero group is not compressed")
+        .isEqualTo("2001:db8:0:1:1:1:1:1");
+    assertThat(PacketHeaderDecoder.formatIpv6(words(0, 0, 0, 0, 0, 0, 0, 0))).isEqualTo("::");
+    assertThat(PacketHeaderDecoder.formatIpv6(words(0, 0, 0, 0, 0, 0xffff, 0xc000, 0x0201)))
+        .isEqualTo("::ffff:192.0.2.1");
+  }
+
+  @Test
+  void pcapngHonoursTheInterfaceTimestampResolution() throws IOException {
+    // if_tsresol = 9: timestamps are in nanoseconds rather than the default microseconds.
+    long ts = T0 * 1_000_000_000L + 123_456_789L;
+    byte[] pkt = eth(MAC_A, MAC_B, 0x0800, ipv4(IP_A, IP_B, 64, 17, udp(53000, 6000, new byte[0])));
+
+    PcapAnalysisResult result = nativeParse(pcapng(ts, pkt));
+
+    assertThat(result.getPacketCount()).isEqualTo(1);
+    assertThat(result.getStartTime()).isEqualTo(local(T0 * 1000 + 123));
+  }
+
+  @Test
+  void aRecordCutShortEndsTheParseWithoutLosingEarlierPackets() throws IOException {
+    File pcap =
+        classicPcap(
+            ByteOrder.LITTLE_ENDIAN,
+            frame(T0, 0, eth(MAC_A, MAC_B, 0x0800, ipv4(IP_A, IP_B, 64, 6, tcp(40000, 5555, 0x02)))));
+    byte[] whole = Files.readAllBytes(pcap.toPath());
+    byte[] truncatedTail = new byte[whole.length + 20];
+    System.arraycopy(whole, 0, truncatedTail, 0, whole.length);
+    // A record header promising 100 bytes, followed by only 4.
+    ByteBuffer.wrap(truncatedTail, whole.length, 16)
+        .order(ByteOrder.LITTLE_ENDIAN)
+        .putInt((int) T0)
+        .putInt(0)
+        .putInt(100)
+        .putInt(100);
+    Files.write(pcap.toPath(), truncatedTail);
+
+    assertThat(nativeParse(pcap).getPacketCount()).isEqualTo(1);
+  }
+
+  @Test
+  void streamingIngestReadsBackTheSamePacketsAsMemoryIngest() throws IOException {
+    File pcap =
+        classicPcap(
+            ByteOrder.LITTLE_ENDIAN,
+            frame(T0, 0, eth(MAC_A, MAC_B, 0x0800, ipv4(IP_A, IP_B, 64, 6, tcp(40000, 5555, 0x02)))),
+            frame(
+                T0,
+                10,
+                eth(MAC_A, MAC_B, 0x0800, ipv4(IP_A, IP_B, 64, 17, udp(53000, 6000, "hi".getBytes())))),
+            frame(
+                T0,
+                20,
+                eth(
+                    MAC_A,
+                    MAC_B,
+                    0x0800,
+                    ipv4(IP_A, IP_B, 64, 6, tcp(40000, 5555, 0x18, new byte[] {1, 2, 3})))));
+    PcapParserService streaming = parser();
+    ReflectionTestUtils.setField(streaming, "ingestMode", PcapParserService.INGEST_STREAMING);
+
+    PcapAnalysisResult inMemory = nativeParse(pcap);
+    PcapAnalysisResult spilled = streaming.analyzeNative(pcap);
+    try {
+      assertThat(spilled.getPacketSpill()).isNotNull();
+      assertThat(spilled.getConversations()).hasSameSizeAs(inMemory.getConversations());
+      for (ConversationInfo conv : spilled.getConversations()) {
+        ConversationInfo twin =
+            inMemory.getConversations().stream()
+                .filter(c -> c.getProtocol().equals(conv.getProtocol()))
+                .findFirst()
+                .orElseThrow();
+        assertThat(packets(conv))
+            .usingRecursiveFieldByFieldElementComparator()
+            .containsExactlyElementsOf(packets(twin));
+      }
+    } finally {
+      spilled.releasePackets();
+    }
+    assertThat(spilled.getPacketSpill()).isNull();
+  }
+
+  @Test
+  void notAPcapFallsBackToTheTsharkPathInsteadOfFailing() throws IOException {
+    Path junk = dir.resolve("junk.pcap");
+    Files.write(junk, "definitely not a capture".getBytes());
+
+    assertThat(parser().analyzeNative(junk.toFile()))
+        .as("null tells analyzePcapFile to hand the file to tshark")
+        .isNull();
+  }
+
+  // ---------------------------------------------------------------------------
+  // Capture builders
+  // ---------------------------------------------------------------------------
+
+  private PcapAnalysisResult nativeParse(File pcap) {
+    PcapAnalysisResult result = parser().analyzeNative(pcap);
+    assertThat(result).as("native pass accepted the capture").isNotNull();
+    return result;
+  }
+
+  /** Snapshots, since memory ingest iterates with a single flyweight. */
+  private static List<PacketInfo> packets(ConversationInfo conv) {
+    List<PacketInfo> out = new ArrayList<>();
+    conv.iteratePackets().forEach(p -> out.add(p.toPacketInfo()));
+    return out;
+  }
+
+  private static LocalDateTime local(long epochMillis) {
+    return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+  }
+
+  private record Frame(long seconds, long micros, byte[] data) {}
+
+  private static Frame frame(long seconds, long micros, byte[] data) {
+    return new Frame(seconds, micros, data);
+  }
+
+  private File classicPcap(ByteOrder order, Frame... frames) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ByteBuffer hdr = ByteBuffer.allocate(24).order(order);
+    hdr.putInt(0xa1b2c3d4).putShort((short) 2).putShort((short) 4).putInt(0).putInt(0);
+    hdr.putInt(65535).putInt(1);
+    out.write(hdr.array());
+    for (Frame f : frames) {
+      ByteBuffer rec = ByteBuffer.allocate(16).order(order);
+      rec.putInt((int) f.seconds()).putInt((int) f.micros());
+      rec.putInt(f.data().length).putInt(f.data().length);
+      out.write(rec.array());
+      out.write(f.data());
+    }
+    Path p = Files.createTempFile(dir, "synthetic", ".pcap");
+    Files.write(p, out.toByteArray());
+    return p.toFile();
+  }
+
+  private File pcapng(long tsNanos, byte[] data) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ByteOrder le = ByteOrder.LITTLE_ENDIAN;
+
+    ByteBuffer shb = ByteBuffer.allocate(28).order(le);
+    shb.putInt(0x0a0d0d0a).putInt(28).putInt(0x1a2b3c4d).putShort((short) 1).putShort((short) 0);
+    shb.putLong(-1L).putInt(28);
+    out.write(shb.array());
+
+    // IDB with if_tsresol=9 and opt_endofopt
+    ByteBuffer idb = ByteBuffer.allocate(32).order(le);
+    idb.putInt(1).putInt(32).putShort((short) 1).putShort((short) 0).putInt(65535);
+    idb.putShort((short) 9).putShort((short) 1).put((byte) 9).put(new byte[3]);
+    idb.putShort((short) 0).putShort((short) 0);
+    idb.putInt(32);
+    out.write(idb.array());
+
+    int padded = (data.length + 3) & ~3;
+    int len = 32 + padded;
+    ByteBuffer epb = ByteBuffer.allocate(len).order(le);
+    epb.putInt(6).putInt(len).putInt(0);
+    epb.putInt((int) (tsNanos >>> 32)).putInt((int) tsNanos);
+    epb.putInt(data.length).putInt(data.length).put(data);
+    epb.position(len - 4);
+    epb.putInt(len);
+    out.write(epb.array());
+
+    Path p = Files.createTempFile(dir, "synthetic", ".pcapng");
+    Files.write(p, out.toByteArray());
+    return p.toFile();
+  }
+
+  private static byte[] eth(byte[] src, byte[] dst, int etherType, byte[] payload) {
+    ByteBuffer b = ByteBuffer.allocate(14 + payload.length);
+    b.put(dst).put(src).putShort((short) etherType).put(payload);
+    return b.array();
+  }
+
+  private static byte[] vlan(byte[] src, byte[] dst, int vid, int etherType, byte[] payload) {
+    ByteBuffer b = ByteBuffer.allocate(18 + payload.length);
+    b.put(dst).put(src).putShort((short) 0x8100).putShort((short) vid);
+    b.putShort((short) etherType).put(payload);
+    return b.array();
+  }
+
+  private static byte[] ipv4(byte[] src, byte[] dst, int ttl, int proto, byte[] payload) {
+    ByteBuffer b = ByteBuffer.allocate(20 + payload.length);
+    b.put((byte) 0x45).put((byte) 0).putShort((short) (20 + payload.length));
+    b.putShort((short) 0).putShort((short) 0x4000); // DF, no fragmentation
+    b.put((byte) ttl).put((byte) proto).putShort((short) 0);
+    b.put(src).put(dst).put(payload);
+    return b.array();
+  }
+
+  private static byte[] ipv6(byte[] src, byte[] dst, int next, byte[] payload) {
+    ByteBuffer b = ByteBuffer.allocate(40 + payload.length);
+    b.putInt(0x60000000).putShort((short) payload.length).put((byte) next).put((byte) 64);
+    b.put(src).put(dst).put(payload);
+    return b.array();
+  }
+
+  private static byte[] tcp(int sport, int dport, int flags) {
+    return tcp(sport, dport, flags, new byte[0]);
+  }
+
+  private static byte[] tcp(int sport, int dport, int flags, byte[] payload) {
+    ByteBuffer b = ByteBuffer.allocate(20 + payload.length);
+    b.putShort((short) sport).putShort((short) dport).putInt(1).putInt(0);
+    b.put((byte) 0x50).put((byte) flags).putShort((short) 65535).putInt(0);
+    b.put(payload);
+    return b.array();
+  }
+
+  private static byte[] udp(int sport, int dport, byte[] payload) {
+    ByteBuffer b = ByteBuffer.allocate(8 + payload.length);
+    b.putShort((short) sport).putShort((short) dport).putShort((short) (8 + payload.length));
+    b.putShort((short) 0).put(payload);
+    return b.array();
+  }
+
+  private static byte[] arp(byte[] senderMac, byte[] senderIp, byte[] targetIp) {
+    ByteBuffer b = ByteBuffer.allocate(28);
+    b.putShort((short) 1).putShort((short) 0x0800).put((byte) 6).put((byte) 4);
+    b.putShort((short) 1).put(senderMac).put(senderIp).put(new byte[6]).put(targetIp);
+    return b.array();
+  }
+
+  private static byte[] mac(int... octets) {
+    byte[] m = new byte[6];
+    for (int i = 0; i < 6; i++) m[i] = (byte) octets[i];
+    return m;
+  }
+
+  private static byte[] bcast() {
+    return mac(0xff, 0xff, 0xff, 0xff, 0xff, 0xff);
+  }
+
+  private static byte[] words(int... w) {
+    byte[] a = new byte[16];
+    for (int i = 0; i < 8; i++) {
+      a[2 * i] = (byte) (w[i] >>> 8);
+      a[2 * i + 1] = (byte) w[i];
+    }
+    return a;
+  }
+}
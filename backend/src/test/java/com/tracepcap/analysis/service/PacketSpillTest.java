@@ -0,0 +1,103 @@
+package com.tracepcap.analysis.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.tracepcap.analysis.service.PcapParserService.PacketInfo;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The spill has to give back exactly what went in: stage 6 writes these rows to the database, and
+ * nothing downstream knows whether they passed through heap or disk.
+ */
+class PacketSpillTest {
+
+  @Test
+  void theCursorReturnsEveryRecordInAppendOrderWithItsConversation() throws IOException {
+    try (PacketSpill spill = PacketSpill.create()) {
+      PacketSpill.Chain a = spill.newChain();
+      PacketSpill.Chain b = spill.newChain();
+      List<PacketInfo> written = new ArrayList<>();
+      List<Integer> ordinals = new ArrayList<>();
+      for (int i = 1; i <= 5_000; i++) {
+        PacketSpill.Chain chain = i % 3 == 0 ? b : a;
+        PacketInfo p = packet(i);
+        spill.append(chain, p);
+        written.add(p);
+        ordinals.add(chain.ordinal);
+      }
+
+      List<PacketInfo> read = new ArrayList<>();
+      List<Integer> readOrdinals = new ArrayList<>();
+      PacketSpill.Cursor cursor = spill.cursor();
+      while (cursor.next()) {
+        read.add(cursor.packet());
+        readOrdinals.add(cursor.ordinal());
+      }
+
+      assertThat(read).usingRecursiveFieldByFieldElementComparator().isEqualTo(written);
+      assertThat(readOrdinals).isEqualTo(ordinals);
+    }
+  }
+
+  @Test
+  void aChainYieldsOnlyItsOwnPacketsInParseOrder() throws IOException {
+    try (PacketSpill spill = PacketSpill.create()) {
+      PacketSpill.Chain a = spill.newChain();
+      PacketSpill.Chain b = spill.newChain();
+      for (int i = 1; i <= 10; i++) spill.append(i % 2 == 0 ? b : a, packet(i));
+
+      assertThat(b).extracting(PacketInfo::getPacketNumber).containsExactly(2L, 4L, 6L, 8L, 10L);
+      assertThat(a).extracting(PacketInfo::getPacketNumber).containsExactly(1L, 3L, 5L, 7L, 9L);
+    }
+  }
+
+  @Test
+  void nullsAndAnInfoLargerThanTheBuffersSurviveTheRoundTrip() throws IOException {
+    try (PacketSpill spill = PacketSpill.create()) {
+      PacketSpill.Chain chain = spill.newChain();
+      PacketInfo bare = packet(1);
+      bare.setSrcPort(null);
+      bare.setDstPort(null);
+      bare.setPayload(null);
+      bare.setInfo(null);
+      bare.setDetectedFileType(null);
+      PacketInfo huge = packet(2);
+      huge.setInfo("x".repeat(3 << 20));
+      spill.append(chain, bare);
+      spill.append(chain, huge);
+      spill.append(chain, packet(3));
+
+      List<PacketInfo> read = new ArrayList<>();
+      PacketSpill.Cursor cursor = spill.cursor();
+      while (cursor.next()) read.add(cursor.packet());
+
+      assertThat(read)
+          .usingRecursiveFieldByFieldElementComparator()
+          .containsExactly(bare, huge, packet(3));
+      assertThat(chain)
+          .usingRecursiveFieldByFieldElementComparator()
+          .containsExactly(bare, huge, packet(3));
+    }
+  }
+
+  private static PacketInfo packet(int n) {
+    PacketInfo p = new PacketInfo();
+    p.setPacketNumber((long) n);
+    p.setTimestamp(LocalDateTime.of(2024, 3, 31, 2, 30).plusNanos(n * 1_000_000L));
+    p.setSrcIp(n % 2 == 0 ? "10.0.0.1" : "2001:db8::1");
+    p.setSrcPort(40000 + n % 7);
+    p.setDstIp("10.0.0.2");
+    p.setDstPort(443);
+    p.setProtocol("TLSV1.2");
+    p.setPacketSize(60 + n % 1400);
+    p.setInfo("Application Data " + n);
+    p.setPayload(
+        n % 5 == 0 ? new byte[0] : new byte[] {0x17, 0x03, 0x03, 0x00, (byte) (n >> 8), (byte) n});
+    p.setDetectedFileType(n % 11 == 0 ? "PNG" : null);
+    return p;
+  }
+}
@@ -0,0 +1,142 @@
+package com.tracepcap.analysis.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.tracepcap.analysis.service.PcapParserService.PacketInfo;
+import com.tracepcap.analysis.service.PcapParserService.PacketRecord;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Columns in, the same packet out. Stage 6 persists whatever the view returns, so a field that
+ * decodes differently from what was appended is a silently wrong row in the database.
+ */
+class PacketStoreTest {
+
+  private static final LocalDateTime T0 = LocalDateTime.of(2024, 3, 31, 2, 30, 0, 123_456_000);
+
+  @Test
+  void everyFieldRoundTripsThroughTheView() {
+    PacketStore store = new PacketStore();
+    PacketStore.Rows rows = store.newRows();
+    store.append(
+        rows,
+        7L,
+        T0,
+        1514,
+        "2001:db8::1",
+        40000,
+        "10.0.0.2",
+        443,
+        "TLSV1.2",
+        "Application Data",
+        HexFormat.of().parseHex("17030300"),
+        "PNG");
+
+    PacketInfo p = rows.iterator().next().toPacketInfo();
+
+    assertThat(p.getPacketNumber()).isEqualTo(7L);
+    assertThat(p.getTimestamp()).isEqualTo(T0);
+    assertThat(p.getPacketSize()).isEqualTo(1514);
+    assertThat(p.getSrcIp()).isEqualTo("2001:db8::1");
+    assertThat(p.getSrcPort()).isEqualTo(40000);
+    assertThat(p.getDstIp()).isEqualTo("10.0.0.2");
+    assertThat(p.getDstPort()).isEqualTo(443);
+    assertThat(p.getProtocol()).isEqualTo("TLSV1.2");
+    assertThat(p.getInfo()).isEqualTo("Application Data");
+    assertThat(p.getPayload()).containsExactly(0x17, 0x03, 0x03, 0x00);
+    assertThat(p.getDetectedFileType()).isEqualTo("PNG");
+  }
+
+  @Test
+  void absentFieldsComeBackNullNotZeroOrEmpty() {
+    // Null ports are how ARP/ICMP rows say "no transport"; an empty payload and a missing one are
+    // also different things to the signature matcher.
+    PacketStore store = new PacketStore();
+    PacketStore.Rows rows = store.newRows();
+    int none = FlowTable.NO_PORT;
+    store.append(rows, 1L, T0, 42, "10.0.0.1", none, "10.0.0.2", none, "ARP", null, null, null);
+    store.append(rows, 2L, T0, 60, "10.0.0.1", 0, "10.0.0.2", 0, "TCP", "", new byte[0], null);
+
+    List<PacketInfo> read = snapshots(rows);
+
+    assertThat(read.get(0).getSrcPort()).isNull();
+    assertThat(read.get(0).getDstPort()).isNull();
+    assertThat(read.get(0).getInfo()).isNull();
+    assertThat(read.get(0).getPayload()).isNull();
+    assertThat(read.get(0).getDetectedFileType()).isNull();
+    assertThat(read.get(1).getSrcPort()).isZero();
+    assertThat(read.get(1).getInfo()).isEmpty();
+    assertThat(read.get(1).getPayload()).isEmpty();
+  }
+
+  @Test
+  void conversationsInterleaveInTheStoreButIterateOnlyTheirOwnRowsInOrder() {
+    // Past the initial column capacity and the 1 MB arena chunk, so growth is exercised too.
+    PacketStore store = new PacketStore();
+    PacketStore.Rows a = store.newRows();
+    PacketStore.Rows b = store.newRows();
+    for (int i = 1; i <= 20_000; i++) {
+      store.append(
+          i % 2 == 0 ? b : a,
+          i,
+          T0.plusNanos(i * 1_000_000L),
+          60,
+          "10.0.0.1",
+          i,
+          "10.0.0.2",
+          80,
+          "HTTP",
+          "GET /" + "x".repeat(100) + i,
+          new byte[] {(byte) i},
+          null);
+    }
+
+    List<PacketInfo> evens = snapshots(b);
+    assertThat(evens).hasSize(10_000);
+    for (int i = 0; i < evens.size(); i++) {
+      long frame = 2L * (i + 1);
+      assertThat(evens.get(i).getPacketNumber()).isEqualTo(frame);
+      assertThat(evens.get(i).getInfo()).endsWith("x" + frame);
+      assertThat(evens.get(i).getTimestamp()).isEqualTo(T0.plusNanos(frame * 1_000_000L));
+    }
+    assertThat(a.size()).isEqualTo(10_000);
+  }
+
+  @Test
+  void anInfoLargerThanAnArenaChunkIsKeptWhole() {
+    PacketStore store = new PacketStore();
+    PacketStore.Rows rows = store.newRows();
+    String huge = "y".repeat(3 << 20);
+    store.append(rows, 1L, T0, 60, "a", 1, "b", 2, "SIP", "small", null, null);
+    store.append(rows, 2L, T0, 60, "a", 1, "b", 2, "SIP", huge, new byte[] {1}, null);
+    store.append(rows, 3L, T0, 60, "a", 1, "b", 2, "SIP", "after", null, null);
+
+    assertThat(snapshots(rows))
+        .extracting(PacketInfo::getInfo)
+        .containsExactly("small", huge, "after");
+  }
+
+  @Test
+  void theIteratorIsAFlyweightSoKeepingAPacketMeansCopyingIt() {
+    // Pins the contract iteratePackets() documents: collecting the records themselves would
+    // collect one object N times.
+    PacketStore store = new PacketStore();
+    PacketStore.Rows rows = store.newRows();
+    store.append(rows, 1L, T0, 60, "a", 1, "b", 2, "UDP", "one", null, null);
+    store.append(rows, 2L, T0, 60, "a", 1, "b", 2, "UDP", "two", null, null);
+
+    List<PacketRecord> kept = new ArrayList<>();
+    rows.forEach(kept::add);
+
+    assertThat(kept.get(0)).isSameAs(kept.get(1));
+    assertThat(snapshots(rows)).extracting(PacketInfo::getInfo).containsExactly("one", "two");
+  }
+
+  private static List<PacketInfo> snapshots(PacketStore.Rows rows) {
+    return rows.toPacketInfos();
+  }
+}
@@ -0,0 +1,225 @@
+package com.tracepcap.analysis.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.tracepcap.analysis.service.PcapParserService.ConversationInfo;
+import com.tracepcap.analysis.service.PcapParserService.PacketInfo;
+import com.tracepcap.analysis.service.PcapParserService.PacketListener;
+import com.tracepcap.analysis.service.PcapParserService.PcapAnalysisResult;
+import com.tracepcap.common.process.SubprocessGovernor;
+import com.tracepcap.config.SubprocessProperties;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * A parallel parse must be indistinguishable from the sequential one.
+ *
+ * <p>Chunks are cut far smaller than in production so every capture crosses many cuts, and the
+ * warm-up is longer than any sample capture, so tshark (when installed) sees the same history at
+ * every frame in both runs and even its Protocol/Info columns must agree. One test then drops the
+ * warm-up and checks the first-seen facts that never depend on tshark's history.
+ */
+class ParallelPcapParseTest {
+
+  private static final Path SAMPLES = Path.of("..", "sample-files");
+  private static final int WORKERS = 3;
+  private static final int FULL_HISTORY = 1_000_000;
+
+  @TempDir static Path dir;
+
+  static Stream<String> captures() throws IOException {
+    List<String> names = new ArrayList<>();
+    names.add("classpath:/fixtures/ftp.pcap");
+    if (Files.isDirectory(SAMPLES)) {
+      try (Stream<Path> files = Files.list(SAMPLES)) {
+        files
+            .map(p -> p.getFileName().toString())
+            .filter(n -> n.endsWith(".pcap") || n.endsWith(".pcapng"))
+            .sorted()
+            .forEach(names::add);
+      }
+    }
+    return names.stream();
+  }
+
+  @ParameterizedTest
+  @MethodSource("captures")
+  void parallelMatchesSequential(String capture) throws IOException {
+    File file = resolve(capture);
+    PcapParserService parser = nativeParser();
+
+    PcapAnalysisResult sequential = parser.analyzeNative(file);
+    PcapAnalysisResult parallel =
+        parser.analyzeInParallel(file, WORKERS, chunkBytes(file), FULL_HISTORY);
+
+    assertThat(parallel).as("%s was split", capture).isNotNull();
+    assertSameResult(parallel, sequential, true);
+  }
+
+  @Test
+  void streamingIngestMergesChunkSpillsIntoOne() throws IOException {
+    File file = resolve("classpath:/fixtures/ftp.pcap");
+    PcapParserService inMemory = nativeParser();
+    PcapParserService streaming = nativeParser();
+    ReflectionTestUtils.setField(streaming, "ingestMode", PcapParserService.INGEST_STREAMING);
+
+    PcapAnalysisResult sequential = inMemory.analyzeNative(file);
+    PcapAnalysisResult parallel =
+        streaming.analyzeInParallel(file, WORKERS, chunkBytes(file), FULL_HISTORY);
+    try {
+      assertThat(parallel.getPacketSpill()).isNotNull();
+      assertThat(parallel.getPacketSpill().recordCount()).isEqualTo(sequential.getPacketCount());
+      assertSameResult(parallel, sequential, true);
+    } finally {
+      parallel.releasePackets();
+    }
+  }
+
+  @ParameterizedTest
+  @CsvSource({"false, memory", "false, streaming", "true, memory", "true, streaming"})
+  void theListenerSeesEveryStoredPacketOnceUnderItsConversation(boolean parallel, String ingest)
+      throws IOException {
+    // Pipelined ingest writes what the listener is shown, and stage 6 patches the conversations
+    // the parse returns: a packet shown twice, or under a conversation the result does not hold,
+    // is a duplicate row or an orphaned one.
+    File file = resolve("classpath:/fixtures/ftp.pcap");
+    PcapParserService parser = nativeParser();
+    ReflectionTestUtils.setField(parser, "ingestMode", ingest);
+    Map<ConversationInfo, List<PacketInfo>> shown = new IdentityHashMap<>();
+    PacketListener listener =
+        (conv, p) -> shown.computeIfAbsent(conv, k -> new ArrayList<>()).add(p.toPacketInfo());
+
+    PcapAnalysisResult result =
+        parallel
+            ? parser.analyzeInParallel(file, WORKERS, chunkBytes(file), FULL_HISTORY, listener)
+            : parser.analyzeNative(file, listener);
+    try {
+      assertThat(shown).hasSameSizeAs(result.getConversations());
+      for (ConversationInfo c : result.getConversations()) {
+        assertThat(shown.get(c))
+            .as("%s:%s-%s:%s", c.getSrcIp(), c.getSrcPort(), c.getDstIp(), c.getDstPort())
+            .usingRecursiveFieldByFieldElementComparator()
+            .containsExactlyElementsOf(packets(c));
+      }
+    } finally {
+      result.releasePackets();
+    }
+  }
+
+  @Test
+  void coldCutsStillKeepEveryHeaderDerivedFirstSeenFact() throws IOException {
+    // No warm-up: tshark may label a boundary packet differently, so conversation keys are not
+    // compared here, but nothing read from the headers themselves may move.
+    File file = resolve("classpath:/fixtures/ftp.pcap");
+    PcapParserService parser = nativeParser();
+
+    PcapAnalysisResult sequential = parser.analyzeNative(file);
+    PcapAnalysisResult parallel = parser.analyzeInParallel(file, WORKERS, chunkBytes(file), 0);
+
+    assertSameResult(parallel, sequential, false);
+  }
+
+  @Test
+  void aCaptureUnderTwoChunksIsLeftToTheSequentialParse() throws IOException {
+    File file = resolve("classpath:/fixtures/ftp.pcap");
+
+    assertThat(nativeParser().analyzeInParallel(file, WORKERS, file.length(), FULL_HISTORY))
+        .isNull();
+  }
+
+  // ---------------------------------------------------------------------------
+
+  private static void assertSameResult(
+      PcapAnalysisResult got, PcapAnalysisResult want, boolean conversations) {
+    assertThat(got.getPacketCount()).isEqualTo(want.getPacketCount());
+    assertThat(got.getTotalBytes()).isEqualTo(want.getTotalBytes());
+    assertThat(got.getStartTime()).isEqualTo(want.getStartTime());
+    assertThat(got.getEndTime()).isEqualTo(want.getEndTime());
+    assertThat(got.getHostTtls()).isEqualTo(want.getHostTtls());
+    assertThat(got.getHostMacs()).isEqualTo(want.getHostMacs());
+    assertThat(got.getHostMacObservations()).isEqualTo(want.getHostMacObservations());
+    // LinkedHashSet equality ignores order; first-seen order is part of the contract.
+    got.getHostMacObservations()
+        .forEach(
+            (ip, macs) ->
+                assertThat(macs).containsExactlyElementsOf(want.getHostMacObservations().get(ip)));
+    if (!conversations) return;
+
+    assertThat(got.getProtocolCounts()).isEqualTo(want.getProtocolCounts());
+    assertThat(got.getProtocolBytes()).isEqualTo(want.getProtocolBytes());
+    Map<String, ConversationInfo> expected = byKey(want);
+    Map<String, ConversationInfo> actual = byKey(got);
+    assertThat(actual.keySet()).isEqualTo(expected.keySet());
+    for (Map.Entry<String, ConversationInfo> e : expected.entrySet()) {
+      ConversationInfo w = e.getValue();
+      ConversationInfo g = actual.get(e.getKey());
+      String at = e.getKey();
+      assertThat(g.getPacketCount()).as(at).isEqualTo(w.getPacketCount());
+      assertThat(g.getTotalBytes()).as(at).isEqualTo(w.getTotalBytes());
+      assertThat(g.getStartTime()).as(at).isEqualTo(w.getStartTime());
+      assertThat(g.getEndTime()).as(at).isEqualTo(w.getEndTime());
+      assertThat(g.getInitiatorIp()).as(at).isEqualTo(w.getInitiatorIp());
+      assertThat(g.getInitiatorPort()).as(at).isEqualTo(w.getInitiatorPort());
+      assertThat(packets(g))
+          .as(at)
+          .usingRecursiveFieldByFieldElementComparator()
+          .containsExactlyElementsOf(packets(w));
+    }
+  }
+
+  private static Map<String, ConversationInfo> byKey(PcapAnalysisResult r) {
+    Map<String, ConversationInfo> m = new HashMap<>();
+    for (ConversationInfo c : r.getConversations()) {
+      String key =
+          c.getSrcIp() + ":" + c.getSrcPort() + "-" + c.getDstIp() + ":" + c.getDstPort() + "-"
+              + c.getProtocol();
+      m.put(key, c);
+    }
+    return m;
+  }
+
+  private static List<PacketInfo> packets(ConversationInfo conv) {
+    List<PacketInfo> out = new ArrayList<>();
+    conv.iteratePackets().forEach(p -> out.add(p.toPacketInfo()));
+    return out;
+  }
+
+  /** About seven chunks per capture, whatever its size. */
+  private static long chunkBytes(File file) {
+    return Math.max(64, file.length() / 7);
+  }
+
+  private static PcapParserService nativeParser() {
+    PcapParserService parser =
+        new PcapParserService(new SubprocessGovernor(new SubprocessProperties()));
+    ReflectionTestUtils.setField(parser, "parserMode", PcapParserService.MODE_NATIVE);
+    return parser;
+  }
+
+  private static File resolve(String capture) throws IOException {
+    if (!capture.startsWith("classpath:")) return SAMPLES.resolve(capture).toFile();
+    String resource = capture.substring("classpath:".length());
+    Path target = dir.resolve(Path.of(resource).getFileName().toString());
+    try (InputStream in = ParallelPcapParseTest.class.getResourceAsStream(resource)) {
+      assertThat(in).as("fixture %s", resource).isNotNull();
+      Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+    return target.toFile();
+  }
+}
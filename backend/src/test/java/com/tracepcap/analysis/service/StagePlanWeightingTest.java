@@ -26,7 +26,7 @@ class StagePlanWeightingTest {
   private final SuricataEngine engine = mock(SuricataEngine.class);
   private final AnalysisService service = serviceWithOnlyTheEngineWired();
 
-  /** 23 collaborators, one of which the plan needs; the rest are irrelevant to weighting. */
+  /** 25 collaborators, one of which the plan needs; the rest are irrelevant to weighting. */
   private AnalysisService serviceWithOnlyTheEngineWired() {
     try {
       var ctor = AnalysisService.class.getDeclaredConstructors()[0];
@@ -116,7 +116,7 @@ class StagePlanWeightingTest {
     when(engine.isWarm()).thenReturn(false);
 
     assertThat(plan(file(true, true)).stream().map(this::labelOf))
-        .anySatisfy(l -> assertThat(l).containsIgnoringCase("first run"));
+        .anySatisfy(l -> assertThat(l).containsIgnoringCase("once per restart"));
   }
 
   @Test
@@ -137,6 +137,22 @@ class StagePlanWeightingTest {
     assertThat(plan(file(true, true))).hasSize(7);
   }
 
+  @Test
+  void pipelinedIngestMovesThePacketWritesIntoTheParseStage() {
+    // The parse stage waits for the writer to drain, so it is the one that pays for the inserts;
+    // leaving their share on stage 6 would have the bar sit still while they happen, then jump.
+    when(engine.isWarm()).thenReturn(true);
+    double sequentialParse = shareOf(plan(file(true, true)), "Parsing");
+    double sequentialWrite = shareOf(plan(file(true, true)), "Writing");
+    ReflectionTestUtils.setField(service, "pipelinedIngest", true);
+    List<?> pipelined = plan(file(true, true));
+
+    assertThat(pipelined).hasSize(7);
+    assertThat(labelOf(pipelined.get(1))).contains("writing packets");
+    assertThat(shareOf(pipelined, "Parsing")).isGreaterThan(sequentialParse);
+    assertThat(shareOf(pipelined, "Writing")).isLessThan(sequentialWrite);
+  }
+
   @Test
   void noStageIsWeightedZeroSoTheBarNeverStandsStill() {
     // A zero-weight stage advances the bar by nothing while it runs, which reads as a hang.
@@ -0,0 +1,104 @@
+package com.tracepcap.analysis.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.tracepcap.analysis.service.PcapParserService.ConversationInfo;
+import com.tracepcap.analysis.spi.DissectedFrame;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The stream number recorded at ingest has to be the one the per-click lookup would have found,
+ * or following the stream shows someone else's conversation.
+ */
+class StreamIndexServiceTest {
+
+  @Test
+  void aConversationGetsTheStreamOfItsFirstFrameWhicheverWayItFlowed() {
+    StreamIndexService.Streams streams = new StreamIndexService().open();
+    // The reply is seen first; the conversation's key has the client as src.
+    streams.accept(tcp("10.0.0.2", 443, "10.0.0.1", 50000, 7));
+    streams.accept(tcp("10.0.0.1", 50000, "10.0.0.2", 443, 7));
+    // Port pair reused after a close: tshark numbers it afresh, the conversation keeps the first.
+    streams.accept(tcp("10.0.0.1", 50000, "10.0.0.2", 443, 9));
+
+    ConversationInfo conv = conversation("10.0.0.1", 50000, "10.0.0.2", 443);
+    assertThat(StreamIndexService.assign(List.of(conv), streams)).isEqualTo(1);
+
+    assertThat(conv.getTcpStream()).isEqualTo(7);
+    assertThat(conv.getUdpStream()).isNull();
+  }
+
+  @Test
+  void udpIsRecordedAsUdpAndStreamlessTrafficAsNeither() {
+    StreamIndexService.Streams streams = new StreamIndexService().open();
+    streams.accept(
+        new DissectedFrame(
+            Map.of(
+                "ipv6.src", List.of("fe80::1"),
+                "ipv6.dst", List.of("ff02::fb"),
+                "udp.srcport", List.of("5353"),
+                "udp.dstport", List.of("5353"),
+                "udp.stream", List.of("3"))));
+    streams.accept(
+        new DissectedFrame(Map.of("ip.src", List.of("10.0.0.1"), "ip.dst", List.of("10.0.0.2"))));
+
+    ConversationInfo mdns = conversation("fe80::1", 5353, "ff02::fb", 5353);
+    ConversationInfo icmp = conversation("10.0.0.1", null, "10.0.0.2", null);
+    assertThat(StreamIndexService.assign(List.of(mdns, icmp), streams)).isEqualTo(1);
+
+    assertThat(mdns.getUdpStream()).isEqualTo(3);
+    assertThat(mdns.getTcpStream()).isNull();
+    assertThat(icmp.getTcpStream()).isNull();
+    assertThat(icmp.getUdpStream()).isNull();
+  }
+
+  @Test
+  void tcpAndUdpFlowsOnTheSameEndpointsEachGetTheirOwnTransportsStream() {
+    // HTTPS and QUIC to the same server from the same client port: one 4-tuple, two flows.
+    StreamIndexService.Streams streams = new StreamIndexService().open();
+    streams.accept(tcp("10.0.0.1", 50000, "10.0.0.2", 443, 4));
+    streams.accept(
+        new DissectedFrame(
+            Map.of(
+                "frame.protocols", List.of("eth:ethertype:ip:udp:quic"),
+                "ip.src", List.of("10.0.0.1"),
+                "ip.dst", List.of("10.0.0.2"),
+                "udp.srcport", List.of("50000"),
+                "udp.dstport", List.of("443"),
+                "udp.stream", List.of("11"))));
+
+    ConversationInfo https = conversation("10.0.0.1", 50000, "10.0.0.2", 443);
+    https.setProtocol("TCP");
+    ConversationInfo quic = conversation("10.0.0.1", 50000, "10.0.0.2", 443);
+    quic.setProtocol("QUIC");
+    assertThat(StreamIndexService.assign(List.of(https, quic), streams)).isEqualTo(2);
+
+    assertThat(https.getTcpStream()).isEqualTo(4);
+    assertThat(https.getUdpStream()).isNull();
+    assertThat(quic.getUdpStream()).isEqualTo(11);
+    assertThat(quic.getTcpStream()).isNull();
+  }
+
+  private static DissectedFrame tcp(
+      String srcIp, int srcPort, String dstIp, int dstPort, int stream) {
+    return new DissectedFrame(
+        Map.of(
+            "ip.src", List.of(srcIp),
+            "ip.dst", List.of(dstIp),
+            "tcp.srcport", List.of(String.valueOf(srcPort)),
+            "tcp.dstport", List.of(String.valueOf(dstPort)),
+            "tcp.stream", List.of(String.valueOf(stream))));
+  }
+
+  private static ConversationInfo conversation(
+      String srcIp, Integer srcPort, String dstIp, Integer dstPort) {
+    ConversationInfo c = new ConversationInfo();
+    c.setSrcIp(srcIp);
+    c.setSrcPort(srcPort);
+    c.setDstIp(dstIp);
+    c.setDstPort(dstPort);
+    return c;
+  }
+}
@@ -0,0 +1,99 @@
+package com.tracepcap.analysis.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.tracepcap.analysis.entity.AnalysisResultEntity;
+import com.tracepcap.analysis.entity.AnalysisResultEntity.AnalysisCheckpoint;
+import com.tracepcap.analysis.entity.AnalysisResultEntity.AnalysisStatus;
+import com.tracepcap.analysis.repository.AnalysisResultRepository;
+import com.tracepcap.analysis.service.AnalysisRecordService.StuckFileAction;
+import com.tracepcap.file.repository.FileRepository;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+
+/**
+ * What reconciliation does with a file stuck in PROCESSING, now that an analysis can be resumed.
+ * Resuming is only worth it past a checkpoint, only while the analysis has stopped moving, and only
+ * a bounded number of times — a capture that kills the worker would otherwise be retried forever.
+ */
+class StuckFileClaimTest {
+
+  private static final int MAX_RESUMES = 2;
+
+  private final AnalysisResultRepository analyses = mock(AnalysisResultRepository.class);
+  private final AnalysisRecordService service =
+      new AnalysisRecordService(analyses, mock(FileRepository.class));
+
+  private final UUID fileId = UUID.randomUUID();
+  private final LocalDateTime cutoff = LocalDateTime.now().minusMinutes(30);
+
+  private AnalysisResultEntity analysis(
+      AnalysisStatus status, AnalysisCheckpoint checkpoint, LocalDateTime updatedAt, int resumes) {
+    AnalysisResultEntity a =
+        AnalysisResultEntity.builder()
+            .status(status)
+            .checkpoint(checkpoint)
+            .updatedAt(updatedAt)
+            .resumeCount(resumes)
+            .build();
+    when(analyses.findByFileId(fileId)).thenReturn(Optional.of(a));
+    return a;
+  }
+
+  private StuckFileAction claim() {
+    return service.claimStuckFile(fileId, cutoff, MAX_RESUMES);
+  }
+
+  @Test
+  void aCheckpointedAnalysisThatStoppedMovingIsResumedAndTheResumeCounted() {
+    AnalysisResultEntity a =
+        analysis(AnalysisStatus.IN_PROGRESS, AnalysisCheckpoint.EXTRACTED, cutoff.minusHours(1), 0);
+
+    assertThat(claim()).isEqualTo(StuckFileAction.RESUME);
+    assertThat(a.getResumeCount()).isEqualTo(1);
+    verify(analyses).save(a);
+  }
+
+  @Test
+  void anAnalysisThatCheckpointedWithinTheTimeoutIsStillWorking() {
+    // Also how a resume queued by the previous pass is told apart from a stuck one: claiming it
+    // touched the record.
+    analysis(AnalysisStatus.IN_PROGRESS, AnalysisCheckpoint.PARSED, cutoff.plusMinutes(5), 1);
+
+    assertThat(claim()).isEqualTo(StuckFileAction.WAIT);
+    verify(analyses, never()).save(any());
+  }
+
+  @Test
+  void withNothingCommittedThereIsNothingToResumeFrom() {
+    analysis(AnalysisStatus.IN_PROGRESS, null, cutoff.minusHours(1), 0);
+
+    assertThat(claim()).isEqualTo(StuckFileAction.FAIL);
+  }
+
+  @Test
+  void resumesRunOut() {
+    analysis(
+        AnalysisStatus.IN_PROGRESS,
+        AnalysisCheckpoint.CLASSIFIED,
+        cutoff.minusHours(1),
+        MAX_RESUMES);
+
+    assertThat(claim()).isEqualTo(StuckFileAction.FAIL);
+    verify(analyses, never()).save(any());
+  }
+
+  @Test
+  void aFileWithNoAnalysisRecordFailsAsBefore() {
+    when(analyses.findByFileId(fileId)).thenReturn(Optional.empty());
+
+    assertThat(claim()).isEqualTo(StuckFileAction.FAIL);
+  }
+}
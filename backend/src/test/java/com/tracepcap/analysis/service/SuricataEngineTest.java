@@ -4,6 +4,9 @@ import static org.assertj.core.api.Assertions.assertThat;
 
 import java.io.File;
 import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 import org.springframework.test.util.ReflectionTestUtils;
@@ -88,8 +91,9 @@ class SuricataEngineTest {
     // A daemon can be alive but unresponsive. Replacing it without stopping it would orphan a
     // process holding a built rule engine that nothing can reach afterwards.
     configure(true, tmp.resolve("suricata.sock").toString());
-    ReflectionTestUtils.setField(engine, "daemon", new ProcessBuilder("sleep", "300").start());
-    Process orphan = (Process) ReflectionTestUtils.getField(engine, "daemon");
+    SuricataEngine.Engine member = engine.engines().get(0);
+    ReflectionTestUtils.setField(member, "daemon", new ProcessBuilder("sleep", "300").start());
+    Process orphan = (Process) ReflectionTestUtils.getField(member, "daemon");
 
     engine.process(new File("a.pcap"), tmp);
 
@@ -103,4 +107,53 @@ class SuricataEngineTest {
 
     engine.stop();
   }
+
+  @Test
+  void eachEngineInThePoolHasItsOwnSocketAndTheFirstKeepsTheConfiguredOne(@TempDir Path tmp) {
+    // One socket per daemon, and the log directory beside it: two engines sharing either would
+    // answer each other's pcap-current and interleave their logs.
+    Path socket = tmp.resolve("suricata.sock");
+    configure(true, socket.toString());
+    ReflectionTestUtils.setField(engine, "poolSize", 3);
+
+    List<String> sockets =
+        engine.engines().stream()
+            .map(e -> (String) ReflectionTestUtils.getField(e, "socketPath"))
+            .toList();
+
+    assertThat(sockets).doesNotHaveDuplicates().hasSize(3);
+    assertThat(sockets.get(0)).isEqualTo(socket.toString());
+    assertThat(sockets.stream().map(s -> Path.of(s).getParent())).doesNotHaveDuplicates();
+  }
+
+  @Test
+  void concurrentCapturesAreSpreadOverThePoolRatherThanQueuedOnOneEngine(@TempDir Path tmp) {
+    configure(true, tmp.resolve("suricata.sock").toString());
+    ReflectionTestUtils.setField(engine, "poolSize", 3);
+    ReflectionTestUtils.setField(engine, "memoryBudgetMb", 0L);
+
+    // What process() does under the pool's lock, for three captures arriving together.
+    Set<SuricataEngine.Engine> chosen = new HashSet<>();
+    for (int i = 0; i < 3; i++) {
+      SuricataEngine.Engine next = engine.leastLoaded();
+      next.load.incrementAndGet();
+      chosen.add(next);
+    }
+
+    assertThat(chosen).hasSize(3);
+  }
+
+  @Test
+  void thePoolDoesNotGrowPastItsMemoryBudget(@TempDir Path tmp) {
+    // Each engine holds hundreds of MB of rules. With room for one, a second capture waits for
+    // the first engine rather than starting another — queueing is slow, an OOM kill is worse.
+    configure(true, tmp.resolve("suricata.sock").toString());
+    ReflectionTestUtils.setField(engine, "poolSize", 4);
+    ReflectionTestUtils.setField(engine, "memoryBudgetMb", SuricataEngine.ENGINE_MB_ESTIMATE);
+
+    SuricataEngine.Engine first = engine.leastLoaded();
+    first.load.incrementAndGet();
+
+    assertThat(engine.leastLoaded()).isSameAs(first);
+  }
 }
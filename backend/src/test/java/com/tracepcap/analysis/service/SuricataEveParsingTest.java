@@ -0,0 +1,97 @@
+package com.tracepcap.analysis.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import com.tracepcap.common.process.SubprocessGovernor;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * eve.json is read a token at a time, not as a tree. A streaming reader takes fields in the order
+ * they arrive and has to step over nested values it does not want, and a mistake in either shows as
+ * an alert that quietly goes missing — so these pin what the tree reader it replaced got right.
+ */
+class SuricataEveParsingTest {
+
+  private final SuricataService service =
+      new SuricataService(mock(SuricataEngine.class), mock(SubprocessGovernor.class));
+
+  @TempDir Path tmp;
+
+  private Map<String, Set<String>> parse(String... lines) throws IOException {
+    Path eve = tmp.resolve("eve.json");
+    Files.write(eve, List.of(lines));
+    Map<String, Set<String>> result = new HashMap<>();
+    service.parseEveJson(eve, result);
+    return result;
+  }
+
+  @Test
+  void anAlertIsKeyedByItsFlowAndLabelledWithItsRule() throws IOException {
+    Map<String, Set<String>> alerts =
+        parse(
+            "{\"timestamp\":\"2024-01-01T00:00:00.000000+0000\",\"flow_id\":1,"
+                + "\"event_type\":\"alert\",\"src_ip\":\"10.0.0.1\",\"src_port\":51000,"
+                + "\"dest_ip\":\"10.0.0.2\",\"dest_port\":80,\"proto\":\"TCP\","
+                + "\"alert\":{\"action\":\"allowed\",\"gid\":1,\"signature_id\":2014,"
+                + "\"rev\":3,\"signature\":\"ET POLICY Test, with comma\","
+                + "\"category\":\"Misc\",\"severity\":2,"
+                + "\"metadata\":{\"created_at\":[\"2010_01_01\"],\"tag\":[\"a\",\"b\"]}},"
+                + "\"http\":{\"hostname\":\"example.com\",\"headers\":[{\"name\":\"x\"}]}}");
+
+    assertThat(alerts)
+        .containsExactly(
+            Map.entry(
+                "10.0.0.1:51000->10.0.0.2:80",
+                Set.of("ET POLICY Test; with comma (sid:2014 sev:2)")));
+  }
+
+  @Test
+  void fieldsAreTakenInWhateverOrderTheyArrive() throws IOException {
+    // The flow after the alert object, event_type last: nothing may depend on Suricata's order.
+    Map<String, Set<String>> alerts =
+        parse(
+            "{\"alert\":{\"severity\":1,\"signature\":\"ET SCAN\",\"signature_id\":7},"
+                + "\"dest_port\":53,\"dest_ip\":\"10.0.0.9\",\"src_port\":1234,"
+                + "\"src_ip\":\"10.0.0.8\",\"proto\":\"UDP\",\"event_type\":\"alert\"}");
+
+    assertThat(alerts).containsKey("10.0.0.8:1234->10.0.0.9:53");
+  }
+
+  @Test
+  void everyOtherEventIsIgnored() throws IOException {
+    // What a stock suricata.yaml writes alongside alerts; an image built before eve was cut down to
+    // alerts only still produces it.
+    Map<String, Set<String>> alerts =
+        parse(
+            "{\"event_type\":\"flow\",\"src_ip\":\"10.0.0.1\",\"dest_ip\":\"10.0.0.2\","
+                + "\"flow\":{\"alerted\":false}}",
+            "{\"event_type\":\"stats\",\"stats\":{\"uptime\":1}}",
+            "{\"event_type\":\"dns\",\"src_ip\":\"10.0.0.1\",\"dest_ip\":\"10.0.0.2\","
+                + "\"alert\":{\"signature\":\"not an alert event\"}}");
+
+    assertThat(alerts).isEmpty();
+  }
+
+  @Test
+  void aBrokenLineCostsOnlyItself() throws IOException {
+    Map<String, Set<String>> alerts =
+        parse(
+            "{\"event_type\":\"alert\",\"src_ip\":\"10.0.0.1\",\"alert\":{\"signa",
+            "",
+            "{\"event_type\":\"alert\",\"src_ip\":\"10.0.0.3\",\"dest_ip\":\"10.0.0.4\","
+                + "\"proto\":\"ICMP\",\"alert\":{\"signature\":\"ET ICMP\"}}");
+
+    // No ports (ICMP) and no sid or severity: the key and label say so rather than inventing them.
+    assertThat(alerts)
+        .containsExactly(Map.entry("10.0.0.3:null->10.0.0.4:null", Set.of("ET ICMP")));
+  }
+}
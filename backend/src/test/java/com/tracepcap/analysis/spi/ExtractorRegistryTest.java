@@ -1,9 +1,11 @@
 package com.tracepcap.analysis.spi;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 
 import com.tracepcap.analysis.service.ExtractionRunService;
@@ -13,8 +15,13 @@ import com.tracepcap.common.stage.Tier;
 import com.tracepcap.file.entity.FileEntity;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import org.junit.jupiter.api.Test;
 
 /**
@@ -36,6 +43,15 @@ class ExtractorRegistryTest {
     return FileEntity.builder().id(FILE_ID).enableNdpi(true).enableSuricata(true).build();
   }
 
+  /** A finished pass that saw no frames. */
+  private static final Dissection NO_FRAMES =
+      new Dissection() {
+        @Override
+        public <C extends FrameSubscriber.FrameConsumer> C consumer(FrameSubscriber<C> s) {
+          return s.open();
+        }
+      };
+
   /**
    * An extractor that exists to prove discovery works. One class: it declares its stage by
    * implementing {@link Extractor}, its tier by returning one, and when it applies by answering for
@@ -88,7 +104,8 @@ class ExtractorRegistryTest {
     ExtractorRunner runner = new ExtractorRunner(List.of(probe), manifest);
     List<PcapParserService.ConversationInfo> conversations = new ArrayList<>(List.of(conversation()));
 
-    runner.runAll(file(), new File("/tmp/does-not-need-to-exist.pcap"), conversations);
+    runner.runAll(
+        file(), new File("/tmp/does-not-need-to-exist.pcap"), NO_FRAMES, conversations);
 
     assertThat(probe.ran).isTrue();
     // The write reached the working set — this is what separates Extract from Scan.
@@ -100,7 +117,7 @@ class ExtractorRegistryTest {
   void theManifestRowIsRecordedWithoutTheExtractorAskingForIt() {
     ExtractorRunner runner = new ExtractorRunner(List.of(new ProbeExtractor()), manifest);
 
-    runner.runAll(file(), new File("/tmp/x.pcap"), new ArrayList<>());
+    runner.runAll(file(), new File("/tmp/x.pcap"), NO_FRAMES, new ArrayList<>());
 
     verify(manifest)
         .record(eq(FILE_ID), eq("probe"), eq(ExtractionManifest.Status.COMPLETED), eq(ProbeExtractor.PROVENANCE));
@@ -118,7 +135,7 @@ class ExtractorRegistryTest {
         };
     ExtractorRunner runner = new ExtractorRunner(List.of(disabled), manifest);
 
-    runner.runAll(file(), new File("/tmp/x.pcap"), new ArrayList<>());
+    runner.runAll(file(), new File("/tmp/x.pcap"), NO_FRAMES, new ArrayList<>());
 
     verify(manifest)
         .record(eq(FILE_ID), eq("probe"), eq(ExtractionManifest.Status.SKIPPED), any());
@@ -143,26 +160,147 @@ class ExtractorRegistryTest {
     ExtractorRunner runner = new ExtractorRunner(List.of(boom, survivor), manifest);
     List<PcapParserService.ConversationInfo> conversations = new ArrayList<>(List.of(conversation()));
 
-    runner.runAll(file(), new File("/tmp/x.pcap"), conversations);
+    runner.runAll(file(), new File("/tmp/x.pcap"), NO_FRAMES, conversations);
 
     assertThat(survivor.ran).as("a peer's failure must not stop this one").isTrue();
     assertThat(conversations.get(0).getAppName()).isEqualTo("PROBE");
     verify(manifest).record(eq(FILE_ID), eq("boom"), eq(ExtractionManifest.Status.FAILED), any());
   }
 
-  /** Order is declared by the module; the runner sorts rather than knowing who goes first. */
+  /** Order is declared by the module; the runner reads it rather than knowing who goes first. */
   @Test
-  void extractorsRunInDeclaredOrder() {
-    List<String> sequence = new ArrayList<>();
+  void aDependentRunsAfterWhatItDependsOnAndSeesItsFacts() {
+    List<String> sequence = Collections.synchronizedList(new ArrayList<>());
+    String[] seen = new String[1];
+    Extractor ndpi = declared("ndpi", Set.of(), sequence, c -> c.setAppName("TLS"));
+    Extractor tshark =
+        declared("a-tshark", Set.of("ndpi"), sequence, c -> seen[0] = c.getAppName());
+    ExtractorRunner runner = new ExtractorRunner(List.of(tshark, ndpi), manifest);
+
+    runner.runAll(
+        file(), new File("/tmp/x.pcap"), NO_FRAMES, new ArrayList<>(List.of(conversation())));
+
+    // Sorting by name would have run "a-tshark" first.
+    assertThat(sequence).containsExactly("ndpi", "a-tshark");
+    assertThat(seen[0]).isEqualTo("TLS");
+  }
+
+  /** The point of declaring dependencies: extractors that have none do not wait for each other. */
+  @Test
+  void independentExtractorsRunAtTheSameTime() {
+    // Each waits for the other to arrive; run one after another, the first would time out.
+    CyclicBarrier both = new CyclicBarrier(2);
+    Consumer<PcapParserService.ConversationInfo> meet =
+        c -> {
+          try {
+            both.await(10, TimeUnit.SECONDS);
+          } catch (Exception e) {
+            throw new IllegalStateException("ran alone", e);
+          }
+        };
+    List<String> sequence = Collections.synchronizedList(new ArrayList<>());
     ExtractorRunner runner =
-        new ExtractorRunner(List.of(ordered("late", 90, sequence), ordered("early", 10, sequence)), manifest);
+        new ExtractorRunner(
+            List.of(
+                declared("ndpi", Set.of(), sequence, meet),
+                declared("suricata", Set.of(), sequence, meet)),
+            manifest);
 
-    runner.runAll(file(), new File("/tmp/x.pcap"), new ArrayList<>());
+    runner.runAll(
+        file(), new File("/tmp/x.pcap"), NO_FRAMES, new ArrayList<>(List.of(conversation())));
 
-    assertThat(sequence).containsExactly("early", "late");
+    verify(manifest, never()).record(any(), any(), eq(ExtractionManifest.Status.FAILED), any());
+    assertThat(sequence).containsExactlyInAnyOrder("ndpi", "suricata");
   }
 
-  private static Extractor ordered(String name, int order, List<String> sequence) {
+  /**
+   * Concurrent extractors finish in any order; the facts must not. Each writes to its own copy and
+   * the copies are merged by name, so "slow" — merged last — sets the field whichever finishes
+   * first, and a list both add to keeps both entries.
+   */
+  @Test
+  void theMergedFactsDoNotDependOnWhichExtractorFinishedFirst() {
+    Extractor slow =
+        declared(
+            "slow",
+            Set.of(),
+            new ArrayList<>(),
+            c -> {
+              sleep();
+              c.setHostname("slow.example");
+              c.getFlowRisks().add("slow risk");
+            });
+    Extractor fast =
+        declared(
+            "fast",
+            Set.of(),
+            new ArrayList<>(),
+            c -> {
+              c.setHostname("fast.example");
+              c.getFlowRisks().add("fast risk");
+            });
+    ExtractorRunner runner = new ExtractorRunner(List.of(slow, fast), manifest);
+    List<PcapParserService.ConversationInfo> conversations =
+        new ArrayList<>(List.of(conversation()));
+
+    runner.runAll(file(), new File("/tmp/x.pcap"), NO_FRAMES, conversations);
+
+    assertThat(conversations.get(0).getHostname()).isEqualTo("slow.example");
+    assertThat(conversations.get(0).getFlowRisks()).containsExactly("fast risk", "slow risk");
+  }
+
+  /** A failure keeps its facts to itself — including those it wrote before it threw. */
+  @Test
+  void aFailedExtractorsPartialWritesAreDroppedAndItsDependentsStillRun() {
+    Extractor broken =
+        declared(
+            "ndpi",
+            Set.of(),
+            new ArrayList<>(),
+            c -> {
+              c.setAppName("HALF-WRITTEN");
+              throw new IllegalStateException("ndpiReader died");
+            });
+    List<String> sequence = new ArrayList<>();
+    Extractor dependent = declared("tshark", Set.of("ndpi"), sequence, c -> {});
+    ExtractorRunner runner = new ExtractorRunner(List.of(broken, dependent), manifest);
+    List<PcapParserService.ConversationInfo> conversations =
+        new ArrayList<>(List.of(conversation()));
+
+    runner.runAll(file(), new File("/tmp/x.pcap"), NO_FRAMES, conversations);
+
+    assertThat(conversations.get(0).getAppName()).isNull();
+    assertThat(sequence).containsExactly("tshark");
+  }
+
+  @Test
+  void aDependencyCycleIsRefusedRatherThanDeadlocking() {
+    ExtractorRunner runner =
+        new ExtractorRunner(
+            List.of(
+                declared("a", Set.of("b"), new ArrayList<>(), c -> {}),
+                declared("b", Set.of("a"), new ArrayList<>(), c -> {})),
+            manifest);
+
+    assertThatThrownBy(
+            () -> runner.runAll(file(), new File("/tmp/x.pcap"), NO_FRAMES, new ArrayList<>()))
+        .isInstanceOf(IllegalStateException.class)
+        .hasMessageContaining("cycle");
+  }
+
+  private static void sleep() {
+    try {
+      Thread.sleep(200);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static Extractor declared(
+      String name,
+      Set<String> dependsOn,
+      List<String> sequence,
+      Consumer<PcapParserService.ConversationInfo> write) {
     return new Extractor() {
       @Override
       public String name() {
@@ -175,8 +313,13 @@ class ExtractorRegistryTest {
       }
 
       @Override
-      public int order() {
-        return order;
+      public String manifestKey() {
+        return name;
+      }
+
+      @Override
+      public Set<String> dependsOn() {
+        return dependsOn;
       }
 
       @Override
@@ -187,6 +330,7 @@ class ExtractorRegistryTest {
       @Override
       public Outcome extract(ExtractionTarget target) {
         sequence.add(name);
+        target.conversations().forEach(write);
         return Outcome.completed("ok");
       }
     };
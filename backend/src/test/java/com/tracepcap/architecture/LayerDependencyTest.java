@@ -98,8 +98,10 @@ class LayerDependencyTest {
    * extractor, not a licence to shell out.
    *
    * <p>{@code ProcessBuilder} is the enforceable proxy for external-tool invocation (tshark,
-   * ndpiReader, suricata, mergecap — all go through it). Known grey case, frozen rather than
-   * blessed: {@code FilterService} validates LLM-generated display filters against the pcap.
+   * ndpiReader, suricata, mergecap — all go through it). {@code common.process} is exempt: the
+   * governor launches what the modules above build and never builds a command itself, so the
+   * builder is still where a caller shows up. Known grey case, frozen rather than blessed: {@code
+   * FilterService} validates LLM-generated display filters against the pcap.
    */
   @ArchTest
   static final ArchRule raw_capture_access_is_confined_to_extract_stage =
@@ -111,7 +113,8 @@ class LayerDependencyTest {
                   "com.tracepcap.hostlog..",
                   "com.tracepcap.extraction..",
                   "com.tracepcap.file..",
-                  "com.tracepcap.conversation..")
+                  "com.tracepcap.conversation..",
+                  "com.tracepcap.common.process..")
               .should()
               .dependOnClassesThat()
               .haveFullyQualifiedName("java.lang.ProcessBuilder")
@@ -0,0 +1,38 @@
+package com.tracepcap.common;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * A field that occurs twice in a packet reaches us comma-joined; the comma is a separator, never a
+ * digit, so it must not turn into {@code 0xFF} bytes or shift the rest of the payload.
+ */
+class TsharkHexUtilTest {
+
+  @Test
+  void colonSeparatedAndBareHexDecodeToTheSameBytes() {
+    assertThat(TsharkHexUtil.toBytes("48:54:54:50", 64)).containsExactly('H', 'T', 'T', 'P');
+    assertThat(TsharkHexUtil.toBytes("48545450", 64)).containsExactly('H', 'T', 'T', 'P');
+  }
+
+  @Test
+  void aCommaJoinedFieldDecodesOnlyItsFirstOccurrence() {
+    // Two udp.payload occurrences, as in GTP-U or VXLAN traffic.
+    assertThat(TsharkHexUtil.toBytes("48:54,54:50", 64)).containsExactly('H', 'T');
+    assertThat(TsharkHexUtil.toAscii("48:54,54:50", 64)).isEqualTo("HT");
+  }
+
+  @Test
+  void theByteLimitAndAnOddTrailingNibbleAreRespected() {
+    assertThat(TsharkHexUtil.toBytes("48:54:54:50", 2)).containsExactly('H', 'T');
+    assertThat(TsharkHexUtil.toBytes("48545", 64)).containsExactly('H', 'T');
+  }
+
+  @Test
+  void nullOrEmptyInputHasNoPayload() {
+    assertThat(TsharkHexUtil.toBytes(null, 64)).isNull();
+    assertThat(TsharkHexUtil.toBytes("", 64)).isNull();
+    assertThat(TsharkHexUtil.toAscii(null, 64)).isEmpty();
+  }
+}
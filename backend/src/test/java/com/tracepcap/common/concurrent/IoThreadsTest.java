@@ -0,0 +1,71 @@
+package com.tracepcap.common.concurrent;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class IoThreadsTest {
+
+  @Test
+  void aDrainHandsOverEveryLineOnAVirtualThread() throws Exception {
+    List<String> lines = new CopyOnWriteArrayList<>();
+    List<Boolean> virtual = new CopyOnWriteArrayList<>();
+    InputStream stderr =
+        new ByteArrayInputStream("first\nsécond\nthird".getBytes(StandardCharsets.UTF_8));
+
+    Thread drain =
+        IoThreads.drainLines(
+            stderr,
+            "drain",
+            l -> {
+              lines.add(l);
+              virtual.add(Thread.currentThread().isVirtual());
+            });
+
+    assertThat(drain.join(Duration.ofSeconds(5))).isTrue();
+    assertThat(lines).containsExactly("first", "sécond", "third");
+    assertThat(virtual).containsOnly(true);
+  }
+
+  @Test
+  void aPipeThatBreaksEndsTheDrainQuietly() throws Exception {
+    InputStream broken =
+        new InputStream() {
+          @Override
+          public int read() throws IOException {
+            throw new IOException("Stream closed");
+          }
+        };
+
+    Thread drain = IoThreads.drainLines(broken, "drain", l -> {});
+
+    assertThat(drain.join(Duration.ofSeconds(5))).isTrue();
+  }
+
+  @Test
+  void theExecutorRunsEachTaskOnItsOwnNamedVirtualThread() throws Exception {
+    List<String> names = new CopyOnWriteArrayList<>();
+    try (ExecutorService io = IoThreads.executor("transfer")) {
+      for (int i = 0; i < 3; i++) {
+        io.submit(
+            () -> {
+              assertThat(Thread.currentThread().isVirtual()).isTrue();
+              names.add(Thread.currentThread().getName());
+            });
+      }
+      io.shutdown();
+      assertThat(io.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    assertThat(names).containsExactlyInAnyOrder("transfer-0", "transfer-1", "transfer-2");
+  }
+}
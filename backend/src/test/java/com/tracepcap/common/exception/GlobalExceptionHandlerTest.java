@@ -75,6 +75,14 @@ class GlobalExceptionHandlerTest {
             "Service Unavailable",
             null,
             req -> HANDLER.handleStorageException(new StorageException("minio down"), req)),
+        new Case(
+            "SubprocessBusy -> 503",
+            503,
+            "Service Unavailable",
+            null,
+            req ->
+                HANDLER.handleSubprocessBusyException(
+                    new SubprocessBusyException("tshark busy", 15), req)),
         new Case(
             "ContextLengthExceeded -> 422",
             422,
@@ -147,6 +155,15 @@ class GlobalExceptionHandlerTest {
     assertThat(response.getBody().getExistingFileId()).isEqualTo(existing.toString());
   }
 
+  @Test
+  void subprocessBusy_saysWhenToRetry() {
+    ResponseEntity<ErrorResponse> response =
+        HANDLER.handleSubprocessBusyException(
+            new SubprocessBusyException("tshark busy", 15), request());
+
+    assertThat(response.getHeaders().getFirst("Retry-After")).isEqualTo("15");
+  }
+
   @Test
   void contextLengthExceeded_carriesTokenDetails() {
     ResponseEntity<ErrorResponse> response =
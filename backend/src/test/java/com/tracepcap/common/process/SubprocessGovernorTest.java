@@ -0,0 +1,128 @@
+package com.tracepcap.common.process;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.tracepcap.common.exception.SubprocessBusyException;
+import com.tracepcap.common.process.SubprocessGovernor.Budget;
+import com.tracepcap.common.process.SubprocessGovernor.Tool;
+import com.tracepcap.config.SubprocessProperties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Slots, budgets and coalescing. The launches are {@code sleep} and {@code true} standing in for
+ * tshark: what is governed is the process, not what it runs.
+ */
+class SubprocessGovernorTest {
+
+  private final SubprocessGovernor governor;
+
+  SubprocessGovernorTest() {
+    SubprocessProperties properties = new SubprocessProperties();
+    properties.setInteractiveQueueTimeoutSeconds(1);
+    SubprocessProperties.Limit tshark = new SubprocessProperties.Limit();
+    tshark.setInteractive(1);
+    tshark.setBatch(1);
+    properties.getLimits().put("tshark", tshark);
+    governor = new SubprocessGovernor(properties);
+  }
+
+  @AfterEach
+  void stopSampler() {
+    governor.stop();
+  }
+
+  @Test
+  void aRequestIsTurnedAwayWhenEverySlotStaysBusy() throws Exception {
+    Process sleeping = governor.start(Tool.TSHARK, Budget.INTERACTIVE, sleep());
+    try {
+      assertThatThrownBy(() -> governor.start(Tool.TSHARK, Budget.INTERACTIVE, sleep()))
+          .isInstanceOf(SubprocessBusyException.class);
+    } finally {
+      sleeping.destroyForcibly().waitFor();
+    }
+  }
+
+  @Test
+  void theSlotIsFreedWhenTheProcessExits() throws Exception {
+    governor.start(Tool.TSHARK, Budget.INTERACTIVE, new ProcessBuilder("true")).onExit().get();
+
+    Process next = governor.start(Tool.TSHARK, Budget.INTERACTIVE, new ProcessBuilder("true"));
+    assertThat(next.waitFor(5, TimeUnit.SECONDS)).isTrue();
+  }
+
+  @Test
+  void requestsCannotTakeTheAnalysesSlots() throws Exception {
+    Process interactive = governor.start(Tool.TSHARK, Budget.INTERACTIVE, sleep());
+    try {
+      Process batch = governor.start(Tool.TSHARK, Budget.BATCH, new ProcessBuilder("true"));
+      assertThat(batch.waitFor(5, TimeUnit.SECONDS)).isTrue();
+    } finally {
+      interactive.destroyForcibly().waitFor();
+    }
+  }
+
+  @Test
+  void unlimitedToolsAreNotQueued() throws Exception {
+    Process first = governor.start(Tool.MERGECAP, Budget.INTERACTIVE, sleep());
+    Process second = governor.start(Tool.MERGECAP, Budget.INTERACTIVE, sleep());
+    first.destroyForcibly().waitFor();
+    second.destroyForcibly().waitFor();
+  }
+
+  @Test
+  void identicalConcurrentRequestsShareOneRun() throws Exception {
+    AtomicInteger runs = new AtomicInteger();
+    CountDownLatch leaderStarted = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+
+    CompletableFuture<String> leader =
+        CompletableFuture.supplyAsync(
+            () -> {
+              try {
+                return governor.coalesce(
+                    "same",
+                    () -> {
+                      runs.incrementAndGet();
+                      leaderStarted.countDown();
+                      release.await();
+                      return "matches";
+                    });
+              } catch (Exception e) {
+                throw new IllegalStateException(e);
+              }
+            });
+    leaderStarted.await();
+    CompletableFuture<String> follower =
+        CompletableFuture.supplyAsync(
+            () -> {
+              try {
+                return governor.coalesce("same", () -> "a second run");
+              } catch (Exception e) {
+                throw new IllegalStateException(e);
+              }
+            });
+    Thread.sleep(200);
+    release.countDown();
+
+    assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo("matches");
+    assertThat(follower.get(5, TimeUnit.SECONDS)).isEqualTo("matches");
+    assertThat(runs).hasValue(1);
+  }
+
+  @Test
+  void cpuTimesAreReadPastACommandNameWithSpacesAndParentheses() {
+    String stat = "4242 (ts (hark) x) S 1 4242 4242 0 -1 4194304 900 0 0 0 157 23 0 0 20 0 1 0";
+
+    assertThat(SubprocessGovernor.cpuTicks(stat)).containsExactly(157, 23);
+  }
+
+  private static ProcessBuilder sleep() {
+    return new ProcessBuilder("sleep", "30");
+  }
+}
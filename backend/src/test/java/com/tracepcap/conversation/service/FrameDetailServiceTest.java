@@ -0,0 +1,92 @@
+package com.tracepcap.conversation.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tracepcap.analysis.dto.FrameDetailResponse;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/** sharkd and tshark describe a frame in different shapes; the response must not show which. */
+class FrameDetailServiceTest {
+
+  @Test
+  void pdmlBecomesTheTreeWithoutTsharksBookkeeping() throws Exception {
+    String pdml =
+        """
+        <?xml version="1.0" encoding="utf-8"?>
+        <?xml-stylesheet type="text/xsl" href="pdml2html.xsl"?>
+        <pdml version="0" creator="wireshark/3.6.2">
+        <packet>
+          <proto name="geninfo" pos="0" showname="General information" size="60">
+            <field name="num" pos="0" show="3" showname="Number" size="60"/>
+          </proto>
+          <proto name="ip" showname="Internet Protocol Version 4" size="20" pos="14">
+            <field name="ip.ttl" showname="Time to Live: 64" size="1" pos="22" show="64"/>
+            <field name="ip.addr" showname="Source or Destination" hide="yes" size="4" pos="26"/>
+            <field name="" show="Header checksum status: Unverified" size="0" pos="24">
+              <field name="ip.checksum.status" showname="Status: 2" size="0" pos="24" show="2"/>
+            </field>
+          </proto>
+        </packet>
+        <packet>
+          <proto name="frame" showname="Frame 4" size="60" pos="0"/>
+        </packet>
+        </pdml>
+        """;
+
+    List<FrameDetailResponse.Node> tree =
+        FrameDetailService.parsePdml(
+            new ByteArrayInputStream(pdml.getBytes(StandardCharsets.UTF_8)));
+
+    assertThat(tree).hasSize(1);
+    FrameDetailResponse.Node ip = tree.get(0);
+    assertThat(ip.getLabel()).isEqualTo("Internet Protocol Version 4");
+    assertThat(ip.getField()).isEqualTo("ip");
+    assertThat(ip.getOffset()).isEqualTo(14);
+    assertThat(ip.getChildren())
+        .extracting(FrameDetailResponse.Node::getLabel)
+        .containsExactly("Time to Live: 64", "Header checksum status: Unverified");
+    FrameDetailResponse.Node text = ip.getChildren().get(1);
+    assertThat(text.getField()).isNull();
+    assertThat(text.getChildren())
+        .extracting(FrameDetailResponse.Node::getField)
+        .containsExactly("ip.checksum.status");
+  }
+
+  @Test
+  void aCaptureWithoutTheFrameHasNoTree() throws Exception {
+    String pdml = "<?xml version=\"1.0\"?>\n<pdml version=\"0\">\n</pdml>\n";
+
+    assertThat(
+            FrameDetailService.parsePdml(
+                new ByteArrayInputStream(pdml.getBytes(StandardCharsets.UTF_8))))
+        .isNull();
+  }
+
+  @Test
+  void sharkdsTreeKeepsFieldNamesAndByteRanges() throws Exception {
+    String result =
+        """
+        {"tree":[{"l":"Internet Protocol Version 4","t":"proto","f":"ip","h":[14,20],
+          "n":[{"l":"Time to Live: 64","f":"ip.ttl == 64","h":[22,1]},
+               {"l":"Checksum: unverified"}]}],
+         "bytes":"AAEC"}
+        """;
+
+    FrameDetailResponse frame =
+        FrameDetailService.fromSharkd(3, new ObjectMapper().readTree(result));
+
+    assertThat(frame.getFrameNumber()).isEqualTo(3);
+    assertThat(frame.getBytes()).containsExactly(0, 1, 2);
+    FrameDetailResponse.Node ip = frame.getTree().get(0);
+    assertThat(ip.getLength()).isEqualTo(20);
+    FrameDetailResponse.Node ttl = ip.getChildren().get(0);
+    assertThat(ttl.getField()).isEqualTo("ip.ttl");
+    assertThat(ttl.getOffset()).isEqualTo(22);
+    assertThat(ttl.getChildren()).isNull();
+    assertThat(ip.getChildren().get(1).getField()).isNull();
+  }
+}
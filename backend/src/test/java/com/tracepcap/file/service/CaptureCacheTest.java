@@ -0,0 +1,173 @@
+package com.tracepcap.file.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.tracepcap.common.exception.StorageException;
+import com.tracepcap.file.entity.FileEntity;
+import com.tracepcap.file.event.FileDeletedEvent;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * What the cache promises its callers: one download per capture while it stays cached, nothing
+ * served that does not match the upload's hash, and nothing evicted from under a reader.
+ */
+class CaptureCacheTest {
+
+  private static final int KB = 1024;
+
+  private final StorageService storage = mock(StorageService.class);
+
+  @TempDir Path dir;
+
+  /** A cache of {@code maxMb}, with whatever was left in {@link #dir} cleared as at startup. */
+  private CaptureCache cache(long maxMb) {
+    return new CaptureCache(storage, true, dir.toString(), maxMb);
+  }
+
+  private FileEntity stored(byte[] content) throws Exception {
+    FileEntity f = new FileEntity();
+    f.setId(UUID.randomUUID());
+    f.setMinioPath(f.getId() + ".pcap");
+    f.setFileSize((long) content.length);
+    f.setFileHash(
+        HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content)));
+    when(storage.downloadFile(f.getMinioPath()))
+        .thenAnswer(inv -> new ByteArrayInputStream(content));
+    return f;
+  }
+
+  @Test
+  void aCachedCaptureIsNotDownloadedAgain() throws Exception {
+    CaptureCache cache = cache(1);
+    FileEntity file = stored(new byte[100 * KB]);
+
+    try (CaptureCache.Lease first = cache.acquire(file)) {
+      assertThat(first.path()).hasSize(100 * KB);
+    }
+    try (CaptureCache.Lease second = cache.acquire(file)) {
+      assertThat(second.path()).exists();
+    }
+
+    verify(storage, times(1)).downloadFile(file.getMinioPath());
+  }
+
+  @Test
+  void aDownloadThatDoesNotMatchTheUploadIsNeitherServedNorKept() throws Exception {
+    CaptureCache cache = cache(1);
+    FileEntity file = stored(new byte[100 * KB]);
+    file.setFileHash("0".repeat(64));
+
+    assertThatThrownBy(() -> cache.acquire(file)).isInstanceOf(StorageException.class);
+    assertThatThrownBy(() -> cache.acquire(file)).isInstanceOf(StorageException.class);
+
+    verify(storage, times(2)).downloadFile(file.getMinioPath());
+    try (var left = Files.list(dir)) {
+      assertThat(left).isEmpty();
+    }
+  }
+
+  @Test
+  void theLeastRecentlyUsedCaptureMakesRoomButALeasedOneStays() throws Exception {
+    CaptureCache cache = cache(1);
+    FileEntity a = stored(new byte[400 * KB]);
+    FileEntity b = stored(new byte[400 * KB]);
+    FileEntity c = stored(new byte[400 * KB]);
+
+    CaptureCache.Lease held = cache.acquire(a);
+    cache.acquire(b).close();
+    // a is older, but being read; b goes instead.
+    cache.acquire(c).close();
+
+    assertThat(held.path()).exists();
+    assertThat(cache.cachedBytes()).isEqualTo(800 * KB);
+    held.close();
+    cache.acquire(b).close();
+    verify(storage, times(2)).downloadFile(b.getMinioPath());
+    verify(storage, times(1)).downloadFile(a.getMinioPath());
+  }
+
+  @Test
+  void callersWaitingOnTheSameCaptureShareOneDownload() throws Exception {
+    CaptureCache cache = cache(1);
+    byte[] content = new byte[100 * KB];
+    FileEntity file = stored(content);
+    CountDownLatch downloading = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    when(storage.downloadFile(file.getMinioPath()))
+        .thenAnswer(
+            inv -> {
+              downloading.countDown();
+              release.await();
+              return new ByteArrayInputStream(content);
+            });
+
+    CompletableFuture<CaptureCache.Lease> first =
+        CompletableFuture.supplyAsync(() -> cache.acquire(file));
+    downloading.await();
+    CompletableFuture<CaptureCache.Lease> second =
+        CompletableFuture.supplyAsync(() -> cache.acquire(file));
+    Thread.sleep(200);
+    assertThat(second).isNotDone();
+    release.countDown();
+
+    first.get(5, TimeUnit.SECONDS).close();
+    second.get(5, TimeUnit.SECONDS).close();
+    verify(storage, times(1)).downloadFile(file.getMinioPath());
+  }
+
+  @Test
+  void aCaptureLargerThanTheCacheIsDownloadedPrivatelyAndRemovedAfterwards() throws Exception {
+    CaptureCache cache = cache(1);
+    FileEntity huge = stored(new byte[0]);
+    huge.setFileSize(2L * 1024 * KB);
+    doAnswer(
+            inv -> {
+              Files.write(inv.getArgument(1, File.class).toPath(), new byte[] {1, 2, 3});
+              return null;
+            })
+        .when(storage)
+        .downloadFileToLocal(eq(huge.getMinioPath()), any(File.class));
+
+    Path path;
+    try (CaptureCache.Lease lease = cache.acquire(huge)) {
+      path = lease.path();
+      assertThat(path).hasSize(3);
+    }
+
+    assertThat(path).doesNotExist();
+    assertThat(cache.cachedBytes()).isZero();
+  }
+
+  @Test
+  void aDeletedCaptureLeavesTheCacheOnceItsLastReaderIsDone() throws Exception {
+    CaptureCache cache = cache(1);
+    FileEntity file = stored(new byte[100 * KB]);
+
+    CaptureCache.Lease reading = cache.acquire(file);
+    cache.onFileDeleted(new FileDeletedEvent(this, file.getId()));
+    assertThat(reading.path()).exists();
+
+    reading.close();
+    assertThat(reading.path()).doesNotExist();
+    assertThat(cache.cachedBytes()).isZero();
+  }
+}
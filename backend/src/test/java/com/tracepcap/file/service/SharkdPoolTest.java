@@ -0,0 +1,203 @@
+package com.tracepcap.file.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tracepcap.config.SharkdProperties;
+import com.tracepcap.file.entity.FileEntity;
+import com.tracepcap.file.event.FileDeletedEvent;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.UUID;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * A session is started once per capture and kept, and anything it cannot answer comes back as
+ * null — the caller's cue to run tshark — rather than as an error. sharkd is stood in for by
+ * scripts that answer its protocols, 4.0's JSON-RPC and the line protocol of 3.6 before it.
+ */
+class SharkdPoolTest {
+
+  /**
+   * Answers each JSON-RPC line: {@code load} succeeds, {@code check} reports a bad filter, {@code
+   * hang} never answers, and anything else returns the script's pid, which tells sessions apart.
+   */
+  private static final String FAKE_SHARKD =
+      """
+      #!/bin/sh
+      ok='{"jsonrpc":"2.0","id":%s,"result":%s}\\n'
+      bad='{"jsonrpc":"2.0","id":%s,"error":{"code":-5001,"message":"bad"}}\\n'
+      while IFS= read -r line; do
+        id=$(echo "$line" | sed 's/.*"id":\\([0-9]*\\).*/\\1/')
+        case "$line" in
+          *'"method":"load"'*) printf "$ok" "$id" '{}' ;;
+          *'"method":"check"'*) printf "$bad" "$id" ;;
+          *'"method":"hang"'*) exec sleep 30 ;;
+          *) printf "$ok" "$id" '{"pid":'$$'}' ;;
+        esac
+      done
+      """;
+
+  /**
+   * 3.6's protocol: {@code load} succeeds, {@code check} names the filter's error, {@code frame}
+   * prints nothing, as 3.6 does for a frame it does not have, and {@code status} returns the pid.
+   */
+  private static final String FAKE_SHARKD_3_6 =
+      """
+      #!/bin/sh
+      while IFS= read -r line; do
+        case "$line" in
+          *'"req":"load"'*) echo '{"err":0}' ;;
+          *'"req":"check"'*) echo '{"err":0,"filter":"neither a field nor a protocol name"}' ;;
+          *'"req":"status"'*) echo '{"frames":3,"duration":0.5,"pid":'$$'}' ;;
+        esac
+      done
+      """;
+
+  private final StorageService storage = mock(StorageService.class);
+  private final SharkdProperties properties = new SharkdProperties();
+
+  @TempDir Path dir;
+
+  private SharkdPool pool;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    properties.setEnabled(true);
+    properties.setProtocol(SharkdProperties.Protocol.JSON_RPC);
+    properties.setCommand(script("sharkd", FAKE_SHARKD));
+    properties.setRequestTimeoutSeconds(2);
+    // Uncached: every lease is a private download, so downloads count the sessions started.
+    CaptureCache cache = new CaptureCache(storage, false, dir.resolve("cache").toString(), 0);
+    pool = new SharkdPool(cache, new ObjectMapper(), properties);
+  }
+
+  @AfterEach
+  void tearDown() {
+    pool.stop();
+  }
+
+  @Test
+  void aCaptureIsLoadedOnceForAllItsRequests() {
+    FileEntity file = file();
+
+    long first = pid(pool.request(file, "status", Map.of()));
+    long second = pid(pool.request(file, "status", Map.of()));
+
+    assertThat(second).isEqualTo(first);
+    verify(storage, times(1)).downloadFileToLocal(eq(file.getMinioPath()), any(File.class));
+  }
+
+  @Test
+  void anErrorIsSharkdsAnswerNotAFallback() {
+    SharkdPool.Reply reply = pool.request(file(), "check", Map.of("filter", "tcp.port ==="));
+
+    assertThat(reply).isNotNull();
+    assertThat(reply.ok()).isFalse();
+    assertThat(reply.errorCode()).isEqualTo(-5001);
+  }
+
+  @Test
+  void aSessionThatStopsAnsweringIsKilledAndTheRequestLeftToTshark() {
+    FileEntity file = file();
+    long before = pid(pool.request(file, "status", Map.of()));
+
+    assertThat(pool.request(file, "hang", Map.of())).isNull();
+
+    assertThat(pool.sessionCount()).isZero();
+    assertThat(pid(pool.request(file, "status", Map.of()))).isNotEqualTo(before);
+  }
+
+  @Test
+  void theLeastRecentlyUsedIdleSessionMakesRoomAndIdleOnesAreReaped() {
+    properties.setMaxSessions(1);
+    FileEntity a = file();
+    long first = pid(pool.request(a, "status", Map.of()));
+
+    assertThat(pool.request(file(), "status", Map.of())).isNotNull();
+    assertThat(pool.sessionCount()).isEqualTo(1);
+    assertThat(pid(pool.request(a, "status", Map.of()))).isNotEqualTo(first);
+
+    properties.setIdleTimeoutSeconds(0);
+    pool.reapIdle();
+    assertThat(pool.sessionCount()).isZero();
+  }
+
+  @Test
+  void aDeletedCapturesSessionGoesWithIt() {
+    FileEntity file = file();
+    pool.request(file, "status", Map.of());
+
+    pool.onFileDeleted(new FileDeletedEvent(this, file.getId()));
+
+    assertThat(pool.sessionCount()).isZero();
+  }
+
+  @Test
+  void withoutSharkdEveryRequestIsLeftToTshark() {
+    properties.setCommand(dir.resolve("no-such-sharkd").toString());
+
+    assertThat(pool.request(file(), "status", Map.of())).isNull();
+    // Not retried on every request while it is missing.
+    assertThat(pool.request(file(), "status", Map.of())).isNull();
+    verify(storage, times(1)).downloadFileToLocal(anyString(), any(File.class));
+  }
+
+  @Test
+  void sharkd36IsAnsweredInTheSameTerms() throws Exception {
+    properties.setProtocol(SharkdProperties.Protocol.LEGACY);
+    properties.setCommand(script("sharkd-3.6", FAKE_SHARKD_3_6));
+    FileEntity file = file();
+
+    long first = pid(pool.request(file, "status", Map.of()));
+    SharkdPool.Reply invalid = pool.request(file, "check", Map.of("filter", "tcp.prot == 1"));
+    assertThat(invalid.errorCode()).isEqualTo(SharkdPool.FILTER_INVALID);
+    assertThat(invalid.errorMessage()).isEqualTo("neither a field nor a protocol name");
+
+    // No reply is an answer too, not a hang until the deadline kills the session.
+    SharkdPool.Reply silent = pool.request(file, "frame", Map.of("frame", 99, "proto", true));
+    assertThat(silent.errorCode()).isEqualTo(SharkdPool.NO_REPLY);
+    assertThat(pid(pool.request(file, "status", Map.of()))).isEqualTo(first);
+  }
+
+  @Test
+  void theProtocolFollowsTheInstalledMajorVersion() {
+    assertThat(SharkdPool.protocolOf("TShark (Wireshark) 3.6.2 (Git v3.6.2 packaged as 3.6.2-2)"))
+        .isEqualTo(SharkdProperties.Protocol.LEGACY);
+    assertThat(SharkdPool.protocolOf("TShark (Wireshark) 4.2.5 (Git v4.2.5 packaged as 4.2.5-1)"))
+        .isEqualTo(SharkdProperties.Protocol.JSON_RPC);
+    assertThat(SharkdPool.protocolOf("tshark: command not found")).isNull();
+  }
+
+  private String script(String name, String body) throws Exception {
+    Path script = dir.resolve(name);
+    Files.writeString(script, body);
+    assertThat(script.toFile().setExecutable(true)).isTrue();
+    return script.toString();
+  }
+
+  private static long pid(SharkdPool.Reply reply) {
+    assertThat(reply).isNotNull();
+    assertThat(reply.ok()).isTrue();
+    return reply.result().path("pid").asLong();
+  }
+
+  private static FileEntity file() {
+    FileEntity f = new FileEntity();
+    f.setId(UUID.randomUUID());
+    f.setMinioPath(f.getId() + ".pcap");
+    f.setFileSize(100L);
+    return f;
+  }
+}
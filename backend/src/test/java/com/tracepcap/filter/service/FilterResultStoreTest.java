@@ -0,0 +1,167 @@
+package com.tracepcap.filter.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.tracepcap.file.event.FileDeletedEvent;
+import com.tracepcap.filter.dto.PacketDto;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+/**
+ * A filter is run once however many pages are read from it, the first page does not wait for the
+ * last match, the store stays within its budget by truncating rather than growing, and a result
+ * nobody reads is dropped whether or not anyone else asks.
+ */
+class FilterResultStoreTest {
+
+  private final UUID fileId = UUID.randomUUID();
+
+  @Test
+  void theFirstPageComesBackWhileTheRestIsStillBeingCollected() throws Exception {
+    FilterResultStore store = new FilterResultStore(15, 16, 5);
+    CountDownLatch release = new CountDownLatch(1);
+
+    FilterResultStore.Page first =
+        store.page(
+            fileId,
+            "tcp",
+            0,
+            2,
+            sink -> {
+              for (int i = 1; i <= 3; i++) sink.add(packet(i));
+              release.await();
+              for (int i = 4; i <= 5; i++) sink.add(packet(i));
+            });
+
+    assertThat(first.packets()).extracting(PacketDto::getId).containsExactly("1", "2");
+    assertThat(first.complete()).isFalse();
+
+    release.countDown();
+    FilterResultStore.Page last = store.page(fileId, first.cursor(), 4, 2);
+    assertThat(last.packets()).extracting(PacketDto::getId).containsExactly("5");
+    assertThat(last.total()).isEqualTo(5);
+    assertThat(last.complete()).isTrue();
+  }
+
+  @Test
+  void laterPagesAreReadFromTheStoreNotFilteredAgain() {
+    FilterResultStore store = new FilterResultStore(15, 16, 5);
+    AtomicInteger runs = new AtomicInteger();
+    FilterResultStore.Fill fill =
+        sink -> {
+          runs.incrementAndGet();
+          for (int i = 1; i <= 30; i++) sink.add(packet(i));
+        };
+
+    store.page(fileId, "udp", 0, 25, fill);
+    FilterResultStore.Page second = store.page(fileId, "udp", 25, 25, fill);
+
+    assertThat(runs).hasValue(1);
+    assertThat(second.packets()).hasSize(5);
+    PacketDto p = second.packets().get(0);
+    assertThat(p.getId()).isEqualTo("26");
+    assertThat(p.getSource().getPort()).isEqualTo(1026);
+    assertThat(p.getDestination().getPort()).isNull();
+    assertThat(p.getFlags()).containsExactly("SYN", "ACK");
+  }
+
+  @Test
+  void aResultThatOutgrowsTheBudgetStopsThereAndOlderOnesMakeRoom() {
+    FilterResultStore store = new FilterResultStore(15, 1, 5);
+    FilterResultStore.Fill endless =
+        sink -> {
+          for (int i = 1; sink.add(packet(i)); i++) {}
+        };
+
+    FilterResultStore.Page huge = store.page(fileId, "frame", 0, 1, endless);
+    // Past the end, so it waits for the fill to stop.
+    huge = store.page(fileId, huge.cursor(), Integer.MAX_VALUE / 2, 1);
+    assertThat(huge.complete()).isTrue();
+    assertThat(huge.truncated()).isTrue();
+    assertThat(store.heldBytes()).isLessThanOrEqualTo(1024 * 1024);
+
+    FilterResultStore.Page small =
+        store.page(fileId, "dns", 0, 10, sink -> sink.add(packet(1)));
+    assertThat(small.packets()).hasSize(1);
+    assertThat(store.page(fileId, huge.cursor(), 0, 1)).isNull();
+  }
+
+  @Test
+  void aFailedFillIsReportedAndTheNextRequestStartsOver() {
+    FilterResultStore store = new FilterResultStore(15, 16, 5);
+
+    assertThatThrownBy(
+            () ->
+                store.page(
+                    fileId,
+                    "tcp.port ===",
+                    0,
+                    25,
+                    sink -> {
+                      throw new IllegalArgumentException("Invalid filter syntax");
+                    }))
+        .isInstanceOf(IllegalArgumentException.class);
+
+    assertThat(store.resultCount()).isZero();
+    assertThat(store.page(fileId, "tcp.port ===", 0, 25, sink -> {}).complete()).isTrue();
+  }
+
+  @Test
+  void anAbandonedFillIsStoppedOnScheduleWithoutAnotherRequest() throws Exception {
+    FilterResultStore store = new FilterResultStore(0, 16, 5);
+    CountDownLatch expired = new CountDownLatch(1);
+    CountDownLatch stopped = new CountDownLatch(1);
+    AtomicBoolean addedAfterExpiry = new AtomicBoolean(true);
+
+    store.page(
+        fileId,
+        "tcp",
+        0,
+        1,
+        sink -> {
+          sink.add(packet(1));
+          expired.await();
+          addedAfterExpiry.set(sink.add(packet(2)));
+          stopped.countDown();
+        });
+    Thread.sleep(1);
+    store.expireUnread();
+    expired.countDown();
+
+    assertThat(stopped.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(addedAfterExpiry).isFalse();
+    assertThat(store.resultCount()).isZero();
+    assertThat(store.heldBytes()).isZero();
+  }
+
+  @Test
+  void aDeletedCapturesResultsGoWithIt() {
+    FilterResultStore store = new FilterResultStore(15, 16, 5);
+    FilterResultStore.Page page = store.page(fileId, "tcp", 0, 25, sink -> sink.add(packet(1)));
+
+    store.onFileDeleted(new FileDeletedEvent(this, fileId));
+
+    assertThat(store.page(fileId, page.cursor(), 0, 25)).isNull();
+    assertThat(store.heldBytes()).isZero();
+  }
+
+  private static PacketDto packet(int n) {
+    return PacketDto.builder()
+        .id(String.valueOf(n))
+        .frameNumber((long) n * 2)
+        .timestamp(1_700_000_000_000L + n)
+        .source(PacketDto.NetworkEndpoint.builder().ip("10.0.0.1").port(1000 + n).build())
+        .destination(PacketDto.NetworkEndpoint.builder().ip("10.0.0.2").build())
+        .protocol(PacketDto.Protocol.builder().layer("transport").name("TCP").build())
+        .size(60)
+        .payload("GET / HTTP/1.1")
+        .flags(List.of("SYN", "ACK"))
+        .build();
+  }
+}
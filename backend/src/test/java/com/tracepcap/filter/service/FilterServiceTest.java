@@ -0,0 +1,81 @@
+package com.tracepcap.filter.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tracepcap.common.process.SubprocessGovernor;
+import com.tracepcap.file.entity.FileEntity;
+import com.tracepcap.file.service.CaptureCache;
+import com.tracepcap.file.service.FileService;
+import com.tracepcap.file.service.SharkdPool;
+import com.tracepcap.filter.dto.FilterExecutionResponse;
+import com.tracepcap.filter.dto.PacketDto;
+import com.tracepcap.story.service.LlmClient;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Matches listed by sharkd read the same as tshark's: its custom columns print booleans as "Set"
+ * and "Not set" rather than 1 and 0, and the TCP flags still come through.
+ */
+class FilterServiceTest {
+
+  /**
+   * sharkd 4.2's {@code frames} reply for {@code tcp.port == 21} over the first packets of an FTP
+   * session, asked for the service's nineteen columns.
+   */
+  private static final String FRAMES =
+      """
+      [
+        {"c":["1700000000.101000000","74","10.0.0.5","10.0.0.9","49152","21","","","TCP",
+              "49152 → 21 [SYN] Seq=0 Win=64240 Len=0","Set","Not set","Not set","Not set",
+              "Not set","Not set","","","1"],"num":1,"bg":"a0a0a0","fg":"12272e"},
+        {"c":["1700000000.101300000","74","10.0.0.9","10.0.0.5","21","49152","","","TCP",
+              "21 → 49152 [SYN, ACK] Seq=0 Ack=1 Win=65160 Len=0","Set","Set","Not set",
+              "Not set","Not set","Not set","","","2"],"num":2,"bg":"a0a0a0","fg":"12272e"},
+        {"c":["1700000000.204000000","82","10.0.0.5","10.0.0.9","49152","21","","","FTP",
+              "Request: USER anonymous","Not set","Set","Not set","Not set","Set","Not set",
+              "5553455220616e6f6e796d6f75730d0a","","4"],"num":4,"bg":"e7e6ff","fg":"12272e"}
+      ]
+      """;
+
+  private final FileService fileService = mock(FileService.class);
+  private final SharkdPool sharkd = mock(SharkdPool.class);
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final FilterService service =
+      new FilterService(
+          mock(LlmClient.class),
+          fileService,
+          mock(CaptureCache.class),
+          objectMapper,
+          mock(SubprocessGovernor.class),
+          sharkd,
+          new FilterResultStore(15, 16, 5));
+
+  private final FileEntity file = new FileEntity();
+
+  @Test
+  void theTcpFlagsOfSharkdsMatchesAreKept() throws Exception {
+    file.setId(UUID.randomUUID());
+    when(fileService.getFileById(file.getId())).thenReturn(file);
+    when(sharkd.request(eq(file), eq("check"), any()))
+        .thenReturn(new SharkdPool.Reply(objectMapper.nullNode(), 0, null));
+    when(sharkd.request(eq(file), eq("frames"), any()))
+        .thenReturn(new SharkdPool.Reply(objectMapper.readTree(FRAMES), 0, null));
+
+    FilterExecutionResponse response = service.executeFilter(file.getId(), "tcp.port == 21", 1, 10);
+
+    assertThat(response.getPackets())
+        .extracting(PacketDto::getFlags)
+        .containsExactly(List.of("SYN"), List.of("SYN", "ACK"), List.of("ACK", "PSH"));
+    PacketDto user = response.getPackets().get(2);
+    assertThat(user.getFrameNumber()).isEqualTo(4L);
+    assertThat(user.getSource().getPort()).isEqualTo(49152);
+    assertThat(user.getPayload()).startsWith("USER anonymous");
+  }
+}
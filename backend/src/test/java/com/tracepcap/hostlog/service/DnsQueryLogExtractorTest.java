@@ -11,8 +11,9 @@ import org.junit.jupiter.api.Test;
 
 /**
  * Unit tests for {@link DnsQueryLogExtractor#parseRow} — the pure tshark-row parsing/aggregation
- * that underpins the DNS query log (#362). The raw line is pipe-separated:
- * {@code ip.src | dns.qry.name | dns.qry.type | dns.flags.rcode | dns.a | dns.aaaa | dns.count.answers}.
+ * that underpins the DNS query log (#362). A row is one response's fields from the shared tshark
+ * pass: {@code frame.number, ip.src, dns.qry.name, dns.qry.type, dns.flags.rcode, dns.a, dns.aaaa,
+ * dns.count.answers}.
  */
 class DnsQueryLogExtractorTest {
 
@@ -23,9 +24,9 @@ class DnsQueryLogExtractorTest {
       String serverIp, String name, String qtype, String rcode, String a, String aaaa, String ancount) {
     if (groups == null) groups = new LinkedHashMap<>();
     if (serverStats == null) serverStats = new LinkedHashMap<>();
-    // Leading field is frame.number (numeric, pipe-safe); use a fixed dummy frame for unit rows.
-    String line = String.join("|", "1", serverIp, name, qtype, rcode, a, aaaa, ancount);
-    DnsQueryLogExtractor.parseRow(line, groups, serverStats);
+    // Leading field is frame.number; use a fixed dummy frame for unit rows.
+    String[] row = {"1", serverIp, name, qtype, rcode, a, aaaa, ancount};
+    DnsQueryLogExtractor.parseRow(row, groups, serverStats);
   }
 
   private static QueryKey key(String serverIp, String name, String type) {
@@ -124,8 +125,8 @@ class DnsQueryLogExtractorTest {
 
   @Test
   void pipeInQueryName_isRecovered_notTruncatedOrShifted() {
-    // Tunnelled/malformed query names can contain the '|' separator. The fixed trailing fields must
-    // still be parsed correctly and the full name reconstructed.
+    // Tunnelled/malformed query names can contain what used to be the row separator. The other
+    // fields must still be parsed correctly and the full name kept.
     parse("10.0.0.1", "a|b.tunnel.test", "1", "3", "", "", "0");
 
     QueryAgg agg = groups.get(key("10.0.0.1", "a|b.tunnel.test", "A"));
@@ -4,13 +4,18 @@ import static org.assertj.core.api.Assertions.assertThat;
 
 import com.tracepcap.analysis.spi.PacketPartitions;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.function.Supplier;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.testcontainers.containers.GenericContainer;
 import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.containers.wait.strategy.Wait;
@@ -56,6 +61,7 @@ class PacketPartitionIntegrationTest {
 
   @Autowired private PacketPartitions packetPartitions;
   @Autowired private JdbcTemplate jdbc;
+  @Autowired private PlatformTransactionManager transactionManager;
 
   @Test
   void packetsTable_isPartitionedByFileId() {
@@ -99,6 +105,89 @@ class PacketPartitionIntegrationTest {
     assertThat(foreignKeyCount(fileId)).isEqualTo(1);
   }
 
+  @Test
+  void loadPartition_attachesAPartitionLoadedAndIndexedOnItsOwn() {
+    UUID fileId = insertFile();
+    List<String> targets = new ArrayList<>();
+
+    long loaded =
+        inTransaction(
+            () ->
+                packetPartitions.loadPartition(
+                    fileId,
+                    table -> {
+                      targets.add(table);
+                      insertPacket(table, fileId, 1L);
+                      insertPacket(table, fileId, 2L);
+                      return 2;
+                    }));
+
+    assertThat(loaded).isEqualTo(2);
+    assertThat(targets).containsExactly(partitionName(fileId));
+    assertThat(isAttached(fileId)).isTrue();
+    assertThat(packetCount(fileId)).isEqualTo(2);
+    // Built before the attach and adopted by it, not rebuilt: the key and V41's four indexes.
+    assertThat(indexCount(fileId)).isEqualTo(5);
+    assertThat(attachedIndexCount(fileId)).isEqualTo(5);
+    assertThat(foreignKeyCount(fileId)).isEqualTo(1);
+    // The staging CHECK goes once the partition bound implies it.
+    Integer checks =
+        jdbc.queryForObject(
+            "SELECT count(*)::int FROM pg_constraint"
+                + " WHERE conrelid = ?::regclass AND contype = 'c'",
+            Integer.class,
+            partitionName(fileId));
+    assertThat(checks).isZero();
+  }
+
+  @Test
+  void loadPartition_fallsBackToLoadingThroughPacketsWhenStagingFails() {
+    UUID fileId = insertFile();
+    List<String> targets = new ArrayList<>();
+
+    inTransaction(
+        () ->
+            packetPartitions.loadPartition(
+                fileId,
+                table -> {
+                  targets.add(table);
+                  insertPacket(table, fileId, 1L);
+                  if (!table.equals("packets")) {
+                    // A failure after rows are in: they must not survive into the second attempt.
+                    jdbc.execute("SELECT 1 / 0");
+                  }
+                  return 1;
+                }));
+
+    assertThat(targets).containsExactly(partitionName(fileId), "packets");
+    assertThat(isAttached(fileId)).isTrue();
+    assertThat(packetCount(fileId)).isEqualTo(1);
+    assertThat(foreignKeyCount(fileId)).isEqualTo(1);
+  }
+
+  @Test
+  void stagePartition_attachesWhatWasWrittenToTheStagedTable() {
+    UUID fileId = insertFile();
+
+    String table =
+        inTransaction(
+            () -> {
+              PacketPartitions.StagedPartition staged = packetPartitions.stagePartition(fileId);
+              // Written before the attach, the way pipelined ingest's writer does.
+              insertPacket(staged.table(), fileId, 1L);
+              insertPacket(staged.table(), fileId, 2L);
+              assertThat(isAttached(fileId)).isFalse();
+              staged.attach();
+              return staged.table();
+            });
+
+    assertThat(table).isEqualTo(partitionName(fileId));
+    assertThat(isAttached(fileId)).isTrue();
+    assertThat(packetCount(fileId)).isEqualTo(2);
+    assertThat(attachedIndexCount(fileId)).isEqualTo(5);
+    assertThat(foreignKeyCount(fileId)).isEqualTo(1);
+  }
+
   @Test
   void dropPartition_removesOnlyThatFilesPackets() {
     UUID kept = insertFile();
@@ -147,10 +236,20 @@ class PacketPartitionIntegrationTest {
     return id;
   }
 
+  private <T> T inTransaction(Supplier<T> body) {
+    return new TransactionTemplate(transactionManager).execute(status -> body.get());
+  }
+
   private void insertPacket(UUID fileId, long packetNumber) {
+    insertPacket("packets", fileId, packetNumber);
+  }
+
+  private void insertPacket(String table, UUID fileId, long packetNumber) {
     jdbc.update(
-        "INSERT INTO packets (id, file_id, packet_number, timestamp, src_ip, dst_ip, protocol,"
-            + " packet_size) VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
+        "INSERT INTO "
+            + table
+            + " (id, file_id, packet_number, timestamp, src_ip, dst_ip, protocol, packet_size)"
+            + " VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
         UUID.randomUUID(),
         fileId,
         packetNumber,
@@ -170,13 +269,42 @@ class PacketPartitionIntegrationTest {
         "SELECT count(*)::int FROM pg_class WHERE relname = ?", Integer.class, partitionName(fileId));
   }
 
+  /** FKs from the partition to conversations; the one cloned from the parent to files is not. */
   private Integer foreignKeyCount(UUID fileId) {
     return jdbc.queryForObject(
-        "SELECT count(*)::int FROM pg_constraint WHERE conrelid = ?::regclass AND contype = 'f'",
+        "SELECT count(*)::int FROM pg_constraint WHERE conrelid = ?::regclass AND contype = 'f'"
+            + " AND confrelid = 'conversations'::regclass",
+        Integer.class,
+        partitionName(fileId));
+  }
+
+  /** Indexes on the partition itself: the primary key's plus one per index the parent declares. */
+  private Integer indexCount(UUID fileId) {
+    return jdbc.queryForObject(
+        "SELECT count(*)::int FROM pg_index WHERE indrelid = ?::regclass",
         Integer.class,
         partitionName(fileId));
   }
 
+  /** Indexes on the partition that are attached to one of the parent's. */
+  private Integer attachedIndexCount(UUID fileId) {
+    return jdbc.queryForObject(
+        "SELECT count(*)::int FROM pg_index i JOIN pg_inherits h ON h.inhrelid = i.indexrelid"
+            + " WHERE i.indrelid = ?::regclass",
+        Integer.class,
+        partitionName(fileId));
+  }
+
+  private boolean isAttached(UUID fileId) {
+    Integer n =
+        jdbc.queryForObject(
+            "SELECT count(*)::int FROM pg_inherits"
+                + " WHERE inhrelid = ?::regclass AND inhparent = 'packets'::regclass",
+            Integer.class,
+            partitionName(fileId));
+    return n != null && n > 0;
+  }
+
   private Integer packetCount(UUID fileId) {
     return jdbc.queryForObject(
         "SELECT count(*)::int FROM packets WHERE file_id = ?", Integer.class, fileId);
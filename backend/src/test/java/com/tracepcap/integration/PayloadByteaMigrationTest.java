@@ -0,0 +1,76 @@
+package com.tracepcap.integration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.UUID;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+/**
+ * V42 converts stored hex payloads to BYTEA in place. Rows written before it are not all clean hex:
+ * a packet with two occurrences of the payload field kept tshark's comma between them, and a single
+ * such row used to abort the migration — and with it application startup.
+ *
+ * <p>Runs Flyway directly rather than through Spring so the schema can be stopped at V41, seeded
+ * with the old text form, and then taken through V42 alone.
+ */
+@Testcontainers
+class PayloadByteaMigrationTest {
+
+  @Container
+  static final PostgreSQLContainer<?> POSTGRES =
+      new PostgreSQLContainer<>(DockerImageName.parse("postgres:15-alpine"));
+
+  private Flyway flywayTo(String target) {
+    return Flyway.configure()
+        .dataSource(POSTGRES.getJdbcUrl(), POSTGRES.getUsername(), POSTGRES.getPassword())
+        .locations("classpath:db/migration")
+        .target(target)
+        .load();
+  }
+
+  @Test
+  void commaJoinedAndOddLengthPayloadsSurviveTheByteaConversion() {
+    JdbcTemplate jdbc =
+        new JdbcTemplate(
+            new DriverManagerDataSource(
+                POSTGRES.getJdbcUrl(), POSTGRES.getUsername(), POSTGRES.getPassword()));
+    flywayTo("41").migrate();
+
+    UUID fileId = UUID.randomUUID();
+    jdbc.update(
+        "INSERT INTO files (id, file_name, file_size, minio_path, uploaded_at, status)"
+            + " VALUES (?, 'gtpu.pcap', 1, 'x', now(), 'COMPLETED')",
+        fileId);
+    jdbc.execute(
+        "CREATE TABLE packets_"
+            + fileId.toString().replace("-", "")
+            + " PARTITION OF packets FOR VALUES IN ('"
+            + fileId
+            + "')");
+    String insert =
+        "INSERT INTO packets (id, file_id, packet_number, timestamp, src_ip, dst_ip, protocol,"
+            + " packet_size, payload)"
+            + " VALUES (?, ?, ?, now(), '10.0.0.1', '10.0.0.2', 'UDP', 60, ?)";
+    jdbc.update(insert, UUID.randomUUID(), fileId, 1L, "4854,5450"); // two udp.payload occurrences
+    jdbc.update(insert, UUID.randomUUID(), fileId, 2L, "48545"); // odd trailing nibble
+    jdbc.update(insert, UUID.randomUUID(), fileId, 3L, "48545450");
+
+    flywayTo("42").migrate();
+
+    assertThat(payload(jdbc, 1)).containsExactly('H', 'T', 'T', 'P');
+    assertThat(payload(jdbc, 2)).containsExactly('H', 'T');
+    assertThat(payload(jdbc, 3)).containsExactly('H', 'T', 'T', 'P');
+  }
+
+  private static byte[] payload(JdbcTemplate jdbc, long packetNumber) {
+    return jdbc.queryForObject(
+        "SELECT payload FROM packets WHERE packet_number = ?", byte[].class, packetNumber);
+  }
+}
@@ -0,0 +1,100 @@
+package com.tracepcap.reconciliation;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.tracepcap.analysis.service.AnalysisJobQueue;
+import com.tracepcap.analysis.service.AnalysisJobQueue.JobState;
+import com.tracepcap.analysis.service.AnalysisRecordService;
+import com.tracepcap.analysis.service.AnalysisRecordService.StuckFileAction;
+import com.tracepcap.analysis.service.AnalysisService;
+import com.tracepcap.common.scheduling.SchedulerLeases;
+import com.tracepcap.config.ReconciliationProperties;
+import com.tracepcap.file.entity.FileEntity;
+import com.tracepcap.file.entity.FileEntity.FileStatus;
+import com.tracepcap.file.repository.FileRepository;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Only a file with nothing left to finish it is stuck. A running job is judged by its lease, not by
+ * how long ago it started, so an analysis that outlives the timeout while its worker is still
+ * heartbeating is left to finish.
+ */
+class StuckFileReconciliationServiceTest {
+
+  private final FileRepository files = mock(FileRepository.class);
+  private final AnalysisRecordService records = mock(AnalysisRecordService.class);
+  private final AnalysisJobQueue queue = mock(AnalysisJobQueue.class);
+  private final SchedulerLeases leases = mock(SchedulerLeases.class);
+  private final StuckFileReconciliationService reconciler =
+      new StuckFileReconciliationService(
+          files,
+          records,
+          mock(AnalysisService.class),
+          queue,
+          new ReconciliationProperties(),
+          leases);
+
+  private final FileEntity file = new FileEntity();
+
+  StuckFileReconciliationServiceTest() {
+    file.setId(UUID.randomUUID());
+    file.setStatus(FileStatus.PROCESSING);
+    when(leases.acquire(anyString())).thenReturn(true);
+    when(files.findByStatusAndUploadedAtBefore(eq(FileStatus.PROCESSING), any()))
+        .thenReturn(List.of(file));
+  }
+
+  @Test
+  void aJobRunningPastTheTimeoutUnderALiveLeaseIsLeftToFinish() {
+    when(queue.jobState(file.getId())).thenReturn(JobState.RUNNING);
+
+    reconciler.reconcileStuckFiles();
+
+    verify(records, never()).markStuckFileFailed(any(), anyString());
+    verify(records, never()).claimStuckFile(any(), any(LocalDateTime.class), anyInt());
+  }
+
+  @Test
+  void aJobWhoseLeaseLapsedIsLeftToTheQueue() {
+    // Resubmitting is refused while the row is RUNNING; the queue requeues or fails it itself.
+    when(queue.jobState(file.getId())).thenReturn(JobState.LEASE_EXPIRED);
+
+    reconciler.reconcileStuckFiles();
+
+    verify(records, never()).markStuckFileFailed(any(), anyString());
+    verify(queue, never()).submit(any(), anyString(), anyInt());
+  }
+
+  @Test
+  void aFileThatWasNeverQueuedFails() {
+    when(queue.jobState(file.getId())).thenReturn(JobState.NONE);
+    when(records.claimStuckFile(eq(file.getId()), any(), anyInt()))
+        .thenReturn(StuckFileAction.FAIL);
+
+    reconciler.reconcileStuckFiles();
+
+    verify(records).markStuckFileFailed(eq(file.getId()), anyString());
+  }
+
+  @Test
+  void aFileWithACheckpointIsResumedRatherThanFailed() {
+    when(queue.jobState(file.getId())).thenReturn(JobState.NONE);
+    when(records.claimStuckFile(eq(file.getId()), any(), anyInt()))
+        .thenReturn(StuckFileAction.RESUME);
+
+    reconciler.reconcileStuckFiles();
+
+    verify(queue).submit(eq(file.getId()), anyString(), eq(AnalysisJobQueue.PRIORITY_RESUME));
+    verify(records, never()).markStuckFileFailed(any(), anyString());
+  }
+}
@@ -0,0 +1,74 @@
+package com.tracepcap.signatures.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.tracepcap.analysis.service.PcapParserService;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The {@code payload_contains} rule type, now that payloads are bytes rather than hex strings. A
+ * hex-string search could match across a byte boundary ("4745" inside "a47455"); a byte search
+ * cannot, and the rule formats the docs list must all still decode to the same needle.
+ */
+class PayloadContainsMatchingTest {
+
+  private final CustomSignatureService service = new CustomSignatureService();
+
+  private static PcapParserService.PacketInfo packet(byte... payload) {
+    PcapParserService.PacketInfo p = new PcapParserService.PacketInfo();
+    p.setPayload(payload);
+    return p;
+  }
+
+  @SuppressWarnings("unchecked")
+  private boolean matches(
+      List<PcapParserService.PacketInfo> packets,
+      List<Map<String, Object>> patterns,
+      boolean matchAll) {
+    try {
+      Method m =
+          CustomSignatureService.class.getDeclaredMethod(
+              "payloadContainsMatch", Iterable.class, List.class, boolean.class);
+      m.setAccessible(true);
+      return (boolean) m.invoke(service, packets, patterns, matchAll);
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("payloadContainsMatch changed — update this test", e);
+    }
+  }
+
+  @Test
+  void asciiAndEveryHexSpellingFindTheSameBytes() {
+    List<PcapParserService.PacketInfo> packets =
+        List.of(packet((byte) 0x00, (byte) 0xde, (byte) 0xad));
+    for (Map<String, Object> pattern :
+        List.<Map<String, Object>>of(
+            Map.of("hex", "dead"),
+            Map.of("hex", "0xDEAD"),
+            Map.of("hex", "0xDE 0xAD"),
+            Map.of("hex", "de:ad"))) {
+      assertThat(matches(packets, List.of(pattern), false)).as(pattern.toString()).isTrue();
+    }
+    assertThat(matches(List.of(packet("GET /".getBytes())), List.of(Map.of("ascii", "GET")), false))
+        .isTrue();
+  }
+
+  @Test
+  void aNeedleNeverMatchesAcrossAByteBoundary() {
+    // As hex this payload is "a47455"; the old string search found "4745" at nibble offset 1.
+    List<PcapParserService.PacketInfo> packets =
+        List.of(packet((byte) 0xa4, (byte) 0x74, (byte) 0x55));
+    assertThat(matches(packets, List.of(Map.of("hex", "4745")), false)).isFalse();
+  }
+
+  @Test
+  void hexThatDoesNotDecodeIsUnmatched() {
+    List<PcapParserService.PacketInfo> packets = List.of(packet((byte) 0xde, (byte) 0xad));
+    assertThat(matches(packets, List.of(Map.of("hex", "dea")), false)).isFalse();
+    assertThat(matches(packets, List.of(Map.of("hex", "dead"), Map.of("hex", "zz")), true))
+        .as("an invalid pattern fails an AND rule")
+        .isFalse();
+  }
+}
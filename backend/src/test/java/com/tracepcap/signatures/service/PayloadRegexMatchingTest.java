@@ -4,7 +4,6 @@ import static org.assertj.core.api.Assertions.assertThat;
 
 import com.tracepcap.analysis.service.PcapParserService;
 import java.lang.reflect.Method;
-import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
 import org.junit.jupiter.api.Test;
@@ -22,7 +21,7 @@ class PayloadRegexMatchingTest {
 
   private static PcapParserService.PacketInfo packet(String ascii) {
     PcapParserService.PacketInfo p = new PcapParserService.PacketInfo();
-    p.setPayload(HexFormat.of().formatHex(ascii.getBytes()));
+    p.setPayload(ascii.getBytes());
     return p;
   }
 
@@ -42,7 +41,7 @@ class PayloadRegexMatchingTest {
     try {
       Method m =
           CustomSignatureService.class.getDeclaredMethod(
-              "payloadRegexMatch", List.class, List.class, boolean.class);
+              "payloadRegexMatch", Iterable.class, List.class, boolean.class);
       m.setAccessible(true);
       return (boolean) m.invoke(service, packets, patterns, matchAll);
     } catch (ReflectiveOperationException e) {
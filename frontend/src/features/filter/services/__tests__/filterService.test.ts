@@ -61,4 +61,23 @@ describe('filterService', () => {
 
     expect(body).toMatchObject({ fileId: FILE_ID, filter: 'tcp' })
   })
+
+  it('reads later pages through the cursor, and an expired result as null', async () => {
+    let pageParam: string | null = null
+    server.use(
+      http.get('*/api/v1/filter/:fileId/results/:cursor', ({ params, request }) => {
+        if (params.cursor !== 'c1') return HttpResponse.json({}, { status: 404 })
+        pageParam = new URL(request.url).searchParams.get('page')
+        return HttpResponse.json({ packets: [], totalMatches: 60, complete: true })
+      })
+    )
+
+    await expect(filterService.resultPage(FILE_ID, 'c1', 3, 25)).resolves.toMatchObject({
+      totalMatches: 60,
+      complete: true,
+    })
+    expect(pageParam).toBe('3')
+    // Expiry is the page's cue to run the filter again, not an error to show.
+    await expect(filterService.resultPage(FILE_ID, 'gone')).resolves.toBeNull()
+  })
 })
@@ -44,4 +44,25 @@ export const filterService = {
     );
     return response.data;
   },
+
+  /**
+   * Read another page of a result executeFilter returned the cursor of, without running the
+   * filter again. While the result is still filling, its totals are the matches found so far.
+   * Null once the server has let the result expire.
+   */
+  resultPage: (
+    fileId: string,
+    cursor: string,
+    page: number = 1,
+    pageSize: number = 25
+  ): Promise<FilterExecutionResponse | null> =>
+    apiClient
+      .get<FilterExecutionResponse>(API_ENDPOINTS.FILTER_RESULT(fileId, cursor), {
+        params: { page, pageSize },
+      })
+      .then(r => r.data)
+      .catch(err => {
+        if (err?.response?.status === 404) return null;
+        throw err;
+      }),
 };
@@ -1,14 +1,17 @@
 import { Spinner } from '@components/common/Spinner/Spinner';
-import { useState, useEffect, useRef } from 'react';
+import { useState, useEffect, useRef, useCallback } from 'react';
 import { useOutletContext } from 'react-router-dom';
 import { Badge, Button, Card, Form, Modal } from '@govtechsg/sgds-react';
 import { Alert } from '@components/common/Alert';
-import type { AnalysisData, Packet } from '@/types';
+import type { AnalysisData, FilterExecutionResponse, Packet } from '@/types';
 import { apiClient } from '@/services/api/client';
 import { filterService } from '@/features/filter/services/filterService';
 import { Pagination } from '@components/common/Pagination';
 import { formatBytes } from '@/utils/formatters';
 
+/** How often a result that is still being collected is re-read for its growing totals. */
+const RESULT_POLL_MS = 1500;
+
 interface AnalysisOutletContext {
   data: AnalysisData;
   fileId: string;
@@ -44,6 +47,44 @@ export const FilterGeneratorPage = () => {
   const [totalPages, setTotalPages] = useState(0);
   const resultsRef = useRef<HTMLDivElement>(null);
 
+  // The first page comes back before the filter has finished: until the result is complete its
+  // totals count only the matches found so far, so it is re-read through its cursor until it is.
+  const [cursor, setCursor] = useState<string | null>(null);
+  const [complete, setComplete] = useState(true);
+  const [truncated, setTruncated] = useState(false);
+  const [pollTick, setPollTick] = useState(0);
+
+  const applyResult = useCallback((result: FilterExecutionResponse, page: number) => {
+    setPackets(result.packets);
+    setTotalMatches(result.totalMatches);
+    setTotalPages(result.totalPages || 0);
+    setCurrentPage(page);
+    setCursor(result.cursor ?? null);
+    setComplete(result.complete ?? true);
+    setTruncated(result.truncated ?? false);
+  }, []);
+
+  useEffect(() => {
+    if (!cursor || complete) return;
+    let cancelled = false;
+    const timerId = window.setTimeout(async () => {
+      try {
+        const result = await filterService.resultPage(fileId, cursor, currentPage, pageSize);
+        if (cancelled) return;
+        // Expired: stop here; the next page change runs the filter again.
+        if (result) applyResult(result, currentPage);
+        else setCursor(null);
+      } catch {
+        // Transient; try again on the next tick.
+      }
+      if (!cancelled) setPollTick(t => t + 1);
+    }, RESULT_POLL_MS);
+    return () => {
+      cancelled = true;
+      clearTimeout(timerId);
+    };
+  }, [cursor, complete, currentPage, fileId, pageSize, pollTick, applyResult]);
+
   const validateFilter = (filter: string): { valid: boolean; message?: string } => {
     const trimmed = filter.trim();
 
@@ -105,6 +146,9 @@ export const FilterGeneratorPage = () => {
       setPackets([]);
       setTotalMatches(0);
       setExecutionTime(null);
+      setCursor(null);
+      setComplete(true);
+      setTruncated(false);
     } catch (err) {
       const status = (err as { response?: { status?: number } })?.response?.status;
       const data = (err as { response?: { data?: Record<string, unknown> } })?.response?.data ?? {};
@@ -135,12 +179,11 @@ export const FilterGeneratorPage = () => {
     try {
       setExecuting(true);
       setError(null);
+      // Stops the previous result's polling, which would otherwise overwrite this one.
+      setCursor(null);
       const result = await filterService.executeFilter(fileId, editableFilter, page, pageSize);
-      setPackets(result.packets);
-      setTotalMatches(result.totalMatches);
+      applyResult(result, page);
       setExecutionTime(result.executionTime);
-      setTotalPages(result.totalPages || 0);
-      setCurrentPage(page);
     } catch (err) {
       // Provide specific error message based on the error type
       const errorMsg = err instanceof Error ? err.message : String(err);
@@ -168,7 +211,19 @@ export const FilterGeneratorPage = () => {
     }
   };
 
-  const handlePageChange = (page: number) => {
+  const handlePageChange = async (page: number) => {
+    if (cursor) {
+      try {
+        const result = await filterService.resultPage(fileId, cursor, page, pageSize);
+        if (result) {
+          applyResult(result, page);
+          resultsRef.current?.scrollIntoView({ behavior: 'smooth', block: 'start' });
+          return;
+        }
+      } catch {
+        // Run the filter again below.
+      }
+    }
     handleExecuteFilter(page);
   };
 
@@ -393,13 +448,36 @@ export const FilterGeneratorPage = () => {
                     Matching Packets
                   </h5>
                   <div>
-                    <Badge bg="primary" className="me-2">{totalMatches} matches</Badge>
+                    <Badge bg="primary" className="me-2">
+                      {complete ? (
+                        `${totalMatches} matches`
+                      ) : (
+                        <>
+                          <Spinner animation="border" size="sm" className="me-1" />
+                          {totalMatches}+ matches so far
+                        </>
+                      )}
+                    </Badge>
                     {executionTime !== null && (
                       <Badge bg="secondary">{executionTime}ms</Badge>
                     )}
                   </div>
                 </div>
 
+                {!complete && (
+                  <p className="text-muted small mb-2">
+                    Still filtering — the count and the pages grow until the whole capture has been
+                    read.
+                  </p>
+                )}
+                {truncated && (
+                  <Alert variant="warning" className="mb-3">
+                    <i className="bi bi-exclamation-triangle me-2"></i>
+                    Only the first {totalMatches} matches are kept for this filter. Narrow it to see
+                    the rest.
+                  </Alert>
+                )}
+
                 {/* Packets Table */}
                 <div className="table-responsive">
                   <table className="table table-hover table-sm">
@@ -58,6 +58,8 @@ export const API_ENDPOINTS = {
   // Filter Generator
   GENERATE_FILTER: (fileId: string) => `/filter/${fileId}/generate`,
   EXECUTE_FILTER: (fileId: string) => `/filter/${fileId}/execute`,
+  FILTER_RESULT: (fileId: string, cursor: string) =>
+    `/filter/${fileId}/results/${encodeURIComponent(cursor)}`,
 
   // Extracted Files
   EXTRACTED_FILES: (fileId: string) => `/files/${fileId}/extractions`,
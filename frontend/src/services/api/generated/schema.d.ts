@@ -416,6 +416,23 @@ export interface paths {
         patch?: never;
         trace?: never;
     };
+    "/api/v1/conversations/{fileId}/frames/{frameNumber}": {
+        parameters: {
+            query?: never;
+            header?: never;
+            path?: never;
+            cookie?: never;
+        };
+        /** Dissect a single frame of the capture */
+        get: operations["getFrameDetail"];
+        put?: never;
+        post?: never;
+        delete?: never;
+        options?: never;
+        head?: never;
+        patch?: never;
+        trace?: never;
+    };
     "/api/v1/conversations/{fileId}/risk-types": {
         parameters: {
             query?: never;
@@ -914,6 +931,26 @@ export interface paths {
         patch?: never;
         trace?: never;
     };
+    "/api/v1/filter/{fileId}/results/{cursor}": {
+        parameters: {
+            query?: never;
+            header?: never;
+            path?: never;
+            cookie?: never;
+        };
+        /**
+         * Page through a filter result
+         * @description Returns another page of a result /execute returned the cursor of, without running the filter again; 404 once the result has expired
+         */
+        get: operations["resultPage"];
+        put?: never;
+        post?: never;
+        delete?: never;
+        options?: never;
+        head?: never;
+        patch?: never;
+        trace?: never;
+    };
     "/api/v1/ip-org-rules": {
         parameters: {
             query?: never;
@@ -2227,6 +2264,8 @@ export interface components {
             filter: string;
         };
         FilterExecutionResponse: {
+            complete?: boolean;
+            cursor?: string;
             /** Format: int64 */
             executionTime?: number;
             packets?: components["schemas"]["PacketDto"][];
@@ -2238,6 +2277,7 @@ export interface components {
             totalMatches?: number;
             /** Format: int32 */
             totalPages?: number;
+            truncated?: boolean;
         };
         FilterGenerationRequest: {
             naturalLanguageQuery: string;
@@ -2261,6 +2301,12 @@ export interface components {
             /** @enum {string} */
             type?: "NDPI_RISK" | "BEACON" | "TLS_ANOMALY" | "VOLUME" | "FAN_OUT" | "LONG_SESSION" | "UNKNOWN_APP" | "PORT_PROTOCOL_MISMATCH" | "COVERAGE_GAP";
         };
+        FrameDetailResponse: {
+            bytes?: string[];
+            /** Format: int64 */
+            frameNumber?: number;
+            tree?: components["schemas"]["Node"][];
+        };
         GenerateInsightRequest: {
             audience?: string;
             focus?: string;
@@ -2569,6 +2615,14 @@ export interface components {
             /** Format: int64 */
             totalBytes?: number;
         };
+        Node: {
+            field?: string;
+            label?: string;
+            /** Format: int32 */
+            length?: number;
+            /** Format: int32 */
+            offset?: number;
+        };
         NodeRoleDto: {
             confirmedBy?: string;
             confirmedByHuman?: boolean;
@@ -2609,6 +2663,8 @@ export interface components {
         PacketDto: {
             destination?: components["schemas"]["NetworkEndpoint"];
             flags?: string[];
+            /** Format: int64 */
+            frameNumber?: number;
             id?: string;
             payload?: string;
             protocol?: components["schemas"]["Protocol"];
@@ -3623,6 +3679,29 @@ export interface operations {
             };
         };
     };
+    getFrameDetail: {
+        parameters: {
+            query?: never;
+            header?: never;
+            path: {
+                fileId: string;
+                frameNumber: number;
+            };
+            cookie?: never;
+        };
+        requestBody?: never;
+        responses: {
+            /** @description OK */
+            200: {
+                headers: {
+                    [name: string]: unknown;
+                };
+                content: {
+                    "*/*": components["schemas"]["FrameDetailResponse"];
+                };
+            };
+        };
+    };
     getRiskTypes: {
         parameters: {
             query?: never;
@@ -4488,6 +4567,32 @@ export interface operations {
             };
         };
     };
+    resultPage: {
+        parameters: {
+            query?: {
+                page?: number;
+                pageSize?: number;
+            };
+            header?: never;
+            path: {
+                fileId: string;
+                cursor: string;
+            };
+            cookie?: never;
+        };
+        requestBody?: never;
+        responses: {
+            /** @description OK */
+            200: {
+                headers: {
+                    [name: string]: unknown;
+                };
+                content: {
+                    "*/*": components["schemas"]["FilterExecutionResponse"];
+                };
+            };
+        };
+    };
     list_3: {
         parameters: {
             query?: never;
@@ -517,4 +517,7 @@ export interface FilterExecutionResponse {
   page?: number;
   pageSize?: number;
   totalPages?: number;
+  cursor?: string;
+  complete?: boolean;
+  truncated?: boolean;
 }
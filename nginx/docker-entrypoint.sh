@@ -30,6 +30,15 @@ fi
 # Max upload = 25% of the effective backend budget, in MB
 MAX_UPLOAD_MB=$(( EFFECTIVE_MEM_MB * 25 / 100 ))
 
+# Streaming ingest takes its cap from STREAMING_MAX_UPLOAD_MB rather than from memory; mirror the
+# backend so the edge does not reject a capture the backend was configured to accept.
+if [ "${PACKET_INGEST_MODE:-memory}" = "streaming" ]; then
+  MAX_UPLOAD_MB=${STREAMING_MAX_UPLOAD_MB:-10240}
+  case "${MAX_UPLOAD_MB}" in
+    ''|*[!0-9]*) MAX_UPLOAD_MB=10240 ;;
+  esac
+fi
+
 # Nginx body limit = max upload + 50 MB multipart overhead buffer
 NGINX_MAX_BODY_SIZE="$(( MAX_UPLOAD_MB + 50 ))M"
 
@@ -40,6 +49,13 @@ if [ "$NGINX_PROXY_TIMEOUT" -lt 300 ]; then NGINX_PROXY_TIMEOUT=300; fi
 LLM_TIMEOUT_S=${LLM_TIMEOUT:-300}
 LLM_PROXY_TIMEOUT=$(( LLM_TIMEOUT_S + 60 ))
 if [ "$NGINX_PROXY_TIMEOUT" -lt "$LLM_PROXY_TIMEOUT" ]; then NGINX_PROXY_TIMEOUT=$LLM_PROXY_TIMEOUT; fi
+# Streaming: the backend budgets a second per 4 MB of the cap; so does the proxy.
+if [ "${PACKET_INGEST_MODE:-memory}" = "streaming" ]; then
+  STREAMING_PROXY_TIMEOUT=$(( MAX_UPLOAD_MB / 4 ))
+  if [ "$NGINX_PROXY_TIMEOUT" -lt "$STREAMING_PROXY_TIMEOUT" ]; then
+    NGINX_PROXY_TIMEOUT=$STREAMING_PROXY_TIMEOUT
+  fi
+fi
 
 export NGINX_MAX_BODY_SIZE
 export NGINX_PROXY_TIMEOUT
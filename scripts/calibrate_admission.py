@@ -0,0 +1,126 @@
+#!/usr/bin/env python3
+"""Derive the heap coefficients in AnalysisAdmission from real runs.
+
+Admission control starts an analysis only while the predicted peak heap of everything running fits
+the budget, so a prediction that is too low lets the heap run out and one that is too high leaves
+workers idle. The constants were estimated from PacketStore's layout, not measured. Every finished
+analysis logs its prediction next to the heap it actually reached:
+
+    [<file id>] Admission actual: <packets> packets, <bytes> bytes, predicted heap <n>MB,
+        peak live heap <n>MB with <k> job(s) in flight at most, <n>ms
+
+This reads those lines and prints measured coefficients in the same shape as the model.
+
+Usage:
+    docker compose logs backend | python3 scripts/calibrate_admission.py [--streaming]
+
+Pass --streaming when the logs come from PACKET_INGEST_MODE=streaming; the two modes have separate
+coefficients and their runs must not be mixed. The observed heap is the whole JVM's, so only runs
+that had it to themselves are used. Upload captures of very different sizes one at a time to get
+them: a single size cannot tell a per-packet cost from a fixed one.
+"""
+
+from __future__ import annotations
+
+import re
+import sys
+
+ACTUAL = re.compile(
+    r"\[([0-9a-f-]{36})\] Admission actual: (\d+|null) packets, (\d+) bytes, "
+    r"predicted heap (\d+)MB, peak live heap (\d+)MB with (\d+) job\(s\) in flight"
+)
+
+MB = 1024 * 1024
+
+
+def solve(a: list[list[float]], b: list[float]) -> list[float] | None:
+    """Gaussian elimination for the small normal-equation systems below."""
+    n = len(b)
+    m = [row[:] + [b[i]] for i, row in enumerate(a)]
+    for col in range(n):
+        pivot = max(range(col, n), key=lambda r: abs(m[r][col]))
+        if abs(m[pivot][col]) < 1e-12:
+            return None
+        m[col], m[pivot] = m[pivot], m[col]
+        for r in range(n):
+            if r != col:
+                f = m[r][col] / m[col][col]
+                m[r] = [x - f * y for x, y in zip(m[r], m[col])]
+    return [m[i][n] / m[i][i] for i in range(n)]
+
+
+def fit(xs: list[list[float]], ys: list[float]) -> list[float] | None:
+    """Least squares of y = c0 + c1 * x1 + ... ; returns [c0, c1, ...]."""
+    rows = [[1.0] + x for x in xs]
+    k = len(rows[0])
+    ata = [[sum(r[i] * r[j] for r in rows) for j in range(k)] for i in range(k)]
+    aty = [sum(r[i] * y for r, y in zip(rows, ys)) for i in range(k)]
+    return solve(ata, aty)
+
+
+def main() -> int:
+    streaming = "--streaming" in sys.argv[1:]
+    runs = {}
+    for line in sys.stdin:
+        if (m := ACTUAL.search(line)) and m.group(2) != "null":
+            runs[m.group(1)] = (
+                int(m.group(2)),
+                int(m.group(3)),
+                int(m.group(4)),
+                int(m.group(5)),
+                int(m.group(6)),
+            )
+
+    solo = sorted((r for r in runs.values() if r[4] == 1), key=lambda r: r[0])
+    if len(runs) > len(solo):
+        print(f"Skipped {len(runs) - len(solo)} run(s) that shared the JVM with another analysis.\n")
+    if not solo:
+        print("No single-job runs with a packet count found in the input.", file=sys.stderr)
+        return 1
+
+    print(f"{'packets':>10} {'MB':>8} {'predicted':>10} {'observed':>9}   (MB)")
+    for pkts, size, predicted, observed, _ in solo:
+        flag = "  <- under-predicted" if observed > predicted else ""
+        print(f"{pkts:>10} {size / MB:>8.1f} {predicted:>10} {observed:>9}{flag}")
+
+    xs_k = [[p / 1000.0] for p, *_ in solo]
+    xs_km = [[p / 1000.0, s / MB] for p, s, *_ in solo]
+    ys = [float(o) for *_, o, _ in solo]
+
+    print()
+    coeffs = None
+    if not streaming and len(solo) >= 3:
+        coeffs = fit(xs_km, ys)
+        if coeffs and min(coeffs[1:]) >= 0:
+            print("Fitted model — heap MB = fixed + per_kpkt * kpkt + per_capture_mb * capture MB:\n")
+            print(f"  HEAP_FIXED_MB                   = {coeffs[0]:.0f}")
+            print(f"  MEMORY_HEAP_MB_PER_KPKT         = {coeffs[1]:.3f}")
+            print(f"  MEMORY_HEAP_MB_PER_CAPTURE_MB   = {coeffs[2]:.2f}")
+        else:
+            # Packet count and capture size rise together; with similar packet sizes throughout the
+            # two terms cannot be told apart and the fit trades one against the other.
+            coeffs = None
+            print("Packet count and capture size are too closely correlated in these runs to")
+            print("separate; fitting packets alone (set MEMORY_HEAP_MB_PER_CAPTURE_MB to 0).\n")
+    if coeffs is None:
+        if len(solo) < 2:
+            print("Needs at least two single-job runs to fit.", file=sys.stderr)
+            return 1
+        coeffs = fit(xs_k, ys)
+        if coeffs is None:
+            print("All runs have the same packet count; nothing to fit.", file=sys.stderr)
+            return 1
+        name = "STREAMING_HEAP_MB_PER_KPKT" if streaming else "MEMORY_HEAP_MB_PER_KPKT"
+        print("Fitted model — heap MB = fixed + per_kpkt * kpkt:\n")
+        print(f"  HEAP_FIXED_MB{'':<{len(name) - 13}} = {coeffs[0]:.0f}")
+        print(f"  {name} = {max(coeffs[1], 0.0):.3f}")
+
+    print("\nThe fixed term includes whatever the application holds between analyses, so it is")
+    print("only valid for a backend of the same shape. Leave headroom in heap-budget-percent")
+    print("rather than in the coefficients: live heap after collection understates the peak a")
+    print("collection has to make room for.")
+    return 0
+
+
+if __name__ == "__main__":
+    sys.exit(main())
@@ -15,6 +15,10 @@ OutOfMemoryError 25 minutes into parsing.
 
 Nothing connected the two numbers, so nothing noticed. This does.
 
+PACKET_INGEST_MODE=streaming is outside this rule on purpose: packets go to a temp file as they are
+parsed, so the heap no longer scales with the capture, and the entrypoint takes the cap from
+STREAMING_MAX_UPLOAD_MB instead. This checks the memory-mode derivation, which stays the default.
+
 Usage: python3 scripts/check_memory_budget.py
 Exit 0 clean, 1 on a violation.
 """